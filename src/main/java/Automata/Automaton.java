@@ -230,13 +230,14 @@ public class Automaton {
      */
     private static void rebuildTransitions(FA fa, RichAlphabet oldAlphabet, Automaton M) {
         List<Int2ObjectRBTreeMap<IntList>> newD = new ArrayList<>(M.getFa().getQ());
+        int[] inputMap = oldAlphabet.remapTo(M.richAlphabet);
         for (int q = 0; q < M.getFa().getQ(); q++) {
             Int2ObjectRBTreeMap<IntList> newMap = new Int2ObjectRBTreeMap<>();
             for (Int2ObjectMap.Entry<IntList> entry: fa.getT().getEntriesNfaD(q)) {
-                List<Integer> decoded = oldAlphabet.decode(entry.getIntKey());
-                if (M.richAlphabet.isInNewAlphabet(decoded)) {
+                int newInput = inputMap[entry.getIntKey()];
+                if (newInput != -1) { // -1 when not in the new alphabet
                     // For safety, clone the dest list to avoid aliasing
-                    newMap.put(M.richAlphabet.encode(decoded), new IntArrayList(entry.getValue()));
+                    newMap.put(newInput, new IntArrayList(entry.getValue()));
                 }
             }
             newD.add(newMap);
@@ -363,12 +364,7 @@ public class Automaton {
         IntList permutedEncoder = RichAlphabet.determineEncoder(permutedA);
 
         //For example encoded_input_permutation[2] = 5 means that encoded input 2 becomes 5 after sorting.
-        int[] encodedInputPermutation = new int[getAlphabetSize()];
-        for (int i = 0; i < getAlphabetSize(); i++) {
-            List<Integer> input = richAlphabet.decode(i);
-            List<Integer> permutedInput = permute(input, labelPermutation);
-            encodedInputPermutation[i] = RichAlphabet.encode(permutedInput, permutedA, permutedEncoder);
-        }
+        int[] encodedInputPermutation = richAlphabet.permutationMap(labelPermutation);
 
         setLabel(sortedLabel);
         richAlphabet.setA(permutedA);
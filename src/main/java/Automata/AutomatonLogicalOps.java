@@ -71,7 +71,50 @@ public class AutomatonLogicalOps {
             }
             return or(B, A, friendlyOp); // or is symmetric
         }
-        return totalizeCrossProduct(A, B, friendlyOp);
+        return crossProductWithSink(A, B, friendlyOp);
+    }
+
+    /**
+     * @return the conjunction of all the automata, if and is true, or else their disjunction.
+     * Three or more automata are combined in a single product, which is minimized once, rather than pairwise.
+     */
+    public static AutomatonDFA andOrAll(List<Automaton> automata, boolean and) {
+        String friendlyOp = and ? LogicalOperator.AND : LogicalOperator.OR;
+        List<Automaton> components = new ArrayList<>();
+        for (Automaton A : automata) {
+            if (!A.fa.isTRUE_FALSE_AUTOMATON()) {
+                components.add(A);
+            } else if (A.fa.isTRUE_AUTOMATON() != and) {
+                return new AutomatonDFA(!and); // false for a conjunction, true for a disjunction
+            }
+        }
+        if (components.size() < 3) {
+            if (components.isEmpty()) {
+                return new AutomatonDFA(and);
+            }
+            if (components.size() == 1) {
+                return components.get(0).asDFA();
+            }
+            return and ? and(components.get(0), components.get(1), friendlyOp)
+                : or(components.get(0), components.get(1), friendlyOp);
+        }
+
+        long timeBefore = System.currentTimeMillis();
+        StringBuilder sizes = new StringBuilder();
+        for (Automaton A : components) {
+            sizes.append(sizes.length() == 0 ? ":" : " - ").append(A.fa.getQ()).append(" states");
+        }
+        logMessage(COMPUTING + " " + friendlyOp + sizes);
+        Logging.indent();
+        AutomatonDFA N = ProductStrategies.crossProductAllAndMinimize(components, and);
+        Logging.dedent();
+        if (!and) {
+            N.applyAllRepresentations();
+        }
+
+        long timeAfter = System.currentTimeMillis();
+        logMessage(COMPUTED + " " + friendlyOp + ":" + N.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+        return N;
     }
 
     /**
@@ -88,7 +131,7 @@ public class AutomatonLogicalOps {
             }
             return xor(B, A, friendlyOp); // xor is symmetric
         }
-      return totalizeCrossProduct(A, B, friendlyOp);
+      return crossProductWithSink(A, B, friendlyOp);
     }
 
     /**
@@ -106,17 +149,19 @@ public class AutomatonLogicalOps {
                 return not(A.asDFA());
             }
         }
-      return totalizeCrossProduct(A, B, friendlyOp);
+      return crossProductWithSink(A, B, friendlyOp);
     }
 
-    private static AutomatonDFA totalizeCrossProduct(Automaton A, Automaton B, String friendlyOp) {
+    /**
+     * Cross product where missing transitions go to a virtual sink, so non-accepting inputs can combine to accept.
+     * A and B aren't totalized or otherwise modified.
+     */
+    private static AutomatonDFA crossProductWithSink(Automaton A, Automaton B, String friendlyOp) {
         long timeBefore = System.currentTimeMillis();
         logMessage(COMPUTING + " " + friendlyOp + ":" + A.fa.getQ() + " states - " + B.fa.getQ() + " states");
 
         Logging.indent();
-        A.fa.totalize();
-        B.fa.totalize();
-        AutomatonDFA N = ProductStrategies.crossProductAndMinimize(A, B, friendlyOp).asDFA();
+        AutomatonDFA N = ProductStrategies.crossProductAndMinimize(A, B, friendlyOp, true).asDFA();
         Logging.dedent();
         N.applyAllRepresentations();
 
@@ -135,7 +180,7 @@ public class AutomatonLogicalOps {
             return and(C, D);
         }
 
-      return totalizeCrossProduct(A, B, friendlyOp);
+      return crossProductWithSink(A, B, friendlyOp);
     }
 
     /**
@@ -157,8 +202,7 @@ public class AutomatonLogicalOps {
         logMessage(print, COMPUTING + " " + Operator.NEGATE + ":" + A.fa.getQ() + " states");
 
         Logging.indent();
-        A.getFa().totalize();
-        A.getFa().flipOutput();
+        A.getFa().complement();
         A.getFa().justMinimize();
         A.applyAllRepresentations();
         A.getFa().convertNFAtoDFA();
@@ -192,11 +236,14 @@ public class AutomatonLogicalOps {
 
         List<Int2ObjectRBTreeMap<IntList>> newOtherD = new ArrayList<>(otherClone.fa.getQ());
 
+        int[] inputMap = otherClone.richAlphabet.remapTo(A.richAlphabet);
         for (int q = 0; q < otherClone.fa.getQ(); q++) {
             Int2ObjectRBTreeMap<IntList> newMap = new Int2ObjectRBTreeMap<>();
             for (Int2ObjectMap.Entry<IntList> entry : otherClone.fa.getT().getEntriesNfaD(q)) {
-                newMap.put(A.richAlphabet.encode(otherClone.richAlphabet.decode(entry.getIntKey())),
-                    new IntArrayList(entry.getValue()));
+                int newInput = inputMap[entry.getIntKey()];
+                if (newInput != -1) { // only possible when the subset check was skipped
+                    newMap.put(newInput, new IntArrayList(entry.getValue()));
+                }
             }
             newOtherD.add(newMap);
         }
@@ -392,8 +439,7 @@ public class AutomatonLogicalOps {
         IntList dest = new IntArrayList();
         dest.add(1);
         for (int i = 0; i < A.getAlphabetSize(); i++) {
-            List<Integer> list = A.richAlphabet.decode(i);
-            if (list.get(n) != 0) {
+            if (A.richAlphabet.digit(i, n) != 0) {
                 M.fa.getT().setNfaDTransition(0, i, new IntArrayList(dest));
             }
             M.fa.getT().setNfaDTransition(1, i, new IntArrayList(dest));
@@ -442,7 +488,7 @@ public class AutomatonLogicalOps {
             }
         }
         for (int q = 0; q < fa.getQ(); q++) {
-            fa.getT().getEntriesNfaD(q).removeIf(entry -> !entry.getValue().isEmpty()
+            fa.getT().getNfaState(q).int2ObjectEntrySet().removeIf(entry -> !entry.getValue().isEmpty()
                 && statesToRemove.contains(entry.getValue().getInt(0)));
         }
     }
@@ -698,10 +744,8 @@ public class AutomatonLogicalOps {
             // input alphabets and arities are assumed to be identical for the combine method
             first.randomLabel();
             next.setLabel(first.getLabel());
-            // crossProduct requires both automata to be totalized, otherwise it has no idea which cartesian states to transition to
-            first.fa.totalize();
-            next.fa.totalize();
-            Automaton product = ProductStrategies.crossProduct(first, next, Prover.COMBINE);
+            // missing transitions go to a virtual sink, so neither input is totalized
+            Automaton product = ProductStrategies.crossProductWithSink(first, next, Prover.COMBINE);
             product.combineIndex = first.combineIndex + 1;
             product.combineOutputs = first.combineOutputs;
             first = product;
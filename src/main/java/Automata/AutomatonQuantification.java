@@ -1,15 +1,28 @@
 package Automata;
 
+import Automata.FA.AntichainInclusion;
+import Automata.FA.DeterminizationStrategies;
+import Automata.FA.FA;
+import Automata.FA.ProductStrategies;
+import Automata.FA.TransitionStorage;
+import Automata.FA.TransitionsCompactNFA;
+import Automata.Search.ProductBFS;
+import Automata.Symbolic.MTBDD;
+import Automata.Symbolic.SymbolicDFA;
+import Automata.Symbolic.TrackLayout;
 import Main.Logging;
 import Main.UtilityMethods;
 import Main.WalnutException;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.Int2ObjectRBTreeMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import net.automatalib.word.Word;
 
 import java.util.*;
 
+import static Main.Logging.DECIDED;
+import static Main.Logging.DECIDING;
 import static Main.Logging.QUANTIFIED;
 import static Main.Logging.QUANTIFYING;
 
@@ -35,7 +48,7 @@ public class AutomatonQuantification {
    * @param labelsToQuantify must contain at least one element, and must be a subset of this label.
    */
   public static void quantify(Automaton A, Set<String> labelsToQuantify) {
-      quantifyHelper(A, labelsToQuantify);
+      if (quantifyHelper(A, labelsToQuantify)) return;
       if (A.fa.isTRUE_FALSE_AUTOMATON()) return;
 
       Boolean isMsd = NumberSystem.determineMsd(A.getNS());
@@ -46,9 +59,12 @@ public class AutomatonQuantification {
           AutomatonLogicalOps.fixTrailingZerosProblem(A);
   }
 
-  private static void quantifyHelper(Automaton A, Set<String> labelsToQuantify) {
+  /**
+   * @return whether leading or trailing zeros have already been fixed
+   */
+  private static boolean quantifyHelper(Automaton A, Set<String> labelsToQuantify) {
       if (labelsToQuantify.isEmpty() || A.getLabel() == null || A.getLabel().isEmpty()) {
-          return;
+          return false;
       }
 
     validateLabels(A, labelsToQuantify);
@@ -61,50 +77,243 @@ public class AutomatonQuantification {
           A.fa.setTRUE_AUTOMATON(!A.isEmpty());
           A.fa.setTRUE_FALSE_AUTOMATON(true);
           A.clear();
-          return;
+          return true;
       }
 
-      List<Integer> listOfInputsToQuantify = new ArrayList<>(labelsToQuantify.size());
-      //extract the list of indices of inputs we would like to quantify
-      for (String l : labelsToQuantify)
-          listOfInputsToQuantify.add(A.getLabel().indexOf(l));
-      List<List<Integer>> allInputs = new ArrayList<>(A.getAlphabetSize());
-      for (int i = 0; i < A.getAlphabetSize(); i++)
-          allInputs.add(A.richAlphabet.decode(i));
-      //now we remove those indices in listOfInputsToQuantify from A,T,label, and allInputs
-      UtilityMethods.removeIndices(A.richAlphabet.getA(), listOfInputsToQuantify);
-      A.richAlphabet.setEncoder(null);
-      A.determineAlphabetSize();
-      UtilityMethods.removeIndices(A.getNS(), listOfInputsToQuantify);
-      UtilityMethods.removeIndices(A.getLabel(), listOfInputsToQuantify);
-      for (List<Integer> i : allInputs)
-          UtilityMethods.removeIndices(i, listOfInputsToQuantify);
-      //example: permutation[1] = 7 means that encoded old input 1 becomes encoded new input 7
-      List<Integer> permutation = new ArrayList<>(allInputs.size());
-      for (List<Integer> i : allInputs)
-          permutation.add(A.richAlphabet.encode(i));
+      // the unfused path determinizes the projection only if it is nondeterministic, and fixes leading zeros with
+      // a second determinization; both keep their automaton index, so that [strategy] and [export] still apply
+      int[] permutation = projectionMap(A, labelsToQuantify);
+      int projections = projectsDeterministically(A.fa, permutation) ? 0 : 1;
+
+      TrackLayout layout = SymbolicDFA.autoLayout(A.richAlphabet.getA(), A.getAlphabetSize());
+      if (layout != null && DeterminizationStrategies.nextIsPlainSC(projections)) {
+          // project and determinize with MTBDD-labelled transitions, enumerating only the smaller alphabet
+          int[] tracks = new int[labelsToQuantify.size()];
+          int i = 0;
+          for (String l : labelsToQuantify) {
+              tracks[i++] = A.getLabel().indexOf(l);
+          }
+          SymbolicDFA projected = SymbolicDFA.fromFA(A.fa, IntSet.of(A.fa.getQ0()), layout, new MTBDD())
+              .exists(tracks).minimize();
+          DeterminizationStrategies.skipDeterminizations(projections);
+          removeInputs(A, labelsToQuantify);
+          FA result = projected.toFA();
+          A.fa.setFields(result.getQ(), result.getO(), result.getT());
+          A.fa.setQ0(result.getQ0());
+          A.fa.setCanonized(false);
+          long timeAfter = System.currentTimeMillis();
+          Logging.logMessage(QUANTIFIED + " symbolically:" + A.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+          return false;
+      }
+
+      removeInputs(A, labelsToQuantify);
+      Boolean isMsd = NumberSystem.determineMsd(A.getNS());
+      int determinizations = projections + (Boolean.TRUE.equals(isMsd) ? 1 : 0);
+
+      if (DeterminizationStrategies.nextIsPlainSC(determinizations)) {
+          // project and determinize in one pass, fixing leading or trailing zeros on the way
+          int zero = isMsd == null ? -1 : A.richAlphabet.determineZero();
+          Logging.indent();
+          DeterminizationStrategies.determinizeProjected(A, permutation,
+              Boolean.TRUE.equals(isMsd) ? zero : -1, Boolean.FALSE.equals(isMsd) ? zero : -1, determinizations);
+          A.fa.justMinimize();
+          Logging.dedent();
+          long timeAfter = System.currentTimeMillis();
+          Logging.logMessage(QUANTIFIED + ":" + A.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+          return true;
+      }
 
       int Q = A.getFa().getQ();
-      List<Int2ObjectRBTreeMap<IntList>> newD = new ArrayList<>(Q);
+      TransitionsCompactNFA.Builder newD = new TransitionsCompactNFA.Builder(Q);
       for (int q = 0; q < Q; q++) {
-          Int2ObjectRBTreeMap<IntList> newMemDTransitionFunction = new Int2ObjectRBTreeMap<>();
-          newD.add(newMemDTransitionFunction);
+          newD.startState();
           for (Int2ObjectMap.Entry<IntList> transition : A.getFa().getT().getEntriesNfaD(q)) {
-              int mappedKey = permutation.get(transition.getIntKey());
-              IntList existingTransitions = newMemDTransitionFunction.get(mappedKey);
-              if (existingTransitions != null) {
-                  addAllWithoutRepetition(existingTransitions, transition.getValue());
-              } else {
-                  newMemDTransitionFunction.put(mappedKey, new IntArrayList(transition.getValue()));
-              }
+              // the builder merges transitions that now share an input, dropping repeated destinations
+              newD.addTransitions(permutation[transition.getIntKey()], transition.getValue());
           }
       }
-      A.fa.setNfaTransitions(newD);
+      A.fa.setT(newD.build());
       Logging.indent();
       A.determinizeAndMinimize();
       Logging.dedent();
       long timeAfter = System.currentTimeMillis();
       Logging.logMessage(QUANTIFIED + ":" + A.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+      return false;
+  }
+
+  /**
+   * Remove the inputs with the given labels from A's alphabet, number systems and labels, leaving its transitions
+   * as they are.
+   *
+   * @return the new encoded input of each old encoded input
+   */
+  private static int[] removeInputs(Automaton A, Set<String> labelsToQuantify) {
+      int[] permutation = projectionMap(A, labelsToQuantify);
+      List<Integer> listOfInputsToQuantify = inputsToQuantify(A, labelsToQuantify);
+      //now we remove those indices in listOfInputsToQuantify from A,T, and label
+      UtilityMethods.removeIndices(A.richAlphabet.getA(), listOfInputsToQuantify);
+      A.richAlphabet.setEncoder(null);
+      A.determineAlphabetSize();
+      UtilityMethods.removeIndices(A.getNS(), listOfInputsToQuantify);
+      UtilityMethods.removeIndices(A.getLabel(), listOfInputsToQuantify);
+      return permutation;
+  }
+
+  /**
+   * @return the encoded input of each encoded input of A once the inputs with the given labels are removed
+   */
+  private static int[] projectionMap(Automaton A, Set<String> labelsToQuantify) {
+      List<Integer> listOfInputsToQuantify = inputsToQuantify(A, labelsToQuantify);
+      //example: permutation[1] = 7 means that encoded old input 1 becomes encoded new input 7
+      int[] keptInputs = new int[A.richAlphabet.getA().size() - labelsToQuantify.size()];
+      for (int i = 0, j = 0; i < A.richAlphabet.getA().size(); i++) {
+          if (!listOfInputsToQuantify.contains(i)) {
+              keptInputs[j++] = i;
+          }
+      }
+      return A.richAlphabet.projectionMap(keptInputs);
+  }
+
+  private static List<Integer> inputsToQuantify(Automaton A, Set<String> labelsToQuantify) {
+      List<Integer> listOfInputsToQuantify = new ArrayList<>(labelsToQuantify.size());
+      //extract the list of indices of inputs we would like to quantify
+      for (String l : labelsToQuantify)
+          listOfInputsToQuantify.add(A.getLabel().indexOf(l));
+      return listOfInputsToQuantify;
+  }
+
+  /**
+   * Whether each state of fa has at most one destination for each input once inputs are mapped through symbolMap,
+   * in which case the projection needs no determinization.
+   */
+  private static boolean projectsDeterministically(FA fa, int[] symbolMap) {
+      int symbols = 0;
+      for (int s : symbolMap) {
+          symbols = Math.max(symbols, s + 1);
+      }
+      int[] dest = new int[symbols];
+      Arrays.fill(dest, -1);
+      IntArrayList seen = new IntArrayList();
+      boolean[] deterministic = {true};
+      for (int q = 0; q < fa.getQ() && deterministic[0]; q++) {
+          fa.getT().forEachTransition(q, (in, p) -> {
+              int s = symbolMap[in];
+              if (dest[s] == -1) {
+                  dest[s] = p;
+                  seen.add(s);
+              } else if (dest[s] != p) {
+                  deterministic[0] = false;
+              }
+          });
+          for (int k = 0; k < seen.size(); k++) {
+              dest[seen.getInt(k)] = -1;
+          }
+          seen.clear();
+      }
+      return deterministic[0];
+  }
+
+  /**
+   * Decide the closed formula Q1 x Q2 y B, where y are the inner labels, x are the outer labels, together they are
+   * all the labels of B, and Q1, Q2 are E or A. Instead of determinizing the projection of B (or of ~B) onto x, this checks it against the
+   * valid representations with AntichainInclusion, which stops at the first counterexample:
+   * E E holds iff B is non-empty, A E iff every valid x is in the projection of B, E A iff some valid x is not
+   * in the projection of ~B, and A A iff no valid x is.
+   *
+   * @return the truth value, or null if the formula isn't of this shape, or if the determinizations it replaces,
+   * or any later one, were given a strategy or an export
+   */
+  public static Boolean decideNested(Automaton B, Set<String> innerLabels, Set<String> outerLabels,
+                                     boolean innerUniversal, boolean outerUniversal) {
+      if (B.fa.isTRUE_FALSE_AUTOMATON() || B.getLabel() == null || innerLabels.isEmpty() || outerLabels.isEmpty()
+          || innerLabels.size() + outerLabels.size() != B.getLabel().size()
+          || !B.getLabel().containsAll(innerLabels) || !B.getLabel().containsAll(outerLabels)
+          || !DeterminizationStrategies.restArePlainSC()) {
+          return null;
+      }
+      long timeBefore = System.currentTimeMillis();
+      Logging.logMessage(DECIDING + ":" + B.fa.getQ() + " states");
+      DeterminizationStrategies.skipDeterminization();
+      boolean result;
+      if (!innerUniversal && !outerUniversal) {
+          result = !B.isEmpty();
+      } else {
+          Automaton source = innerUniversal ? AutomatonLogicalOps.not(B.asDFA()) : B;
+          Automaton P = source.clone();
+          int[] symbolMap = removeInputs(P, innerLabels);
+          Boolean isMsd = NumberSystem.determineMsd(P.getNS());
+          int zero = isMsd == null ? -1 : P.richAlphabet.determineZero();
+          int leadingZero = Boolean.TRUE.equals(isMsd) ? zero : -1;
+          int trailingZero = Boolean.FALSE.equals(isMsd) ? zero : -1;
+          FA V = validRepresentations(P).fa;
+          if (!outerUniversal) {
+              result = !AntichainInclusion.includes(V, source.fa, symbolMap, leadingZero, trailingZero);
+          } else if (innerUniversal) {
+              result = !AntichainInclusion.intersects(V, source.fa, symbolMap, leadingZero, trailingZero);
+          } else {
+              result = AntichainInclusion.includes(V, source.fa, symbolMap, leadingZero, trailingZero);
+          }
+      }
+      long timeAfter = System.currentTimeMillis();
+      Logging.logMessage(DECIDED + ":" + result + " - " + (timeAfter - timeBefore) + "ms");
+      return result;
+  }
+
+  /**
+   * Decide E x (A1 & ... & Ak), where x are all the labels of the Ai, by searching their product on the fly:
+   * the search stops at the first tuple of states that all accept, and the shortest word reaching it is logged
+   * as a witness. Nothing is built or minimized. Used with the earlyExistTermination metacommand.
+   *
+   * @return the truth value, or null if the formula has free variables or the Ai aren't all labelled DFAs
+   */
+  public static Boolean existsInProduct(List<Automaton> components, Set<String> labelsToQuantify) {
+      Set<String> labels = new HashSet<>();
+      for (Automaton A : components) {
+          if (A.fa.isTRUE_FALSE_AUTOMATON() || A.getLabel() == null
+              || A.getLabel().size() != A.richAlphabet.getA().size() || !A.fa.getT().isDeterministic()) {
+              return null;
+          }
+          labels.addAll(A.getLabel());
+      }
+      if (components.size() < 2 || !labels.equals(labelsToQuantify)) {
+          return null;
+      }
+      long timeBefore = System.currentTimeMillis();
+      Logging.logMessage(DECIDING + " on the fly:" + components.size() + " automata");
+      Automaton joint = new Automaton();
+      int[][] jointInputs = ProductStrategies.jointInputs(components, joint);
+      FA[] dfas = new FA[components.size()];
+      for (int i = 0; i < dfas.length; i++) {
+          dfas[i] = components.get(i).fa;
+      }
+      Word<Integer> witness = ProductBFS.shortestWitnessWordAllAccepting(dfas, jointInputs);
+      if (witness != null) {
+          StringBuilder sb = new StringBuilder("witness for " + joint.getLabel() + ":");
+          for (int symbol : witness) {
+              sb.append(joint.richAlphabet.decode(symbol));
+          }
+          Logging.logAndPrint(sb.toString());
+      }
+      long timeAfter = System.currentTimeMillis();
+      Logging.logMessage(DECIDED + ":" + (witness != null) + " - " + (timeAfter - timeBefore) + "ms");
+      return witness != null;
+  }
+
+  /**
+   * The automaton that accepts every valid representation over A's alphabet.
+   */
+  private static Automaton validRepresentations(Automaton A) {
+      Automaton V = A.clone();
+      int alphabetSize = A.getAlphabetSize();
+      TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, 1);
+      builder.startState();
+      for (int in = 0; in < alphabetSize; in++) {
+          builder.addTransition(in, 0);
+      }
+      V.fa.setFields(1, IntArrayList.wrap(new int[]{1}), builder.build());
+      V.fa.setQ0(0);
+      V.applyAllRepresentations();
+      return V;
   }
 
   static void validateLabels(Automaton A, Collection<String> labelsToQuantify) {
@@ -114,13 +323,4 @@ public class AutomatonQuantification {
         }
     }
   }
-
-  /**
-   * add elements of R that do not exist in L to L.
-   * Also: keep order of previous elements of L and new elements (w.r.t. R).
-   */
-  private static <T> void addAllWithoutRepetition(List<T> L, List<T> R) {
-    if (R == null || R.isEmpty()) return;
-    R.stream().filter(x -> !L.contains(x)).forEach(L::add);
-  }
 }
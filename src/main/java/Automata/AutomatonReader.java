@@ -65,11 +65,10 @@ public class AutomatonReader {
                 } else if (ParseMethods.parseTransition(line, input, dest)) {
                     validateTransition(A, address, currentState, lineNumber, input);
                     setOfDestinationStates.addAll(dest);
-                    List<List<Integer>> inputs = A.richAlphabet.expandWildcard(input);
-                    for (List<Integer> i : inputs) {
+                    IntList inputs = A.richAlphabet.expandWildcardEncoded(input);
+                    for (int i : inputs) {
                         // usually this is DFA, so to save memory, we pre-size to be size 1
-                        currentStateTransitions.computeIfAbsent(
-                            A.richAlphabet.encode(i), (x -> new IntArrayList(1))).addAll(dest);
+                        currentStateTransitions.computeIfAbsent(i, (x -> new IntArrayList(1))).addAll(dest);
                     }
                     input = new ArrayList<>();
                     dest = new IntArrayList();
@@ -247,10 +246,10 @@ public class AutomatonReader {
                             + lineNumber + " of file " + address);
                     }
                     setOfDestinationStates.addAll(dest);
-                    List<List<Integer>> inputs = transducer.richAlphabet.expandWildcard(input);
-                    for (List<Integer> i : inputs) {
-                        currentStateTransitions.put(transducer.richAlphabet.encode(i), dest);
-                        currentStateTransitionOutputs.put(transducer.richAlphabet.encode(i), output.get(0));
+                    IntList inputs = transducer.richAlphabet.expandWildcardEncoded(input);
+                    for (int i : inputs) {
+                        currentStateTransitions.put(i, dest);
+                        currentStateTransitionOutputs.put(i, output.get(0));
                     }
                     input = new ArrayList<>();
                     dest = new IntArrayList();
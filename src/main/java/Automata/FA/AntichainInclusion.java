@@ -0,0 +1,183 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Logging;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Inclusion and intersection tests of an FA against the existential projection of another FA,
+ * without determinizing the projection. Both stop at the first counterexample.
+ * The FA v must be deterministic. The projection is read through a ProjectedNFA; see there for symbolMap and the
+ * zero arguments.
+ */
+public final class AntichainInclusion {
+  private static final int[] EMPTY = new int[0];
+
+  private AntichainInclusion() {
+  }
+
+  /**
+   * Whether every word accepted by v is accepted by the projection of n.
+   * <p>
+   * This explores pairs (state of v, set of states of the projection) reached by the same word. A pair whose set
+   * contains a set already seen with the same state of v is skipped: every word that fails from it also fails
+   * from the smaller set. So only an antichain of minimal sets is kept per state of v.
+   */
+  public static boolean includes(FA v, FA n, int[] symbolMap, int leadingZero, int trailingZero) {
+    ProjectedNFA left = new ProjectedNFA(v, identity(v.getAlphabetSize()), -1, -1);
+    ProjectedNFA right = new ProjectedNFA(n, symbolMap, leadingZero, trailingZero);
+    SuccessorBuckets successors = new SuccessorBuckets(v.getAlphabetSize());
+    Transitions.TransitionConsumer add = successors::add;
+    List<List<int[]>> antichains = new ArrayList<>(left.Q);
+    for (int q = 0; q < left.Q; q++) {
+      antichains.add(new ArrayList<>());
+    }
+
+    ArrayDeque<Pair> queue = new ArrayDeque<>();
+    for (int p : left.initialStates()) {
+      if (addMinimal(antichains.get(p), right.initialStates())) {
+        queue.add(new Pair(p, right.initialStates()));
+      }
+    }
+    long explored = 0;
+    while (!queue.isEmpty()) {
+      Pair pair = queue.poll();
+      explored++;
+      if (left.isAccepting(pair.state) && !acceptsSome(right, pair.states)) {
+        logExplored("counterexample found", explored);
+        return false;
+      }
+      for (int q : pair.states) {
+        right.forEachTransition(q, add);
+      }
+      left.forEachTransition(pair.state, (in, dest) -> {
+        int size = successors.sortedDistinct(in);
+        int[] states = size == 0 ? EMPTY : Arrays.copyOf(successors.bucket(in), size);
+        if (addMinimal(antichains.get(dest), states)) {
+          queue.add(new Pair(dest, states));
+        }
+      });
+      successors.clear();
+    }
+    logExplored("no counterexample", explored);
+    return true;
+  }
+
+  /**
+   * Whether some word is accepted by both v and the projection of n.
+   */
+  public static boolean intersects(FA v, FA n, int[] symbolMap, int leadingZero, int trailingZero) {
+    ProjectedNFA left = new ProjectedNFA(v, identity(v.getAlphabetSize()), -1, -1);
+    ProjectedNFA right = new ProjectedNFA(n, symbolMap, leadingZero, trailingZero);
+    // pairs are encoded as p * right.Q + q
+    LongOpenHashSet seen = new LongOpenHashSet();
+    LongArrayList queue = new LongArrayList();
+    for (int p : left.initialStates()) {
+      for (int q : right.initialStates()) {
+        long pair = (long) p * right.Q + q;
+        if (seen.add(pair)) {
+          queue.add(pair);
+        }
+      }
+    }
+    for (int i = 0; i < queue.size(); i++) {
+      long pair = queue.getLong(i);
+      int p = (int) (pair / right.Q), q = (int) (pair % right.Q);
+      if (left.isAccepting(p) && right.isAccepting(q)) {
+        logExplored("common word found", i + 1);
+        return true;
+      }
+      right.forEachTransition(q, (in, dest) -> {
+        int leftDest = v.getT().findDest(p, in);
+        if (leftDest != Transitions.NO_DEST && left.isLive(leftDest)) {
+          long next = (long) leftDest * right.Q + dest;
+          if (seen.add(next)) {
+            queue.add(next);
+          }
+        }
+      });
+    }
+    logExplored("no common word", queue.size());
+    return false;
+  }
+
+  private record Pair(int state, int[] states) {
+  }
+
+  private static int[] identity(int alphabetSize) {
+    int[] map = new int[alphabetSize];
+    Arrays.setAll(map, i -> i);
+    return map;
+  }
+
+  private static boolean acceptsSome(ProjectedNFA nfa, int[] states) {
+    for (int q : states) {
+      if (nfa.isAccepting(q)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Add states to the antichain unless it already holds a subset of it, dropping the supersets it replaces.
+   *
+   * @return whether states was added
+   */
+  private static boolean addMinimal(List<int[]> antichain, int[] states) {
+    for (int[] other : antichain) {
+      if (isSubset(other, states)) {
+        return false;
+      }
+    }
+    antichain.removeIf(other -> isSubset(states, other));
+    antichain.add(states);
+    return true;
+  }
+
+  /**
+   * Subset test for sorted arrays.
+   */
+  static boolean isSubset(int[] a, int[] b) {
+    if (a.length > b.length) {
+      return false;
+    }
+    int j = 0;
+    for (int x : a) {
+      while (j < b.length && b[j] < x) {
+        j++;
+      }
+      if (j == b.length || b[j] != x) {
+        return false;
+      }
+      j++;
+    }
+    return true;
+  }
+
+  private static void logExplored(String outcome, long explored) {
+    Logging.logMessage("  Antichain search: " + outcome + " after " + explored + " pairs");
+  }
+}
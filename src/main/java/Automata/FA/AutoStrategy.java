@@ -0,0 +1,159 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Automata.FA.DeterminizationStrategies.Strategy;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Arrays;
+
+/**
+ * Choice of determinization strategy for the AUTO strategy, from cheap statistics of the NFA:
+ * <ul>
+ *   <li>DFAOs, and NFAs whose SC finishes within a short sample, use SC.</li>
+ *   <li>Otherwise, if the sample already finds many more metastates than there are states, or bisimulation removes many states, the NFA is left to
+ *   the OTF strategies, which minimize as they go: CCLS, or CCL when simulation would be too expensive.
+ *   Brzozowski's variant is used when the reverse NFA is less nondeterministic than the NFA itself.</li>
+ *   <li>Otherwise SC is run with a budget of states, projected from the NFA size, and the OTF strategy takes over
+ *   if SC exceeds it.</li>
+ * </ul>
+ */
+final class AutoStrategy {
+  /**
+   * Metastates explored by SC before deciding.
+   */
+  static final int SAMPLE_METASTATES = 1000;
+  /**
+   * Metastates found by the sample per NFA state, above which SC is expected to blow up.
+   */
+  static final double GROWTH_LIMIT = 4.0;
+  /**
+   * Ratio of bisimulation-reduced states to states, below which the NFA is considered redundant.
+   */
+  static final double BISIMULATION_LIMIT = 0.5;
+  /**
+   * NFA size above which simulation is too expensive; see the strategy documentation.
+   */
+  static final int SIMULATION_LIMIT = 50_000;
+  static final int MIN_BUDGET = 100_000;
+  static final int BUDGET_PER_STATE = 64;
+
+  /**
+   * The chosen strategy. With SC, budget is the number of metastates after which SC gives way to fallback.
+   */
+  record Decision(Strategy strategy, int budget, Strategy fallback, String reason) {
+    @Override
+    public String toString() {
+      String result = strategy.name() + " (" + reason + ")";
+      if (budget < Integer.MAX_VALUE) {
+        result += ", switching to " + fallback.name() + " after " + budget + " states";
+      }
+      return result;
+    }
+  }
+
+  private AutoStrategy() {
+  }
+
+  /**
+   * @param unreducedQ - the number of states of the NFA before fa was reduced by bisimulation
+   */
+  static Decision decide(FA fa, IntSet initialState, int unreducedQ) {
+    if (fa.isFAO()) {
+      return new Decision(Strategy.SC, Integer.MAX_VALUE, null, "DFAO");
+    }
+    TransitionsCompactNFA nfa = fa.compactNfaTransitions();
+    Sample sample = sample(nfa, fa.getQ(), fa.getAlphabetSize(), initialState, SAMPLE_METASTATES);
+    if (sample.finished()) {
+      return new Decision(Strategy.SC, Integer.MAX_VALUE, null, "sample of SC finished");
+    }
+
+    long transitions = 0, rows = 0;
+    LongOpenHashSet reverseRows = new LongOpenHashSet();
+    for (int q = 0; q < fa.getQ(); q++) {
+      for (int r = nfa.getRowStart(q); r < nfa.getRowEnd(q); r++) {
+        rows++;
+        for (int j = nfa.getRunStart(r); j < nfa.getRunEnd(r); j++) {
+          transitions++;
+          reverseRows.add((long) nfa.getDest(j) * fa.getAlphabetSize() + nfa.getRunSymbol(r));
+        }
+      }
+    }
+    double nondeterminism = rows == 0 ? 1 : (double) transitions / rows;
+    double reverseNondeterminism = reverseRows.isEmpty() ? 1 : (double) transitions / reverseRows.size();
+    double growth = (double) sample.found() / Math.max(fa.getQ(), 1);
+    int reduced = fa.getQ();
+    double bisimulationRatio = (double) reduced / Math.max(unreducedQ, 1);
+
+    String reason = String.format(
+        "%d states, %d transitions, nondeterminism %.2f, reverse nondeterminism %.2f, sample growth %.2f, " +
+            "bisimulation ratio %.2f",
+        reduced, transitions, nondeterminism, reverseNondeterminism, growth, bisimulationRatio);
+    boolean brzozowski = reverseNondeterminism < nondeterminism;
+    Strategy otf = reduced <= SIMULATION_LIMIT
+        ? (brzozowski ? Strategy.BRZ_CCLS : Strategy.CCLS)
+        : (brzozowski ? Strategy.BRZ_CCL : Strategy.CCL);
+    if (growth >= GROWTH_LIMIT || bisimulationRatio < BISIMULATION_LIMIT) {
+      return new Decision(otf, Integer.MAX_VALUE, null, reason);
+    }
+    int budget = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_BUDGET, (long) BUDGET_PER_STATE * reduced));
+    return new Decision(Strategy.SC, budget, otf, reason);
+  }
+
+  /**
+   * Metastates explored and found by a partial run of SC.
+   */
+  record Sample(int explored, int found, boolean finished) {
+  }
+
+  /**
+   * Run SC without building transitions, exploring at most limit metastates.
+   */
+  static Sample sample(TransitionsCompactNFA nfa, int Q, int alphabetSize, IntSet initialState, int limit) {
+    MetastateArena metastates = new MetastateArena(Q);
+    int[] current = new int[Math.max(Q, 1)];
+    int[] initial = initialState.toIntArray();
+    Arrays.sort(initial);
+    metastates.intern(initial, initial.length);
+    SuccessorBuckets successors = new SuccessorBuckets(alphabetSize);
+    int currentState = 0;
+    while (currentState < metastates.size()) {
+      if (currentState == limit) {
+        return new Sample(currentState, metastates.size(), false);
+      }
+      int n = metastates.load(currentState, current);
+      for (int i = 0; i < n; i++) {
+        int q = current[i];
+        for (int r = nfa.getRowStart(q); r < nfa.getRowEnd(q); r++) {
+          for (int j = nfa.getRunStart(r); j < nfa.getRunEnd(r); j++) {
+            successors.add(nfa.getRunSymbol(r), nfa.getDest(j));
+          }
+        }
+      }
+      successors.sort();
+      for (int k = 0; k < successors.inputCount(); k++) {
+        int in = successors.input(k);
+        metastates.intern(successors.bucket(in), successors.sortedDistinct(in));
+      }
+      successors.clear();
+      currentState++;
+    }
+    return new Sample(currentState, metastates.size(), true);
+  }
+}
@@ -0,0 +1,155 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Logging;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+/**
+ * Forward and backward bisimulation reduction of an NFA before subset construction.
+ * <p>
+ * Forward-bisimilar states have the same output, and reach the same blocks on each input.
+ * Backward-bisimilar states have the same output, are both initial or both not, and are reached from the same blocks
+ * on each input.
+ * Either way, merging a block leaves the set of blocks reached by each word unchanged, so any output of a metastate
+ * that is computed from the outputs of its NFA states (SC's "any accepts", MSC's maximum) is unchanged too.
+ * Outputs are compared exactly, so DFAOs are supported.
+ */
+final class Bisimulation {
+  /**
+   * NFA states from which the reduction runs. Below this, subset construction is cheap anyway.
+   */
+  static final int THRESHOLD = 1000;
+
+  private Bisimulation() {
+  }
+
+  /**
+   * Reduce fa if it has at least THRESHOLD states.
+   * @return the initial states of the reduced NFA
+   */
+  static IntSet reduce(FA fa, IntSet initialState) {
+    if (fa.getQ() < THRESHOLD || fa.isTRUE_FALSE_AUTOMATON()) {
+      return initialState;
+    }
+    return reduceNow(fa, initialState);
+  }
+
+  /**
+   * Reduce fa by forward, then backward bisimulation.
+   * @return the initial states of the reduced NFA
+   */
+  static IntSet reduceNow(FA fa, IntSet initialState) {
+    long timeBefore = System.currentTimeMillis();
+    int oldQ = fa.getQ();
+    int n = oldQ;
+    TransitionsCompactNFA d = fa.compactNfaTransitions();
+    IntList O = fa.getO();
+    int q0 = fa.getQ0();
+    IntSet initialStates = initialState;
+
+    for (boolean forward : new boolean[]{true, false}) {
+      int[] block = new int[n];
+      int count = forward
+          ? SignatureRefinement.refine(n, d, initialPartition(n, O, null), block)
+          : SignatureRefinement.refine(n, d.reverse(), initialPartition(n, O, initialStates), block);
+      if (count == n) {
+        continue;
+      }
+      d = quotient(n, d, block, count);
+      IntList newO = new IntArrayList(new int[count]);
+      for (int q = 0; q < n; q++) {
+        newO.set(block[q], O.getInt(q));
+      }
+      O = newO;
+      IntSet newInitialStates = new IntOpenHashSet();
+      for (int q : initialStates) {
+        newInitialStates.add(block[q]);
+      }
+      initialStates = newInitialStates;
+      q0 = block[q0];
+      n = count;
+    }
+    if (n == oldQ) {
+      return initialState;
+    }
+
+    fa.setFields(n, O, d);
+    fa.setQ0(q0);
+    long timeAfter = System.currentTimeMillis();
+    Logging.logMessage("Bisimulation reduced NFA: " + oldQ + " -> " + n + " states - "
+        + (timeAfter - timeBefore) + "ms");
+    return initialStates;
+  }
+
+  /**
+   * Blocks of states with the same output and, if initialStates is given, the same initial-ness.
+   */
+  private static int[] initialPartition(int n, IntList O, IntSet initialStates) {
+    int[] initial = new int[n];
+    Long2IntOpenHashMap blocks = new Long2IntOpenHashMap();
+    for (int q = 0; q < n; q++) {
+      long key = 2L * O.getInt(q) + (initialStates != null && initialStates.contains(q) ? 1 : 0);
+      int b = blocks.getOrDefault(key, -1);
+      if (b < 0) {
+        b = blocks.size();
+        blocks.put(key, b);
+      }
+      initial[q] = b;
+    }
+    return initial;
+  }
+
+  /**
+   * Each block gets the union of the transitions of its states, to blocks.
+   */
+  private static TransitionsCompactNFA quotient(int n, TransitionsCompactNFA d, int[] block, int count) {
+    // group states by block with a counting sort
+    int[] memberStart = new int[count + 1];
+    for (int q = 0; q < n; q++) {
+      memberStart[block[q] + 1]++;
+    }
+    for (int b = 0; b < count; b++) {
+      memberStart[b + 1] += memberStart[b];
+    }
+    int[] next = new int[count];
+    System.arraycopy(memberStart, 0, next, 0, count);
+    int[] members = new int[n];
+    for (int q = 0; q < n; q++) {
+      members[next[block[q]]++] = q;
+    }
+
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(count);
+    for (int b = 0; b < count; b++) {
+      builder.startState();
+      for (int m = memberStart[b]; m < memberStart[b + 1]; m++) {
+        int q = members[m];
+        for (int r = d.getRowStart(q); r < d.getRowEnd(q); r++) {
+          for (int j = d.getRunStart(r); j < d.getRunEnd(r); j++) {
+            builder.addTransition(d.getRunSymbol(r), block[d.getDest(j)]);
+          }
+        }
+      }
+    }
+    return builder.build();
+  }
+}
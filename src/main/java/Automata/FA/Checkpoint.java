@@ -0,0 +1,415 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Logging;
+import Main.Session;
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Periodic checkpoints of a breadth-first construction (subset construction, DFA cross product), so that rerunning
+ * the same command resumes where the last run stopped.
+ * <p>
+ * These constructions number states in order of discovery and finish them in the same order, so their working
+ * state only grows at the end: the key of every state found (a metastate, or a pair of states), and the row (output
+ * and transitions) of every state finished. Both are journaled as variable-length ints to files in the session
+ * Checkpoints/ directory. A checkpoint forces the journals to disk, then atomically replaces a small header
+ * recording how much of each is valid. Files are named after a fingerprint of the input, and are removed when the
+ * construction finishes.
+ */
+public final class Checkpoint {
+  public static final long OFF = 0;
+  private static final int MAGIC = 0x57434B50; // "WCKP"
+  private static final int VERSION = 1;
+
+  private static long interval = OFF; // in ms
+
+  @FunctionalInterface
+  interface KeyConsumer {
+    void accept(int[] key, int n);
+  }
+
+  @FunctionalInterface
+  interface RowConsumer {
+    void accept(int output, int[] inputs, int[] dests, int n);
+  }
+
+  /**
+   * How much of each journal a checkpoint covers.
+   */
+  private record Header(long fingerprint, int keyCount, int rowCount, long keyBytes, long rowBytes) {
+  }
+
+  private final String name;
+  private final long fingerprint;
+  private final Path keyFile, rowFile, headerFile;
+  private final Header resumed; // null when starting afresh
+  private final VarIntOutput keys, rows;
+  private int keyCount, rowCount;
+  private boolean failed;
+  private long lastCheckpoint = System.currentTimeMillis();
+
+  // row being written
+  private int rowOutput;
+  private final IntList rowTransitions = new IntArrayList();
+
+  private Checkpoint(Path dir, String name, long fingerprint) throws IOException {
+    this.name = name;
+    this.fingerprint = fingerprint;
+    this.keyFile = dir.resolve(name + ".keys");
+    this.rowFile = dir.resolve(name + ".rows");
+    this.headerFile = dir.resolve(name + ".ckpt");
+    Header header = readHeader();
+    if (header == null) {
+      Files.deleteIfExists(keyFile);
+      Files.deleteIfExists(rowFile);
+    } else {
+      // anything written after the last checkpoint is discarded
+      truncate(keyFile, header.keyBytes);
+      truncate(rowFile, header.rowBytes);
+      keyCount = header.keyCount;
+      rowCount = header.rowCount;
+    }
+    this.resumed = header;
+    this.keys = new VarIntOutput(keyFile, header == null ? 0 : header.keyBytes);
+    this.rows = new VarIntOutput(rowFile, header == null ? 0 : header.rowBytes);
+  }
+
+  /**
+   * Checkpoint every interval ms; OFF disables checkpoints.
+   */
+  public static void setInterval(long interval) {
+    Checkpoint.interval = interval;
+  }
+
+  public static long getInterval() {
+    return interval;
+  }
+
+  /**
+   * Checkpoints for a construction of the given kind on an input with the given fingerprint, resuming from an
+   * earlier checkpoint if there is one.
+   *
+   * @return null if checkpoints are off
+   */
+  static Checkpoint open(String kind, long fingerprint) {
+    if (interval == OFF) {
+      return null;
+    }
+    Path dir = Path.of(Session.getAddressForCheckpoints());
+    String name = kind + "_" + Long.toHexString(fingerprint);
+    try {
+      Files.createDirectories(dir);
+      Checkpoint checkpoint = new Checkpoint(dir, name, fingerprint);
+      if (checkpoint.isResuming()) {
+        Logging.logAndPrint("Resuming " + name + " from checkpoint: " + checkpoint.rowCount + " of "
+            + checkpoint.keyCount + " states done");
+      }
+      return checkpoint;
+    } catch (IOException e) {
+      throw new WalnutException("Couldn't open checkpoint " + name + " in " + dir, e);
+    }
+  }
+
+  boolean isResuming() {
+    return resumed != null;
+  }
+
+  /**
+   * Feed the keys, then the rows, recorded by the last checkpoint.
+   */
+  void replay(KeyConsumer keyConsumer, RowConsumer rowConsumer) {
+    if (resumed == null) {
+      return;
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(keyFile.toFile())))) {
+      int[] key = new int[16];
+      for (int i = 0; i < resumed.keyCount; i++) {
+        int n = readVarInt(in);
+        if (key.length < n) {
+          key = new int[Math.max(n, 2 * key.length)];
+        }
+        int previous = 0;
+        for (int j = 0; j < n; j++) {
+          previous = key[j] = previous + zigzagDecode(readVarInt(in));
+        }
+        keyConsumer.accept(key, n);
+      }
+    } catch (IOException e) {
+      throw new WalnutException("Couldn't read checkpoint " + keyFile, e);
+    }
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(rowFile.toFile())))) {
+      int[] inputs = new int[16], dests = new int[16];
+      for (int i = 0; i < resumed.rowCount; i++) {
+        int output = zigzagDecode(readVarInt(in));
+        int n = readVarInt(in);
+        if (inputs.length < n) {
+          inputs = new int[Math.max(n, 2 * inputs.length)];
+          dests = new int[inputs.length];
+        }
+        int previous = 0;
+        for (int j = 0; j < n; j++) {
+          previous = inputs[j] = previous + zigzagDecode(readVarInt(in));
+          dests[j] = zigzagDecode(readVarInt(in));
+        }
+        rowConsumer.accept(output, inputs, dests, n);
+      }
+    } catch (IOException e) {
+      throw new WalnutException("Couldn't read checkpoint " + rowFile, e);
+    }
+  }
+
+  /**
+   * Record the key of a newly found state.
+   */
+  void addKey(int[] key, int n) {
+    if (failed) {
+      return;
+    }
+    try {
+      keys.writeVarInt(n);
+      int previous = 0;
+      for (int i = 0; i < n; i++) {
+        keys.writeVarInt(zigzagEncode(key[i] - previous));
+        previous = key[i];
+      }
+      keyCount++;
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  void startRow(int output) {
+    rowOutput = output;
+    rowTransitions.clear();
+  }
+
+  void addTransition(int in, int dest) {
+    rowTransitions.add(in);
+    rowTransitions.add(dest);
+  }
+
+  /**
+   * Record the row started by startRow; the states finished so far, and the keys found while finishing them, are
+   * then consistent, so this may write a checkpoint.
+   */
+  void endRow() {
+    if (failed) {
+      return;
+    }
+    try {
+      rows.writeVarInt(zigzagEncode(rowOutput));
+      rows.writeVarInt(rowTransitions.size() / 2);
+      int previous = 0;
+      for (int i = 0; i < rowTransitions.size(); i += 2) {
+        rows.writeVarInt(zigzagEncode(rowTransitions.getInt(i) - previous));
+        rows.writeVarInt(zigzagEncode(rowTransitions.getInt(i + 1)));
+        previous = rowTransitions.getInt(i);
+      }
+      rowCount++;
+      long now = System.currentTimeMillis();
+      if (now - lastCheckpoint >= interval) {
+        write();
+        lastCheckpoint = now;
+      }
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  /**
+   * The construction finished, or gave up: remove its files.
+   */
+  void discard() {
+    close();
+    try {
+      Files.deleteIfExists(headerFile);
+      Files.deleteIfExists(keyFile);
+      Files.deleteIfExists(rowFile);
+    } catch (IOException e) {
+      Logging.logMessage("  Couldn't remove checkpoint " + name + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Close the journals, keeping the last checkpoint for a later run.
+   */
+  void close() {
+    try {
+      keys.close();
+      rows.close();
+    } catch (IOException e) {
+      fail(e);
+    }
+  }
+
+  private void write() throws IOException {
+    // the header must not reach the disk before the journal bytes it records
+    keys.sync();
+    rows.sync();
+    Path temp = headerFile.resolveSibling(headerFile.getFileName() + ".tmp");
+    try (FileOutputStream file = new FileOutputStream(temp.toFile());
+         DataOutputStream out = new DataOutputStream(file)) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(fingerprint);
+      out.writeInt(keyCount);
+      out.writeInt(rowCount);
+      out.writeLong(keys.position);
+      out.writeLong(rows.position);
+      out.flush();
+      file.getFD().sync();
+    }
+    Files.move(temp, headerFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    Logging.logMessage("  Checkpoint: " + rowCount + " of " + keyCount + " states done - "
+        + (keys.position + rows.position) + " bytes");
+  }
+
+  private void fail(IOException e) {
+    failed = true;
+    Logging.logAndPrint("Checkpointing of " + name + " stopped: " + e.getMessage());
+  }
+
+  /**
+   * The last checkpoint, if it's for this input and its journals are intact.
+   */
+  private Header readHeader() throws IOException {
+    if (!Files.exists(headerFile)) {
+      return null;
+    }
+    try (DataInputStream in = new DataInputStream(new FileInputStream(headerFile.toFile()))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+      Header header = new Header(in.readLong(), in.readInt(), in.readInt(), in.readLong(), in.readLong());
+      if (header.fingerprint != fingerprint || !Files.exists(keyFile) || !Files.exists(rowFile)
+          || Files.size(keyFile) < header.keyBytes || Files.size(rowFile) < header.rowBytes) {
+        return null;
+      }
+      return header;
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
+  private static void truncate(Path file, long size) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size);
+    }
+  }
+
+  private static int zigzagEncode(int x) {
+    return (x << 1) ^ (x >> 31);
+  }
+
+  private static int zigzagDecode(int x) {
+    return (x >>> 1) ^ -(x & 1);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int result = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      result |= (b & 0x7F) << shift;
+      if (b < 0x80) {
+        return result;
+      }
+    }
+  }
+
+  /**
+   * Appends unsigned variable-length ints to a file, keeping track of its length.
+   */
+  private static final class VarIntOutput {
+    private final FileOutputStream file;
+    private final OutputStream out;
+    private long position;
+
+    VarIntOutput(Path file, long position) throws IOException {
+      this.file = new FileOutputStream(file.toFile(), true);
+      this.out = new BufferedOutputStream(this.file, 1 << 16);
+      this.position = position;
+    }
+
+    void writeVarInt(int x) throws IOException {
+      while ((x & ~0x7F) != 0) {
+        out.write((x & 0x7F) | 0x80);
+        x >>>= 7;
+        position++;
+      }
+      out.write(x);
+      position++;
+    }
+
+    /**
+     * Write out the buffer, and force it to the disk.
+     */
+    void sync() throws IOException {
+      out.flush();
+      file.getChannel().force(false);
+    }
+
+    void close() throws IOException {
+      out.close();
+    }
+  }
+
+  /**
+   * 64-bit FNV-1a hash of an input, which names its checkpoint.
+   */
+  static final class Fingerprint {
+    private long hash = 0xcbf29ce484222325L;
+
+    Fingerprint add(long x) {
+      for (int i = 0; i < 64; i += 8) {
+        hash = (hash ^ ((x >>> i) & 0xFF)) * 0x100000001b3L;
+      }
+      return this;
+    }
+
+    Fingerprint add(String s) {
+      return add(s.hashCode()).add(s.length());
+    }
+
+    /**
+     * States, outputs, initial state and transitions of fa.
+     */
+    Fingerprint add(FA fa) {
+      add(fa.getQ()).add(fa.getAlphabetSize()).add(fa.getQ0());
+      for (int q = 0; q < fa.getQ(); q++) {
+        add(fa.getO().getInt(q));
+        fa.getT().forEachTransition(q, (in, dest) -> add(in).add(dest));
+        add(-1); // end of row
+      }
+      return this;
+    }
+
+    long value() {
+      return hash;
+    }
+  }
+}
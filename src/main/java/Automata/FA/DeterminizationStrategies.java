@@ -1,6 +1,9 @@
 package Automata.FA;
 
 import Automata.Automaton;
+import Automata.Symbolic.MTBDD;
+import Automata.Symbolic.SymbolicDFA;
+import Automata.Symbolic.TrackLayout;
 import OTF.OTFDeterminization;
 import OTF.Registry.AntichainForestRegistry;
 import OTF.Registry.Registry;
@@ -10,8 +13,6 @@ import OTF.NFATrim;
 import OTF.Simulation.ParallelSimulation;
 import Main.*;
 import it.unimi.dsi.fastutil.ints.*;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import net.automatalib.alphabet.Alphabet;
 import net.automatalib.automaton.fsa.impl.CompactDFA;
 import net.automatalib.automaton.fsa.impl.CompactNFA;
@@ -21,7 +22,6 @@ import java.util.*;
 
 import static Main.Logging.DETERMINIZED;
 import static Main.Logging.DETERMINIZING;
-import static Main.UtilityMethods.MISSING_ELT;
 
 /**
  * Determinization logic, with support for alternative strategies of:
@@ -30,14 +30,19 @@ import static Main.UtilityMethods.MISSING_ELT;
  * This is useful for meta-commands like [export] and [strategy]
  */
 public class DeterminizationStrategies {
+  private static final String SC_CHECKPOINT = "sc";
 
   public enum Strategy {
     SC("SC", false, List.of("SC")),
+    PSC("Parallel-SC", false, List.of("PSC", "ParallelSC")),
+    MSC("Minimizing-SC", false, List.of("MSC", "MinimizingSC")),
     BRZ("Brzozowski", false, List.of("Brz")),
     CCLS("CCLS", true, List.of("CCLS")),
     BRZ_CCLS("Brzozowski-CCLS", true, List.of("BRZCCLS")),
     CCL("CCL", false, List.of("CCL")),
-    BRZ_CCL("Brzozowski-CCL", false, List.of( "BRZCCL"));
+    BRZ_CCL("Brzozowski-CCL", false, List.of( "BRZCCL")),
+    MTBDD("MTBDD", false, List.of("MTBDD", "BDD")),
+    AUTO("Auto", false, List.of("Auto"));
     private final String name;
     private final boolean doSimulation;
     private final List<String> aliases;
@@ -63,13 +68,20 @@ public class DeterminizationStrategies {
     }
 
     public boolean isOTFStrategy() {
-      return !this.equals(SC) && !this.equals(BRZ);
+      return !this.equals(SC) && !this.equals(PSC) && !this.equals(MSC) && !this.equals(BRZ) && !this.equals(MTBDD) && !this.equals(AUTO);
     }
 
     String outputName(int currentIdx) {
       return "[#" + currentIdx + ", strategy: " + this.name + "]";
     }
 
+    String outputName(int firstIdx, int count) {
+      if (count == 1) {
+        return outputName(firstIdx);
+      }
+      return "[#" + firstIdx + "-#" + (firstIdx + count - 1) + ", strategy: " + this.name + "]";
+    }
+
     Strategy removeBrzozowski() {
       return switch(this) {
         case BRZ -> SC;
@@ -82,7 +94,7 @@ public class DeterminizationStrategies {
 
     /**
      * Determinization strategies:
-     *   Subset Construction
+     *   Subset Construction, sequential, parallel or minimizing
      *   Brzozowski double-reversal
      *   OTF-CCL, OTF-CCLS
      *   Brzozowski + (OTF-CCL, OTF-CCLS)
@@ -112,16 +124,29 @@ public class DeterminizationStrategies {
             " " + strategy.outputName(automataIdx) + ": " + fa.getQ() + " states");
       }
 
-      if (strategy != Strategy.SC) {
+      if (strategy != Strategy.SC && strategy != Strategy.PSC && strategy != Strategy.MSC
+          && strategy != Strategy.AUTO) {
         if (fa.isFAO()) {
           throw new WalnutException("DFAOs are not supported for non-SC strategies.");
         }
       }
 
+      int unreducedQ = fa.getQ();
+      if (strategy == Strategy.SC || strategy == Strategy.PSC || strategy == Strategy.MSC) {
+        initialState = Bisimulation.reduce(fa, initialState);
+      } else if (strategy == Strategy.AUTO && !fa.isTRUE_FALSE_AUTOMATON()) {
+        // always reduce, since how much the reduction removes is one of the statistics AUTO decides by
+        initialState = Bisimulation.reduceNow(fa, initialState);
+      }
+
       switch (strategy) {
         case SC -> SC(fa, initialState);
+        case PSC -> ParallelSubsetConstruction.determinize(fa, initialState);
+        case MSC -> MinimizingSubsetConstruction.determinize(fa, initialState);
         case BRZ, BRZ_CCL, BRZ_CCLS -> Brz(fa, initialState, strategy);
         case CCL, CCLS -> OTF(fa, initialState, strategy.doSimulation);
+        case MTBDD -> symbolic(A, initialState);
+        case AUTO -> auto(fa, initialState, unreducedQ);
       }
 
       long timeAfter = System.currentTimeMillis();
@@ -130,6 +155,110 @@ public class DeterminizationStrategies {
           DETERMINIZED + ": " + fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
     }
 
+  /**
+   * Whether the next determinization would be plain SC, with nothing exported, so that it can be fused with the
+   * steps around it.
+   */
+  public static boolean nextIsPlainSC() {
+    return nextIsPlainSC(1);
+  }
+
+  /**
+   * Whether the next count determinizations would all be plain SC, with nothing exported.
+   */
+  public static boolean nextIsPlainSC(int count) {
+    if (!Logging.shouldPrintDetails()) {
+      return true;
+    }
+    MetaCommands mc = Prover.mainProver.metaCommands;
+    int automataIdx = mc.getAutomataIndex();
+    for (int i = automataIdx; i < automataIdx + count; i++) {
+      if (mc.getStrategy(i) != Strategy.SC || mc.getExportName(i) != null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Whether this and every later determinization would be plain SC, with nothing exported, so that steps can be
+   * skipped without changing what later [strategy] and [export] metacommands refer to.
+   */
+  public static boolean restArePlainSC() {
+    if (!Logging.shouldPrintDetails()) {
+      return true;
+    }
+    MetaCommands mc = Prover.mainProver.metaCommands;
+    return mc.isPlainSCFrom(mc.getAutomataIndex());
+  }
+
+  /**
+   * Account for a determinization that was found to be unnecessary, so that later [strategy] and [export]
+   * metacommands still refer to the same automata.
+   */
+  public static void skipDeterminization() {
+    skipDeterminizations(1);
+  }
+
+  public static void skipDeterminizations(int count) {
+    if (Logging.shouldPrintDetails()) {
+      for (int i = 0; i < count; i++) {
+        Prover.mainProver.metaCommands.incrementAutomataIndex();
+      }
+    }
+  }
+
+  /**
+   * Determinize the existential projection of A's transitions through symbolMap, in one pass of SC.
+   * A has already been given its projected alphabet. The pass stands for the given number of determinizations
+   * of the unfused path, which may be 0, and only call this when nextIsPlainSC(determinizations).
+   * See ProjectedSubsetConstruction for the zero arguments, which are -1 when not used.
+   */
+  public static void determinizeProjected(Automaton A, int[] symbolMap, int leadingZero, int trailingZero,
+                                          int determinizations) {
+    FA fa = A.getFa();
+    long timeBefore = System.currentTimeMillis();
+    if (Logging.shouldPrintDetails() && determinizations > 0) {
+      MetaCommands mc = Prover.mainProver.metaCommands;
+      int automataIdx = mc.incrementAutomataIndex();
+      for (int i = 1; i < determinizations; i++) {
+        mc.incrementAutomataIndex();
+      }
+      Logging.logMessage(DETERMINIZING +
+          " " + Strategy.SC.outputName(automataIdx, determinizations) + ": " + fa.getQ() + " states");
+    }
+
+    ProjectedSubsetConstruction.determinize(fa, symbolMap, leadingZero, trailingZero);
+
+    long timeAfter = System.currentTimeMillis();
+    Logging.logMessage(
+        DETERMINIZED + ": " + fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+  }
+
+  /**
+   * Let AutoStrategy choose the strategy, and switch from SC to its fallback if SC exceeds its budget.
+   * The decision is logged with the statistics behind it, so that it can be reproduced with [strategy].
+   * fa has already been reduced by bisimulation from unreducedQ states.
+   */
+  private static void auto(FA fa, IntSet initialState, int unreducedQ) {
+    AutoStrategy.Decision decision = AutoStrategy.decide(fa, initialState, unreducedQ);
+    Logging.logMessage("Auto strategy: " + decision);
+    Strategy strategy = decision.strategy();
+    if (strategy == Strategy.SC) {
+      if (SC(fa, initialState, decision.budget())) {
+        return;
+      }
+      strategy = decision.fallback();
+      Logging.logMessage("Auto strategy: SC exceeded " + decision.budget() + " states, switching to " + strategy.name());
+    }
+    Prover.usingOTF = true; // for the citation message
+    switch (strategy) {
+      case BRZ_CCL, BRZ_CCLS -> Brz(fa, initialState, strategy);
+      case CCL, CCLS -> OTF(fa, initialState, strategy.doSimulation);
+      default -> throw new WalnutException("Unexpected strategy:" + strategy.name);
+    }
+  }
+
   /**
    * Brzozowski's strategy for SC (or OTF).
    *
@@ -162,67 +291,142 @@ public class DeterminizationStrategies {
     Logging.logMessage(message + ": " + fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
   }
 
-  private static void SC(FA fa, IntSet initialState) {
-    long timeBefore = System.currentTimeMillis();
+  /**
+   * Subset construction, in breadth-first order.
+   * Metastates are interned in a MetastateArena; successors are gathered in SuccessorBuckets, which are reused for
+   * every row, so only new metastates are copied.
+   */
+  static void SC(FA fa, IntSet initialState) {
+    SC(fa, initialState, Integer.MAX_VALUE);
+  }
 
-    int stateCount = 0, currentState = 0;
-    Object2IntMap<IntSet> metastateToId = new Object2IntOpenHashMap<>();
-    metastateToId.defaultReturnValue(MISSING_ELT);
-    List<IntSet> metastateList = new ArrayList<>();
-    metastateList.add(initialState);
-    metastateToId.put(initialState, 0);
-    stateCount++;
+  /**
+   * Subset construction that gives up, leaving fa as it was, once it has found more than maxStates metastates.
+   *
+   * @return whether it finished
+   */
+  static boolean SC(FA fa, IntSet initialState, int maxStates) {
+    long timeBefore = System.currentTimeMillis();
 
     // precompute for efficiency
     int alphabetSize = fa.getAlphabetSize();
-    List<Int2ObjectRBTreeMap<IntList>> nfaD = fa.getT().getNfaD();
-
-    List<Int2IntMap> dfaD = new ArrayList<>(nfaD.size());
+    TransitionsCompactNFA nfa = fa.compactNfaTransitions();
+    IntList oldO = fa.getO();
+
+    MetastateArena metastates = new MetastateArena(fa.getQ());
+    int[] current = new int[Math.max(fa.getQ(), 1)];
+    int[] initial = initialState.toIntArray();
+    Arrays.sort(initial);
+
+    SuccessorBuckets successors = new SuccessorBuckets(alphabetSize);
+
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, fa.getQ());
+    IntList newO = new IntArrayList();
+    int currentState = 0;
+
+    Checkpoint checkpoint = Checkpoint.open(SC_CHECKPOINT,
+        new Checkpoint.Fingerprint().add(fa).add(initial.length).add(Arrays.hashCode(initial)).value());
+    if (checkpoint != null && checkpoint.isResuming()) {
+      checkpoint.replay(metastates::intern, (output, inputs, dests, n) -> {
+        newO.add(output);
+        builder.startState();
+        for (int k = 0; k < n; k++) {
+          builder.addTransition(inputs[k], dests[k]);
+        }
+      });
+      currentState = newO.size();
+    } else {
+      metastates.intern(initial, initial.length);
+      if (checkpoint != null) {
+        checkpoint.addKey(initial, initial.length);
+      }
+    }
 
-    while (currentState < stateCount) {
+    try {
+      while (currentState < metastates.size()) {
+        if (metastates.size() > maxStates) {
+          if (checkpoint != null) {
+            checkpoint.discard();
+          }
+          return false;
+        }
+        Budget.check("subset construction", metastates.size(), builder.getTransitionCount());
 
-      if (Logging.shouldPrintDetails()) {
-        int statesSoFar = currentState + 1;
-        long timeAfter = System.currentTimeMillis();
-        Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
-            "  Progress: Added " + statesSoFar + " states - "
-                + (stateCount - statesSoFar) + " states left in queue - "
-                + stateCount + " reachable states - " + (timeAfter - timeBefore) + "ms");
-      }
+        if (Logging.shouldPrintDetails()) {
+          int statesSoFar = currentState + 1;
+          long timeAfter = System.currentTimeMillis();
+          Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+              "  Progress: Added " + statesSoFar + " states - "
+                  + (metastates.size() - statesSoFar) + " states left in queue - "
+                  + metastates.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+        }
 
-      IntSet state = metastateList.get(currentState);
-      dfaD.add(new Int2IntOpenHashMap());
-      Int2IntMap currentStateMap = dfaD.get(currentState);
-      for (int in = 0; in != alphabetSize; ++in) {
-        IntOpenHashSet metastate = new IntOpenHashSet();
-        for (int q : state) {
-          IntList values = nfaD.get(q).get(in);
-          if (values != null) {
-            metastate.addAll(values);
+        int n = metastates.load(currentState, current);
+        boolean accepting = false;
+        for (int i = 0; i < n; i++) {
+          int q = current[i];
+          accepting |= oldO.getInt(q) != 0;
+          for (int r = nfa.getRowStart(q); r < nfa.getRowEnd(q); r++) {
+            for (int j = nfa.getRunStart(r); j < nfa.getRunEnd(r); j++) {
+              successors.add(nfa.getRunSymbol(r), nfa.getDest(j));
+            }
           }
         }
-        if (metastate.isEmpty()) {
-          continue;
+        newO.add(accepting ? 1 : 0);
+
+        builder.startState();
+        if (checkpoint != null) {
+          checkpoint.startRow(accepting ? 1 : 0);
         }
-        int new_dValue;
-        int key = metastateToId.getInt(metastate);
-        if (key != MISSING_ELT) {
-          new_dValue = key;
-        } else {
-          // TODO: BitSet may be a better choice, but it's not clear when NFA size is, say, >> 20000.
-          metastate.trim(); // reduce memory footprint of set before storing
-          metastateList.add(metastate);
-          metastateToId.put(metastate, stateCount);
-          new_dValue = stateCount++;
+        successors.sort();
+        for (int k = 0; k < successors.inputCount(); k++) {
+          int in = successors.input(k);
+          int size = successors.sortedDistinct(in);
+          int found = metastates.size();
+          int dest = metastates.intern(successors.bucket(in), size);
+          builder.addTransition(in, dest);
+          if (checkpoint != null) {
+            if (dest == found) {
+              checkpoint.addKey(successors.bucket(in), size);
+            }
+            checkpoint.addTransition(in, dest);
+          }
+        }
+        successors.clear();
+        if (checkpoint != null) {
+          checkpoint.endRow();
         }
-        currentStateMap.put(in, new_dValue);
+        currentState++;
+      }
+    } finally {
+      if (checkpoint != null) {
+        checkpoint.close();
       }
-      currentState++;
     }
-    fa.setQ(stateCount);
+    if (checkpoint != null) {
+      checkpoint.discard();
+    }
+    fa.setFields(metastates.size(), newO, builder.build());
     fa.setQ0(0);
-    fa.calculateNewStateOutput(metastateList);
-    fa.setDfaTransitions(dfaD);
+    return true;
+  }
+
+  /**
+   * Subset construction and minimization with MTBDD-labelled transitions over the input tracks.
+   * Falls back to SC when the alphabet isn't the full product of the tracks.
+   */
+  private static void symbolic(Automaton A, IntSet initialStates) {
+    FA fa = A.getFa();
+    TrackLayout layout = TrackLayout.of(A.richAlphabet.getA());
+    if (layout.getAlphabetSize() != fa.getAlphabetSize()) {
+      SC(fa, initialStates);
+      return;
+    }
+    SymbolicDFA dfa = SymbolicDFA.fromFA(fa, initialStates, layout, new MTBDD()).minimize();
+    FA result = dfa.toFA();
+    fa.setFields(result.getQ(), result.getO(), result.getT());
+    fa.setQ0(result.getQ0());
+    fa.setCanonized(false);
   }
 
   private static void OTF(FA fa, IntSet initialState, boolean doSimulation) {
@@ -285,6 +489,8 @@ public class DeterminizationStrategies {
                   + (timeAfter - timeBefore) + "ms");
         }
       }
+      int statesAdded = out.size() - stateBuffer.size();
+      Budget.check("OTF determinization", statesAdded, (long) statesAdded * numInputs);
       DeterminizeRecord<BitSet> curr = stack.pop();
       BitSet inState = curr.inputState();
       int outState = curr.outputAddress();
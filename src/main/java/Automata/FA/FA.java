@@ -97,6 +97,7 @@ public class FA implements Cloneable {
   public static void starStates(FA automaton, FA N) {
     // N is a clone of automaton.
     // We add a new state which will be our new initial state.
+    N.ensureNfaTransitions();
     N.q0 = N.Q++;
     N.addOutput(true);  // The newly added state is a final state.
     N.t.addMapToNfaD();
@@ -105,6 +106,7 @@ public class FA implements Cloneable {
 
   // NOTE: This will often create an NFA
   public static void concatStates(FA other, FA N, int originalQ) {
+      N.ensureNfaTransitions();
       // to access the other's states, just do q. To access the other's states in N, do originalQ + q.
       for (int q = 0; q < other.Q; q++) {
         N.O.add(other.O.getInt(q)); // add the output
@@ -157,36 +159,24 @@ public class FA implements Cloneable {
     }
     List<Int2ObjectRBTreeMap<IntList>> newD = new ArrayList<>(newQ);
     for (int q = 0; q < newQ; q++) {
-      newD.add(null);
+      newD.add(new Int2ObjectRBTreeMap<>());
     }
 
     for (int q = 0; q < Q; q++) {
       if (permutationMap.containsKey(q)) {
         newO.set(permutationMap.get(q), O.getInt(q));
-        newD.set(permutationMap.get(q), t.getNfaState(q));
+        Int2ObjectRBTreeMap<IntList> newRow = newD.get(permutationMap.get(q));
+        t.forEachTransition(q, (in, p) -> {
+          if (permutationMap.containsKey(p)) {
+            newRow.computeIfAbsent(in, k -> new IntArrayList(1)).add(permutationMap.get(p));
+          }
+        });
       }
     }
 
     Q = newQ;
     O = newO;
     setNfaTransitions(newD);
-
-    for (int q = 0; q < Q; q++) {
-      for (Int2ObjectMap.Entry<IntList> entry : this.t.getEntriesNfaD(q)) {
-        IntList newDestination = new IntArrayList();
-        for (int p : entry.getValue()) {
-          if (permutationMap.containsKey(p)) {
-            newDestination.add(permutationMap.get(p));
-          }
-        }
-
-        if (!newDestination.isEmpty()) {
-          this.t.setNfaDTransition(q, entry.getIntKey(), newDestination);
-        } else {
-          t.getNfaState(q).remove(entry.getIntKey());
-        }
-      }
-    }
     this.canonized = true;
   }
 
@@ -194,21 +184,18 @@ public class FA implements Cloneable {
   // we send Q[0] to Q[3] and Q[1] to Q[10]
   // Note this has a side effect of trimming the new states
   private Int2IntMap determinePermutationMap() {
-    Queue<Integer> stateQueue = new LinkedList<>();
-    stateQueue.add(q0);
+    IntArrayFIFOQueue stateQueue = new IntArrayFIFOQueue();
+    stateQueue.enqueue(q0);
     Int2IntMap permutationMap = new Int2IntOpenHashMap();
     permutationMap.put(q0, 0);
-    int i = 1;
     while (!stateQueue.isEmpty()) {
-      int q = stateQueue.poll();
-      for (Int2ObjectMap.Entry<IntList> entry : this.t.getEntriesNfaD(q)) {
-        for (int p : entry.getValue()) {
-          if (!permutationMap.containsKey(p)) {
-            permutationMap.put(p, i++);
-            stateQueue.add(p);
-          }
+      int q = stateQueue.dequeueInt();
+      t.forEachTransition(q, (in, p) -> {
+        if (!permutationMap.containsKey(p)) {
+          permutationMap.put(p, permutationMap.size());
+          stateQueue.enqueue(p);
         }
-      }
+      });
     }
     return permutationMap;
   }
@@ -222,6 +209,7 @@ public class FA implements Cloneable {
     //we first check if the automaton is totalized
     int sinkState = Q; // potential new dead state
     if (t.hasDfaTransitions()) {
+      ensureMutableDfaTransitions();
       if (!totalizeDfaStates(sinkState)) {
         addDfaSinkState(0, sinkState);
       }
@@ -235,6 +223,48 @@ public class FA implements Cloneable {
     logMessage(TOTALIZED + ":" + Q + " states - " + (timeAfter - timeBefore) + "ms");
   }
 
+  /**
+   * Complement a DFA: missing transitions go to a new sink, which is added only if needed, then outputs are flipped.
+   * Transitions are rebuilt in one pass, instead of totalizing in place.
+   */
+  public void complement() {
+    if (!t.hasDfaTransitions()) {
+      totalize();
+      flipOutput();
+      return;
+    }
+    int sinkState = Q;
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, Q + 1);
+    boolean[] usesSink = new boolean[1];
+    int[] next = new int[1];
+    for (int q = 0; q < Q; q++) {
+      builder.startState();
+      next[0] = 0;
+      t.forEachTransition(q, (in, dest) -> {
+        for (; next[0] < in; next[0]++) {
+          builder.addTransition(next[0], sinkState);
+          usesSink[0] = true;
+        }
+        builder.addTransition(in, dest);
+        next[0] = in + 1;
+      });
+      for (; next[0] < alphabetSize; next[0]++) {
+        builder.addTransition(next[0], sinkState);
+        usesSink[0] = true;
+      }
+    }
+    if (usesSink[0]) {
+      builder.startState();
+      for (int in = 0; in < alphabetSize; in++) {
+        builder.addTransition(in, sinkState);
+      }
+      O.add(0);
+      Q++;
+    }
+    t = builder.build();
+    flipOutput();
+  }
+
 
   /**
    * This method adds a dead state with an output one less than the minimum output number of the word automaton.
@@ -439,14 +469,8 @@ public class FA implements Cloneable {
     fa.q0 = this.q0;
     fa.alphabetSize = this.alphabetSize;
     fa.O = new IntArrayList(this.O);
-    fa.t = new TransitionsNFA();
+    fa.t = this.t.snapshot(); // copied lazily, on write
     fa.canonized = this.canonized;
-    for (int q = 0; q < fa.Q; q++) {
-      fa.t.addMapToNfaD();
-      for (Int2ObjectMap.Entry<IntList> entry : this.t.getEntriesNfaD(q)) {
-        fa.t.setNfaDTransition(q, entry.getIntKey(), new IntArrayList(entry.getValue()));
-      }
-    }
     fa.setTRUE_FALSE_AUTOMATON(this.isTRUE_FALSE_AUTOMATON());
     fa.setTRUE_AUTOMATON(this.isTRUE_AUTOMATON());
     return fa;
@@ -458,13 +482,16 @@ public class FA implements Cloneable {
    */
   public void permuteNfaD(int[] encodedInputPermutation) {
     ensureNfaTransitions();
+    List<Int2ObjectRBTreeMap<IntList>> permutedNfaD = new ArrayList<>(Q);
     for (int q = 0; q < Q; q++) {
-      Int2ObjectRBTreeMap<IntList> permutedNfaD = new Int2ObjectRBTreeMap<>();
+      Int2ObjectRBTreeMap<IntList> permutedRow = new Int2ObjectRBTreeMap<>();
       for (Int2ObjectMap.Entry<IntList> entry : t.getEntriesNfaD(q)) {
-        permutedNfaD.put(encodedInputPermutation[entry.getIntKey()], entry.getValue());
+        // the entries may be shared with a snapshot, so copy the destination lists
+        permutedRow.put(encodedInputPermutation[entry.getIntKey()], new IntArrayList(entry.getValue()));
       }
-      t.getNfaD().set(q, permutedNfaD);
+      permutedNfaD.add(permutedRow);
     }
+    t.setNfaD(permutedNfaD);
   }
 
   /**
@@ -550,6 +577,12 @@ public class FA implements Cloneable {
       setNfaTransitions(newD);
   }
 
+  public void setFields(int newStates, IntList newO, Transitions newT) {
+      Q = newStates;
+      O = newO;
+      t = newT;
+  }
+
   /**
    * Add new transition to nfaD. Note that this will overwrite previous transitions if it exists.
    */
@@ -578,9 +611,31 @@ public class FA implements Cloneable {
     logMessage(MINIMIZING + ": " + Q + " states.");
 
     this.convertNFAtoDFA();
-    ValmariDFA v = new ValmariDFA(this, Q);
-    v.minValmari(O);
-    v.replaceFields(this);
+    if (!ParallelMinimization.shouldRun(t.determineTransitionCount()) || !ParallelMinimization.minimize(this, false)) {
+      ValmariDFA v = new ValmariDFA(this, Q);
+      v.minValmari(O);
+      v.replaceFields(this);
+    }
+    this.canonized = false;
+
+    long timeAfter = System.currentTimeMillis();
+    logMessage(MINIMIZED + ":" + Q + " states - " + (timeAfter - timeBefore) + "ms.");
+  }
+
+  /**
+   * Minimize a DFAO in one pass, keeping its output values. Missing transitions are treated as going to a sink that
+   * outputs 0.
+   */
+  public void justMinimizeWithOutput() {
+    long timeBefore = System.currentTimeMillis();
+    logMessage(MINIMIZING + ": " + Q + " states.");
+
+    this.convertNFAtoDFA();
+    if (!ParallelMinimization.shouldRun(t.determineTransitionCount()) || !ParallelMinimization.minimize(this, true)) {
+      ValmariDFA v = new ValmariDFA(this, Q);
+      v.minValmariWithOutput(O);
+      v.replaceFields(this);
+    }
     this.canonized = false;
 
     long timeAfter = System.currentTimeMillis();
@@ -640,6 +695,15 @@ public class FA implements Cloneable {
           nfa.addState(isAccepting(i));
       }
       nfa.setInitial(this.q0, true);
+      if (t instanceof TransitionsCompactNFA compact) {
+        IntList dests = IntArrayList.wrap(compact.getDests());
+        for (int i = 0; i < this.Q; i++) {
+          for (int r = compact.getRowStart(i); r < compact.getRowEnd(i); r++) {
+            nfa.addTransitions(i, compact.getRunSymbol(r), dests.subList(compact.getRunStart(r), compact.getRunEnd(r)));
+          }
+        }
+        return nfa;
+      }
       for (int i = 0; i < this.Q; i++) {
         for (Int2ObjectMap.Entry<IntList> entry : t.getEntriesNfaD(i)) {
           nfa.addTransitions(i, entry.getIntKey(), entry.getValue());
@@ -704,37 +768,16 @@ public class FA implements Cloneable {
     if (!t.isDeterministic()) {
       throw new WalnutException("Unexpected NFA instead of DFA.");
     }
-    List<Int2IntMap> dfaD = new ArrayList<>(Q);
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, Q);
     for(int i=0;i<Q;i++) {
-      Set<Int2ObjectMap.Entry<IntList>> sourceEntrySet = t.getEntriesNfaD(i);
-      Int2IntMap iMap = new Int2IntOpenHashMap();
-      dfaD.add(iMap);
-      for(Int2ObjectMap.Entry<IntList> entry : sourceEntrySet) {
+      builder.startState();
+      for(Int2ObjectMap.Entry<IntList> entry : t.getEntriesNfaD(i)) {
         if (!entry.getValue().isEmpty()) {
-          iMap.put(entry.getIntKey(), entry.getValue().iterator().nextInt());
-        }
-      }
-    }
-    setDfaTransitions(dfaD);
-  }
-
-  /**
-   * Calculate new state output from metastates.
-   */
-  void calculateNewStateOutput(List<IntSet> metastates) {
-    IntList oldO = new IntArrayList(O);
-    this.initO(metastates.size());
-    for (IntSet metastate : metastates) {
-      // determine if metastate accepts
-      boolean flag = false;
-      for (int q : metastate) {
-        if (oldO.getInt(q) != 0) {
-          flag = true;
-          break;
+          builder.addTransition(entry.getIntKey(), entry.getValue().getInt(0));
         }
       }
-      this.addOutput(flag);
     }
+    t = builder.build();
   }
 
   /**
@@ -777,14 +820,38 @@ public class FA implements Cloneable {
   }
 
   /**
-   * Convert DFA storage to ordinary NFA storage before using mutating NFA operations.
+   * Convert DFA or compact storage to ordinary NFA storage before using mutating NFA operations.
    */
   public void ensureNfaTransitions() {
-    if (t.hasDfaTransitions()) {
+    if (!(t instanceof TransitionsNFA)) {
       setNfaTransitions(t.getNfaD());
     }
   }
 
+  /**
+   * Replace NFA storage with its compact immutable form, and return it.
+   */
+  public TransitionsCompactNFA compactNfaTransitions() {
+    TransitionsCompactNFA compact = TransitionsCompactNFA.from(t, Q);
+    t = compact;
+    return compact;
+  }
+
+  /**
+   * Convert packed or off-heap DFA storage to map-based DFA storage before using mutating DFA operations.
+   */
+  public void ensureMutableDfaTransitions() {
+    if (t.hasDfaTransitions() && !(t instanceof TransitionsDFA)) {
+      List<Int2IntMap> dfaD = new ArrayList<>(Q);
+      for (int q = 0; q < Q; q++) {
+        Int2IntMap row = new Int2IntOpenHashMap();
+        t.forEachTransition(q, row::put);
+        dfaD.add(row);
+      }
+      setDfaTransitions(dfaD);
+    }
+  }
+
   public Transitions getT() {
     return t;
   }
@@ -0,0 +1,80 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-thread pool of int arrays, so that algorithms run many times on small automata (e.g., minimization in
+ * predicates) reuse their scratch arrays instead of allocating them each time.
+ * Arrays are pooled by power-of-two length. Arrays longer than MAX_POOLED_LENGTH are allocated exactly and never kept,
+ * so that one large automaton doesn't pin its scratch memory for the rest of the session.
+ */
+final class IntArrayPool {
+  static final int MAX_POOLED_LENGTH = 1 << 16;
+  // free arrays per size class, a few of each
+  private static final int MAX_FREE_PER_CLASS = 16;
+  private static final ThreadLocal<IntArrayPool> POOL = ThreadLocal.withInitial(IntArrayPool::new);
+
+  private final List<List<int[]>> free = new ArrayList<>();
+
+  private IntArrayPool() {
+    for (int c = 0; (1 << c) <= MAX_POOLED_LENGTH; c++) {
+      free.add(new ArrayList<>());
+    }
+  }
+
+  static IntArrayPool get() {
+    return POOL.get();
+  }
+
+  /**
+   * @return an array of at least the given length, zero in [0, length)
+   */
+  int[] take(int length) {
+    if (length > MAX_POOLED_LENGTH) {
+      return new int[length];
+    }
+    List<int[]> arrays = free.get(sizeClass(length));
+    if (arrays.isEmpty()) {
+      return new int[1 << sizeClass(length)];
+    }
+    int[] array = arrays.remove(arrays.size() - 1);
+    Arrays.fill(array, 0, length, 0);
+    return array;
+  }
+
+  /**
+   * Return an array from take(). The caller must not use it afterwards. Null is ignored.
+   */
+  void give(int[] array) {
+    if (array == null || array.length > MAX_POOLED_LENGTH || Integer.bitCount(array.length) != 1) {
+      return;
+    }
+    List<int[]> arrays = free.get(sizeClass(array.length));
+    if (arrays.size() < MAX_FREE_PER_CLASS) {
+      arrays.add(array);
+    }
+  }
+
+  private static int sizeClass(int length) {
+    return length <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(length - 1);
+  }
+}
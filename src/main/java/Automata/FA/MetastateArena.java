@@ -0,0 +1,206 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.WalnutException;
+
+import java.util.Arrays;
+
+/**
+ * Interned metastates (sets of NFA states) for subset construction, numbered in order of insertion.
+ * Each metastate is stored in one of a few large int pages, either as a sorted run of states or, when that's
+ * smaller, as a bitset over all NFA states. The choice depends only on the size of the set, so equal sets
+ * always have equal encodings. Lookup goes through an open-addressing table keyed by a 64-bit hash.
+ */
+final class MetastateArena {
+  private static final int PAGE_SIZE = 1 << 22;
+  private static final int EMPTY = -1;
+
+  private final int bitsetWords;
+
+  private int[][] pages = new int[1][256];
+  private int page, pageUsed; // current page, and how much of it is used
+
+  // per metastate id
+  private long[] location = new long[64]; // page << 32 | offset
+  private int[] size = new int[64];
+  private long[] hash = new long[64];
+  private int count;
+
+  private int[] table = new int[128];
+
+  /**
+   * @param nfaStates - number of NFA states, which bounds the values stored
+   */
+  MetastateArena(int nfaStates) {
+    this.bitsetWords = (nfaStates + 31) >>> 5;
+    Arrays.fill(table, EMPTY);
+  }
+
+  int size() {
+    return count;
+  }
+
+  int size(int id) {
+    return size[id];
+  }
+
+  /**
+   * Id of the given set, adding it if it's new; a new set gets id size() - 1.
+   *
+   * @param states - sorted, distinct NFA states; only the first n are used
+   */
+  int intern(int[] states, int n) {
+    long h = hash(states, n);
+    int mask = table.length - 1;
+    int i = (int) (h ^ (h >>> 32)) & mask;
+    boolean bitset = isBitset(n);
+    while (table[i] != EMPTY) {
+      int id = table[i];
+      if (hash[id] == h && size[id] == n && contentEquals(id, states, n, bitset)) {
+        return id;
+      }
+      i = (i + 1) & mask;
+    }
+    int id = add(states, n, bitset, h);
+    table[i] = id;
+    if (count * 2 > table.length) {
+      rehash();
+    }
+    return id;
+  }
+
+  /**
+   * Write the states of a metastate to out, in increasing order, and return how many there are.
+   */
+  int load(int id, int[] out) {
+    int[] p = pages[(int) (location[id] >>> 32)];
+    int offset = (int) location[id];
+    int n = size[id];
+    if (!isBitset(n)) {
+      System.arraycopy(p, offset, out, 0, n);
+      return n;
+    }
+    int k = 0;
+    for (int w = 0; w < bitsetWords; w++) {
+      int word = p[offset + w];
+      while (word != 0) {
+        out[k++] = (w << 5) + Integer.numberOfTrailingZeros(word);
+        word &= word - 1;
+      }
+    }
+    return k;
+  }
+
+  private boolean isBitset(int n) {
+    return bitsetWords < n;
+  }
+
+  private int add(int[] states, int n, boolean bitset, long h) {
+    if (count == size.length) {
+      int newLength = count * 2;
+      if (newLength < 0) {
+        throw WalnutException.arrayOverflow("the number of metastates", count * 2L);
+      }
+      location = Arrays.copyOf(location, newLength);
+      size = Arrays.copyOf(size, newLength);
+      hash = Arrays.copyOf(hash, newLength);
+    }
+    int length = bitset ? bitsetWords : n;
+    int offset = reserve(length);
+    int[] p = pages[page];
+    if (bitset) {
+      for (int i = 0; i < n; i++) {
+        p[offset + (states[i] >>> 5)] |= 1 << states[i];
+      }
+    } else {
+      System.arraycopy(states, 0, p, offset, n);
+    }
+    location[count] = ((long) page << 32) | offset;
+    size[count] = n;
+    hash[count] = h;
+    return count++;
+  }
+
+  /**
+   * Offset of length free ints in the current page, which is grown or replaced as needed.
+   */
+  private int reserve(int length) {
+    int[] p = pages[page];
+    if (pageUsed + length > p.length) {
+      if (pages.length == 1 && pageUsed + length <= PAGE_SIZE) {
+        // the first page grows until it's full-sized, so that small determinizations stay small
+        pages[0] = Arrays.copyOf(p, Math.min(PAGE_SIZE, Math.max(2 * p.length, pageUsed + length)));
+      } else {
+        if (page + 1 == pages.length) {
+          pages = Arrays.copyOf(pages, pages.length + 1);
+        }
+        pages[++page] = new int[Math.max(PAGE_SIZE, length)];
+        pageUsed = 0;
+      }
+    }
+    int offset = pageUsed;
+    pageUsed += length;
+    return offset;
+  }
+
+  private boolean contentEquals(int id, int[] states, int n, boolean bitset) {
+    int[] p = pages[(int) (location[id] >>> 32)];
+    int offset = (int) location[id];
+    if (!bitset) {
+      return Arrays.equals(p, offset, offset + n, states, 0, n);
+    }
+    for (int i = 0; i < n; i++) {
+      if ((p[offset + (states[i] >>> 5)] & (1 << states[i])) == 0) {
+        return false;
+      }
+    }
+    return true; // same size, so no other bits are set
+  }
+
+  private void rehash() {
+    if (table.length > (1 << 29)) {
+      throw WalnutException.arrayOverflow("the metastate table", table.length * 2L);
+    }
+    table = new int[table.length * 2];
+    Arrays.fill(table, EMPTY);
+    int mask = table.length - 1;
+    for (int id = 0; id < count; id++) {
+      int i = (int) (hash[id] ^ (hash[id] >>> 32)) & mask;
+      while (table[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      table[i] = id;
+    }
+  }
+
+  static long hash(int[] states, int n) {
+    long h = n;
+    for (int i = 0; i < n; i++) {
+      h = (h + states[i]) * 0x9E3779B97F4A7C15L;
+      h ^= h >>> 29;
+    }
+    // finalizer from MurmurHash3
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB93FE2B5D4C3L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
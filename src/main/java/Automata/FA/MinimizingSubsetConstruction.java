@@ -0,0 +1,233 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import Main.Logging;
+import it.unimi.dsi.fastutil.ints.*;
+
+import java.util.Arrays;
+
+/**
+ * Subset construction that periodically minimizes the part of the DFA built so far, as the OTF strategies do, so that
+ * a redundant NFA never materializes its full subset automaton.
+ * <p>
+ * Metastates are expanded in breadth-first order, as in SC. A DFA state is finished once its row is built; the
+ * others are still to be expanded. Minimizing the partial DFA with each unfinished state kept in a block of its own
+ * only merges states that are equivalent in the full DFA, whatever the unfinished states turn out to be. Metastates
+ * then map to the merged states, so later rows point to them.
+ * <p>
+ * A metastate's output is the largest output of its NFA states, which for acceptors is whether any of them accepts,
+ * as in SC. Minimization separates states by output, so DFAOs are supported.
+ */
+final class MinimizingSubsetConstruction {
+  /**
+   * DFA states after which the first minimization happens; later ones happen when the DFA doubles.
+   */
+  static final int MIN_STEP = 4000;
+  private static final int UNFINISHED = -1;
+
+  private final int minStep;
+  private final TransitionsCompactNFA nfa;
+  private final IntList oldO;
+  private final MetastateArena metastates;
+  private final IntArrayList stateOf = new IntArrayList(); // DFA state of each metastate
+
+  // partial DFA: rows of finished states, in rowInputs and rowDests
+  private int stateCount;
+  private int[] rowOffset = new int[64];
+  private int[] rowSize = new int[64];
+  private final IntArrayList outputs = new IntArrayList();
+  private IntArrayList rowInputs = new IntArrayList(), rowDests = new IntArrayList();
+  private long nextMinimization;
+
+  private MinimizingSubsetConstruction(FA fa, int minStep) {
+    this.minStep = minStep;
+    this.nfa = fa.compactNfaTransitions();
+    this.oldO = fa.getO();
+    this.metastates = new MetastateArena(fa.getQ());
+    this.nextMinimization = minStep;
+  }
+
+  static void determinize(FA fa, IntSet initialState) {
+    determinize(fa, initialState, MIN_STEP);
+  }
+
+  /**
+   * @param minStep - DFA states after which the first minimization happens
+   */
+  static void determinize(FA fa, IntSet initialState, int minStep) {
+    new MinimizingSubsetConstruction(fa, minStep).run(fa, initialState);
+  }
+
+  private void run(FA fa, IntSet initialState) {
+    long timeBefore = System.currentTimeMillis();
+    int alphabetSize = fa.getAlphabetSize();
+    int[] current = new int[Math.max(fa.getQ(), 1)];
+    int[] initial = initialState.toIntArray();
+    Arrays.sort(initial);
+    metastates.intern(initial, initial.length);
+    stateOf.add(addState());
+    SuccessorBuckets successors = new SuccessorBuckets(alphabetSize);
+
+    int currentState = 0;
+    while (currentState < metastates.size()) {
+      Budget.check("minimizing subset construction", stateCount, rowInputs.size());
+      if (Logging.shouldPrintDetails()) {
+        int statesSoFar = currentState + 1;
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+            "  Progress: Expanded " + statesSoFar + " metastates - "
+                + (metastates.size() - statesSoFar) + " metastates left in queue - "
+                + stateCount + " DFA states - " + (timeAfter - timeBefore) + "ms");
+      }
+
+      int n = metastates.load(currentState, current);
+      // DFAO outputs may be negative, so start from a member's output rather than 0
+      int output = n == 0 ? 0 : oldO.getInt(current[0]);
+      for (int i = 0; i < n; i++) {
+        int q = current[i];
+        output = Math.max(output, oldO.getInt(q));
+        for (int r = nfa.getRowStart(q); r < nfa.getRowEnd(q); r++) {
+          for (int j = nfa.getRunStart(r); j < nfa.getRunEnd(r); j++) {
+            successors.add(nfa.getRunSymbol(r), nfa.getDest(j));
+          }
+        }
+      }
+
+      int state = stateOf.getInt(currentState);
+      outputs.set(state, output);
+      rowOffset[state] = rowInputs.size();
+      successors.sort();
+      for (int k = 0; k < successors.inputCount(); k++) {
+        int in = successors.input(k);
+        int size = successors.sortedDistinct(in);
+        int dest = metastates.intern(successors.bucket(in), size);
+        if (dest == stateOf.size()) {
+          stateOf.add(addState());
+        }
+        rowInputs.add(in);
+        rowDests.add(stateOf.getInt(dest));
+      }
+      rowSize[state] = successors.inputCount();
+      successors.clear();
+      currentState++;
+
+      if (stateCount >= nextMinimization && currentState < metastates.size()) {
+        int before = stateCount;
+        minimize();
+        nextMinimization = Math.max((long) stateCount + minStep, 2L * stateCount);
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage("  Progress: Periodic minimization: " + before + " -> " + stateCount + " states - "
+            + (timeAfter - timeBefore) + "ms");
+      }
+    }
+
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, stateCount);
+    for (int s = 0; s < stateCount; s++) {
+      builder.startState();
+      for (int i = rowOffset[s]; i < rowOffset[s] + rowSize[s]; i++) {
+        builder.addTransition(rowInputs.getInt(i), rowDests.getInt(i));
+      }
+    }
+    fa.setFields(stateCount, new IntArrayList(outputs), builder.build());
+    fa.setQ0(0);
+  }
+
+  private int addState() {
+    if (stateCount == rowOffset.length) {
+      rowOffset = Arrays.copyOf(rowOffset, 2 * stateCount);
+      rowSize = Arrays.copyOf(rowSize, 2 * stateCount);
+    }
+    rowOffset[stateCount] = UNFINISHED;
+    rowSize[stateCount] = 0;
+    outputs.add(0);
+    return stateCount++;
+  }
+
+  /**
+   * Merge equivalent finished states, renumbering states and rows.
+   */
+  private void minimize() {
+    int n = stateCount;
+    int[] rowStart = new int[n + 1];
+    for (int s = 0; s < n; s++) {
+      rowStart[s + 1] = rowStart[s] + rowSize[s];
+    }
+    int[] inputs = new int[rowStart[n]], dests = new int[rowStart[n]];
+    for (int s = 0; s < n; s++) {
+      if (rowOffset[s] != UNFINISHED) {
+        rowInputs.getElements(rowOffset[s], inputs, rowStart[s], rowSize[s]);
+        rowDests.getElements(rowOffset[s], dests, rowStart[s], rowSize[s]);
+      }
+    }
+    // finished states start out grouped by output; unfinished ones are kept apart
+    int[] initial = new int[n];
+    Int2IntMap outputBlock = new Int2IntOpenHashMap();
+    int blocks = 0;
+    for (int s = 0; s < n; s++) {
+      if (rowOffset[s] == UNFINISHED) {
+        initial[s] = blocks++;
+      } else {
+        int b = outputBlock.getOrDefault(outputs.getInt(s), -1);
+        if (b < 0) {
+          b = blocks++;
+          outputBlock.put(outputs.getInt(s), b);
+        }
+        initial[s] = b;
+      }
+    }
+    int[] block = new int[n];
+    int count = SignatureRefinement.refine(n, rowStart, inputs, dests, initial, block);
+    if (count == n) {
+      return;
+    }
+
+    // keep the row of the first state of each block
+    int[] newOffset = new int[count], newSize = new int[count];
+    IntArrayList newOutputs = new IntArrayList(count);
+    IntArrayList newInputs = new IntArrayList(), newDests = new IntArrayList();
+    for (int s = 0; s < n; s++) {
+      int b = block[s];
+      if (b < newOutputs.size()) {
+        continue;
+      }
+      newOutputs.add(outputs.getInt(s));
+      if (rowOffset[s] == UNFINISHED) {
+        newOffset[b] = UNFINISHED;
+      } else {
+        newOffset[b] = newInputs.size();
+        newSize[b] = rowSize[s];
+        for (int i = rowStart[s]; i < rowStart[s + 1]; i++) {
+          newInputs.add(inputs[i]);
+          newDests.add(block[dests[i]]);
+        }
+      }
+    }
+    for (int m = 0; m < stateOf.size(); m++) {
+      stateOf.set(m, block[stateOf.getInt(m)]);
+    }
+    stateCount = count;
+    rowOffset = Arrays.copyOf(newOffset, Math.max(count, 64));
+    rowSize = Arrays.copyOf(newSize, Math.max(count, 64));
+    outputs.clear();
+    outputs.addAll(newOutputs);
+    rowInputs = newInputs;
+    rowDests = newDests;
+  }
+}
@@ -0,0 +1,201 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import Main.Logging;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+import static Main.Logging.COMPUTED;
+
+/**
+ * Product of k DFAs in one breadth-first search, for a chain of conjunctions or disjunctions.
+ * A product state is a k-tuple of component states, stored flat and found by open addressing.
+ * <p>
+ * A component state that can't reach acceptance is pruned, as in ProductBFS. For a conjunction, a product state
+ * with such a component is never built. For a disjunction, such a component is moved to a non-accepting sink, as
+ * missing transitions are, and a product state with every component in the sink is never built.
+ */
+final class NaryProduct {
+  private static final int SINK = Transitions.NO_DEST;
+
+  private NaryProduct() {
+  }
+
+  /**
+   * Build the product into product, whose initial state is 0.
+   *
+   * @param inputs for each input of the product, the input read by each component, or null if the components
+   *               disagree on it
+   * @param and    whether this is a conjunction, rather than a disjunction
+   */
+  static void build(FA[] components, int[][] inputs, boolean and, FA product, long timeBefore) {
+    int k = components.length;
+    boolean[][] live = new boolean[k][];
+    int[] tuple = new int[k];
+    int expectedStates = 1;
+    for (int c = 0; c < k; c++) {
+      live[c] = canReachAccepting(components[c]);
+      int q0 = components[c].getQ0();
+      tuple[c] = and || live[c][q0] ? q0 : SINK;
+      expectedStates = Math.max(expectedStates, components[c].getQ());
+    }
+    // step the smallest components first: with a conjunction, they are the cheapest to find a dead end in
+    int[] order = IntStream.range(0, k).boxed()
+        .sorted(Comparator.comparingInt(c -> components[c].getQ())).mapToInt(c -> c).toArray();
+
+    Tuples tuples = new Tuples(k);
+    tuples.add(tuple);
+    IntList O = new IntArrayList();
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(inputs.length, expectedStates);
+    int[] next = new int[k];
+    for (int s = 0; s < tuples.size(); s++) {
+      if (Logging.shouldPrintDetails()) {
+        int statesSoFar = s + 1;
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+            "  Progress: Added " + statesSoFar + " states - "
+                + (tuples.size() - statesSoFar) + " states left in queue - "
+                + tuples.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+      }
+      Budget.check("cross product", tuples.size(), builder.getTransitionCount());
+      tuples.get(s, tuple);
+      O.add(isAccepting(components, tuple, and) ? 1 : 0);
+      builder.startState();
+      for (int z = 0; z < inputs.length; z++) {
+        if (inputs[z] != null && step(components, live, order, tuple, inputs[z], and, next)) {
+          builder.addTransition(z, tuples.add(next));
+        }
+      }
+    }
+    product.setFields(tuples.size(), O, builder.build());
+    product.setQ0(0);
+
+    long timeAfter = System.currentTimeMillis();
+    Logging.logMessage(
+        COMPUTED + " cross product:" + product.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+  }
+
+  /**
+   * Write the successor of tuple on the given component inputs into next.
+   * @return false if it is pruned
+   */
+  private static boolean step(
+      FA[] components, boolean[][] live, int[] order, int[] tuple, int[] in, boolean and, int[] next) {
+    boolean anyLive = false;
+    for (int c : order) {
+      int dest = tuple[c] == SINK ? SINK : components[c].getT().findDest(tuple[c], in[c]);
+      if (dest != SINK && !live[c][dest]) {
+        dest = SINK;
+      }
+      if (dest == SINK && and) {
+        return false;
+      }
+      anyLive |= dest != SINK;
+      next[c] = dest;
+    }
+    return anyLive;
+  }
+
+  private static boolean isAccepting(FA[] components, int[] tuple, boolean and) {
+    for (int c = 0; c < tuple.length; c++) {
+      boolean accepting = tuple[c] != SINK && components[c].isAccepting(tuple[c]);
+      if (accepting != and) {
+        return accepting;
+      }
+    }
+    return and;
+  }
+
+  private static boolean[] canReachAccepting(FA fa) {
+    boolean[] live = new boolean[fa.getQ()];
+    IntSet states = Trimmer.leftTrim(fa);
+    for (int q : states) {
+      live[q] = true;
+    }
+    return live;
+  }
+
+  /**
+   * Tuples of length k, numbered in order of insertion.
+   */
+  private static final class Tuples {
+    private final int k;
+    private final IntArrayList values = new IntArrayList();
+    private int[] table = new int[16]; // tuple number + 1, or 0 if empty
+    private int size;
+
+    Tuples(int k) {
+      this.k = k;
+    }
+
+    int size() {
+      return size;
+    }
+
+    void get(int id, int[] tuple) {
+      values.getElements(id * k, tuple, 0, k);
+    }
+
+    /**
+     * @return the number of tuple, which is added if new
+     */
+    int add(int[] tuple) {
+      int mask = table.length - 1;
+      for (int i = hash(tuple) & mask; ; i = (i + 1) & mask) {
+        int id = table[i] - 1;
+        if (id < 0) {
+          table[i] = size + 1;
+          values.addElements(values.size(), tuple, 0, k);
+          if (++size * 2 > table.length) {
+            rehash();
+          }
+          return size - 1;
+        }
+        if (Arrays.equals(values.elements(), id * k, id * k + k, tuple, 0, k)) {
+          return id;
+        }
+      }
+    }
+
+    private void rehash() {
+      table = new int[table.length * 2];
+      int mask = table.length - 1;
+      int[] tuple = new int[k];
+      for (int id = 0; id < size; id++) {
+        get(id, tuple);
+        int i = hash(tuple) & mask;
+        while (table[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        table[i] = id + 1;
+      }
+    }
+
+    private static int hash(int[] tuple) {
+      return HashCommon.mix(Arrays.hashCode(tuple));
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.WalnutException;
+
+import java.io.IOException;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A growable array of ints or longs outside the Java heap, indexed by long.
+ * Storage is a list of equally-sized chunks, either direct buffers or mappings of a scratch file.
+ * Growing appends chunks, so existing elements are never copied.
+ */
+final class OffHeapArray {
+  private static final Cleaner CLEANER = Cleaner.create();
+  private static final int MIN_CHUNK_SHIFT = 16;
+  private static final int MAX_CHUNK_SHIFT = 30; // ByteBuffers are int-indexed
+
+  private final int elementShift; // 2 for ints, 3 for longs
+  private final int chunkShift; // in elements
+  private final long chunkMask;
+  private final Path file; // null for direct memory
+  private ByteBuffer[] chunks = new ByteBuffer[0];
+
+  private OffHeapArray(int elementShift, long expectedSize, Path scratchDir) {
+    this.elementShift = elementShift;
+    int bytesShift = 64 - Long.numberOfLeadingZeros(Math.max(expectedSize, 1) - 1) + elementShift;
+    int shift = Math.max(MIN_CHUNK_SHIFT, Math.min(MAX_CHUNK_SHIFT, bytesShift));
+    this.chunkShift = shift - elementShift;
+    this.chunkMask = (1L << chunkShift) - 1;
+    if (scratchDir == null) {
+      this.file = null;
+    } else {
+      try {
+        Files.createDirectories(scratchDir);
+        this.file = Files.createTempFile(scratchDir, "transitions", ".bin");
+      } catch (IOException e) {
+        throw new WalnutException("Couldn't create scratch file in " + scratchDir, e);
+      }
+      file.toFile().deleteOnExit();
+      Path toDelete = file;
+      CLEANER.register(this, () -> toDelete.toFile().delete());
+    }
+  }
+
+  static OffHeapArray ints(long expectedSize, Path scratchDir) {
+    return new OffHeapArray(2, expectedSize, scratchDir);
+  }
+
+  static OffHeapArray longs(long expectedSize, Path scratchDir) {
+    return new OffHeapArray(3, expectedSize, scratchDir);
+  }
+
+  /**
+   * Make room for at least size elements.
+   */
+  void ensureCapacity(long size) {
+    long needed = (size + chunkMask) >>> chunkShift;
+    if (needed <= chunks.length) {
+      return;
+    }
+    if (needed > Integer.MAX_VALUE) {
+      throw WalnutException.arrayOverflow("the off-heap storage", size);
+    }
+    int oldLength = chunks.length;
+    chunks = Arrays.copyOf(chunks, (int) needed);
+    for (int i = oldLength; i < needed; i++) {
+      chunks[i] = allocateChunk(i);
+    }
+  }
+
+  private ByteBuffer allocateChunk(int index) {
+    int chunkBytes = 1 << (chunkShift + elementShift);
+    if (file == null) {
+      return ByteBuffer.allocateDirect(chunkBytes).order(ByteOrder.nativeOrder());
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // the mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_WRITE, (long) index * chunkBytes, chunkBytes)
+          .order(ByteOrder.nativeOrder());
+    } catch (IOException e) {
+      throw new WalnutException("Couldn't map scratch file " + file, e);
+    }
+  }
+
+  long capacity() {
+    return (long) chunks.length << chunkShift;
+  }
+
+  int getInt(long i) {
+    return chunks[(int) (i >>> chunkShift)].getInt((int) (i & chunkMask) << 2);
+  }
+
+  void setInt(long i, int value) {
+    chunks[(int) (i >>> chunkShift)].putInt((int) (i & chunkMask) << 2, value);
+  }
+
+  long getLong(long i) {
+    return chunks[(int) (i >>> chunkShift)].getLong((int) (i & chunkMask) << 3);
+  }
+
+  void setLong(long i, long value) {
+    chunks[(int) (i >>> chunkShift)].putLong((int) (i & chunkMask) << 3, value);
+  }
+}
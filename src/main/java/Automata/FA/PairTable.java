@@ -0,0 +1,127 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+import java.util.Arrays;
+
+/**
+ * Pairs of states of a cross product, numbered in order of insertion.
+ * A pair is packed into a long and found by open addressing, and its components are kept in parallel int arrays,
+ * so adding or looking up a pair doesn't allocate. Either component may be Transitions.NO_DEST.
+ */
+final class PairTable {
+  private static final float LOAD_FACTOR = 0.5f;
+
+  private long[] keys;
+  private int[] ids; // pair number + 1, or 0 if empty
+  private int[] left;
+  private int[] right;
+  private int size;
+
+  PairTable(int expectedPairs) {
+    int capacity = HashCommon.arraySize(Math.max(expectedPairs, 16), LOAD_FACTOR);
+    keys = new long[capacity];
+    ids = new int[capacity];
+    left = new int[Math.max(expectedPairs, 16)];
+    right = new int[left.length];
+  }
+
+  int size() {
+    return size;
+  }
+
+  int left(int id) {
+    return left[id];
+  }
+
+  int right(int id) {
+    return right[id];
+  }
+
+  /**
+   * @return the number of (p, q), or -1 if it hasn't been added
+   */
+  int get(int p, int q) {
+    long key = ((long) p << 32) | (q & 0xFFFFFFFFL);
+    int mask = keys.length - 1;
+    for (int i = (int) HashCommon.mix(key) & mask; ids[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return ids[i] - 1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return the number of (p, q), which is added if new
+   */
+  int add(int p, int q) {
+    long key = ((long) p << 32) | (q & 0xFFFFFFFFL);
+    int mask = keys.length - 1;
+    for (int i = (int) HashCommon.mix(key) & mask; ; i = (i + 1) & mask) {
+      if (ids[i] == 0) {
+        if (size == left.length) {
+          left = Arrays.copyOf(left, 2 * size);
+          right = Arrays.copyOf(right, 2 * size);
+        }
+        keys[i] = key;
+        ids[i] = size + 1;
+        left[size] = p;
+        right[size] = q;
+        if (++size > keys.length * LOAD_FACTOR) {
+          rehash();
+        }
+        return size - 1;
+      }
+      if (keys[i] == key) {
+        return ids[i] - 1;
+      }
+    }
+  }
+
+  /**
+   * Forget all the pairs, and release their memory.
+   */
+  void clear() {
+    keys = new long[16];
+    ids = new int[16];
+    left = new int[16];
+    right = new int[16];
+    size = 0;
+  }
+
+  private void rehash() {
+    long[] oldKeys = keys;
+    int[] oldIds = ids;
+    keys = new long[2 * oldKeys.length];
+    ids = new int[keys.length];
+    int mask = keys.length - 1;
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (oldIds[j] != 0) {
+        int i = (int) HashCommon.mix(oldKeys[j]) & mask;
+        while (ids[i] != 0) {
+          i = (i + 1) & mask;
+        }
+        keys[i] = oldKeys[j];
+        ids[i] = oldIds[j];
+      }
+    }
+  }
+}
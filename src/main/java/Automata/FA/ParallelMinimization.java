@@ -0,0 +1,410 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.Arrays;
+
+/**
+ * DFA minimization by signature refinement, with each round computed on all processors.
+ * <p>
+ * As in ValmariDFA, states that can't reach a non-zero output are removed first. Then, in each round, a state's
+ * signature is its block together with the (input, destination block) pairs of its transitions. States are sharded
+ * by signature hash, each shard groups its states independently, and blocks are numbered in order of their first state.
+ * This gives the same blocks as ValmariDFA, so the same automaton once canonized.
+ * <p>
+ * Signature refinement takes as many rounds as the longest word needed to tell two states apart. If it hasn't
+ * converged after MAX_ROUNDS rounds, ValmariDFA finishes from the blocks found so far.
+ */
+public final class ParallelMinimization {
+  public enum Mode {
+    SEQUENTIAL, PARALLEL, AUTO;
+
+    public static Mode fromString(String name) {
+      for (Mode mode : values()) {
+        if (mode.name().equalsIgnoreCase(name)) {
+          return mode;
+        }
+      }
+      throw new IllegalArgumentException("No minimization mode found for: " + name);
+    }
+  }
+
+  public static final Mode DEFAULT_MODE = Mode.AUTO;
+  // below this, Valmari's algorithm is fast enough on one processor
+  private static final long AUTO_THRESHOLD = 1L << 22;
+  private static final int MAX_ROUNDS = 64;
+  // states per chunk of work, at least
+  private static final int MIN_CHUNK = 1 << 14;
+  private static final int EMPTY = -1;
+
+  private static Mode mode = DEFAULT_MODE;
+
+  private final int n; // states that can reach a non-zero output
+  private final int[] stateOf; // original state of each of them, in increasing order
+  private final int[] rowStart, symbols, dests; // their transitions between them, by increasing symbol
+  private final int minChunk;
+  private final int chunks;
+
+  private ParallelMinimization(int n, int[] stateOf, int[] rowStart, int[] symbols, int[] dests, int minChunk) {
+    this.n = n;
+    this.stateOf = stateOf;
+    this.rowStart = rowStart;
+    this.symbols = symbols;
+    this.dests = dests;
+    this.minChunk = minChunk;
+    this.chunks = Math.max(1, Math.min(4 * ParallelSupport.getParallelism(), n / minChunk));
+  }
+
+  public static Mode getMode() {
+    return mode;
+  }
+
+  public static void setMode(Mode mode) {
+    ParallelMinimization.mode = mode;
+  }
+
+  /**
+   * Whether to minimize a DFA with this many transitions in parallel.
+   */
+  static boolean shouldRun(long transitions) {
+    return switch (mode) {
+      case SEQUENTIAL -> false;
+      case PARALLEL -> true;
+      case AUTO -> ParallelSupport.getParallelism() > 1 && transitions >= AUTO_THRESHOLD;
+    };
+  }
+
+  /**
+   * Minimize fa, which has DFA transitions.
+   * @param withOutput - whether outputs are DFAO outputs, rather than accepting or not
+   * @return false, leaving fa unchanged, if the initial state can't reach a non-zero output. Use ValmariDFA then.
+   */
+  static boolean minimize(FA fa, boolean withOutput) {
+    return minimize(fa, withOutput, MAX_ROUNDS, MIN_CHUNK);
+  }
+
+  /**
+   * Tests use smaller limits, to exercise chunking and the sequential finish on small DFAs.
+   * @param maxRounds - rounds of refinement before ValmariDFA finishes
+   * @param minChunk - states per chunk of work, at least
+   */
+  static boolean minimize(FA fa, boolean withOutput, int maxRounds, int minChunk) {
+    int Q = fa.getQ();
+    IntList O = fa.getO();
+    boolean[] live = coReachable(fa);
+    if (!live[fa.getQ0()]) {
+      return false;
+    }
+    ParallelMinimization pm = build(fa, live, minChunk);
+
+    int[] current = new int[pm.n];
+    for (int i = 0; i < pm.n; i++) {
+      int output = O.getInt(pm.stateOf[i]);
+      current[i] = withOutput ? output : (output != 0 ? 1 : 0);
+    }
+    int count = renumber(current);
+    int[] block = new int[pm.n];
+    long[] hashes = new long[pm.n];
+    int[] order = new int[pm.n];
+    int[] representative = new int[pm.n];
+    int[] table = new int[2 * pm.n];
+    for (int round = 0; ; round++) {
+      if (round == maxRounds) {
+        // finish sequentially, keeping the blocks found so far
+        int[] classes = new int[Q];
+        for (int i = 0; i < pm.n; i++) {
+          classes[pm.stateOf[i]] = current[i];
+        }
+        ValmariDFA v = new ValmariDFA(fa, Q);
+        v.minValmari(O, withOutput, classes);
+        v.replaceFields(fa);
+        return true;
+      }
+      Budget.check("parallel minimization", pm.n, pm.symbols.length);
+      int newCount = pm.refine(current, block, hashes, order, representative, table);
+      if (newCount == count) {
+        break;
+      }
+      count = newCount;
+      int[] swap = current;
+      current = block;
+      block = swap;
+    }
+    pm.replaceFields(fa, O, withOutput, current, count);
+    return true;
+  }
+
+  /**
+   * States from which a non-zero output can be reached.
+   */
+  private static boolean[] coReachable(FA fa) {
+    int Q = fa.getQ();
+    Transitions t = fa.getT();
+    // reverse edges, grouped by destination with a counting sort
+    int[] inStart = new int[Q + 1];
+    for (int q = 0; q < Q; q++) {
+      t.forEachTransition(q, (in, dest) -> inStart[dest + 1]++);
+    }
+    for (int q = 0; q < Q; q++) {
+      inStart[q + 1] += inStart[q];
+    }
+    int[] next = Arrays.copyOf(inStart, Q);
+    int[] sources = new int[inStart[Q]];
+    for (int q = 0; q < Q; q++) {
+      int source = q;
+      t.forEachTransition(q, (in, dest) -> sources[next[dest]++] = source);
+    }
+
+    boolean[] live = new boolean[Q];
+    int[] stack = new int[Q];
+    int size = 0;
+    for (int q = 0; q < Q; q++) {
+      if (fa.getO().getInt(q) != 0) {
+        live[q] = true;
+        stack[size++] = q;
+      }
+    }
+    while (size > 0) {
+      int q = stack[--size];
+      for (int i = inStart[q]; i < inStart[q + 1]; i++) {
+        if (!live[sources[i]]) {
+          live[sources[i]] = true;
+          stack[size++] = sources[i];
+        }
+      }
+    }
+    return live;
+  }
+
+  /**
+   * Rows of the live states, keeping transitions to live states only.
+   */
+  private static ParallelMinimization build(FA fa, boolean[] live, int minChunk) {
+    int Q = fa.getQ();
+    Transitions t = fa.getT();
+    int[] index = new int[Q];
+    int n = 0;
+    for (int q = 0; q < Q; q++) {
+      index[q] = live[q] ? n++ : EMPTY;
+    }
+    int[] stateOf = new int[n];
+    for (int q = 0; q < Q; q++) {
+      if (live[q]) {
+        stateOf[index[q]] = q;
+      }
+    }
+    int[] rowStart = new int[n + 1];
+    ParallelSupport.forEach(n, minChunk, i -> t.forEachTransition(stateOf[i], (in, dest) -> {
+      if (live[dest]) {
+        rowStart[i + 1]++;
+      }
+    }));
+    for (int i = 0; i < n; i++) {
+      rowStart[i + 1] += rowStart[i];
+    }
+    int[] symbols = new int[rowStart[n]];
+    int[] dests = new int[rowStart[n]];
+    ParallelSupport.forEach(n, minChunk, i -> {
+      int[] j = {rowStart[i]};
+      t.forEachTransition(stateOf[i], (in, dest) -> {
+        if (live[dest]) {
+          symbols[j[0]] = in;
+          dests[j[0]] = index[dest];
+          j[0]++;
+        }
+      });
+      TransitionsPackedDFA.sortRow(symbols, dests, rowStart[i], rowStart[i + 1]);
+    });
+    return new ParallelMinimization(n, stateOf, rowStart, symbols, dests, minChunk);
+  }
+
+  /**
+   * One round: split blocks by signature.
+   * @return the number of blocks afterwards, numbered in order of their first state
+   */
+  private int refine(int[] current, int[] block, long[] hashes, int[] order, int[] representative, int[] table) {
+    ParallelSupport.forEach(n, minChunk, i -> hashes[i] = hash(i, current));
+
+    // group states by shard, keeping them in increasing order within each shard
+    int shards = chunks;
+    int[][] chunkCounts = new int[chunks][shards + 1];
+    ParallelSupport.forEach(chunks, 2, c -> {
+      for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+        chunkCounts[c][shard(hashes[i], shards) + 1]++;
+      }
+    });
+    int[] shardStart = new int[shards + 1];
+    for (int s = 0; s < shards; s++) {
+      shardStart[s + 1] = shardStart[s];
+      for (int c = 0; c < chunks; c++) {
+        int size = chunkCounts[c][s + 1];
+        chunkCounts[c][s + 1] = shardStart[s + 1]; // where chunk c starts writing in shard s
+        shardStart[s + 1] += size;
+      }
+    }
+    ParallelSupport.forEach(chunks, 2, c -> {
+      int[] next = chunkCounts[c];
+      for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+        order[next[shard(hashes[i], shards) + 1]++] = i;
+      }
+    });
+
+    // within a shard, the first state with a signature represents it
+    ParallelSupport.forEach(shards, 2, s -> {
+      int from = shardStart[s], to = shardStart[s + 1];
+      int capacity = 2 * (to - from);
+      Arrays.fill(table, 2 * from, 2 * to, EMPTY);
+      for (int k = from; k < to; k++) {
+        int i = order[k];
+        int slot = (int) Long.remainderUnsigned(hashes[i], capacity);
+        while (true) {
+          int r = table[2 * from + slot];
+          if (r == EMPTY) {
+            table[2 * from + slot] = i;
+            representative[i] = i;
+            break;
+          }
+          if (hashes[r] == hashes[i] && sameSignature(i, r, current)) {
+            representative[i] = r;
+            break;
+          }
+          slot = slot + 1 == capacity ? 0 : slot + 1;
+        }
+      }
+    });
+
+    // number blocks in order of their first state, with a prefix sum over chunks
+    int[] chunkBlocks = new int[chunks + 1];
+    ParallelSupport.forEach(chunks, 2, c -> {
+      for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+        if (representative[i] == i) {
+          chunkBlocks[c + 1]++;
+        }
+      }
+    });
+    for (int c = 0; c < chunks; c++) {
+      chunkBlocks[c + 1] += chunkBlocks[c];
+    }
+    ParallelSupport.forEach(chunks, 2, c -> {
+      int id = chunkBlocks[c];
+      for (int i = chunkStart(c); i < chunkStart(c + 1); i++) {
+        if (representative[i] == i) {
+          block[i] = id++;
+        }
+      }
+    });
+    // representatives come before the states they represent, and already have their numbers
+    ParallelSupport.forEach(n, minChunk, i -> {
+      if (representative[i] != i) {
+        block[i] = block[representative[i]];
+      }
+    });
+    return chunkBlocks[chunks];
+  }
+
+  private int chunkStart(int c) {
+    return (int) ((long) n * c / chunks);
+  }
+
+  private static int shard(long hash, int shards) {
+    return (int) (((hash >>> 32) * shards) >>> 32);
+  }
+
+  private long hash(int i, int[] block) {
+    long h = block[i] * 0x9E3779B97F4A7C15L;
+    for (int j = rowStart[i]; j < rowStart[i + 1]; j++) {
+      h = (h ^ symbols[j]) * 0xBF58476D1CE4E5B9L;
+      h = (h ^ block[dests[j]]) * 0x94D049BB133111EBL;
+    }
+    return h ^ (h >>> 31);
+  }
+
+  private boolean sameSignature(int p, int q, int[] block) {
+    if (block[p] != block[q] || rowStart[p + 1] - rowStart[p] != rowStart[q + 1] - rowStart[q]) {
+      return false;
+    }
+    for (int i = rowStart[p], j = rowStart[q]; i < rowStart[p + 1]; i++, j++) {
+      if (symbols[i] != symbols[j] || block[dests[i]] != block[dests[j]]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Number blocks in order of their first state, in place.
+   * @return the number of blocks
+   */
+  private static int renumber(int[] blocks) {
+    Int2IntOpenHashMap newId = new Int2IntOpenHashMap();
+    for (int i = 0; i < blocks.length; i++) {
+      int id = newId.getOrDefault(blocks[i], EMPTY);
+      if (id == EMPTY) {
+        id = newId.size();
+        newId.put(blocks[i], id);
+      }
+      blocks[i] = id;
+    }
+    return newId.size();
+  }
+
+  /**
+   * Keep the row of the first state of each block, as ValmariDFA does.
+   */
+  private void replaceFields(FA fa, IntList O, boolean withOutput, int[] block, int count) {
+    int[] first = new int[count];
+    Arrays.fill(first, EMPTY);
+    for (int i = 0; i < n; i++) {
+      if (first[block[i]] == EMPTY) {
+        first[block[i]] = i;
+      }
+    }
+    int[] edgeStart = new int[count + 1];
+    for (int b = 0; b < count; b++) {
+      edgeStart[b + 1] = edgeStart[b] + rowStart[first[b] + 1] - rowStart[first[b]];
+    }
+    int edges = edgeStart[count];
+    int[] src = new int[edges], in = new int[edges], dest = new int[edges];
+    ParallelSupport.forEach(count, minChunk, b -> {
+      for (int j = rowStart[first[b]], k = edgeStart[b]; j < rowStart[first[b] + 1]; j++, k++) {
+        src[k] = b;
+        in[k] = symbols[j];
+        dest[k] = block[dests[j]];
+      }
+    });
+    int[] newO = new int[count];
+    for (int b = 0; b < count; b++) {
+      int output = O.getInt(stateOf[first[b]]);
+      newO[b] = withOutput ? output : (output != 0 ? 1 : 0);
+    }
+    int q0 = fa.getQ0();
+    int newQ0 = block[Arrays.binarySearch(stateOf, q0)];
+
+    fa.setQ(count);
+    fa.setQ0(newQ0);
+    fa.setT(TransitionStorage.fromEdges(count, fa.getAlphabetSize(), src, in, dest, edges));
+    fa.initO(count);
+    for (int b = 0; b < count; b++) {
+      fa.getO().add(newO[b]);
+    }
+  }
+}
@@ -0,0 +1,194 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import Main.Logging;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Rest of a DFA cross product, once it is large enough, with the breadth-first queue expanded in parallel.
+ * A batch of queued pairs is taken off the queue, and threads compute the successors of each pair into private rows,
+ * interning new pairs in a table striped by hash. Ids are then assigned on one thread, in queue and row order, which
+ * is the order the sequential product assigns them in; so the product, and its progress log, are the same.
+ */
+final class ParallelProduct {
+  // product states found sequentially before switching
+  static final int AUTO_THRESHOLD = 1 << 16;
+  // queued pairs expanded at once, at most
+  static final int MAX_BATCH = 1 << 16;
+  // smaller batches are expanded on the calling thread
+  private static final int MIN_PARALLEL_BATCH = 32;
+  private static final int SEGMENT_BITS = 8;
+  private static final int SINK = Transitions.NO_DEST;
+
+  private final FA A, B;
+  private final int[] allInputsOfAxB;
+  private final IntBinaryOperator output;
+  private final boolean keepASink, keepBSink, keepBothSinks;
+  private final int maxBatch;
+  private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+  private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+  private PairTable known; // pairs numbered before switching; not modified afterwards
+  private final IntArrayList left = new IntArrayList(), right = new IntArrayList(); // pairs numbered since
+
+  /**
+   * New pairs whose hash falls in one stripe, each with its product state once assigned.
+   */
+  private static final class Segment {
+    final PairTable pairs = new PairTable(16);
+    int[] ids = new int[16];
+  }
+
+  /**
+   * Successors of one queued pair, written only by the thread that expands it.
+   * A destination is either a product state, or the negated handle of a new pair plus one.
+   */
+  private record Row(int output, int[] inputs, int[] dests) {
+  }
+
+  private static final class Scratch {
+    final IntArrayList AInputs = new IntArrayList(), ADests = new IntArrayList();
+    final IntArrayList BInputs = new IntArrayList(), BDests = new IntArrayList();
+    final IntArrayList inputs = new IntArrayList(), dests = new IntArrayList();
+  }
+
+  ParallelProduct(FA A, FA B, int[] allInputsOfAxB, IntBinaryOperator output,
+                  boolean keepASink, boolean keepBSink, boolean keepBothSinks, int maxBatch) {
+    this.A = A;
+    this.B = B;
+    this.allInputsOfAxB = allInputsOfAxB;
+    this.output = output;
+    this.keepASink = keepASink;
+    this.keepBSink = keepBSink;
+    this.keepBothSinks = keepBothSinks;
+    this.maxBatch = maxBatch;
+    for (int i = 0; i < segments.length; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  /**
+   * Whether to continue a product in parallel, once it has this many states.
+   * @param autoThreshold - AUTO_THRESHOLD, or smaller in tests
+   */
+  static boolean shouldRun(int states, int autoThreshold) {
+    return ParallelSupport.getParallelism() > 1 && states >= autoThreshold;
+  }
+
+  /**
+   * Expand the queued pairs from first on, and every pair found from them, adding their outputs to O and their
+   * transitions to AxBTransitions.
+   *
+   * @param known the pairs found so far, numbered in queue order
+   * @return the number of states of the product
+   */
+  int finish(PairTable known, int first, IntList O, TransitionStorage.DfaBuilder AxBTransitions, long timeBefore) {
+    this.known = known;
+    int count = known.size();
+    for (int from = first; from < count; ) {
+      int batchStart = from;
+      Row[] rows = new Row[Math.min(count - from, maxBatch)];
+      ParallelSupport.forEach(rows.length, MIN_PARALLEL_BATCH, i -> rows[i] = expand(batchStart + i));
+
+      for (Row row : rows) {
+        if (Logging.shouldPrintDetails()) {
+          int statesSoFar = from + 1;
+          long timeAfter = System.currentTimeMillis();
+          Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+              "  Progress: Added " + statesSoFar + " states - "
+                  + (count - statesSoFar) + " states left in queue - "
+                  + count + " reachable states - " + (timeAfter - timeBefore) + "ms");
+        }
+        Budget.check("cross product", count, AxBTransitions.getTransitionCount());
+        O.add(row.output);
+        AxBTransitions.startState();
+        for (int k = 0; k < row.inputs.length; k++) {
+          int dest = row.dests[k];
+          if (dest < 0) {
+            int handle = -dest - 1;
+            Segment segment = segments[handle & (segments.length - 1)];
+            int local = handle >>> SEGMENT_BITS;
+            dest = segment.ids[local];
+            if (dest < 0) {
+              dest = segment.ids[local] = count++;
+              left.add(segment.pairs.left(local));
+              right.add(segment.pairs.right(local));
+            }
+          }
+          AxBTransitions.addTransition(row.inputs[k], dest);
+        }
+        from++;
+      }
+    }
+    return count;
+  }
+
+  private Row expand(int s) {
+    int p = s < known.size() ? known.left(s) : left.getInt(s - known.size());
+    int q = s < known.size() ? known.right(s) : right.getInt(s - known.size());
+    Scratch sc = scratch.get();
+    ProductStrategies.collectTransitions(A, p, keepASink || keepBothSinks, sc.AInputs, sc.ADests);
+    ProductStrategies.collectTransitions(B, q, keepBSink || keepBothSinks, sc.BInputs, sc.BDests);
+    sc.inputs.clear();
+    sc.dests.clear();
+    for (int i = 0; i < sc.AInputs.size(); i++) {
+      final int AxBalphabet = sc.AInputs.getInt(i) * B.getAlphabetSize();
+      int destA = sc.ADests.getInt(i);
+      for (int j = 0; j < sc.BInputs.size(); j++) {
+        int z = allInputsOfAxB[AxBalphabet + sc.BInputs.getInt(j)];
+        int destB = sc.BDests.getInt(j);
+        if (z == -1 || ProductStrategies.isDeadPair(destA, destB, keepASink, keepBSink, keepBothSinks)) {
+          continue;
+        }
+        int dest = known.get(destA, destB);
+        sc.inputs.add(z);
+        sc.dests.add(dest >= 0 ? dest : -intern(destA, destB) - 1);
+      }
+    }
+    int out = output.applyAsInt(p == SINK ? 0 : A.getO().getInt(p), q == SINK ? 0 : B.getO().getInt(q));
+    return new Row(out, sc.inputs.toIntArray(), sc.dests.toIntArray());
+  }
+
+  /**
+   * @return the handle of a pair not in known
+   */
+  private int intern(int p, int q) {
+    long key = ((long) p << 32) | (q & 0xFFFFFFFFL);
+    int stripe = (int) (HashCommon.mix(key) >>> (64 - SEGMENT_BITS));
+    Segment segment = segments[stripe];
+    int local;
+    synchronized (segment) {
+      int size = segment.pairs.size();
+      local = segment.pairs.add(p, q);
+      if (local == size) {
+        if (local == segment.ids.length) {
+          segment.ids = Arrays.copyOf(segment.ids, 2 * local);
+        }
+        segment.ids[local] = -1;
+      }
+    }
+    return (local << SEGMENT_BITS) | stripe;
+  }
+}
@@ -0,0 +1,205 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import Main.Logging;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Subset construction that expands each breadth-first level of the DFA in parallel.
+ * Threads compute the successors of their frontier states into private rows, interning metastates in a
+ * concurrent table. Ids are then assigned on one thread, in frontier and input order, which is the order
+ * SC assigns them in; so the resulting DFA is identical to SC's.
+ */
+final class ParallelSubsetConstruction {
+  // smaller frontiers are expanded on the calling thread
+  private static final int MIN_PARALLEL_FRONTIER = 32;
+
+  private ParallelSubsetConstruction() {
+  }
+
+  /**
+   * Sorted set of NFA states, with a DFA state id once assigned.
+   */
+  private static final class Metastate {
+    final int[] states;
+    final int hash;
+    int id = -1; // assigned between levels, on one thread
+
+    Metastate(int[] states) {
+      this.states = states;
+      this.hash = Arrays.hashCode(states);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof Metastate other && hash == other.hash && Arrays.equals(states, other.states);
+    }
+  }
+
+  /**
+   * Transitions of one frontier state, written only by the thread that expands it.
+   */
+  private record Row(int[] inputs, Metastate[] dests) {
+  }
+
+  /**
+   * Per-thread buffers for grouping destinations by input.
+   */
+  private static final class Scratch {
+    final IntList[] byInput;
+    final boolean[] seen;
+    final IntArrayList touched = new IntArrayList();
+
+    Scratch(int alphabetSize) {
+      byInput = new IntList[alphabetSize];
+      seen = new boolean[alphabetSize];
+    }
+  }
+
+  static void determinize(FA fa, IntSet initialState) {
+    long timeBefore = System.currentTimeMillis();
+    int alphabetSize = fa.getAlphabetSize();
+    TransitionsCompactNFA nfa = fa.compactNfaTransitions();
+    IntList oldO = fa.getO();
+
+    int[] initial = initialState.toIntArray();
+    Arrays.sort(initial);
+    Metastate start = new Metastate(initial);
+    start.id = 0;
+    ConcurrentHashMap<Metastate, Metastate> interned = new ConcurrentHashMap<>();
+    interned.put(start, start);
+
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, fa.getQ());
+    IntList newO = new IntArrayList();
+    int stateCount = 1;
+    long nextProgress = 100;
+    List<Metastate> frontier = List.of(start);
+    ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(alphabetSize));
+
+    while (!frontier.isEmpty()) {
+      List<Metastate> current = frontier;
+      Row[] rows = new Row[current.size()];
+      ParallelSupport.forEach(current.size(), MIN_PARALLEL_FRONTIER,
+          i -> rows[i] = expand(nfa, current.get(i).states, scratch.get(), interned));
+
+      // assign ids in the order SC would, and emit the rows
+      List<Metastate> next = new ArrayList<>();
+      for (int i = 0; i < rows.length; i++) {
+        newO.add(accepts(oldO, current.get(i).states) ? 1 : 0);
+        builder.startState();
+        Row row = rows[i];
+        for (int k = 0; k < row.inputs.length; k++) {
+          Metastate dest = row.dests[k];
+          if (dest.id < 0) {
+            dest.id = stateCount++;
+            next.add(dest);
+          }
+          builder.addTransition(row.inputs[k], dest.id);
+        }
+      }
+      frontier = next;
+      Budget.check("parallel subset construction", stateCount, builder.getTransitionCount());
+
+      if (Logging.shouldPrintDetails() && builder.getStateCount() >= nextProgress) {
+        nextProgress = nextProgress < 10000 ? nextProgress * 10 : builder.getStateCount() + 10000L;
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage("  Progress: Added " + builder.getStateCount() + " states - "
+            + frontier.size() + " states left in queue - "
+            + stateCount + " reachable states - " + (timeAfter - timeBefore) + "ms");
+      }
+    }
+
+    fa.setFields(stateCount, newO, builder.build());
+    fa.setQ0(0);
+  }
+
+  /**
+   * Successors of a metastate on every input, in increasing input order.
+   */
+  private static Row expand(TransitionsCompactNFA nfa, int[] states, Scratch scratch,
+                            ConcurrentHashMap<Metastate, Metastate> interned) {
+    IntList[] byInput = scratch.byInput;
+    IntArrayList touched = scratch.touched;
+    for (int q : states) {
+      for (int r = nfa.getRowStart(q); r < nfa.getRowEnd(q); r++) {
+        int in = nfa.getRunSymbol(r);
+        IntList dests = byInput[in];
+        if (dests == null) {
+          dests = byInput[in] = new IntArrayList();
+        }
+        if (!scratch.seen[in]) {
+          scratch.seen[in] = true;
+          touched.add(in);
+        }
+        for (int i = nfa.getRunStart(r); i < nfa.getRunEnd(r); i++) {
+          dests.add(nfa.getDest(i));
+        }
+      }
+    }
+    int[] inputs = touched.toIntArray();
+    Arrays.sort(inputs);
+    Metastate[] dests = new Metastate[inputs.length];
+    int count = 0;
+    for (int in : inputs) {
+      scratch.seen[in] = false;
+      IntList list = byInput[in];
+      if (list.isEmpty()) {
+        continue;
+      }
+      int[] sorted = list.toIntArray();
+      Arrays.sort(sorted);
+      int size = 0;
+      for (int i = 0; i < sorted.length; i++) {
+        if (i == 0 || sorted[i] != sorted[i - 1]) {
+          sorted[size++] = sorted[i];
+        }
+      }
+      Metastate m = new Metastate(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+      Metastate existing = interned.putIfAbsent(m, m);
+      inputs[count] = in;
+      dests[count++] = existing == null ? m : existing;
+      list.clear();
+    }
+    touched.clear();
+    return count == inputs.length ? new Row(inputs, dests)
+        : new Row(Arrays.copyOf(inputs, count), Arrays.copyOf(dests, count));
+  }
+
+  private static boolean accepts(IntList oldO, int[] states) {
+    for (int q : states) {
+      if (oldO.getInt(q) != 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
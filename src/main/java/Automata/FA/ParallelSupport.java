@@ -0,0 +1,70 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Thread pool shared by the parallel automata algorithms.
+ * Parallelism defaults to the number of available processors.
+ */
+public final class ParallelSupport {
+  private static int parallelism = Runtime.getRuntime().availableProcessors();
+  private static ForkJoinPool pool;
+
+  private ParallelSupport() {
+  }
+
+  public static int getParallelism() {
+    return parallelism;
+  }
+
+  public static synchronized void setParallelism(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    if (parallelism != ParallelSupport.parallelism && pool != null) {
+      pool.shutdown();
+      pool = null;
+    }
+    ParallelSupport.parallelism = parallelism;
+  }
+
+  private static synchronized ForkJoinPool pool() {
+    if (pool == null) {
+      pool = new ForkJoinPool(parallelism);
+    }
+    return pool;
+  }
+
+  /**
+   * Run body(i) for i in [0, n), in parallel when there's more than minParallel work and more than one thread.
+   * Returns once every call has finished, so writes made by body are then visible to the caller.
+   */
+  static void forEach(int n, int minParallel, IntConsumer body) {
+    if (parallelism == 1 || n < minParallel) {
+      for (int i = 0; i < n; i++) {
+        body.accept(i);
+      }
+      return;
+    }
+    pool().submit(() -> IntStream.range(0, n).parallel().forEach(body)).join();
+  }
+}
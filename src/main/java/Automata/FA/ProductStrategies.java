@@ -4,22 +4,24 @@ import Automata.Automaton;
 import Automata.AutomatonDFA;
 import Automata.NumberSystem;
 import Automata.RichAlphabet;
+import Automata.Symbolic.MTBDD;
+import Automata.Symbolic.SymbolicDFA;
+import Automata.Symbolic.TrackLayout;
 import Main.EvalComputations.Token.ArithmeticOperator;
 import Main.EvalComputations.Token.LogicalOperator;
 import Main.EvalComputations.Token.RelationalOperator;
+import Main.Budget;
 import Main.Logging;
 import Main.WalnutException;
 import Main.Prover;
 import Main.UtilityMethods;
 import it.unimi.dsi.fastutil.ints.*;
-import it.unimi.dsi.fastutil.objects.Object2IntMap;
-import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 
 import java.util.*;
+import java.util.function.IntBinaryOperator;
 
 import static Main.Logging.COMPUTED;
 import static Main.Logging.COMPUTING;
-import static Main.UtilityMethods.MISSING_ELT;
 
 /**
  * Product strategy logic.
@@ -27,38 +29,60 @@ import static Main.UtilityMethods.MISSING_ELT;
  */
 public class ProductStrategies {
     static final int NOT_SAME_INPUT_IN_BOTH = -1;
+    private static final String PRODUCT_CHECKPOINT = "product";
     /**
-     * Cross-product of two DFAs. Output is an NFA (for now).
+     * Cross-product of two automata. The output is DFA-backed when both are deterministic, and an NFA otherwise.
      */
     public static void crossProductInternal(
         FA A, FA B, FA AxB, int combineOut, int[] allInputsOfAxB, String op, long timeBefore) {
-        List<IntIntPair> statesList = new ArrayList<>();
-        Object2IntMap<IntIntPair> statesHash = new Object2IntOpenHashMap<>();
-        statesHash.defaultReturnValue(MISSING_ELT);
+        boolean deterministic = A.getT().isDeterministic() && B.getT().isDeterministic();
+        PairTable states = new PairTable(Math.max(A.getQ(), B.getQ()));
         AxB.setQ0(0);
-        statesList.add(new IntIntImmutablePair(A.getQ0(), B.getQ0()));
-        statesHash.put(new IntIntImmutablePair(A.getQ0(), B.getQ0()), 0);
+        states.add(A.getQ0(), B.getQ0());
+        TransitionStorage.DfaBuilder AxBTransitions =
+            deterministic ? TransitionStorage.dfaBuilder(AxB.getAlphabetSize(), Math.max(A.getQ(), B.getQ())) : null;
+        IntArrayList AInputs = new IntArrayList(), ADests = new IntArrayList();
+        IntArrayList BInputs = new IntArrayList(), BDests = new IntArrayList();
         int currentState = 0;
-        while (currentState < statesList.size()) {
+        long transitions = 0;
+        while (currentState < states.size()) {
             if (Logging.shouldPrintDetails()) {
                 int statesSoFar = currentState + 1;
                 long timeAfter = System.currentTimeMillis();
                 Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar == 1e4 || statesSoFar % 1e5 == 0,
                         "  Progress: Added " + statesSoFar + " states - "
-                    + (statesList.size() - statesSoFar) + " states left in queue - "
-                    + statesList.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+                    + (states.size() - statesSoFar) + " states left in queue - "
+                    + states.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
             }
 
-            IntIntPair s = statesList.get(currentState);
+            Budget.check("cross product", states.size(), transitions);
 
-            // s must be an array of length 2, where the first element is a state in this, and the second element is a
-            // state in the other Automaton.
-            int p = s.leftInt();
-            int q = s.rightInt();
-            Int2ObjectRBTreeMap<IntList> stateTransitions = new Int2ObjectRBTreeMap<>();
-            AxB.getT().addToNfaD(stateTransitions);
+            // a state in A and a state in B.
+            int p = states.left(currentState);
+            int q = states.right(currentState);
             AxB.getO().add(determineOutput(A.getO().getInt(p), B.getO().getInt(q), op, combineOut));
 
+            if (deterministic) {
+                // write the row directly, as crossProductInternalDFA does
+                AxBTransitions.startState();
+                collectTransitions(A, p, false, AInputs, ADests);
+                collectTransitions(B, q, false, BInputs, BDests);
+                for (int i = 0; i < AInputs.size(); i++) {
+                    final int AxBalphabet = AInputs.getInt(i) * B.getAlphabetSize();
+                    for (int j = 0; j < BInputs.size(); j++) {
+                        int z = allInputsOfAxB[AxBalphabet + BInputs.getInt(j)];
+                        if (z != -1) {
+                            AxBTransitions.addTransition(z, states.add(ADests.getInt(i), BDests.getInt(j)));
+                            transitions++;
+                        }
+                    }
+                }
+                currentState++;
+                continue;
+            }
+
+            Int2ObjectRBTreeMap<IntList> stateTransitions = new Int2ObjectRBTreeMap<>();
+            AxB.getT().addToNfaD(stateTransitions);
             Set<Int2ObjectMap.Entry<IntList>> Bset = B.getT().getEntriesNfaD(q);
             for (Int2ObjectMap.Entry<IntList> entryA : A.getT().getEntriesNfaD(p)) {
                 final int AxBalphabet = entryA.getIntKey() * B.getAlphabetSize();
@@ -71,23 +95,20 @@ public class ProductStrategies {
                     stateTransitions.put(z, dest);
                     for (int destA : entryA.getValue()) {
                         for (int destB : entryB.getValue()) {
-                            // Note: since A and B are DFAs, there's only one value ever here.
-                            IntIntPair dest3 = new IntIntImmutablePair(destA, destB);
-                            int statesHashVal = statesHash.getInt(dest3);
-                            if (statesHashVal == MISSING_ELT) {
-                                statesHashVal = statesList.size();
-                                statesHash.put(dest3, statesHashVal);
-                                statesList.add(dest3);
-                            }
-                            dest.add(statesHash.getInt(dest3));
+                            dest.add(states.add(destA, destB));
                         }
                     }
                     dest.trim(); // save peak memory
+                    transitions += dest.size();
                 }
             }
             currentState++;
         }
-        AxB.setQ(statesList.size());
+        AxB.setQ(states.size());
+        states.clear(); // save memory
+        if (deterministic) {
+            AxB.setT(AxBTransitions.build());
+        }
         long timeAfter = System.currentTimeMillis();
         Logging.logMessage(
                 COMPUTED + " cross product:" + AxB.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
@@ -95,78 +116,183 @@ public class ProductStrategies {
 
     /**
      * Cross-product of two DFAs. Output is a DFA.
+     * With implicitSink, a missing transition goes to a virtual non-accepting sink, as if both DFAs were totalized;
+     * pairs involving the sink are only built when the operator can make them accepting.
+     * Otherwise, a missing transition on either side is missing in the product.
+     * Once the product is large enough, it is continued in parallel by ParallelProduct, with the same result.
      */
     public static void crossProductInternalDFA(
-        FA A, FA B, FA AxB, int combineOut, int[] allInputsOfAxB, String op, long timeBefore) {
+        FA A, FA B, FA AxB, int combineOut, int[] allInputsOfAxB, String op, long timeBefore, boolean implicitSink) {
+        crossProductInternalDFA(A, B, AxB, combineOut, allInputsOfAxB, op, timeBefore, implicitSink,
+            ParallelProduct.AUTO_THRESHOLD, ParallelProduct.MAX_BATCH);
+    }
+
+    /**
+     * @param parallelThreshold - product states after which to continue in parallel
+     * @param parallelBatch - queued pairs ParallelProduct expands at once, at most
+     */
+    static void crossProductInternalDFA(
+        FA A, FA B, FA AxB, int combineOut, int[] allInputsOfAxB, String op, long timeBefore, boolean implicitSink,
+        int parallelThreshold, int parallelBatch) {
         if (!A.getT().hasDfaTransitions() || !B.getT().hasDfaTransitions()) {
             throw new WalnutException("Expected DFA-backed transitions for DFA cross product.");
         }
-        List<IntSortedSet> AInputsByState = sortedDfaInputKeys(A.getT());
-        List<IntSortedSet> BInputsByState = sortedDfaInputKeys(B.getT());
+        final int sink = Transitions.NO_DEST;
+        // whether pairs (sink, q), (p, sink) and (sink, sink) can be live
+        boolean keepASink = implicitSink && sinkCanAccept(B.getO(), (o, other) -> determineOutput(o, other, op, combineOut));
+        boolean keepBSink = implicitSink && sinkCanAccept(A.getO(), (o, other) -> determineOutput(other, o, op, combineOut));
+        boolean keepBothSinks = implicitSink && determineOutput(0, 0, op, combineOut) != 0;
 
-        List<IntIntPair> statesList = new ArrayList<>();
-        Object2IntMap<IntIntPair> statesHash = new Object2IntOpenHashMap<>();
-        statesHash.defaultReturnValue(MISSING_ELT);
+        PairTable states = new PairTable(Math.max(A.getQ(), B.getQ()));
         AxB.setQ0(0);
-        AxB.setDfaTransitions(new ArrayList<>());
-        statesList.add(new IntIntImmutablePair(A.getQ0(), B.getQ0()));
-        statesHash.put(new IntIntImmutablePair(A.getQ0(), B.getQ0()), 0);
+        TransitionStorage.DfaBuilder AxBTransitions =
+            TransitionStorage.dfaBuilder(AxB.getAlphabetSize(), Math.max(A.getQ(), B.getQ()));
         int currentState = 0;
-        while (currentState < statesList.size()) {
-            if (Logging.shouldPrintDetails()) {
-                int statesSoFar = currentState + 1;
-                long timeAfter = System.currentTimeMillis();
-                Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
-                        "  Progress: Added " + statesSoFar + " states - "
-                                + (statesList.size() - statesSoFar) + " states left in queue - "
-                                + statesList.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+        Checkpoint checkpoint = Checkpoint.open(PRODUCT_CHECKPOINT, new Checkpoint.Fingerprint().add(A).add(B)
+            .add(op).add(combineOut).add(implicitSink ? 1 : 0).add(Arrays.hashCode(allInputsOfAxB)).value());
+        if (checkpoint != null && checkpoint.isResuming()) {
+            checkpoint.replay((key, n) -> states.add(key[0], key[1]), (output, inputs, dests, n) -> {
+                AxB.getO().add(output);
+                AxBTransitions.startState();
+                for (int k = 0; k < n; k++) {
+                    AxBTransitions.addTransition(inputs[k], dests[k]);
+                }
+            });
+            currentState = AxB.getO().size();
+        } else {
+            states.add(A.getQ0(), B.getQ0());
+            if (checkpoint != null) {
+                checkpoint.addKey(new int[]{A.getQ0(), B.getQ0()}, 2);
             }
+        }
+        IntArrayList AInputs = new IntArrayList(), ADests = new IntArrayList();
+        IntArrayList BInputs = new IntArrayList(), BDests = new IntArrayList();
+        int[] key = new int[2];
+        int productStates = -1; // once continued in parallel
+        try {
+            while (currentState < states.size()) {
+                // checkpoints record rows as they're built, which keeps large products sequential
+                if (checkpoint == null && ParallelProduct.shouldRun(states.size(), parallelThreshold)) {
+                    productStates = new ParallelProduct(A, B, allInputsOfAxB,
+                        (o, other) -> determineOutput(o, other, op, combineOut), keepASink, keepBSink, keepBothSinks,
+                        parallelBatch)
+                        .finish(states, currentState, AxB.getO(), AxBTransitions, timeBefore);
+                    break;
+                }
+                if (Logging.shouldPrintDetails()) {
+                    int statesSoFar = currentState + 1;
+                    long timeAfter = System.currentTimeMillis();
+                    Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+                            "  Progress: Added " + statesSoFar + " states - "
+                                    + (states.size() - statesSoFar) + " states left in queue - "
+                                    + states.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+                }
 
-            IntIntPair s = statesList.get(currentState);
+                Budget.check("cross product", states.size(), AxBTransitions.getTransitionCount());
 
-            // s must be an array of length 2, where the first element is a state in this, and the second element is a
-            // state in the other Automaton.
-            int p = s.leftInt();
-            int q = s.rightInt();
-            AxB.getT().addDfaState();
-            AxB.getO().add(determineOutput(A.getO().getInt(p), B.getO().getInt(q), op, combineOut));
+                // a state in A and a state in B. Either may be the sink.
+                int p = states.left(currentState);
+                int q = states.right(currentState);
+                int output = determineOutput(
+                    p == sink ? 0 : A.getO().getInt(p), q == sink ? 0 : B.getO().getInt(q), op, combineOut);
+                AxBTransitions.startState();
+                AxB.getO().add(output);
+                if (checkpoint != null) {
+                    checkpoint.startRow(output);
+                }
 
-            IntSortedSet BInputs = BInputsByState.get(q);
-            for (int inputA : AInputsByState.get(p)) {
-                final int AxBalphabet = inputA * B.getAlphabetSize();
-                int destA = A.getT().getDfaStateDest(p, inputA);
-                for (int inputB : BInputs) {
-                    int z = allInputsOfAxB[AxBalphabet + inputB];
-                    if (z == -1) {
-                        continue;
-                    }
-                    IntIntPair dest3 = new IntIntImmutablePair(destA, B.getT().getDfaStateDest(q, inputB));
-                    int statesHashVal = statesHash.getInt(dest3);
-                    if (statesHashVal == MISSING_ELT) {
-                        statesHashVal = statesList.size();
-                        statesHash.put(dest3, statesHashVal);
-                        statesList.add(dest3);
+                // inputs leading to the sink only matter if a pair with the sink on that side can be live
+                collectTransitions(A, p, keepASink || keepBothSinks, AInputs, ADests);
+                collectTransitions(B, q, keepBSink || keepBothSinks, BInputs, BDests);
+                for (int i = 0; i < AInputs.size(); i++) {
+                    final int AxBalphabet = AInputs.getInt(i) * B.getAlphabetSize();
+                    int destA = ADests.getInt(i);
+                    for (int j = 0; j < BInputs.size(); j++) {
+                        int z = allInputsOfAxB[AxBalphabet + BInputs.getInt(j)];
+                        if (z == -1) {
+                            continue;
+                        }
+                        int destB = BDests.getInt(j);
+                        if (isDeadPair(destA, destB, keepASink, keepBSink, keepBothSinks)) {
+                            continue; // leave the transition missing
+                        }
+                        int known = states.size();
+                        int statesHashVal = states.add(destA, destB);
+                        if (statesHashVal == known && checkpoint != null) {
+                            key[0] = destA;
+                            key[1] = destB;
+                            checkpoint.addKey(key, 2);
+                        }
+                        AxBTransitions.addTransition(z, statesHashVal);
+                        if (checkpoint != null) {
+                            checkpoint.addTransition(z, statesHashVal);
+                        }
                     }
-                    AxB.getT().setDfaDTransition(currentState, z, statesHashVal);
                 }
+                if (checkpoint != null) {
+                    checkpoint.endRow();
+                }
+                currentState++;
+            }
+        } finally {
+            if (checkpoint != null) {
+                checkpoint.close();
             }
-            currentState++;
         }
-        AxB.setQ(statesList.size());
-        statesList.clear(); // save memory
-        AxB.getT().reduceMemory();
+        if (checkpoint != null) {
+            checkpoint.discard();
+        }
+        AxB.setQ(productStates >= 0 ? productStates : states.size());
+        states.clear(); // save memory
+        AxB.setT(AxBTransitions.build());
 
         long timeAfter = System.currentTimeMillis();
         Logging.logMessage(
             COMPUTED + " cross product:" + AxB.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
     }
 
-    private static List<IntSortedSet> sortedDfaInputKeys(Transitions transitions) {
-        List<IntSortedSet> result = new ArrayList<>(transitions.getDfaStateCount());
-        for (int q = 0; q < transitions.getDfaStateCount(); q++) {
-            result.add(transitions.getDfaStateKeySet(q));
+    /**
+     * Whether a pair with the sink on one side can accept, given the outputs of the other side.
+     */
+    private static boolean sinkCanAccept(IntList otherOutputs, java.util.function.IntBinaryOperator output) {
+        if (output.applyAsInt(0, 0) != 0) {
+            return true;
+        }
+        for (int o : new IntOpenHashSet(otherOutputs)) {
+            if (output.applyAsInt(0, o) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a pair with the sink on either side can't be live.
+     */
+    static boolean isDeadPair(int destA, int destB, boolean keepASink, boolean keepBSink, boolean keepBothSinks) {
+        final int sink = Transitions.NO_DEST;
+        return destA == sink && !(destB == sink ? keepBothSinks : keepASink)
+            || destB == sink && destA != sink && !keepBSink;
+    }
+
+    /**
+     * Fill inputs and dests with the transitions of state q, which may be the sink.
+     * With withSink, every input of the alphabet is listed, and missing ones go to the sink.
+     */
+    static void collectTransitions(FA fa, int q, boolean withSink, IntArrayList inputs, IntArrayList dests) {
+        inputs.clear();
+        dests.clear();
+        if (withSink) {
+            for (int in = 0; in < fa.getAlphabetSize(); in++) {
+                inputs.add(in);
+                dests.add(q == Transitions.NO_DEST ? Transitions.NO_DEST : fa.getT().findDest(q, in));
+            }
+        } else if (q != Transitions.NO_DEST) {
+            fa.getT().forEachTransition(q, (in, dest) -> {
+                inputs.add(in);
+                dests.add(dest);
+            });
         }
-        return result;
     }
 
     private static int determineOutput(int aP, int mQ, String op, int combineOut) {
@@ -217,25 +343,160 @@ public class ProductStrategies {
         return AxB;
     }
 
+    /**
+     * Cross product of two DFAs, where missing transitions go to a virtual non-accepting sink.
+     * Equivalent to totalizing A and B first, but neither is modified.
+     */
+    public static Automaton crossProductWithSink(Automaton A, Automaton B, String op) {
+        long timeBefore = System.currentTimeMillis();
+        Automaton AxB = new Automaton();
+        int[] allInputsOfN = createBasicAutomaton(A, B, AxB);
+        int combineOut = A.determineCombineOutVal(op);
+        printAndUpdateIndex(A.fa.getQ(), B.fa.getQ());
+        A.fa.convertNFAtoDFA();
+        B.fa.convertNFAtoDFA();
+        crossProductInternalDFA(
+            A.fa, B.fa, AxB.fa, combineOut, allInputsOfN, op, timeBefore, true);
+        return AxB;
+    }
+
     public static AutomatonDFA crossProductAndMinimize(Automaton A, Automaton B, String op) {
-        return crossProductAndMinimize(A.asDFA(), B.asDFA(), op);
+        return crossProductAndMinimize(A.asDFA(), B.asDFA(), op, false);
+    }
+
+    public static AutomatonDFA crossProductAndMinimize(Automaton A, Automaton B, String op, boolean implicitSink) {
+        return crossProductAndMinimize(A.asDFA(), B.asDFA(), op, implicitSink);
     }
 
-    public static AutomatonDFA crossProductAndMinimize(AutomatonDFA A, AutomatonDFA B, String op) {
+    /**
+     * @param implicitSink - treat missing transitions as going to a non-accepting sink, as if totalized
+     */
+    public static AutomatonDFA crossProductAndMinimize(AutomatonDFA A, AutomatonDFA B, String op, boolean implicitSink) {
         long timeBefore = System.currentTimeMillis();
         AutomatonDFA AxB = new AutomatonDFA();
-        int[] allInputsOfN = createBasicAutomaton(A, B, AxB);
+        int[] sameInputsInAAndB = labelAxB(A, B, AxB);
         int combineOut = A.determineCombineOutVal(op);
         printAndUpdateIndex(A.fa.getQ(), B.fa.getQ());
         A.fa.convertNFAtoDFA();
         B.fa.convertNFAtoDFA();
-        crossProductInternalDFA(
-                A.fa, B.fa, AxB.fa, combineOut, allInputsOfN, op, timeBefore);
-        AxB.fa.justMinimize();
+        TrackLayout layout = SymbolicDFA.autoLayout(AxB.richAlphabet.getA(), AxB.getAlphabetSize());
+        if (layout != null) {
+            symbolicProduct(List.of(A, B), AxB, layout,
+                (a, b) -> determineOutput(a, b, op, combineOut), implicitSink, timeBefore);
+        } else {
+            int[] allInputsOfN = computeAllInputsOfAxB(A.getAlphabetSize(), A.richAlphabet,
+                B.getAlphabetSize(), B.richAlphabet, AxB.richAlphabet, sameInputsInAAndB);
+            crossProductInternalDFA(
+                A.fa, B.fa, AxB.fa, combineOut, allInputsOfN, op, timeBefore, implicitSink);
+            AxB.fa.justMinimize();
+        }
         AxB.fa.convertNFAtoDFA();
         return AxB;
     }
 
+    /**
+     * Product of all the components in a single pass, minimized once at the end.
+     * With and, a word is accepted if every component accepts it; otherwise, if some component does, with missing
+     * transitions going to a virtual non-accepting sink.
+     */
+    public static AutomatonDFA crossProductAllAndMinimize(List<Automaton> components, boolean and) {
+        long timeBefore = System.currentTimeMillis();
+        FA[] dfas = new FA[components.size()];
+        List<Automaton> labelled = new ArrayList<>();
+        for (int c = 0; c < dfas.length; c++) {
+            AutomatonDFA A = components.get(c).asDFA();
+            A.fa.convertNFAtoDFA();
+            dfas[c] = A.fa;
+            labelled.add(A);
+        }
+        if (Logging.shouldPrintDetails()) {
+            StringBuilder sizes = new StringBuilder();
+            for (FA dfa : dfas) {
+                sizes.append(sizes.length() == 0 ? ":" : " - ").append(dfa.getQ()).append(" states");
+            }
+            Logging.logMessage(COMPUTING + " cross product" + sizes);
+        }
+        AutomatonDFA joint = new AutomatonDFA();
+        Automaton product = labelled.get(0);
+        for (int c = 1; c < labelled.size(); c++) {
+            Automaton AxB = c == labelled.size() - 1 ? joint : new Automaton();
+            labelAxB(product, labelled.get(c), AxB);
+            product = AxB;
+        }
+        TrackLayout layout = SymbolicDFA.autoLayout(joint.richAlphabet.getA(), joint.getAlphabetSize());
+        if (layout != null) {
+            String op = and ? LogicalOperator.AND : LogicalOperator.OR;
+            symbolicProduct(labelled, joint, layout, (a, b) -> determineOutput(a, b, op, 0), !and, timeBefore);
+        } else {
+            joint = new AutomatonDFA();
+            int[][] inputs = jointInputs(labelled, joint);
+            NaryProduct.build(dfas, inputs, and, joint.fa, timeBefore);
+            joint.fa.justMinimize();
+        }
+        joint.fa.convertNFAtoDFA();
+        return joint;
+    }
+
+    /**
+     * Product of DFAs with MTBDD-labelled transitions over the tracks of joint, which already has the labels and
+     * alphabet of the product. The components are combined left to right and minimized after each step, so the
+     * explicit alphabet is only enumerated for the minimal result.
+     */
+    private static void symbolicProduct(List<Automaton> components, Automaton joint, TrackLayout layout,
+                                        IntBinaryOperator output, boolean implicitSink, long timeBefore) {
+        MTBDD bdd = new MTBDD();
+        SymbolicDFA product = null;
+        for (Automaton C : components) {
+            int[] tracks = new int[C.getLabel().size()];
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i] = joint.getLabel().indexOf(C.getLabel().get(i));
+            }
+            SymbolicDFA dfa = SymbolicDFA.fromFA(
+                C.fa, IntSet.of(C.fa.getQ0()), layout, layout.select(tracks), bdd);
+            product = product == null ? dfa : product.product(dfa, output, implicitSink).minimize();
+        }
+        FA result = product.toFA();
+        joint.fa.setFields(result.getQ(), result.getO(), result.getT());
+        joint.fa.setQ0(result.getQ0());
+        joint.fa.setCanonized(false);
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage(
+            COMPUTED + " symbolic cross product:" + joint.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+    }
+
+    /**
+     * Set up joint with the labels, number systems and alphabet of the cross product of all the components,
+     * as repeated crossProduct calls would, but without building any states.
+     *
+     * @return for each input of joint, the input read by each component, or null for inputs on which the
+     * components disagree
+     */
+    public static int[][] jointInputs(List<Automaton> components, Automaton joint) {
+        Automaton product = components.get(0);
+        int[][] inputs = new int[product.getAlphabetSize()][];
+        for (int in = 0; in < inputs.length; in++) {
+            inputs[in] = new int[]{in};
+        }
+        for (int c = 1; c < components.size(); c++) {
+            Automaton B = components.get(c);
+            Automaton AxB = c == components.size() - 1 ? joint : new Automaton();
+            int[] allInputsOfAxB = createBasicAutomaton(product, B, AxB);
+            int[][] jointInputs = new int[AxB.getAlphabetSize()][];
+            for (int a = 0; a < inputs.length; a++) {
+                for (int b = 0; b < B.getAlphabetSize(); b++) {
+                    int z = allInputsOfAxB[a * B.getAlphabetSize() + b];
+                    if (z != -1 && inputs[a] != null) {
+                        jointInputs[z] = Arrays.copyOf(inputs[a], c + 1);
+                        jointInputs[z][c] = b;
+                    }
+                }
+            }
+            product = AxB;
+            inputs = jointInputs;
+        }
+        return inputs;
+    }
+
     private static void printAndUpdateIndex(int aQ, int bQ) {
         if (Logging.shouldPrintDetails()) {
             //FA.IncrementIndex();
@@ -245,6 +506,17 @@ public class ProductStrategies {
 
     private static int[] createBasicAutomaton(
             Automaton A, Automaton B, Automaton AxB) {
+        int[] sameInputsInAAndB = labelAxB(A, B, AxB);
+        return computeAllInputsOfAxB(A.getAlphabetSize(), A.richAlphabet, B.getAlphabetSize(), B.richAlphabet,
+            AxB.richAlphabet, sameInputsInAAndB);
+    }
+
+    /**
+     * Give AxB the labels, number systems and alphabet of the cross product of A and B.
+     *
+     * @return for each input of B, the input of A with the same label, or NOT_SAME_INPUT_IN_BOTH
+     */
+    private static int[] labelAxB(Automaton A, Automaton B, Automaton AxB) {
         if (A.fa.isTRUE_FALSE_AUTOMATON() || B.fa.isTRUE_FALSE_AUTOMATON()) {
             throw new WalnutException("Invalid use of the crossProduct method: " +
                     "the automata for this method cannot be true or false automata.");
@@ -261,9 +533,7 @@ public class ProductStrategies {
 
         int[] sameInputsInAAndB = computeSameInputs(aLabel, aA, bLabel, bA);
         updateAxBFields(aLabel, aA, A.getNS(), bLabel, bA, B.getNS(), AxB, sameInputsInAAndB);
-
-        return computeAllInputsOfAxB(A.getAlphabetSize(), A.richAlphabet, B.getAlphabetSize(), B.richAlphabet,
-            AxB.richAlphabet, sameInputsInAAndB);
+        return sameInputsInAAndB;
     }
 
     /*
@@ -317,15 +587,9 @@ public class ProductStrategies {
     private static int[] computeAllInputsOfAxB(
         int aAlphSize, RichAlphabet aRichAlphabet, int bAlphSize, RichAlphabet bRichAlphabet,
         RichAlphabet AxBRichAlphabet, int[] sameInputsInMAndThis) {
-        int[] allInputsOfN = new int[aAlphSize * bAlphSize];
-        int idx = 0;
-        for (int i = 0; i < aAlphSize; i++) {
-            List<Integer> aDecodeI = aRichAlphabet.decode(i);
-            for (int j = 0; j < bAlphSize; j++) {
-                List<Integer> inputForN = joinTwoInputsForCrossProduct(
-                    aDecodeI, bRichAlphabet.decode(j), sameInputsInMAndThis);
-                allInputsOfN[idx++] = inputForN == null ? -1 : AxBRichAlphabet.encode(inputForN);
-            }
+        int[] allInputsOfN = RichAlphabet.joinMap(aRichAlphabet, bRichAlphabet, sameInputsInMAndThis, AxBRichAlphabet);
+        if (allInputsOfN.length != (long) aAlphSize * bAlphSize) {
+            throw new WalnutException("Alphabet sizes don't match the rich alphabets in cross product.");
         }
         return allInputsOfN;
     }
@@ -334,6 +598,7 @@ public class ProductStrategies {
      * Join inputs for cross product.
      * Add all of first, then nonequal ones of second...
      * unless there's a nonequal element that shouldn't be there.
+     * RichAlphabet.joinMap does the same on encoded inputs.
      * See unit tests for examples.
      */
     static List<Integer> joinTwoInputsForCrossProduct(
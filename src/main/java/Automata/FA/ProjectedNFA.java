@@ -0,0 +1,183 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+import java.util.Arrays;
+
+/**
+ * The existential projection of an FA, read directly from its transitions:
+ * a transition on input in is taken as a transition on symbolMap[in], so the projected NFA is never built.
+ * The leading and trailing zero fixes that follow quantification are folded in:
+ * like fixLeadingZerosProblem, the initial state loops on the projected zero and the initial states are closed under
+ * it, and a state accepts if it reaches an accepting state on projected zeros.
+ * States that can't reach an accepting state are left out.
+ */
+final class ProjectedNFA {
+  final int Q;
+  private final Transitions t;
+  private final int[] symbolMap;
+  private final boolean[] accepting;
+  private final boolean[] live;
+  private final int[] initial;
+  private final int q0;
+  private final int leadingZero;
+
+  /**
+   * @param symbolMap    - projected input of each input of fa
+   * @param leadingZero  - projected zero whose leading occurrences are ignored, or -1
+   * @param trailingZero - projected zero whose trailing occurrences are ignored, or -1
+   */
+  ProjectedNFA(FA fa, int[] symbolMap, int leadingZero, int trailingZero) {
+    this.Q = fa.getQ();
+    this.t = fa.getT();
+    this.symbolMap = symbolMap;
+
+    boolean[] acc = new boolean[Q];
+    for (int q = 0; q < Q; q++) {
+      acc[q] = fa.isAccepting(q);
+    }
+    int[][] reverse = reverseEdges();
+    this.accepting = trailingZero >= 0 ? backwardClosure(reverse, acc, trailingZero) : acc;
+    this.live = backwardClosure(reverse, accepting, -1);
+
+    this.q0 = fa.getQ0();
+    this.leadingZero = leadingZero;
+    IntArrayList states = new IntArrayList();
+    states.add(q0);
+    if (leadingZero >= 0) {
+      // everything reachable on zeros, so that leading zeros can be dropped
+      boolean[] seen = new boolean[Q];
+      seen[q0] = true;
+      for (int i = 0; i < states.size(); i++) {
+        t.forEachTransition(states.getInt(i), (in, dest) -> {
+          if (symbolMap[in] == leadingZero && !seen[dest]) {
+            seen[dest] = true;
+            states.add(dest);
+          }
+        });
+      }
+    }
+    states.removeIf(q -> !live[q]);
+    this.initial = states.toIntArray();
+    Arrays.sort(initial);
+  }
+
+  /**
+   * Initial states, sorted.
+   */
+  int[] initialStates() {
+    return initial;
+  }
+
+  boolean isAccepting(int q) {
+    return accepting[q];
+  }
+
+  /**
+   * Whether q can reach an accepting state.
+   */
+  boolean isLive(int q) {
+    return live[q];
+  }
+
+  /**
+   * Replace the outputs and transitions of fa, which this was read from, by the projection itself.
+   *
+   * @return the initial states
+   */
+  IntSet buildInto(FA fa) {
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(Q);
+    IntList O = new IntArrayList(Q);
+    for (int q = 0; q < Q; q++) {
+      builder.startState();
+      O.add(accepting[q] ? 1 : 0);
+      forEachTransition(q, builder::addTransition);
+    }
+    fa.setFields(Q, O, builder.build());
+    fa.setQ0(q0);
+    return new IntOpenHashSet(initial);
+  }
+
+  /**
+   * Visit the projected transitions leaving q that go to live states.
+   */
+  void forEachTransition(int q, Transitions.TransitionConsumer consumer) {
+    t.forEachTransition(q, (in, dest) -> {
+      if (live[dest]) {
+        consumer.accept(symbolMap[in], dest);
+      }
+    });
+    if (q == q0 && leadingZero >= 0) {
+      consumer.accept(leadingZero, q0);
+    }
+  }
+
+  /**
+   * Sources of the transitions into each state, with their projected inputs: reverse[0] holds the offsets,
+   * indexed by destination, into reverse[1] (sources) and reverse[2] (inputs).
+   */
+  private int[][] reverseEdges() {
+    int[] start = new int[Q + 1];
+    for (int q = 0; q < Q; q++) {
+      t.forEachTransition(q, (in, dest) -> start[dest + 1]++);
+    }
+    for (int q = 0; q < Q; q++) {
+      start[q + 1] += start[q];
+    }
+    int[] next = Arrays.copyOf(start, Q);
+    int[] sources = new int[start[Q]];
+    int[] inputs = new int[start[Q]];
+    for (int q = 0; q < Q; q++) {
+      int src = q;
+      t.forEachTransition(q, (in, dest) -> {
+        sources[next[dest]] = src;
+        inputs[next[dest]++] = symbolMap[in];
+      });
+    }
+    return new int[][]{start, sources, inputs};
+  }
+
+  /**
+   * States that reach a marked state, using only edges on the given projected input, or all edges if it's -1.
+   */
+  private static boolean[] backwardClosure(int[][] reverse, boolean[] marked, int input) {
+    int[] start = reverse[0], sources = reverse[1], inputs = reverse[2];
+    boolean[] result = marked.clone();
+    IntArrayList queue = new IntArrayList();
+    for (int q = 0; q < result.length; q++) {
+      if (result[q]) {
+        queue.add(q);
+      }
+    }
+    for (int i = 0; i < queue.size(); i++) {
+      int q = queue.getInt(i);
+      for (int e = start[q]; e < start[q + 1]; e++) {
+        if ((input < 0 || inputs[e] == input) && !result[sources[e]]) {
+          result[sources[e]] = true;
+          queue.add(sources[e]);
+        }
+      }
+    }
+    return result;
+  }
+}
@@ -0,0 +1,92 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Budget;
+import Main.Logging;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+
+/**
+ * Subset construction of an existential projection, read directly from the source transitions through a
+ * ProjectedNFA, which also folds in the leading and trailing zero fixes that follow quantification.
+ * Projections of at least Bisimulation.THRESHOLD states are built instead, and reduced by bisimulation before SC.
+ */
+final class ProjectedSubsetConstruction {
+  private ProjectedSubsetConstruction() {
+  }
+
+  /**
+   * See ProjectedNFA for the arguments.
+   */
+  static void determinize(FA fa, int[] symbolMap, int leadingZero, int trailingZero) {
+    long timeBefore = System.currentTimeMillis();
+    ProjectedNFA nfa = new ProjectedNFA(fa, symbolMap, leadingZero, trailingZero);
+    if (nfa.Q >= Bisimulation.THRESHOLD) {
+      IntSet initial = Bisimulation.reduce(fa, nfa.buildInto(fa));
+      DeterminizationStrategies.SC(fa, initial);
+      return;
+    }
+    int Q = nfa.Q;
+
+    MetastateArena metastates = new MetastateArena(Q);
+    int[] initialStates = nfa.initialStates();
+    metastates.intern(initialStates, initialStates.length);
+    int[] current = new int[Math.max(Q, 1)];
+    SuccessorBuckets successors = new SuccessorBuckets(fa.getAlphabetSize());
+    Transitions.TransitionConsumer add = successors::add;
+
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(fa.getAlphabetSize(), Q);
+    IntList newO = new IntArrayList();
+    int currentState = 0;
+
+    while (currentState < metastates.size()) {
+      if (Logging.shouldPrintDetails()) {
+        int statesSoFar = currentState + 1;
+        long timeAfter = System.currentTimeMillis();
+        Logging.logMessage(statesSoFar == 1e2 || statesSoFar == 1e3 || statesSoFar % 1e4 == 0,
+            "  Progress: Added " + statesSoFar + " states - "
+                + (metastates.size() - statesSoFar) + " states left in queue - "
+                + metastates.size() + " reachable states - " + (timeAfter - timeBefore) + "ms");
+      }
+
+      Budget.check("subset construction", metastates.size(), builder.getTransitionCount());
+      int n = metastates.load(currentState, current);
+      boolean accepts = false;
+      for (int i = 0; i < n; i++) {
+        int q = current[i];
+        accepts |= nfa.isAccepting(q);
+        nfa.forEachTransition(q, add);
+      }
+      newO.add(accepts ? 1 : 0);
+
+      builder.startState();
+      successors.sort();
+      for (int k = 0; k < successors.inputCount(); k++) {
+        int in = successors.input(k);
+        int size = successors.sortedDistinct(in);
+        builder.addTransition(in, metastates.intern(successors.bucket(in), size));
+      }
+      successors.clear();
+      currentState++;
+    }
+    fa.setFields(metastates.size(), newO, builder.build());
+    fa.setQ0(0);
+  }
+}
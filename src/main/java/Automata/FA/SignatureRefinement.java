@@ -0,0 +1,170 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import java.util.Arrays;
+
+/**
+ * Moore-style partition refinement of a (partial) DFA or an NFA, given as rows of transitions.
+ * In each round, a state's signature is its block together with the set of (input, destination block) pairs of its
+ * transitions, and blocks are split by signature, until no block splits. For NFAs this computes the coarsest
+ * bisimulation.
+ * Since the initial partition is arbitrary, outputs other than 0/1 are supported, and states can be kept apart.
+ */
+final class SignatureRefinement {
+  private static final int EMPTY = -1;
+
+  private SignatureRefinement() {
+  }
+
+  /**
+   * @param n - number of states
+   * @param rowStart - the transitions of q are at indices rowStart[q] to rowStart[q + 1] - 1, in increasing input order
+   * @param initial - initial block of each state, in 0..n-1; states in different blocks are never merged
+   * @param block - filled with the final block of each state; blocks are numbered in order of their first state
+   * @return the number of blocks
+   */
+  static int refine(int n, int[] rowStart, int[] inputs, int[] dests, int[] initial, int[] block) {
+    int[] current = new int[n];
+    int count = renumber(n, initial, current);
+    long[] keys = new long[rowStart[n]];
+    int[] table = newTable(n);
+    while (true) {
+      // inputs are distinct and increasing, so keys are too
+      for (int i = 0; i < keys.length; i++) {
+        keys[i] = key(inputs[i], current[dests[i]]);
+      }
+      int newCount = split(n, rowStart, keys, current, block, table);
+      if (newCount == count) {
+        return count;
+      }
+      count = newCount;
+      System.arraycopy(block, 0, current, 0, n);
+    }
+  }
+
+  /**
+   * Coarsest bisimulation of an NFA that refines the initial partition.
+   * @param n - number of states
+   * @param initial - initial block of each state, in 0..n-1
+   * @param block - filled with the final block of each state; blocks are numbered in order of their first state
+   * @return the number of blocks
+   */
+  static int refine(int n, TransitionsCompactNFA d, int[] initial, int[] block) {
+    int[] current = new int[n];
+    int count = renumber(n, initial, current);
+    int[] keyStart = new int[n + 1];
+    long[] keys = new long[d.getDests().length];
+    int[] table = newTable(n);
+    while (true) {
+      int size = 0;
+      for (int q = 0; q < n; q++) {
+        int start = size;
+        for (int r = d.getRowStart(q); r < d.getRowEnd(q); r++) {
+          for (int j = d.getRunStart(r); j < d.getRunEnd(r); j++) {
+            keys[size++] = key(d.getRunSymbol(r), current[d.getDest(j)]);
+          }
+        }
+        // several destinations can fall in one block
+        Arrays.sort(keys, start, size);
+        int distinct = start;
+        for (int i = start; i < size; i++) {
+          if (i == start || keys[i] != keys[distinct - 1]) {
+            keys[distinct++] = keys[i];
+          }
+        }
+        size = distinct;
+        keyStart[q + 1] = size;
+      }
+      int newCount = split(n, keyStart, keys, current, block, table);
+      if (newCount == count) {
+        return count;
+      }
+      count = newCount;
+      System.arraycopy(block, 0, current, 0, n);
+    }
+  }
+
+  private static long key(int input, int destBlock) {
+    return ((long) input << 32) | destBlock;
+  }
+
+  private static int[] newTable(int n) {
+    return new int[Integer.highestOneBit(Math.max(2 * n, 2) - 1) << 1];
+  }
+
+  /**
+   * Split blocks by signature.
+   * Signatures include the current block, so blocks only split, and the number of blocks shows whether any did.
+   * @return the number of blocks after splitting
+   */
+  private static int split(int n, int[] keyStart, long[] keys, int[] current, int[] block, int[] table) {
+    int mask = table.length - 1;
+    Arrays.fill(table, EMPTY);
+    int count = 0;
+    for (int q = 0; q < n; q++) {
+      int slot = (int) hash(q, keyStart, keys, current) & mask;
+      while (true) {
+        int representative = table[slot];
+        if (representative == EMPTY) {
+          table[slot] = q;
+          block[q] = count++;
+          break;
+        }
+        if (sameSignature(q, representative, keyStart, keys, current)) {
+          block[q] = block[representative];
+          break;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Number blocks in order of their first state.
+   */
+  private static int renumber(int n, int[] blocks, int[] out) {
+    int[] newId = new int[n];
+    Arrays.fill(newId, EMPTY);
+    int count = 0;
+    for (int q = 0; q < n; q++) {
+      if (newId[blocks[q]] == EMPTY) {
+        newId[blocks[q]] = count++;
+      }
+      out[q] = newId[blocks[q]];
+    }
+    return count;
+  }
+
+  private static long hash(int q, int[] keyStart, long[] keys, int[] block) {
+    long h = block[q] * 0x9E3779B97F4A7C15L;
+    for (int i = keyStart[q]; i < keyStart[q + 1]; i++) {
+      h = (h ^ keys[i]) * 0xBF58476D1CE4E5B9L;
+      h ^= h >>> 29;
+    }
+    return h ^ (h >>> 31);
+  }
+
+  private static boolean sameSignature(int p, int q, int[] keyStart, long[] keys, int[] block) {
+    if (block[p] != block[q] || keyStart[p + 1] - keyStart[p] != keyStart[q + 1] - keyStart[q]) {
+      return false;
+    }
+    return Arrays.equals(keys, keyStart[p], keyStart[p + 1], keys, keyStart[q], keyStart[q + 1]);
+  }
+}
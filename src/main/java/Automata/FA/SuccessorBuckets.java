@@ -0,0 +1,96 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.Arrays;
+
+/**
+ * Successors of one metastate, grouped by input, in buffers that are reused for every metastate.
+ */
+final class SuccessorBuckets {
+  private final int[][] buckets;
+  private final int[] sizes;
+  private final IntArrayList inputs = new IntArrayList();
+
+  SuccessorBuckets(int alphabetSize) {
+    buckets = new int[alphabetSize][];
+    sizes = new int[alphabetSize];
+  }
+
+  void add(int in, int dest) {
+    int size = sizes[in];
+    if (size == 0) {
+      inputs.add(in);
+      if (buckets[in] == null) {
+        buckets[in] = new int[4];
+      }
+    } else if (size == buckets[in].length) {
+      buckets[in] = Arrays.copyOf(buckets[in], 2 * size);
+    }
+    buckets[in][size] = dest;
+    sizes[in] = size + 1;
+  }
+
+  /**
+   * Inputs with at least one successor, in increasing order. Call sort() first.
+   */
+  int inputCount() {
+    return inputs.size();
+  }
+
+  int input(int k) {
+    return inputs.getInt(k);
+  }
+
+  void sort() {
+    inputs.sort(null);
+  }
+
+  /**
+   * Sort and deduplicate the successors on the given input; they're the first n values of bucket(in).
+   */
+  int sortedDistinct(int in) {
+    int n = sizes[in];
+    if (n == 0) {
+      return 0;
+    }
+    int[] values = buckets[in];
+    Arrays.sort(values, 0, n);
+    int size = 0;
+    for (int i = 0; i < n; i++) {
+      if (size == 0 || values[i] != values[size - 1]) {
+        values[size++] = values[i];
+      }
+    }
+    sizes[in] = size;
+    return size;
+  }
+
+  int[] bucket(int in) {
+    return buckets[in];
+  }
+
+  void clear() {
+    for (int k = 0; k < inputs.size(); k++) {
+      sizes[inputs.getInt(k)] = 0;
+    }
+    inputs.clear();
+  }
+}
@@ -0,0 +1,149 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.Logging;
+import Main.Session;
+
+import java.nio.file.Path;
+
+/**
+ * Chooses where large DFA transition tables are stored, set by the [storage ...] metacommand.
+ * HEAP keeps packed int arrays; OFFHEAP uses direct memory; MAPPED uses a memory-mapped file in the
+ * session scratch directory. AUTO stays on heap and spills to a mapped file above autoThreshold transitions.
+ */
+public final class TransitionStorage {
+  public enum Mode {
+    HEAP, OFFHEAP, MAPPED, AUTO;
+
+    public static Mode fromString(String name) {
+      for (Mode mode : values()) {
+        if (mode.name().equalsIgnoreCase(name)) {
+          return mode;
+        }
+      }
+      throw new IllegalArgumentException("No storage mode found for: " + name);
+    }
+  }
+
+  public static final Mode DEFAULT_MODE = Mode.AUTO;
+  // 2^27 transitions take about 1GB as packed int arrays
+  static long autoThreshold = 1L << 27;
+
+  private static Mode mode = DEFAULT_MODE;
+
+  private TransitionStorage() {
+  }
+
+  public static Mode getMode() {
+    return mode;
+  }
+
+  public static void setMode(Mode mode) {
+    TransitionStorage.mode = mode;
+  }
+
+  private static Path scratchDir() {
+    return Path.of(Session.getAddressForScratch());
+  }
+
+  /**
+   * Builder for DFA transitions produced one state at a time, in the current storage mode.
+   */
+  public static DfaBuilder dfaBuilder(int alphabetSize, int expectedStates) {
+    return new DfaBuilder(alphabetSize, expectedStates);
+  }
+
+  /**
+   * Store edges given in arbitrary order, in the current storage mode.
+   */
+  static Transitions fromEdges(int stateCount, int alphabetSize, int[] src, int[] in, int[] dest, int count) {
+    return switch (mode) {
+      case HEAP -> TransitionsPackedDFA.fromEdges(stateCount, alphabetSize, src, in, dest, count);
+      case OFFHEAP -> TransitionsOffHeapDFA.fromEdges(stateCount, src, in, dest, count, null);
+      case MAPPED -> TransitionsOffHeapDFA.fromEdges(stateCount, src, in, dest, count, scratchDir());
+      case AUTO -> count < autoThreshold
+          ? TransitionsPackedDFA.fromEdges(stateCount, alphabetSize, src, in, dest, count)
+          : TransitionsOffHeapDFA.fromEdges(stateCount, src, in, dest, count, scratchDir());
+    };
+  }
+
+  /**
+   * Same interface as the packed and off-heap builders. In AUTO mode, rows are packed on heap until
+   * autoThreshold transitions, then moved to a mapped file at the next state boundary.
+   */
+  public static class DfaBuilder {
+    private final int expectedStates;
+    private TransitionsPackedDFA.Builder heap;
+    private TransitionsOffHeapDFA.Builder offHeap;
+
+    private DfaBuilder(int alphabetSize, int expectedStates) {
+      this.expectedStates = expectedStates;
+      switch (mode) {
+        case OFFHEAP -> offHeap = new TransitionsOffHeapDFA.Builder(expectedStates, 2L * expectedStates, null);
+        case MAPPED -> offHeap = new TransitionsOffHeapDFA.Builder(expectedStates, 2L * expectedStates, scratchDir());
+        default -> heap = new TransitionsPackedDFA.Builder(alphabetSize, expectedStates);
+      }
+    }
+
+    public void startState() {
+      if (heap != null) {
+        if (mode == Mode.AUTO && heap.getTransitionCount() >= autoThreshold) {
+          spill();
+          offHeap.startState();
+        } else {
+          heap.startState();
+        }
+      } else {
+        offHeap.startState();
+      }
+    }
+
+    public void addTransition(int in, int dest) {
+      if (heap != null) {
+        heap.addTransition(in, dest);
+      } else {
+        offHeap.addTransition(in, dest);
+      }
+    }
+
+    public int getStateCount() {
+      return heap != null ? heap.getStateCount() : offHeap.getStateCount();
+    }
+
+    public long getTransitionCount() {
+      return heap != null ? heap.getTransitionCount() : offHeap.getTransitionCount();
+    }
+
+    private void spill() {
+      TransitionsPackedDFA packed = heap.build();
+      heap = null;
+      Logging.logMessage("  Moving " + packed.determineTransitionCount() + " transitions to a memory-mapped file.");
+      offHeap = new TransitionsOffHeapDFA.Builder(
+          Math.max(expectedStates, packed.getDfaStateCount()), 2 * packed.determineTransitionCount(), scratchDir());
+      for (int q = 0; q < packed.getDfaStateCount(); q++) {
+        offHeap.startState();
+        packed.forEachTransition(q, offHeap::addTransition);
+      }
+    }
+
+    public Transitions build() {
+      return heap != null ? heap.build() : offHeap.build();
+    }
+  }
+}
@@ -37,6 +37,36 @@ import java.util.Set;
  * our program, so for more information on how we compute it read the information on List<Integer> encoder field.
  */
 public interface Transitions {
+  /**
+   * Returned by findDest when there is no transition.
+   */
+  int NO_DEST = -1;
+
+  /**
+   * Receives one transition (input, destination) at a time.
+   */
+  @FunctionalInterface
+  interface TransitionConsumer {
+    void accept(int in, int dest);
+  }
+
+  /**
+   * Visit every transition leaving q, in increasing input order, without building any collections.
+   * An NFA calls the consumer once per destination.
+   */
+  void forEachTransition(int q, TransitionConsumer consumer);
+
+  /**
+   * Return the (first) destination from q on in, or NO_DEST. Does not allocate.
+   */
+  int findDest(int q, int in);
+
+  /**
+   * Return a table with the same transitions that can be modified independently of this one.
+   * Immutable tables return themselves; map-based tables share rows and copy each one on its first write.
+   */
+  Transitions snapshot();
+
   /**
    * Return an NFA-shaped transition table.  DFA implementations may return a converted view/copy.
    */
@@ -44,8 +74,14 @@ public interface Transitions {
 
   Int2ObjectRBTreeMap<IntList> getNfaState(int q);
   IntSortedSet getNfaStateKeySet(int q);
+  /**
+   * Read-only: the list may be shared with a snapshot, so copy it before modifying it.
+   */
   IntList getNfaStateDests(int q, int in);
 
+  /**
+   * Read-only view of the transitions leaving state; the destination lists may be shared with a snapshot.
+   */
   Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state);
 
   void setNfaD(List<Int2ObjectRBTreeMap<IntList>> nfaD);
@@ -0,0 +1,404 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable NFA transitions for finished NFAs.
+ * State q owns the runs [rowStart[q], rowStart[q+1]), sorted by runSymbol. Run r goes to the states
+ * dests[runStart[r], runStart[r+1]), without duplicates and in insertion order.
+ * Use FA.ensureNfaTransitions before mutating.
+ */
+public class TransitionsCompactNFA implements Transitions {
+  private final int stateCount;
+  private final int[] rowStart;
+  private final int[] runSymbol;
+  private final int[] runStart;
+  private final int[] dests;
+
+  private TransitionsCompactNFA(int stateCount, int[] rowStart, int[] runSymbol, int[] runStart, int[] dests) {
+    this.stateCount = stateCount;
+    this.rowStart = rowStart;
+    this.runSymbol = runSymbol;
+    this.runStart = runStart;
+    this.dests = dests;
+  }
+
+  /**
+   * Compact arbitrary transitions.
+   */
+  public static TransitionsCompactNFA from(Transitions transitions, int stateCount) {
+    if (transitions instanceof TransitionsCompactNFA compact) {
+      return compact;
+    }
+    Builder builder = new Builder(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      builder.startState();
+      for (Int2ObjectMap.Entry<IntList> entry : transitions.getEntriesNfaD(q)) {
+        builder.addTransitions(entry.getIntKey(), entry.getValue());
+      }
+    }
+    return builder.build();
+  }
+
+  public int getRowStart(int q) {
+    return rowStart[q];
+  }
+
+  public int getRowEnd(int q) {
+    return rowStart[q + 1];
+  }
+
+  public int getRunSymbol(int r) {
+    return runSymbol[r];
+  }
+
+  public int getRunStart(int r) {
+    return runStart[r];
+  }
+
+  public int getRunEnd(int r) {
+    return runStart[r + 1];
+  }
+
+  public int getDest(int i) {
+    return dests[i];
+  }
+
+  /**
+   * Return the shared destination array. Callers must not modify it.
+   */
+  int[] getDests() {
+    return dests;
+  }
+
+  /**
+   * Return the run of q on in, or -1.
+   */
+  public int findRun(int q, int in) {
+    int r = Arrays.binarySearch(runSymbol, rowStart[q], rowStart[q + 1], in);
+    return r < 0 ? -1 : r;
+  }
+
+  /**
+   * Return the reversed transitions: p goes to q on in exactly when q goes to p on in here.
+   */
+  public TransitionsCompactNFA reverse() {
+    // group edges by destination with a counting sort
+    int[] inStart = new int[stateCount + 1];
+    for (int dest : dests) {
+      inStart[dest + 1]++;
+    }
+    for (int q = 0; q < stateCount; q++) {
+      inStart[q + 1] += inStart[q];
+    }
+    int[] next = Arrays.copyOf(inStart, stateCount);
+    int[] inSymbol = new int[dests.length];
+    int[] inSource = new int[dests.length];
+    for (int q = 0; q < stateCount; q++) {
+      for (int r = rowStart[q]; r < rowStart[q + 1]; r++) {
+        for (int i = runStart[r]; i < runStart[r + 1]; i++) {
+          int j = next[dests[i]]++;
+          inSymbol[j] = runSymbol[r];
+          inSource[j] = q;
+        }
+      }
+    }
+    Builder builder = new Builder(stateCount);
+    for (int p = 0; p < stateCount; p++) {
+      builder.startState();
+      for (int j = inStart[p]; j < inStart[p + 1]; j++) {
+        builder.addTransition(inSymbol[j], inSource[j]);
+      }
+    }
+    return builder.build();
+  }
+
+  public void forEachTransition(int q, TransitionConsumer consumer) {
+    for (int r = rowStart[q]; r < rowStart[q + 1]; r++) {
+      for (int i = runStart[r]; i < runStart[r + 1]; i++) {
+        consumer.accept(runSymbol[r], dests[i]);
+      }
+    }
+  }
+
+  public int findDest(int q, int in) {
+    int r = findRun(q, in);
+    return r < 0 ? NO_DEST : dests[runStart[r]];
+  }
+
+  private IntList runDests(int r) {
+    return new IntArrayList(dests, runStart[r], runStart[r + 1] - runStart[r]);
+  }
+
+  public Transitions snapshot() {
+    return this; // immutable
+  }
+
+  public List<Int2ObjectRBTreeMap<IntList>> getNfaD() {
+    List<Int2ObjectRBTreeMap<IntList>> nfaD = new ArrayList<>(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      nfaD.add(getNfaState(q));
+    }
+    return nfaD;
+  }
+
+  public Int2ObjectRBTreeMap<IntList> getNfaState(int q) {
+    Int2ObjectRBTreeMap<IntList> nfaRow = new Int2ObjectRBTreeMap<>();
+    for (int r = rowStart[q]; r < rowStart[q + 1]; r++) {
+      nfaRow.put(runSymbol[r], runDests(r));
+    }
+    return nfaRow;
+  }
+
+  public IntSortedSet getNfaStateKeySet(int q) {
+    IntSortedSet keys = new IntRBTreeSet();
+    for (int r = rowStart[q]; r < rowStart[q + 1]; r++) {
+      keys.add(runSymbol[r]);
+    }
+    return keys;
+  }
+
+  public IntList getNfaStateDests(int q, int in) {
+    int r = findRun(q, in);
+    return r < 0 ? null : runDests(r);
+  }
+
+  public Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state) {
+    return getNfaState(state).int2ObjectEntrySet();
+  }
+
+  public void setNfaD(List<Int2ObjectRBTreeMap<IntList>> nfaD) {
+    throw new WalnutException("Cannot install NFA transitions on TransitionsCompactNFA; use FA.setNfaTransitions instead.");
+  }
+  public void addToNfaD(Int2ObjectRBTreeMap<IntList> entry) {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsCompactNFA; use FA.ensureNfaTransitions first.");
+  }
+  public Int2ObjectRBTreeMap<IntList> addMapToNfaD() {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsCompactNFA; use FA.ensureNfaTransitions first.");
+  }
+  public void setNfaDTransition(int src, int inp, IntList destStates) {
+    throw new WalnutException("Cannot mutate TransitionsCompactNFA; use FA.ensureNfaTransitions first.");
+  }
+  public void clearNfaD() {
+    throw new WalnutException("Cannot clear TransitionsCompactNFA; use FA.setNfaTransitions instead.");
+  }
+
+  public boolean hasDfaTransitions() {
+    return false;
+  }
+
+  public int getDfaStateCount() {
+    throw new WalnutException("DFA transition storage is not available.");
+  }
+
+  public IntSortedSet getDfaStateKeySet(int q) {
+    throw new WalnutException("DFA transition storage is not available.");
+  }
+
+  public int getDfaStateDest(int q, int in) {
+    throw new WalnutException("DFA transition storage is not available.");
+  }
+
+  public boolean hasDfaDTransition(int q, int in) {
+    throw new WalnutException("DFA transition storage is not available.");
+  }
+
+  public void setDfaDTransition(int q, int in, int dest) {
+    throw new WalnutException("DFA transition storage is not available.");
+  }
+
+  public void setDfaD(List<Int2IntMap> dfaD) {
+    throw new WalnutException("Cannot install DFA transitions on TransitionsCompactNFA; use FA.setDfaTransitions instead.");
+  }
+
+  public void addDfaState() {
+    throw new WalnutException("Cannot add DFA transitions to TransitionsCompactNFA; use FA.setDfaTransitions first.");
+  }
+
+  /**
+   * Already compact.
+   */
+  public void reduceMemory() {
+  }
+
+  public long determineTransitionCount() {
+    return dests.length;
+  }
+
+  public boolean isDeterministic() {
+    return dests.length == runSymbol.length;
+  }
+
+  @Override
+  public String toString() {
+    return "nfaD:" + getNfaD();
+  }
+
+  /**
+   * Builds compact transitions one state at a time, in state order.
+   * Transitions within a state may be added in any order; duplicates are dropped.
+   */
+  public static class Builder {
+    private int[] rowStart;
+    private int[] symbols;
+    private int[] targets;
+    private int stateCount;
+    private int size;
+
+    private int[] runSymbol;
+    private int[] runStart;
+    private int runCount;
+    private int[] dests;
+    private int destCount;
+    private final IntOpenHashSet seen = new IntOpenHashSet();
+    private static final int SMALL_RUN = 16; // runs up to this length are deduplicated by scanning
+
+    public Builder(int expectedStates) {
+      int capacity = Math.max(expectedStates, 1);
+      rowStart = new int[capacity + 1];
+      runSymbol = new int[capacity];
+      runStart = new int[capacity + 1];
+      dests = new int[capacity];
+      symbols = new int[16];
+      targets = new int[16];
+    }
+
+    /**
+     * Finish the current state and start state number getStateCount().
+     */
+    public void startState() {
+      finishState();
+      stateCount++;
+      if (stateCount + 1 > rowStart.length) {
+        rowStart = Arrays.copyOf(rowStart, grow(rowStart.length, stateCount + 1));
+      }
+    }
+
+    public void addTransition(int in, int dest) {
+      if (stateCount == 0) {
+        throw new WalnutException("Builder.startState must be called before adding transitions.");
+      }
+      if (size == symbols.length) {
+        int newLength = grow(size, size + 1);
+        symbols = Arrays.copyOf(symbols, newLength);
+        targets = Arrays.copyOf(targets, newLength);
+      }
+      symbols[size] = in;
+      targets[size] = dest;
+      size++;
+    }
+
+    public void addTransitions(int in, IntList destList) {
+      for (int i = 0; i < destList.size(); i++) {
+        addTransition(in, destList.getInt(i));
+      }
+    }
+
+    public int getStateCount() {
+      return stateCount;
+    }
+
+    /**
+     * Move the pending transitions of the current state into runs.
+     * The sort is stable, so destinations keep their insertion order.
+     */
+    private void finishState() {
+      if (stateCount == 0) {
+        return;
+      }
+      it.unimi.dsi.fastutil.Arrays.mergeSort(0, size,
+          (a, b) -> Integer.compare(symbols[a], symbols[b]),
+          (a, b) -> {
+            int s = symbols[a]; symbols[a] = symbols[b]; symbols[b] = s;
+            int d = targets[a]; targets[a] = targets[b]; targets[b] = d;
+          });
+      int i = 0;
+      while (i < size) {
+        int in = symbols[i];
+        if (runCount + 1 >= runStart.length) {
+          int newLength = grow(runStart.length, runCount + 2);
+          runSymbol = Arrays.copyOf(runSymbol, newLength);
+          runStart = Arrays.copyOf(runStart, newLength);
+        }
+        runSymbol[runCount] = in;
+        runStart[runCount] = destCount;
+        int end = i;
+        while (end < size && symbols[end] == in) {
+          end++;
+        }
+        if (destCount + (end - i) > dests.length) {
+          dests = Arrays.copyOf(dests, grow(dests.length, destCount + (end - i)));
+        }
+        boolean useSet = end - i > SMALL_RUN;
+        for (; i < end; i++) {
+          if (useSet ? seen.add(targets[i]) : !containsDest(runStart[runCount], targets[i])) {
+            dests[destCount++] = targets[i];
+          }
+        }
+        if (useSet) {
+          seen.clear();
+          seen.trim();
+        }
+        runCount++;
+      }
+      runStart[runCount] = destCount;
+      rowStart[stateCount] = runCount;
+      size = 0;
+    }
+
+    private boolean containsDest(int from, int dest) {
+      for (int j = from; j < destCount; j++) {
+        if (dests[j] == dest) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static int grow(int length, int minLength) {
+      long newLength = Math.max((long) minLength, length + (length >> 1) + 1L);
+      if (newLength > Integer.MAX_VALUE - 8) {
+        if (minLength > Integer.MAX_VALUE - 8) {
+          throw WalnutException.arrayOverflow("the number of transitions", minLength);
+        }
+        newLength = Integer.MAX_VALUE - 8;
+      }
+      return (int) newLength;
+    }
+
+    public TransitionsCompactNFA build() {
+      finishState();
+      TransitionsCompactNFA result = new TransitionsCompactNFA(
+          stateCount,
+          Arrays.copyOf(rowStart, stateCount + 1),
+          Arrays.copyOf(runSymbol, runCount),
+          Arrays.copyOf(runStart, runCount + 1),
+          Arrays.copyOf(dests, destCount));
+      rowStart = runSymbol = runStart = dests = symbols = targets = null; // the builder can't be reused
+      return result;
+    }
+  }
+}
@@ -21,11 +21,23 @@ import Main.WalnutException;
 import it.unimi.dsi.fastutil.ints.*;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Map-based DFA transitions. Like TransitionsNFA, snapshot() shares rows until either side writes to them.
+ */
 public class TransitionsDFA implements Transitions {
   private List<Int2IntMap> dfaD;
+  // dfaD may be referenced by a snapshot
+  private boolean shared;
+  // after copying a shared list, rows not yet copied are still shared; null when all rows are owned
+  private BitSet ownedRows;
+  // buffer for sorting a row's inputs, taken while a visit uses it, so nested or concurrent visits allocate their own
+  private final AtomicReference<int[]> scratch = new AtomicReference<>();
 
   public TransitionsDFA() {
     this(new ArrayList<>());
@@ -38,6 +50,32 @@ public class TransitionsDFA implements Transitions {
     this.dfaD = dfaD;
   }
 
+  public Transitions snapshot() {
+    shared = true;
+    TransitionsDFA copy = new TransitionsDFA(dfaD);
+    copy.shared = true;
+    return copy;
+  }
+
+  private void ownList() {
+    if (shared) {
+      dfaD = new ArrayList<>(dfaD);
+      shared = false;
+      ownedRows = new BitSet(dfaD.size());
+    }
+  }
+
+  private Int2IntMap ownRow(int q) {
+    ownList();
+    Int2IntMap row = dfaD.get(q);
+    if (ownedRows != null && !ownedRows.get(q)) {
+      row = new Int2IntOpenHashMap(row);
+      dfaD.set(q, row);
+      ownedRows.set(q);
+    }
+    return row;
+  }
+
   /**
    * Return this DFA as an NFA transition table.  The result is a copy, because mutating
    * an NFA view cannot safely update DFA storage.
@@ -66,6 +104,29 @@ public class TransitionsDFA implements Transitions {
     return result;
   }
 
+  public void forEachTransition(int q, TransitionConsumer consumer) {
+    Int2IntMap row = dfaD.get(q);
+    int n = row.size();
+    int[] inputs = scratch.getAndSet(null);
+    if (inputs == null || inputs.length < n) {
+      inputs = new int[Math.max(n, 16)];
+    }
+    int i = 0;
+    for (IntIterator it = row.keySet().iterator(); it.hasNext(); ) {
+      inputs[i++] = it.nextInt();
+    }
+    Arrays.sort(inputs, 0, n);
+    for (i = 0; i < n; i++) {
+      consumer.accept(inputs[i], row.get(inputs[i]));
+    }
+    scratch.set(inputs);
+  }
+
+  public int findDest(int q, int in) {
+    Int2IntMap row = dfaD.get(q);
+    return row.containsKey(in) ? row.get(in) : NO_DEST;
+  }
+
   public Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state) {
     return getNfaState(state).int2ObjectEntrySet();
   }
@@ -121,7 +182,7 @@ public class TransitionsDFA implements Transitions {
   }
 
   public void setDfaDTransition(int q, int in, int dest) {
-    dfaD.get(q).put(in, dest);
+    ownRow(q).put(in, dest);
   }
 
   public void setDfaD(List<Int2IntMap> dfaD) {
@@ -129,9 +190,15 @@ public class TransitionsDFA implements Transitions {
       throw new WalnutException("DFA transitions cannot be null.");
     }
     this.dfaD = dfaD;
+    shared = false;
+    ownedRows = null;
   }
 
   public void addDfaState() {
+    ownList();
+    if (ownedRows != null) {
+      ownedRows.set(dfaD.size());
+    }
     this.dfaD.add(new Int2IntOpenHashMap());
   }
 
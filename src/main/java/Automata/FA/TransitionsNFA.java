@@ -21,11 +21,20 @@ import Main.WalnutException;
 import it.unimi.dsi.fastutil.ints.*;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Set;
 
+/**
+ * Map-based NFA transitions. snapshot() shares the rows: both tables then copy the list on their first write,
+ * and a row on its first write, so reads never copy.
+ */
 public class TransitionsNFA implements Transitions {
   private List<Int2ObjectRBTreeMap<IntList>> nfaD;
+  // nfaD may be referenced by a snapshot
+  private boolean shared;
+  // after copying a shared list, rows not yet copied are still shared; null when all rows are owned
+  private BitSet ownedRows;
 
   public TransitionsNFA() {
     this(new ArrayList<>());
@@ -38,12 +47,55 @@ public class TransitionsNFA implements Transitions {
     this.nfaD = nfaD;
   }
 
+  public Transitions snapshot() {
+    shared = true;
+    TransitionsNFA copy = new TransitionsNFA(nfaD);
+    copy.shared = true;
+    return copy;
+  }
+
+  private void ownList() {
+    if (shared) {
+      nfaD = new ArrayList<>(nfaD);
+      shared = false;
+      ownedRows = new BitSet(nfaD.size());
+    }
+  }
+
+  private Int2ObjectRBTreeMap<IntList> ownRow(int q) {
+    ownList();
+    Int2ObjectRBTreeMap<IntList> row = nfaD.get(q);
+    if (ownedRows != null && !ownedRows.get(q)) {
+      Int2ObjectRBTreeMap<IntList> copy = new Int2ObjectRBTreeMap<>();
+      for (Int2ObjectMap.Entry<IntList> entry : row.int2ObjectEntrySet()) {
+        copy.put(entry.getIntKey(), new IntArrayList(entry.getValue()));
+      }
+      nfaD.set(q, copy);
+      ownedRows.set(q);
+      row = copy;
+    }
+    return row;
+  }
+
+  /**
+   * The returned list and its rows may be modified, so any shared rows are copied first.
+   */
   public List<Int2ObjectRBTreeMap<IntList>> getNfaD(){
+    ownList();
+    if (ownedRows != null) {
+      for (int q = 0; q < nfaD.size(); q++) {
+        ownRow(q);
+      }
+      ownedRows = null;
+    }
     return nfaD;
   }
 
+  /**
+   * The returned row may be modified, so it's copied first if shared. Use getEntriesNfaD to only read it.
+   */
   public Int2ObjectRBTreeMap<IntList> getNfaState(int q){
-    return nfaD.get(q);
+    return ownRow(q);
   }
   public IntSortedSet getNfaStateKeySet(int q){
     return nfaD.get(q).keySet();
@@ -52,6 +104,20 @@ public class TransitionsNFA implements Transitions {
     return nfaD.get(q).get(in);
   }
 
+  public void forEachTransition(int q, TransitionConsumer consumer) {
+    for (Int2ObjectMap.Entry<IntList> entry : nfaD.get(q).int2ObjectEntrySet()) {
+      IntList destList = entry.getValue();
+      for (int i = 0; i < destList.size(); i++) {
+        consumer.accept(entry.getIntKey(), destList.getInt(i));
+      }
+    }
+  }
+
+  public int findDest(int q, int in) {
+    IntList destList = nfaD.get(q).get(in);
+    return destList == null || destList.isEmpty() ? NO_DEST : destList.getInt(0);
+  }
+
   public Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state) {
     return nfaD.get(state).int2ObjectEntrySet();
   }
@@ -61,20 +127,32 @@ public class TransitionsNFA implements Transitions {
       throw new WalnutException("NFA transitions cannot be null.");
     }
     this.nfaD = nfaD;
+    shared = false;
+    ownedRows = null;
   }
   public void addToNfaD(Int2ObjectRBTreeMap<IntList> entry) {
+    ownList();
+    if (ownedRows != null) {
+      ownedRows.set(nfaD.size());
+    }
     nfaD.add(entry);
   }
   public Int2ObjectRBTreeMap<IntList> addMapToNfaD() {
     Int2ObjectRBTreeMap<IntList> entry = new Int2ObjectRBTreeMap<>();
-    nfaD.add(entry);
+    addToNfaD(entry);
     return entry;
   }
   public void setNfaDTransition(int src, int inp, IntList destStates) {
-    nfaD.get(src).put(inp, destStates);
+    ownRow(src).put(inp, destStates);
   }
   public void clearNfaD() {
-    this.nfaD.clear();
+    if (shared) {
+      nfaD = new ArrayList<>();
+      shared = false;
+    } else {
+      this.nfaD.clear();
+    }
+    ownedRows = null;
   }
 
   public boolean hasDfaTransitions() {
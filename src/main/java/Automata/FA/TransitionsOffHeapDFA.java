@@ -0,0 +1,329 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.*;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable DFA transitions in CSR form, stored outside the Java heap.
+ * The transitions of state q are symbols[rowStart[q]..rowStart[q+1]), sorted by symbol, with matching dests.
+ * The arrays are direct buffers, or mappings of a scratch file when a scratch directory is given,
+ * so the transition count isn't limited by heap size or Java array length.
+ * Use FA.ensureMutableDfaTransitions before mutating.
+ */
+public class TransitionsOffHeapDFA implements Transitions {
+  private final int stateCount;
+  private final long transitionCount;
+  private final OffHeapArray rowStart; // longs
+  private final OffHeapArray symbols; // ints
+  private final OffHeapArray dests; // ints
+
+  private TransitionsOffHeapDFA(int stateCount, long transitionCount,
+                                OffHeapArray rowStart, OffHeapArray symbols, OffHeapArray dests) {
+    this.stateCount = stateCount;
+    this.transitionCount = transitionCount;
+    this.rowStart = rowStart;
+    this.symbols = symbols;
+    this.dests = dests;
+  }
+
+  /**
+   * Copy arbitrary DFA transitions off-heap.
+   */
+  public static TransitionsOffHeapDFA from(Transitions transitions, Path scratchDir) {
+    if (transitions instanceof TransitionsOffHeapDFA offHeap) {
+      return offHeap;
+    }
+    Builder builder = new Builder(transitions.getDfaStateCount(), transitions.determineTransitionCount(), scratchDir);
+    for (int q = 0; q < transitions.getDfaStateCount(); q++) {
+      builder.startState();
+      transitions.forEachTransition(q, builder::addTransition);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Store edges given in arbitrary order, e.g. as produced by Valmari minimization.
+   * Only the first count entries of src/in/dest are read.
+   */
+  static TransitionsOffHeapDFA fromEdges(int stateCount, int[] src, int[] in, int[] dest, int count, Path scratchDir) {
+    OffHeapArray rowStart = OffHeapArray.longs(stateCount + 1L, scratchDir);
+    rowStart.ensureCapacity(stateCount + 1L);
+    int[] next = new int[stateCount + 1];
+    for (int t = 0; t < count; t++) {
+      next[src[t] + 1]++;
+    }
+    for (int q = 0; q < stateCount; q++) {
+      next[q + 1] += next[q];
+    }
+    for (int q = 0; q <= stateCount; q++) {
+      rowStart.setLong(q, next[q]);
+    }
+    OffHeapArray symbols = OffHeapArray.ints(count, scratchDir);
+    OffHeapArray dests = OffHeapArray.ints(count, scratchDir);
+    symbols.ensureCapacity(count);
+    dests.ensureCapacity(count);
+    for (int t = 0; t < count; t++) {
+      int i = next[src[t]]++;
+      symbols.setInt(i, in[t]);
+      dests.setInt(i, dest[t]);
+    }
+    next = null;
+    // rows are sorted on heap one at a time
+    IntArrayList rowSymbols = new IntArrayList();
+    IntArrayList rowDests = new IntArrayList();
+    for (int q = 0; q < stateCount; q++) {
+      long from = rowStart.getLong(q), to = rowStart.getLong(q + 1);
+      rowSymbols.clear();
+      rowDests.clear();
+      for (long i = from; i < to; i++) {
+        rowSymbols.add(symbols.getInt(i));
+        rowDests.add(dests.getInt(i));
+      }
+      TransitionsPackedDFA.sortRow(rowSymbols.elements(), rowDests.elements(), 0, rowSymbols.size());
+      for (int k = 0; k < rowSymbols.size(); k++) {
+        symbols.setInt(from + k, rowSymbols.getInt(k));
+        dests.setInt(from + k, rowDests.getInt(k));
+      }
+    }
+    return new TransitionsOffHeapDFA(stateCount, count, rowStart, symbols, dests);
+  }
+
+  public int findDest(int q, int in) {
+    long low = rowStart.getLong(q), high = rowStart.getLong(q + 1) - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int symbol = symbols.getInt(mid);
+      if (symbol < in) {
+        low = mid + 1;
+      } else if (symbol > in) {
+        high = mid - 1;
+      } else {
+        return dests.getInt(mid);
+      }
+    }
+    return NO_DEST;
+  }
+
+  public void forEachTransition(int q, TransitionConsumer consumer) {
+    for (long i = rowStart.getLong(q), end = rowStart.getLong(q + 1); i < end; i++) {
+      consumer.accept(symbols.getInt(i), dests.getInt(i));
+    }
+  }
+
+  public Transitions snapshot() {
+    return this; // immutable
+  }
+
+  public List<Int2ObjectRBTreeMap<IntList>> getNfaD() {
+    List<Int2ObjectRBTreeMap<IntList>> nfaD = new ArrayList<>(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      nfaD.add(getNfaState(q));
+    }
+    return nfaD;
+  }
+
+  public Int2ObjectRBTreeMap<IntList> getNfaState(int q) {
+    Int2ObjectRBTreeMap<IntList> nfaRow = new Int2ObjectRBTreeMap<>();
+    forEachTransition(q, (in, dest) -> nfaRow.put(in, IntArrayList.wrap(new int[]{dest})));
+    return nfaRow;
+  }
+
+  public IntSortedSet getNfaStateKeySet(int q) {
+    return getDfaStateKeySet(q);
+  }
+
+  public IntList getNfaStateDests(int q, int in) {
+    int dest = findDest(q, in);
+    return dest == NO_DEST ? null : IntArrayList.wrap(new int[]{dest});
+  }
+
+  public Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state) {
+    return getNfaState(state).int2ObjectEntrySet();
+  }
+
+  public void setNfaD(List<Int2ObjectRBTreeMap<IntList>> nfaD) {
+    throw new WalnutException("Cannot install NFA transitions on TransitionsOffHeapDFA; use FA.setNfaTransitions instead.");
+  }
+  public void addToNfaD(Int2ObjectRBTreeMap<IntList> entry) {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsOffHeapDFA; use FA.ensureNfaTransitions first.");
+  }
+  public Int2ObjectRBTreeMap<IntList> addMapToNfaD() {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsOffHeapDFA; use FA.ensureNfaTransitions first.");
+  }
+  public void setNfaDTransition(int src, int inp, IntList destStates) {
+    throw new WalnutException("Cannot mutate the NFA view of TransitionsOffHeapDFA; use FA.ensureNfaTransitions first.");
+  }
+  public void clearNfaD() {
+    throw new WalnutException("Cannot clear the NFA view of TransitionsOffHeapDFA; use FA.setNfaTransitions instead.");
+  }
+
+  public boolean hasDfaTransitions() {
+    return true;
+  }
+
+  public int getDfaStateCount() {
+    return stateCount;
+  }
+
+  public IntSortedSet getDfaStateKeySet(int q) {
+    IntSortedSet keys = new IntRBTreeSet();
+    for (long i = rowStart.getLong(q), end = rowStart.getLong(q + 1); i < end; i++) {
+      keys.add(symbols.getInt(i));
+    }
+    return keys;
+  }
+
+  public int getDfaStateDest(int q, int in) {
+    int dest = findDest(q, in);
+    if (dest == NO_DEST) {
+      throw new WalnutException("No DFA transition from state " + q + " on input " + in + ".");
+    }
+    return dest;
+  }
+
+  public boolean hasDfaDTransition(int q, int in) {
+    return findDest(q, in) != NO_DEST;
+  }
+
+  public void setDfaDTransition(int q, int in, int dest) {
+    throw new WalnutException("Cannot mutate TransitionsOffHeapDFA; use FA.ensureMutableDfaTransitions first.");
+  }
+
+  public void setDfaD(List<Int2IntMap> dfaD) {
+    throw new WalnutException("Cannot install DFA transitions on TransitionsOffHeapDFA; use FA.setDfaTransitions instead.");
+  }
+
+  public void addDfaState() {
+    throw new WalnutException("Cannot mutate TransitionsOffHeapDFA; use FA.ensureMutableDfaTransitions first.");
+  }
+
+  /**
+   * Already packed.
+   */
+  public void reduceMemory() {
+  }
+
+  public long determineTransitionCount() {
+    return transitionCount;
+  }
+
+  public boolean isDeterministic() {
+    return true;
+  }
+
+  /**
+   * Return a mutable map-based copy on the heap.
+   */
+  public List<Int2IntMap> toDfaD() {
+    List<Int2IntMap> dfaD = new ArrayList<>(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      Int2IntMap row = new Int2IntOpenHashMap();
+      forEachTransition(q, row::put);
+      dfaD.add(row);
+    }
+    return dfaD;
+  }
+
+  @Override
+  public String toString() {
+    List<Int2IntRBTreeMap> result = new ArrayList<>(stateCount);
+    for (Int2IntMap row : toDfaD()) {
+      result.add(new Int2IntRBTreeMap(row));
+    }
+    return "dfaD:" + result;
+  }
+
+  /**
+   * Builds off-heap transitions one state at a time, in state order.
+   * Transitions within a state may be added in any order; only the current row is kept on heap.
+   */
+  public static class Builder {
+    private final OffHeapArray rowStart;
+    private final OffHeapArray symbols;
+    private final OffHeapArray dests;
+    private final IntArrayList rowSymbols = new IntArrayList();
+    private final IntArrayList rowDests = new IntArrayList();
+    private int stateCount;
+    private long size;
+
+    /**
+     * @param scratchDir directory for the memory-mapped backing file, or null for direct memory
+     */
+    public Builder(int expectedStates, long expectedTransitions, Path scratchDir) {
+      this.rowStart = OffHeapArray.longs(Math.max(expectedStates, 1) + 1L, scratchDir);
+      this.symbols = OffHeapArray.ints(Math.max(expectedTransitions, 16L), scratchDir);
+      this.dests = OffHeapArray.ints(Math.max(expectedTransitions, 16L), scratchDir);
+      rowStart.ensureCapacity(1);
+      rowStart.setLong(0, 0);
+    }
+
+    /**
+     * Finish the current state and start state number getStateCount().
+     */
+    public void startState() {
+      finishState();
+      stateCount++;
+    }
+
+    public void addTransition(int in, int dest) {
+      if (stateCount == 0) {
+        throw new WalnutException("Builder.startState must be called before adding transitions.");
+      }
+      rowSymbols.add(in);
+      rowDests.add(dest);
+    }
+
+    public int getStateCount() {
+      return stateCount;
+    }
+
+    public long getTransitionCount() {
+      return size + rowSymbols.size();
+    }
+
+    private void finishState() {
+      if (stateCount == 0) {
+        return;
+      }
+      int rowSize = rowSymbols.size();
+      TransitionsPackedDFA.sortRow(rowSymbols.elements(), rowDests.elements(), 0, rowSize);
+      symbols.ensureCapacity(size + rowSize);
+      dests.ensureCapacity(size + rowSize);
+      for (int k = 0; k < rowSize; k++, size++) {
+        symbols.setInt(size, rowSymbols.getInt(k));
+        dests.setInt(size, rowDests.getInt(k));
+      }
+      rowSymbols.clear();
+      rowDests.clear();
+      rowStart.ensureCapacity(stateCount + 1L);
+      rowStart.setLong(stateCount, size);
+    }
+
+    public TransitionsOffHeapDFA build() {
+      finishState();
+      return new TransitionsOffHeapDFA(stateCount, size, rowStart, symbols, dests);
+    }
+  }
+}
@@ -0,0 +1,391 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.FA;
+
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Immutable DFA transitions packed into primitive arrays.
+ * Sparse automata use CSR form: the transitions of state q are symbols[rowStart[q]..rowStart[q+1]),
+ * sorted by symbol, with matching dests. Dense automata use a single table dests[q * alphabetSize + in],
+ * where NO_DEST marks a missing transition. The layout is picked by whichever uses fewer ints.
+ * Use FA.ensureMutableDfaTransitions before mutating.
+ */
+public class TransitionsPackedDFA implements Transitions {
+  private final int stateCount;
+  private final int alphabetSize;
+  private final long transitionCount;
+  private final int[] rowStart; // null in dense mode
+  private final int[] symbols; // null in dense mode
+  private final int[] dests;
+
+  private TransitionsPackedDFA(int stateCount, int alphabetSize, long transitionCount,
+                               int[] rowStart, int[] symbols, int[] dests) {
+    this.stateCount = stateCount;
+    this.alphabetSize = alphabetSize;
+    this.transitionCount = transitionCount;
+    this.rowStart = rowStart;
+    this.symbols = symbols;
+    this.dests = dests;
+  }
+
+  /**
+   * Pack arbitrary DFA transitions.
+   */
+  public static TransitionsPackedDFA from(Transitions transitions, int alphabetSize) {
+    if (transitions instanceof TransitionsPackedDFA packed) {
+      return packed;
+    }
+    Builder builder = new Builder(alphabetSize, transitions.getDfaStateCount());
+    for (int q = 0; q < transitions.getDfaStateCount(); q++) {
+      builder.startState();
+      for (int in : transitions.getDfaStateKeySet(q)) {
+        builder.addTransition(in, transitions.getDfaStateDest(q, in));
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Pack edges given in arbitrary order, e.g. as produced by Valmari minimization.
+   * Only the first count entries of src/in/dest are read.
+   */
+  static TransitionsPackedDFA fromEdges(int stateCount, int alphabetSize, int[] src, int[] in, int[] dest, int count) {
+    int[] rowStart = new int[stateCount + 1];
+    for (int t = 0; t < count; t++) {
+      rowStart[src[t] + 1]++;
+    }
+    for (int q = 0; q < stateCount; q++) {
+      rowStart[q + 1] += rowStart[q];
+    }
+    int[] next = java.util.Arrays.copyOf(rowStart, stateCount);
+    int[] symbols = new int[count];
+    int[] dests = new int[count];
+    for (int t = 0; t < count; t++) {
+      int i = next[src[t]]++;
+      symbols[i] = in[t];
+      dests[i] = dest[t];
+    }
+    for (int q = 0; q < stateCount; q++) {
+      sortRow(symbols, dests, rowStart[q], rowStart[q + 1]);
+    }
+    return pack(stateCount, alphabetSize, rowStart, symbols, dests, count);
+  }
+
+  private static TransitionsPackedDFA pack(
+      int stateCount, int alphabetSize, int[] rowStart, int[] symbols, int[] dests, int count) {
+    boolean inAlphabet = true;
+    for (int i = 0; i < count; i++) {
+      if (symbols[i] < 0 || symbols[i] >= alphabetSize) {
+        inAlphabet = false;
+        break;
+      }
+    }
+    long denseSize = (long) stateCount * alphabetSize;
+    // CSR costs two ints per transition plus the row offsets.
+    if (inAlphabet && denseSize <= Integer.MAX_VALUE && denseSize <= 2L * count + stateCount + 1) {
+      int[] table = new int[(int) denseSize];
+      java.util.Arrays.fill(table, NO_DEST);
+      for (int q = 0; q < stateCount; q++) {
+        for (int i = rowStart[q]; i < rowStart[q + 1]; i++) {
+          table[q * alphabetSize + symbols[i]] = dests[i];
+        }
+      }
+      return new TransitionsPackedDFA(stateCount, alphabetSize, count, null, null, table);
+    }
+    if (symbols.length != count) {
+      symbols = java.util.Arrays.copyOf(symbols, count);
+      dests = java.util.Arrays.copyOf(dests, count);
+    }
+    return new TransitionsPackedDFA(stateCount, alphabetSize, count, rowStart, symbols, dests);
+  }
+
+  /**
+   * Sort one row by symbol, rejecting duplicate symbols.
+   */
+  static void sortRow(int[] symbols, int[] dests, int from, int to) {
+    Arrays.quickSort(from, to,
+        (a, b) -> Integer.compare(symbols[a], symbols[b]),
+        (a, b) -> {
+          int s = symbols[a]; symbols[a] = symbols[b]; symbols[b] = s;
+          int d = dests[a]; dests[a] = dests[b]; dests[b] = d;
+        });
+    for (int i = from + 1; i < to; i++) {
+      if (symbols[i] == symbols[i - 1]) {
+        throw new WalnutException("Conflicting DFA transitions on input " + symbols[i] + ".");
+      }
+    }
+  }
+
+  public boolean isDense() {
+    return rowStart == null;
+  }
+
+  public int findDest(int q, int in) {
+    if (rowStart == null) {
+      return in < 0 || in >= alphabetSize ? NO_DEST : dests[q * alphabetSize + in];
+    }
+    int i = java.util.Arrays.binarySearch(symbols, rowStart[q], rowStart[q + 1], in);
+    return i < 0 ? NO_DEST : dests[i];
+  }
+
+  public void forEachTransition(int q, TransitionConsumer consumer) {
+    if (rowStart == null) {
+      for (int in = 0, i = q * alphabetSize; in < alphabetSize; in++, i++) {
+        if (dests[i] != NO_DEST) {
+          consumer.accept(in, dests[i]);
+        }
+      }
+    } else {
+      for (int i = rowStart[q]; i < rowStart[q + 1]; i++) {
+        consumer.accept(symbols[i], dests[i]);
+      }
+    }
+  }
+
+  public Transitions snapshot() {
+    return this; // immutable
+  }
+
+  public List<Int2ObjectRBTreeMap<IntList>> getNfaD() {
+    List<Int2ObjectRBTreeMap<IntList>> nfaD = new ArrayList<>(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      nfaD.add(getNfaState(q));
+    }
+    return nfaD;
+  }
+
+  public Int2ObjectRBTreeMap<IntList> getNfaState(int q) {
+    Int2ObjectRBTreeMap<IntList> nfaRow = new Int2ObjectRBTreeMap<>();
+    if (rowStart == null) {
+      for (int in = 0; in < alphabetSize; in++) {
+        int dest = dests[q * alphabetSize + in];
+        if (dest != NO_DEST) {
+          nfaRow.put(in, IntArrayList.wrap(new int[]{dest}));
+        }
+      }
+    } else {
+      for (int i = rowStart[q]; i < rowStart[q + 1]; i++) {
+        nfaRow.put(symbols[i], IntArrayList.wrap(new int[]{dests[i]}));
+      }
+    }
+    return nfaRow;
+  }
+
+  public IntSortedSet getNfaStateKeySet(int q) {
+    return getDfaStateKeySet(q);
+  }
+
+  public IntList getNfaStateDests(int q, int in) {
+    int dest = findDest(q, in);
+    return dest == NO_DEST ? null : IntArrayList.wrap(new int[]{dest});
+  }
+
+  public Set<Int2ObjectMap.Entry<IntList>> getEntriesNfaD(int state) {
+    return getNfaState(state).int2ObjectEntrySet();
+  }
+
+  public void setNfaD(List<Int2ObjectRBTreeMap<IntList>> nfaD) {
+    throw new WalnutException("Cannot install NFA transitions on TransitionsPackedDFA; use FA.setNfaTransitions instead.");
+  }
+  public void addToNfaD(Int2ObjectRBTreeMap<IntList> entry) {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsPackedDFA; use FA.ensureNfaTransitions first.");
+  }
+  public Int2ObjectRBTreeMap<IntList> addMapToNfaD() {
+    throw new WalnutException("Cannot add NFA transitions to TransitionsPackedDFA; use FA.ensureNfaTransitions first.");
+  }
+  public void setNfaDTransition(int src, int inp, IntList destStates) {
+    throw new WalnutException("Cannot mutate the NFA view of TransitionsPackedDFA; use FA.ensureNfaTransitions first.");
+  }
+  public void clearNfaD() {
+    throw new WalnutException("Cannot clear the NFA view of TransitionsPackedDFA; use FA.setNfaTransitions instead.");
+  }
+
+  public boolean hasDfaTransitions() {
+    return true;
+  }
+
+  public int getDfaStateCount() {
+    return stateCount;
+  }
+
+  public IntSortedSet getDfaStateKeySet(int q) {
+    IntSortedSet keys = new IntRBTreeSet();
+    if (rowStart == null) {
+      for (int in = 0; in < alphabetSize; in++) {
+        if (dests[q * alphabetSize + in] != NO_DEST) {
+          keys.add(in);
+        }
+      }
+    } else {
+      for (int i = rowStart[q]; i < rowStart[q + 1]; i++) {
+        keys.add(symbols[i]);
+      }
+    }
+    return keys;
+  }
+
+  public int getDfaStateDest(int q, int in) {
+    int dest = findDest(q, in);
+    if (dest == NO_DEST) {
+      throw new WalnutException("No DFA transition from state " + q + " on input " + in + ".");
+    }
+    return dest;
+  }
+
+  public boolean hasDfaDTransition(int q, int in) {
+    return findDest(q, in) != NO_DEST;
+  }
+
+  public void setDfaDTransition(int q, int in, int dest) {
+    throw new WalnutException("Cannot mutate TransitionsPackedDFA; use FA.ensureMutableDfaTransitions first.");
+  }
+
+  public void setDfaD(List<Int2IntMap> dfaD) {
+    throw new WalnutException("Cannot install DFA transitions on TransitionsPackedDFA; use FA.setDfaTransitions instead.");
+  }
+
+  public void addDfaState() {
+    throw new WalnutException("Cannot mutate TransitionsPackedDFA; use FA.ensureMutableDfaTransitions first.");
+  }
+
+  /**
+   * Already packed.
+   */
+  public void reduceMemory() {
+  }
+
+  public long determineTransitionCount() {
+    return transitionCount;
+  }
+
+  public boolean isDeterministic() {
+    return true;
+  }
+
+  /**
+   * Return a mutable map-based copy.
+   */
+  public List<Int2IntMap> toDfaD() {
+    List<Int2IntMap> dfaD = new ArrayList<>(stateCount);
+    for (int q = 0; q < stateCount; q++) {
+      Int2IntMap row = new Int2IntOpenHashMap();
+      for (int in : getDfaStateKeySet(q)) {
+        row.put(in, findDest(q, in));
+      }
+      dfaD.add(row);
+    }
+    return dfaD;
+  }
+
+  @Override
+  public String toString() {
+    List<Int2IntRBTreeMap> result = new ArrayList<>(stateCount);
+    for (Int2IntMap row : toDfaD()) {
+      result.add(new Int2IntRBTreeMap(row));
+    }
+    return "dfaD:" + result;
+  }
+
+  /**
+   * Builds packed transitions one state at a time, in state order.
+   * Transitions within a state may be added in any order.
+   */
+  public static class Builder {
+    private final int alphabetSize;
+    private int[] rowStart;
+    private int[] symbols;
+    private int[] dests;
+    private int stateCount;
+    private int size;
+
+    public Builder(int alphabetSize, int expectedStates) {
+      this.alphabetSize = alphabetSize;
+      this.rowStart = new int[Math.max(expectedStates, 1) + 1];
+      int capacity = (int) Math.min(Integer.MAX_VALUE - 8, Math.max(16L, (long) expectedStates * 2));
+      this.symbols = new int[capacity];
+      this.dests = new int[capacity];
+    }
+
+    /**
+     * Finish the current state and start state number getStateCount().
+     */
+    public void startState() {
+      finishState();
+      stateCount++;
+      if (stateCount + 1 > rowStart.length) {
+        rowStart = java.util.Arrays.copyOf(rowStart, grow(rowStart.length, stateCount + 1));
+      }
+      rowStart[stateCount] = size;
+    }
+
+    public void addTransition(int in, int dest) {
+      if (stateCount == 0) {
+        throw new WalnutException("Builder.startState must be called before adding transitions.");
+      }
+      if (size == symbols.length) {
+        int newLength = grow(size, size + 1);
+        symbols = java.util.Arrays.copyOf(symbols, newLength);
+        dests = java.util.Arrays.copyOf(dests, newLength);
+      }
+      symbols[size] = in;
+      dests[size] = dest;
+      size++;
+      rowStart[stateCount] = size;
+    }
+
+    public int getStateCount() {
+      return stateCount;
+    }
+
+    public long getTransitionCount() {
+      return size;
+    }
+
+    private void finishState() {
+      if (stateCount > 0) {
+        sortRow(symbols, dests, rowStart[stateCount - 1], size);
+      }
+    }
+
+    private static int grow(int length, int minLength) {
+      long newLength = Math.max((long) minLength, length + (length >> 1) + 1L);
+      if (newLength > Integer.MAX_VALUE - 8) {
+        if (minLength > Integer.MAX_VALUE - 8) {
+          throw WalnutException.arrayOverflow("the number of transitions", minLength);
+        }
+        newLength = Integer.MAX_VALUE - 8;
+      }
+      return (int) newLength;
+    }
+
+    public TransitionsPackedDFA build() {
+      finishState();
+      int[] rows = java.util.Arrays.copyOf(rowStart, stateCount + 1);
+      TransitionsPackedDFA result = pack(stateCount, alphabetSize, rows, symbols, dests, size);
+      rowStart = symbols = dests = null; // the builder can't be reused
+      return result;
+    }
+  }
+}
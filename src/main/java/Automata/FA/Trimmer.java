@@ -33,8 +33,9 @@ public class Trimmer {
         }
         IntSet initialStates = new IntOpenHashSet();
         initialStates.add(a.getQ0());
-        IntSet trimmed = rightTrim(a.getT().getNfaD(), initialStates);
-        IntSet trimmed2 = leftTrim(a);
+        TransitionsCompactNFA d = a.compactNfaTransitions();
+        IntSet trimmed = rightTrim(d, initialStates);
+        IntSet trimmed2 = rightTrim(d.reverse(), a.getFinalStates());
         trimmed.retainAll(trimmed2);
         quotient(a, trimmed);
     }
@@ -62,13 +63,10 @@ public class Trimmer {
         IntList oldO = a.getO();
         IntList newO = new IntArrayList(newQ);
         int oldq0 = a.getQ0();
-        List<Int2ObjectRBTreeMap<IntList>> oldD = a.getT().getNfaD();
-        List<Int2ObjectRBTreeMap<IntList>> newD = new ArrayList<>(newQ);
         // Add new states -- initial, accepting properties
         for (int i = 0; i < oldQ; i++) {
             if (statesToKeep.contains(i)) {
                 newO.add(oldO.getInt(i));
-                newD.add(new Int2ObjectRBTreeMap<>());
                 int newState = newO.size() - 1;
                 oldToNewMap[i] = newState;
                 if (i == oldq0) {
@@ -77,30 +75,24 @@ public class Trimmer {
             }
         }
         // Add transitions
+        TransitionsCompactNFA oldD = TransitionsCompactNFA.from(a.getT(), oldQ);
+        TransitionsCompactNFA.Builder newD = new TransitionsCompactNFA.Builder(newQ);
         for (int i = 0; i < oldQ; i++) {
             if (oldToNewMap[i] == INVALID_VALUE) {
                 continue;
             }
-            Int2ObjectRBTreeMap<IntList> iMap = oldD.get(i);
-            Int2ObjectRBTreeMap<IntList> newMap = newD.get(oldToNewMap[i]);
-            for (Int2ObjectMap.Entry<IntList> entry : iMap.int2ObjectEntrySet()) {
-                IntList newList = null;
-                for (int k : entry.getValue()) {
-                    if (oldToNewMap[k] != INVALID_VALUE) {
-                        if (newList == null) {
-                            newList = new IntArrayList();
-                            newMap.put(entry.getIntKey(), newList);
-                        }
-                        newList.add(oldToNewMap[k]);
+            newD.startState();
+            for (int r = oldD.getRowStart(i); r < oldD.getRowEnd(i); r++) {
+                for (int j = oldD.getRunStart(r); j < oldD.getRunEnd(r); j++) {
+                    int k = oldToNewMap[oldD.getDest(j)];
+                    if (k != INVALID_VALUE) {
+                        newD.addTransition(oldD.getRunSymbol(r), k);
                     }
                 }
-                if (newList instanceof IntArrayList intArrayList) {
-                    intArrayList.trim(); // save memory
-                }
             }
         }
         // q0 is already set
-        a.setFields(newQ, newO, newD);
+        a.setFields(newQ, newO, newD.build());
     }
 
     /**
@@ -108,7 +100,7 @@ public class Trimmer {
      */
     static IntSet leftTrim(FA a) {
         IntSet initialStates = a.getFinalStates(); // reversed -- final are now initial
-        return rightTrim(flipTransitions(a.getT().getNfaD()), initialStates);
+        return rightTrim(TransitionsCompactNFA.from(a.getT(), a.getQ()).reverse(), initialStates);
     }
 
     /**
@@ -137,25 +129,21 @@ public class Trimmer {
     }
 
     /**
-     * Flip (reverse) transitions.
-     * @param d - original transitions
-     * @return reversed transitions
+     * Return the states that are reachable from initial states.
      */
-    private static List<Int2ObjectRBTreeMap<IntList>> flipTransitions(List<Int2ObjectRBTreeMap<IntList>> d) {
-        List<Int2ObjectRBTreeMap<IntList>> newD = new ArrayList<>(d.size());
-        for (int q = 0; q < d.size(); q++) {
-            newD.add(new Int2ObjectRBTreeMap<>());
-        }
-        for(int q = 0; q < d.size(); q++){
-            Int2ObjectRBTreeMap<IntList> iList = d.get(q);
-            for(Int2ObjectMap.Entry<IntList> transEntry : iList.int2ObjectEntrySet()) {
-                for (int dest: transEntry.getValue()) {
-                    newD.get(dest).computeIfAbsent(transEntry.getIntKey(), (x -> new IntArrayList())).add(q);
-                    ((IntArrayList)newD.get(dest).get(transEntry.getIntKey())).trim(); // save memory
+    static IntSet rightTrim(TransitionsCompactNFA d, IntSet initialStates) {
+        IntSet found = new IntOpenHashSet(initialStates);
+        IntArrayList stack = new IntArrayList(initialStates);
+        while (!stack.isEmpty()) {
+            int curr = stack.popInt();
+            for (int r = d.getRowStart(curr); r < d.getRowEnd(curr); r++) {
+                for (int j = d.getRunStart(r); j < d.getRunEnd(r); j++) {
+                    int succState = d.getDest(j);
+                    if (found.add(succState)) stack.add(succState);
                 }
             }
         }
-        return newD;
+        return found;
     }
 }
 
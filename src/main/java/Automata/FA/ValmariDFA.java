@@ -17,16 +17,19 @@
  */
 package Automata.FA;
 
+import Main.Budget;
 import Main.WalnutException;
 import it.unimi.dsi.fastutil.ints.*;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
 
 // Adapted from Antti Valmari
 // "Fast brief practical DFA minimization." Information Processing Letters 112.6 (2012): 213-217
+// All state is per instance, so minimizations can run concurrently; an instance is used by the thread that created it,
+// and takes its arrays from that thread's IntArrayPool.
 public class ValmariDFA {
+    private final IntArrayPool pool = IntArrayPool.get();
+    private ValmariPartition.Marks marks;
     ValmariPartition blocks;
     private ValmariPartition cords;
 
@@ -37,6 +40,9 @@ public class ValmariDFA {
     private int[] _A; // Adjacent transitions
     private int[] _F; // Adjacent states
 
+    // outputs of states when minimizing a DFAO, null for acceptors
+    private int[] outputs;
+
     private int[] T;
     // labels of transitions
     private int[] L;
@@ -51,23 +57,27 @@ public class ValmariDFA {
         }
         numTransitions = (int)numTransitionsLong;
 
-        T = new int[numTransitions];
-        L = new int[numTransitions];
-        H = new int[numTransitions];
+        T = pool.take(numTransitions);
+        L = pool.take(numTransitions);
+        H = pool.take(numTransitions);
 
         Transitions transitions = fa.getT();
-        int arrIndex = 0;
+        numTransitions = 0; // recounted as the arrays are filled
         for(int q = 0; q != transitions.getDfaStateCount(); ++q){
-            for(int label : transitions.getDfaStateKeySet(q)) {
-                H[arrIndex] = transitions.getDfaStateDest(q, label);
-                T[arrIndex] = q;
-                L[arrIndex] = label;
-                arrIndex++;
-            }
+            final int tail = q;
+            transitions.forEachTransition(q, (label, head) -> {
+                H[numTransitions] = head;
+                T[numTransitions] = tail;
+                L[numTransitions] = label;
+                numTransitions++;
+            });
         }
         this.numStates = numStates;
-        blocks = new ValmariPartition();
-        cords = new ValmariPartition();
+        // M and W are shared by blocks and cords
+        int maxSets = Math.max(numTransitions, numStates) + 1;
+        marks = new ValmariPartition.Marks(pool.take(maxSets), pool.take(maxSets));
+        blocks = new ValmariPartition(marks);
+        cords = new ValmariPartition(marks);
     }
 
     /**
@@ -75,7 +85,30 @@ public class ValmariDFA {
      * @param O - output
      */
     void minValmari(IntList O) {
-        blocks.init(numStates);
+        minValmari(O, false, null);
+    }
+
+    /**
+     * Minimize a DFAO: the initial partition separates states by output value, not just by accepting or not.
+     * States that can't reach a non-zero output are removed, as for acceptors, so missing transitions output 0.
+     * Clear O for additional space (it's rebuilt later).
+     * @param O - output
+     */
+    void minValmariWithOutput(IntList O) {
+        minValmari(O, true, null);
+    }
+
+    /**
+     * @param withOutput - whether O holds DFAO outputs
+     * @param classes - if not null, states in different classes are never merged. Used to resume from a partition
+     *                refined elsewhere (see ParallelMinimization).
+     */
+    void minValmari(IntList O, boolean withOutput, int[] classes) {
+        blocks.init(numStates, pool);
+        if (withOutput) {
+            outputs = pool.take(numStates);
+            O.getElements(0, outputs, 0, numStates);
+        }
 
         for(int q = 0; q < numStates; ++q ){
             if(O.getInt(q) != 0){
@@ -83,25 +116,27 @@ public class ValmariDFA {
             }
         }
         O.clear();
-        _A = new int[numTransitions]; _F = new int[ numStates +1 ];
+        _A = pool.take(numTransitions); _F = pool.take(numStates + 1);
 
         numFinalstates = rr; rem_unreachable();
+        int numReached = blocks.P[0];
 
         /* Make initial partition */
-        ValmariPartition.W = new int[ numTransitions +1 ]; ValmariPartition.M = new int[ numTransitions +1];
-        ValmariPartition.M[0] = numFinalstates;
-        if( numFinalstates != 0 ){ ValmariPartition.W[ValmariPartition.w++] = 0; blocks.split(); }
+        marks.M[0] = numFinalstates;
+        if( numFinalstates != 0 ){ marks.W[marks.w++] = 0; blocks.split(); }
+        if( outputs != null ){ splitByClass( outputs, numFinalstates ); }
+        if( classes != null ){ splitByClass( classes, numReached ); }
 
         /* Make transition partition */
-        cords.init(numTransitions);
+        cords.init(numTransitions, pool);
         if( numTransitions != 0 ){
-            IntArrays.quickSort(cords.E, (a, b) -> Integer.compare(L[a], L[b]));
-            cords.z = ValmariPartition.M[0] = 0; int a = L[cords.E[0]];
+            IntArrays.quickSort(cords.E, 0, numTransitions, (a, b) -> Integer.compare(L[a], L[b]));
+            cords.z = marks.M[0] = 0; int a = L[cords.E[0]];
             for(int i = 0; i < numTransitions; ++i ){
                 int t = cords.E[i];
                 if( L[t] != a ){
                     a = L[t]; cords.P[cords.z++] = i;
-                    cords.F[cords.z] = i; ValmariPartition.M[cords.z] = 0;
+                    cords.F[cords.z] = i; marks.M[cords.z] = 0;
                 }
                 cords.S[t] = cords.z; cords.L[t] = i;
             }
@@ -116,6 +151,7 @@ public class ValmariDFA {
                 blocks.mark( T[cords.E[i]] );
             }
             blocks.split(); ++c;
+            Budget.check("Valmari minimization", numStates, numTransitions);
             while( b < blocks.z ){
                 for(int i = blocks.F[b]; i < blocks.P[b]; ++i ){
                     for(int j = _F[blocks.E[i]]; j < _F[blocks.E[i]+1]; ++j){
@@ -127,8 +163,23 @@ public class ValmariDFA {
         }
     }
 
+    /**
+     * Split blocks of the states E[0..n) by classOf. Final states come first in E, then the other reached states.
+     */
+    private void splitByClass(int[] classOf, int n) {
+        int[] states = Arrays.copyOf(blocks.E, n);
+        IntArrays.quickSort(states, (p, q) -> Integer.compare(classOf[p], classOf[q]));
+        for( int i = 0; i < n; ){
+            int c = classOf[states[i]];
+            for( ; i < n && classOf[states[i]] == c; ++i ){
+                blocks.mark( states[i] );
+            }
+            blocks.split();
+        }
+    }
+
     private void make_adjacent(int[] K) {
-        Arrays.fill(_F, 0);
+        Arrays.fill(_F, 0, numStates + 1, 0);
         for(int t = 0; t < numTransitions; ++t ) {
             ++_F[K[t]];
         }
@@ -171,43 +222,60 @@ public class ValmariDFA {
      * Replace fields of FA in a memory-efficient way.
      */
     void replaceFields(FA f) {
+        int[] blockOutputs = outputs == null ? null : determineBlockOutputs();
+        pool.give(outputs);
+        outputs = null;
         f.setQ(blocks.z);
         f.setQ0(blocks.S[f.getQ0()]);
+        // return arrays as soon as they're unused, since large ones aren't pooled and can be collected
+        pool.give(_A); pool.give(_F); pool.give(blocks.E); pool.give(blocks.P);
         _A = _F = blocks.E = blocks.P = null;
-        ValmariPartition.M = ValmariPartition.W = null; // this fixes an actual leak
+        pool.give(marks.M); pool.give(marks.W);
+        marks = null;
+        cords.release(pool);
         cords = null;
 
-        f.setDfaTransitions(determineDfaD()); // needs blocks.(L,F,S), L, T, H
-        f.getT().reduceMemory();
-
+        f.setT(determineDfaD(f.getAlphabetSize())); // needs blocks.(L,F,S), L, T, H
+        pool.give(L); pool.give(T); pool.give(H); pool.give(blocks.L); pool.give(blocks.S);
         L = T = H = blocks.L = blocks.S = null;
-        determineO(f);
+        determineO(f, blockOutputs);
+        pool.give(blocks.F);
+        blocks.F = null;
     }
 
-    private List<Int2IntMap> determineDfaD() {
-        List<Int2IntMap> d = new ArrayList<>(blocks.z);
-        for(int q = 0; q < blocks.z; ++q){
-            d.add(new Int2IntOpenHashMap());
+    private int[] determineBlockOutputs() {
+        int[] blockOutputs = new int[blocks.z];
+        for(int q = 0; q < blocks.z; ++q) {
+            blockOutputs[q] = blocks.F[q] < numFinalstates ? outputs[blocks.E[blocks.F[q]]] : 0;
         }
+        return blockOutputs;
+    }
+
+    /**
+     * Keep the transitions leaving the first state of each block, renumbered to blocks.
+     * T, L and H are compacted in place, since they aren't needed afterwards.
+     */
+    private Transitions determineDfaD(int alphabetSize) {
+        int j = 0;
         for(int t = 0; t < numTransitions; ++t ){
             if( blocks.L[T[t]] == blocks.F[blocks.S[T[t]]] ){
-                int q = blocks.S[T[t]];
-                int l = L[t];
-                int p = blocks.S[H[t]];
-                Int2IntMap row = d.get(q);
-                if (row.containsKey(l) && row.get(l) != p) {
-                    throw new WalnutException("Valmari minimization produced conflicting DFA transitions.");
-                }
-                row.put(l, p);
+                T[j] = blocks.S[T[t]];
+                L[j] = L[t];
+                H[j] = blocks.S[H[t]];
+                ++j;
             }
         }
-        return d;
+        return TransitionStorage.fromEdges(blocks.z, alphabetSize, T, L, H, j);
     }
 
-    private void determineO(FA f) {
+    private void determineO(FA f, int[] blockOutputs) {
         f.initO(blocks.z);
         for(int q = 0; q < blocks.z; ++q) {
-            f.addOutput(blocks.F[q] < numFinalstates);
+            if (blockOutputs != null) {
+                f.getO().add(blockOutputs[q]);
+            } else {
+                f.addOutput(blocks.F[q] < numFinalstates);
+            }
         }
     }
 }
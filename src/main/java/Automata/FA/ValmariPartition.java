@@ -18,19 +18,35 @@
 package Automata.FA;
 
 class ValmariPartition {
-    static int[] M, W;
-    static int w = 0;
+    /**
+     * Marked-element counts (M) and touched sets (W), shared by the block and cord partitions of one minimization.
+     */
+    static final class Marks {
+        final int[] M, W;
+        int w = 0;
+
+        Marks(int[] M, int[] W) {
+            this.M = M;
+            this.W = W;
+        }
+    }
+
+    private final Marks marks;
 
     int z;
     int[] E, L, S, F, P;
 
-    void init(int n) {
+    ValmariPartition(Marks marks) {
+        this.marks = marks;
+    }
+
+    void init(int n, IntArrayPool pool) {
         z = n == 0 ? 0 : 1;
-        E = new int[n];
-        L = new int[n];
-        S = new int[n];
-        F = new int[n];
-        P = new int[n];
+        E = pool.take(n);
+        L = pool.take(n);
+        S = pool.take(n);
+        F = pool.take(n);
+        P = pool.take(n);
         for (int i = 0; i < n; ++i) {
             E[i] = L[i] = i;
         }
@@ -39,7 +55,20 @@ class ValmariPartition {
         }
     }
 
+    /**
+     * Return the arrays to the pool.
+     */
+    void release(IntArrayPool pool) {
+        pool.give(E);
+        pool.give(L);
+        pool.give(S);
+        pool.give(F);
+        pool.give(P);
+        E = L = S = F = P = null;
+    }
+
     void mark(int e) {
+        int[] M = marks.M;
         int s = S[e];
         int i = L[e];
         int j = F[s] + M[s];
@@ -49,13 +78,14 @@ class ValmariPartition {
         E[j] = e;
         L[e] = j;
         if (M[s]++ == 0) {
-            W[w++] = s;
+            marks.W[marks.w++] = s;
         }
     }
 
     void split() {
-        while (w > 0) {
-            int s = W[--w], j = F[s] + M[s];
+        int[] M = marks.M;
+        while (marks.w > 0) {
+            int s = marks.W[--marks.w], j = F[s] + M[s];
             if (j == P[s]) {
                 M[s] = 0;
                 continue;
@@ -5,6 +5,7 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 
@@ -28,6 +29,14 @@ public class RichAlphabet {
    */
   private List<List<Integer>> A;
   private IntList encoder;
+  // Primitive tables, built lazily from A and shared by clones; reset whenever A or the encoder is replaced.
+  // decodeTable[n * A.size() + i] is the value of track i in input n.
+  private int[] decodeTable;
+  private int[] sizes;
+  private int[] strides;
+  // valueIndex[i][v - minValue[i]] is the index of value v in track i, or -1
+  private int[][] valueIndex;
+  private int[] minValue;
 
   public RichAlphabet() {
     this.A = new ArrayList<>();
@@ -95,6 +104,190 @@ public class RichAlphabet {
 
   public void setupEncoder() {
     encoder = determineEncoder(A);
+    resetTables();
+  }
+
+  private void resetTables() {
+    decodeTable = null;
+    sizes = null;
+    strides = null;
+    valueIndex = null;
+    minValue = null;
+  }
+
+  private void ensureTables() {
+    int k = A.size();
+    if (decodeTable != null && sizes.length == k) {
+      return;
+    }
+    int[] newSizes = new int[k];
+    int[] newStrides = new int[k];
+    int[][] newValueIndex = new int[k][];
+    int[] newMinValue = new int[k];
+    int alphabetSize = 1;
+    for (int i = 0; i < k; i++) {
+      List<Integer> track = A.get(i);
+      newSizes[i] = track.size();
+      newStrides[i] = alphabetSize;
+      alphabetSize = Math.multiplyExact(alphabetSize, track.size());
+      int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+      for (int v : track) {
+        min = Math.min(min, v);
+        max = Math.max(max, v);
+      }
+      int[] index = new int[track.isEmpty() ? 0 : max - min + 1];
+      Arrays.fill(index, -1);
+      for (int j = 0; j < track.size(); j++) {
+        int pos = track.get(j) - min;
+        if (index[pos] < 0) { // first occurrence, like indexOf
+          index[pos] = j;
+        }
+      }
+      newValueIndex[i] = index;
+      newMinValue[i] = min;
+    }
+    int[] table = new int[Math.multiplyExact(alphabetSize, k)];
+    int[] digits = new int[k]; // mixed-radix counter of track indices
+    for (int n = 0, base = 0; n < alphabetSize; n++, base += k) {
+      for (int i = 0; i < k; i++) {
+        table[base + i] = A.get(i).get(digits[i]);
+      }
+      for (int i = 0; i < k; i++) {
+        if (++digits[i] < newSizes[i]) break;
+        digits[i] = 0;
+      }
+    }
+    sizes = newSizes;
+    strides = newStrides;
+    valueIndex = newValueIndex;
+    minValue = newMinValue;
+    decodeTable = table;
+  }
+
+  /**
+   * Index of value v in track i, or -1.
+   */
+  private int indexOf(int i, int v) {
+    int pos = v - minValue[i];
+    return pos >= 0 && pos < valueIndex[i].length ? valueIndex[i][pos] : -1;
+  }
+
+  /**
+   * Allocation-free version of encode(List): digits[i] is the value of track i.
+   * @return the encoded input, or -1 if some value isn't in its track's alphabet
+   */
+  public int encode(int[] digits) {
+    ensureTables();
+    int encoding = 0;
+    for (int i = 0; i < digits.length; i++) {
+      int index = indexOf(i, digits[i]);
+      if (index < 0) {
+        return -1;
+      }
+      encoding += index * strides[i];
+    }
+    return encoding;
+  }
+
+  /**
+   * Value of the given track in input n.
+   */
+  public int digit(int n, int track) {
+    ensureTables();
+    return decodeTable[n * sizes.length + track];
+  }
+
+  /**
+   * Allocation-free version of decode(int): writes the value of each track of input n into digits.
+   */
+  public void decode(int n, int[] digits) {
+    ensureTables();
+    System.arraycopy(decodeTable, n * sizes.length, digits, 0, sizes.length);
+  }
+
+  /**
+   * Map from each input to its encoding over the given tracks only, in the given order.
+   * For example, with tracks = [2,0], input (a,b,c) maps to the encoding of (c,a) over [A[2],A[0]].
+   */
+  public int[] projectionMap(int[] tracks) {
+    ensureTables();
+    int alphabetSize = determineAlphabetSize();
+    int[] newStrides = new int[tracks.length];
+    for (int j = 0, stride = 1; j < tracks.length; j++) {
+      newStrides[j] = stride;
+      stride *= sizes[tracks[j]];
+    }
+    int[] map = new int[alphabetSize];
+    for (int n = 0; n < alphabetSize; n++) {
+      int encoding = 0;
+      for (int j = 0; j < tracks.length; j++) {
+        int t = tracks[j];
+        encoding += (n / strides[t] % sizes[t]) * newStrides[j];
+      }
+      map[n] = encoding;
+    }
+    return map;
+  }
+
+  /**
+   * Map from each input to its encoding once track i is moved to position permutation[i].
+   */
+  public int[] permutationMap(int[] permutation) {
+    int[] tracks = new int[permutation.length];
+    for (int i = 0; i < permutation.length; i++) {
+      tracks[permutation[i]] = i;
+    }
+    return projectionMap(tracks);
+  }
+
+  /**
+   * Map from each input to the encoding of the same tuple in target, which has the same number of tracks,
+   * or -1 if the tuple isn't in target's alphabet.
+   */
+  public int[] remapTo(RichAlphabet target) {
+    ensureTables();
+    int k = sizes.length;
+    int alphabetSize = determineAlphabetSize();
+    int[] map = new int[alphabetSize];
+    int[] digits = new int[k];
+    for (int n = 0; n < alphabetSize; n++) {
+      System.arraycopy(decodeTable, n * k, digits, 0, k);
+      map[n] = target.encode(digits);
+    }
+    return map;
+  }
+
+  /**
+   * Map from each pair of inputs (i of a, j of b) to the encoding of their joined tuple in joined, at index
+   * i * |b| + j. The joined tuple is all of i, followed by the tracks of j with equalIndices[t] equal to -1;
+   * a track t of j with equalIndices[t] = s must agree with track s of i, and otherwise the pair maps to -1.
+   */
+  public static int[] joinMap(RichAlphabet a, RichAlphabet b, int[] equalIndices, RichAlphabet joined) {
+    a.ensureTables();
+    b.ensureTables();
+    int aTracks = a.sizes.length, bTracks = b.sizes.length;
+    int aSize = a.determineAlphabetSize(), bSize = b.determineAlphabetSize();
+    int[] digits = new int[joined.getA().size()];
+    int[] map = new int[Math.multiplyExact(aSize, bSize)];
+    int idx = 0;
+    for (int i = 0; i < aSize; i++) {
+      System.arraycopy(a.decodeTable, i * aTracks, digits, 0, aTracks);
+      for (int j = 0; j < bSize; j++) {
+        int k = aTracks;
+        boolean compatible = true;
+        for (int t = 0; t < bTracks; t++) {
+          int value = b.decodeTable[j * bTracks + t];
+          if (equalIndices[t] == -1) {
+            digits[k++] = value;
+          } else if (digits[equalIndices[t]] != value) {
+            compatible = false;
+            break;
+          }
+        }
+        map[idx++] = compatible ? joined.encode(digits) : -1;
+      }
+    }
+    return map;
   }
 
   public static IntList determineEncoder(List<List<Integer>> A) {
@@ -149,6 +342,7 @@ public class RichAlphabet {
 
   public void setEncoder(IntList encoder) {
     this.encoder = encoder;
+    resetTables();
   }
 
   public List<List<Integer>> getA() {
@@ -157,6 +351,7 @@ public class RichAlphabet {
 
   public void setA(List<List<Integer>> a) {
     A = a;
+    resetTables();
   }
 
   /**
@@ -181,6 +376,37 @@ public class RichAlphabet {
     return R;
   }
 
+  /**
+   * Encoded inputs matching L, where a wildcard is denoted by null.
+   * Same inputs as expandWildcard, but without building the tuples.
+   */
+  public IntList expandWildcardEncoded(List<Integer> L) {
+    ensureTables();
+    IntList R = new IntArrayList();
+    int base = 0;
+    for (int i = 0; i < L.size(); i++) {
+      if (L.get(i) != null) {
+        int index = indexOf(i, L.get(i));
+        if (index < 0) {
+          throw new WalnutException("Input " + L + " isn't in the alphabet " + A);
+        }
+        base += index * strides[i];
+      }
+    }
+    R.add(base);
+    for (int i = 0; i < L.size(); i++) {
+      if (L.get(i) == null) {
+        int size = R.size();
+        for (int index = 1; index < sizes[i]; index++) {
+          for (int r = 0; r < size; r++) {
+            R.add(R.getInt(r) + index * strides[i]);
+          }
+        }
+      }
+    }
+    return R;
+  }
+
   List<Integer> determineReducedDimensionMap(int alphabetSize, List<Integer> I) {
     List<List<Integer>> newA = new ArrayList<>();
     for (int i = 0; i < A.size(); i++)
@@ -216,6 +442,7 @@ public class RichAlphabet {
 
     this.A = newA;
     this.encoder = null;
+    resetTables();
     return map;
   }
 
@@ -225,12 +452,19 @@ public class RichAlphabet {
     if (encoder != null && !encoder.isEmpty()) {
       r.encoder = new IntArrayList(encoder);
     }
+    // the tables are never modified, so they can be shared
+    r.decodeTable = decodeTable;
+    r.sizes = sizes;
+    r.strides = strides;
+    r.valueIndex = valueIndex;
+    r.minValue = minValue;
     return r;
   }
 
   public void clear() {
     A = null;
     encoder = null;
+    resetTables();
   }
 
   public String toString() {
@@ -17,6 +17,8 @@
  */
 package Automata.Search;
 
+import Automata.FA.FA;
+import Automata.FA.Transitions;
 import it.unimi.dsi.fastutil.Hash;
 import it.unimi.dsi.fastutil.ints.IntArrayFIFOQueue;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
@@ -252,6 +254,94 @@ public final class ProductBFS {
     );
   }
 
+  /**
+   * Product of Walnut DFAs, searching for a product state where every component accepts.
+   * For each global symbol a, symbolMaps[a][i] is the input read by component DFA i; symbolMaps[a] is null if a is
+   * not a symbol of the product. Missing transitions lead nowhere, and, as in shortestWitnessWordProduct, a product state is
+   * discarded as soon as one of its components can no longer reach an accepting state.
+   */
+  public static Word<Integer> shortestWitnessWordAllAccepting(FA[] dfas, int[][] symbolMaps) {
+    final int componentCount = dfas.length;
+    final boolean[][] canReachAccepting = new boolean[componentCount][];
+    final int[] start = new int[componentCount];
+    for (int componentIndex = 0; componentIndex < componentCount; componentIndex++) {
+      canReachAccepting[componentIndex] = computeCanReachAccepting(dfas[componentIndex]);
+      start[componentIndex] = dfas[componentIndex].getQ0();
+      if (!canReachAccepting[componentIndex][start[componentIndex]]) {
+        return null;
+      }
+    }
+
+    return shortestWitnessWordInt(
+        start,
+        symbolMaps.length,
+        (productState, globalSym, succState) -> {
+          final int[] localSyms = symbolMaps[globalSym];
+          if (localSyms == null) {
+            return false;
+          }
+          for (int componentIndex = 0; componentIndex < componentCount; componentIndex++) {
+            final int nextLocalState =
+                dfas[componentIndex].getT().findDest(productState[componentIndex], localSyms[componentIndex]);
+            if (nextLocalState == Transitions.NO_DEST || !canReachAccepting[componentIndex][nextLocalState]) {
+              return false;
+            }
+            succState[componentIndex] = nextLocalState;
+          }
+          return true;
+        },
+        productState -> {
+          for (int componentIndex = 0; componentIndex < componentCount; componentIndex++) {
+            if (!dfas[componentIndex].isAccepting(productState[componentIndex])) {
+              return false;
+            }
+          }
+          return true;
+        }
+    );
+  }
+
+  /**
+   * Which states of a Walnut FA can reach an accepting state, by a reverse BFS over all of its transitions.
+   */
+  private static boolean[] computeCanReachAccepting(FA fa) {
+    final int stateCount = fa.getQ();
+    final int[] predCountByTargetState = new int[stateCount + 1];
+    for (int sourceState = 0; sourceState < stateCount; sourceState++) {
+      fa.getT().forEachTransition(sourceState, (in, dest) -> predCountByTargetState[dest + 1]++);
+    }
+    for (int state = 0; state < stateCount; state++) {
+      predCountByTargetState[state + 1] += predCountByTargetState[state];
+    }
+    // predecessors of target state q are predStates[predStart[q]..predStart[q+1])
+    final int[] predStart = predCountByTargetState;
+    final int[] predStates = new int[predStart[stateCount]];
+    final int[] nextWriteIndex = Arrays.copyOf(predStart, stateCount);
+    for (int sourceState = 0; sourceState < stateCount; sourceState++) {
+      final int source = sourceState;
+      fa.getT().forEachTransition(sourceState, (in, dest) -> predStates[nextWriteIndex[dest]++] = source);
+    }
+
+    final boolean[] canReachAccepting = new boolean[stateCount];
+    final IntArrayFIFOQueue reverseBfsQueue = new IntArrayFIFOQueue();
+    for (int state = 0; state < stateCount; state++) {
+      if (fa.isAccepting(state)) {
+        canReachAccepting[state] = true;
+        reverseBfsQueue.enqueue(state);
+      }
+    }
+    while (!reverseBfsQueue.isEmpty()) {
+      final int knownGoodTargetState = reverseBfsQueue.dequeueInt();
+      for (int e = predStart[knownGoodTargetState]; e < predStart[knownGoodTargetState + 1]; e++) {
+        if (!canReachAccepting[predStates[e]]) {
+          canReachAccepting[predStates[e]] = true;
+          reverseBfsQueue.enqueue(predStates[e]);
+        }
+      }
+    }
+    return canReachAccepting;
+  }
+
   /**
    * For each component position i, collect the distinct local symbols that can appear there
    * when a global symbol is projected through symbolMaps.
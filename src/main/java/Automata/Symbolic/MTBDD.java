@@ -0,0 +1,219 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.Symbolic;
+
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.Arrays;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Shared, reduced multi-terminal binary decision diagrams.
+ * Nodes are ints; a leaf carries an int value, and an inner node tests a boolean variable,
+ * going to low when it's 0 and high when it's 1. Variables are tested in increasing order.
+ * Nodes are hash-consed, so equal functions have equal node ids.
+ * Operations take a memo map from the caller, so results can be shared across calls with the same operator.
+ */
+public class MTBDD {
+  private static final int LEAF = Integer.MAX_VALUE;
+  private static final int EMPTY = -1;
+
+  private int[] var = new int[1024];
+  private int[] low = new int[1024];
+  private int[] high = new int[1024];
+  private int size;
+  private int[] table = new int[2048]; // open addressing over node ids
+  private int leafNone = EMPTY;
+
+  public MTBDD() {
+    Arrays.fill(table, EMPTY);
+  }
+
+  public int leaf(int value) {
+    return make(LEAF, value, 0);
+  }
+
+  /**
+   * The leaf -1, which symbolic automata use for a missing transition.
+   */
+  public int none() {
+    if (leafNone == EMPTY) {
+      leafNone = leaf(-1);
+    }
+    return leafNone;
+  }
+
+  public int node(int v, int lo, int hi) {
+    if (lo == hi) {
+      return lo;
+    }
+    if (v >= var(lo) || v >= var(hi)) {
+      throw new WalnutException("MTBDD variable " + v + " is out of order.");
+    }
+    return make(v, lo, hi);
+  }
+
+  public boolean isLeaf(int n) {
+    return var[n] == LEAF;
+  }
+
+  public int value(int n) {
+    return low[n];
+  }
+
+  /**
+   * Variable tested by n, or Integer.MAX_VALUE for a leaf.
+   */
+  public int var(int n) {
+    return var[n];
+  }
+
+  public int low(int n) {
+    return low[n];
+  }
+
+  public int high(int n) {
+    return high[n];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private static int hash(int v, int lo, int hi) {
+    int h = v * 0x9E3779B9 + lo;
+    h = h * 0x9E3779B9 + hi;
+    return h ^ (h >>> 16);
+  }
+
+  private int make(int v, int lo, int hi) {
+    int mask = table.length - 1;
+    int i = hash(v, lo, hi) & mask;
+    while (table[i] != EMPTY) {
+      int n = table[i];
+      if (var[n] == v && low[n] == lo && high[n] == hi) {
+        return n;
+      }
+      i = (i + 1) & mask;
+    }
+    if (size == var.length) {
+      if (size > Integer.MAX_VALUE / 2) {
+        throw WalnutException.arrayOverflow("the number of MTBDD nodes", size * 2L);
+      }
+      var = Arrays.copyOf(var, size * 2);
+      low = Arrays.copyOf(low, size * 2);
+      high = Arrays.copyOf(high, size * 2);
+    }
+    int n = size++;
+    var[n] = v;
+    low[n] = lo;
+    high[n] = hi;
+    table[i] = n;
+    if (size * 2 > table.length) {
+      rehash();
+    }
+    return n;
+  }
+
+  private void rehash() {
+    table = new int[table.length * 2];
+    Arrays.fill(table, EMPTY);
+    int mask = table.length - 1;
+    for (int n = 0; n < size; n++) {
+      int i = hash(var[n], low[n], high[n]) & mask;
+      while (table[i] != EMPTY) {
+        i = (i + 1) & mask;
+      }
+      table[i] = n;
+    }
+  }
+
+  /**
+   * Combine two diagrams leaf by leaf.
+   */
+  public int apply(int a, int b, IntBinaryOperator leafOp, Long2IntOpenHashMap memo) {
+    if (isLeaf(a) && isLeaf(b)) {
+      return leaf(leafOp.applyAsInt(value(a), value(b)));
+    }
+    long key = ((long) a << 32) | (b & 0xFFFFFFFFL);
+    int result = memo.getOrDefault(key, EMPTY);
+    if (result != EMPTY) {
+      return result;
+    }
+    int v = Math.min(var(a), var(b));
+    int a0 = var(a) == v ? low(a) : a, a1 = var(a) == v ? high(a) : a;
+    int b0 = var(b) == v ? low(b) : b, b1 = var(b) == v ? high(b) : b;
+    int lo = apply(a0, b0, leafOp, memo);
+    int hi = apply(a1, b1, leafOp, memo);
+    result = node(v, lo, hi);
+    memo.put(key, result);
+    return result;
+  }
+
+  /**
+   * Replace each leaf value v by f(v).
+   */
+  public int mapLeaves(int a, IntUnaryOperator f, Int2IntOpenHashMap memo) {
+    int result = memo.getOrDefault(a, EMPTY);
+    if (result != EMPTY) {
+      return result;
+    }
+    if (isLeaf(a)) {
+      result = leaf(f.applyAsInt(value(a)));
+    } else {
+      int lo = mapLeaves(low(a), f, memo);
+      int hi = mapLeaves(high(a), f, memo);
+      result = node(var(a), lo, hi);
+    }
+    memo.put(a, result);
+    return result;
+  }
+
+  /**
+   * Remove the quantified variables, joining the leaves of both branches with join.
+   */
+  public int exists(int a, IntPredicate quantified, IntBinaryOperator join,
+                    Int2IntOpenHashMap memo, Long2IntOpenHashMap joinMemo) {
+    if (isLeaf(a)) {
+      return a;
+    }
+    int result = memo.getOrDefault(a, EMPTY);
+    if (result != EMPTY) {
+      return result;
+    }
+    int lo = exists(low(a), quantified, join, memo, joinMemo);
+    int hi = exists(high(a), quantified, join, memo, joinMemo);
+    result = quantified.test(var(a)) ? apply(lo, hi, join, joinMemo) : node(var(a), lo, hi);
+    memo.put(a, result);
+    return result;
+  }
+
+  /**
+   * Leaf value reached when variable v has value assignment.test(v).
+   */
+  public int evaluate(int a, IntPredicate assignment) {
+    while (!isLeaf(a)) {
+      a = assignment.test(var(a)) ? high(a) : low(a);
+    }
+    return value(a);
+  }
+}
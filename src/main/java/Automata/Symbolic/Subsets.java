@@ -0,0 +1,80 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.Symbolic;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interned sets of states, used as MTBDD leaves during subset construction. The empty set is -1.
+ */
+final class Subsets {
+  private final List<int[]> sets = new ArrayList<>();
+  private final Object2IntOpenHashMap<IntArrayList> ids = new Object2IntOpenHashMap<>();
+
+  Subsets() {
+    ids.defaultReturnValue(-1);
+  }
+
+  /**
+   * Id of a sorted set without repeats.
+   */
+  int intern(int[] sorted) {
+    if (sorted.length == 0) {
+      return -1;
+    }
+    IntArrayList key = IntArrayList.wrap(sorted);
+    int id = ids.getInt(key);
+    if (id == -1) {
+      id = sets.size();
+      sets.add(sorted);
+      ids.put(key, id);
+    }
+    return id;
+  }
+
+  int singleton(int q) {
+    return q < 0 ? -1 : intern(new int[]{q});
+  }
+
+  int union(int a, int b) {
+    if (a < 0 || a == b) {
+      return b;
+    }
+    if (b < 0) {
+      return a;
+    }
+    int[] x = sets.get(a), y = sets.get(b);
+    int[] merged = new int[x.length + y.length];
+    int i = 0, j = 0, k = 0;
+    while (i < x.length || j < y.length) {
+      int next = j == y.length || (i < x.length && x[i] < y[j]) ? x[i++] : y[j++];
+      if (k == 0 || merged[k - 1] != next) {
+        merged[k++] = next;
+      }
+    }
+    return intern(k == merged.length ? merged : java.util.Arrays.copyOf(merged, k));
+  }
+
+  int[] get(int id) {
+    return sets.get(id);
+  }
+}
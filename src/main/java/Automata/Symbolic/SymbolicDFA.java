@@ -0,0 +1,381 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.Symbolic;
+
+import Automata.FA.FA;
+import Automata.FA.TransitionStorage;
+import Automata.FA.Transitions;
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.Arrays;
+import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+import java.util.List;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * A DFA whose transitions are MTBDD guards over the bits of the input tracks, as in MONA.
+ * State q has one diagram, roots[q], mapping each input to its destination, or to -1 when there's no transition.
+ * A missing transition goes to an implicit sink with output 0.
+ * Automata combined by product must share the MTBDD manager and track layout.
+ * Conversion to and from FA enumerates the explicit alphabet, so it only happens at the boundaries.
+ * ProductStrategies and AutomatonQuantification switch to it for alphabets of at least AUTO_THRESHOLD symbols.
+ */
+public class SymbolicDFA {
+  public static final int AUTO_THRESHOLD = 1 << 12;
+
+  private final MTBDD bdd;
+  private final TrackLayout layout;
+  private final int q0;
+  private final int[] roots;
+  private final int[] outputs;
+
+  SymbolicDFA(MTBDD bdd, TrackLayout layout, int q0, int[] roots, int[] outputs) {
+    this.bdd = bdd;
+    this.layout = layout;
+    this.q0 = q0;
+    this.roots = roots;
+    this.outputs = outputs;
+  }
+
+  public int getQ() {
+    return roots.length;
+  }
+
+  public int getQ0() {
+    return q0;
+  }
+
+  public TrackLayout getLayout() {
+    return layout;
+  }
+
+  public int getOutput(int q) {
+    return outputs[q];
+  }
+
+  /**
+   * Destination of state q on an encoded symbol, or -1.
+   */
+  public int getDest(int q, int symbol) {
+    long assignment = layout.assignmentOf(symbol);
+    return bdd.evaluate(roots[q], v -> (assignment >>> v & 1) != 0);
+  }
+
+  /**
+   * The layout of the given tracks, if the symbolic engine should be used for them: the alphabet has at least
+   * AUTO_THRESHOLD symbols, is the full product of the tracks, and fits in the MTBDD variables. Otherwise null.
+   */
+  public static TrackLayout autoLayout(List<List<Integer>> A, int alphabetSize) {
+    if (alphabetSize < AUTO_THRESHOLD || !TrackLayout.fits(A)) {
+      return null;
+    }
+    long size = 1;
+    for (List<Integer> track : A) {
+      size *= track.size();
+      if (size > alphabetSize) {
+        return null;
+      }
+    }
+    return size == alphabetSize ? TrackLayout.of(A) : null;
+  }
+
+  /**
+   * Convert an explicit automaton with the given initial states, determinizing if needed.
+   * The alphabet of fa must be the mixed-radix encoding described by layout.
+   */
+  public static SymbolicDFA fromFA(FA fa, IntSet initialStates, TrackLayout layout, MTBDD bdd) {
+    return fromFA(fa, initialStates, layout, layout, bdd);
+  }
+
+  /**
+   * Convert an explicit automaton that reads some of the tracks of layout, in the order given by inputLayout,
+   * which is a selection of layout. The result is over all of layout, ignoring the tracks fa doesn't read,
+   * so that it can be combined by product with other automata over layout.
+   */
+  public static SymbolicDFA fromFA(FA fa, IntSet initialStates, TrackLayout layout, TrackLayout inputLayout,
+                                   MTBDD bdd) {
+    if (fa.getAlphabetSize() != inputLayout.getAlphabetSize()) {
+      throw new WalnutException(
+          "Alphabet size " + fa.getAlphabetSize() + " doesn't match track layout size " + inputLayout.getAlphabetSize());
+    }
+    Transitions t = fa.getT();
+    int[] vars = inputLayout.variables();
+    Subsets subsets = new Subsets();
+    int[] nfaRoots = new int[fa.getQ()];
+    EdgeBuffer buffer = new EdgeBuffer();
+    for (int q = 0; q < fa.getQ(); q++) {
+      buffer.clear();
+      t.forEachTransition(q, (in, dest) -> buffer.add(Long.reverse(inputLayout.assignmentOf(in)) >>> 1, dest));
+      buffer.sort();
+      nfaRoots[q] = build(bdd, subsets, buffer.keys, buffer.dests, 0, buffer.size, vars, 0);
+    }
+    int[] initial = initialStates.toIntArray();
+    java.util.Arrays.sort(initial);
+    return determinize(bdd, layout, subsets, nfaRoots, fa.getO().toIntArray(), subsets.intern(initial));
+  }
+
+  /**
+   * Build the diagram for transitions sorted by key, where variable v is bit 62 - v of the key.
+   */
+  private static int build(MTBDD bdd, Subsets subsets, long[] keys, int[] dests, int from, int to,
+                           int[] vars, int k) {
+    if (from == to) {
+      return bdd.none();
+    }
+    if (k == vars.length) {
+      IntArrayList destSet = new IntArrayList(to - from);
+      for (int i = from; i < to; i++) {
+        if (destSet.isEmpty() || destSet.getInt(destSet.size() - 1) != dests[i]) {
+          destSet.add(dests[i]);
+        }
+      }
+      return bdd.leaf(subsets.intern(destSet.toIntArray()));
+    }
+    int bit = 62 - vars[k];
+    int split = from;
+    while (split < to && (keys[split] >>> bit & 1) == 0) {
+      split++;
+    }
+    int lo = build(bdd, subsets, keys, dests, from, split, vars, k + 1);
+    int hi = build(bdd, subsets, keys, dests, split, to, vars, k + 1);
+    return bdd.node(vars[k], lo, hi);
+  }
+
+  /**
+   * Subset construction over diagrams whose leaves are subset ids. Only reachable metastates are built.
+   * A metastate holding one state keeps its output; otherwise it accepts if any of its states does.
+   */
+  private static SymbolicDFA determinize(MTBDD bdd, TrackLayout layout, Subsets subsets,
+                                         int[] nfaRoots, int[] nfaOutputs, int initialSubset) {
+    Int2IntOpenHashMap stateOf = new Int2IntOpenHashMap();
+    stateOf.defaultReturnValue(-1);
+    IntArrayList metastates = new IntArrayList();
+    IntArrayList roots = new IntArrayList();
+    IntArrayList outputs = new IntArrayList();
+    Long2IntOpenHashMap unionMemo = new Long2IntOpenHashMap();
+    Int2IntOpenHashMap renameMemo = new Int2IntOpenHashMap();
+    IntBinaryOperator union = subsets::union;
+    stateOf.put(initialSubset, 0);
+    metastates.add(initialSubset);
+    for (int i = 0; i < metastates.size(); i++) {
+      int subset = metastates.getInt(i);
+      int root = bdd.none();
+      int output = 0;
+      if (subset >= 0) {
+        int[] states = subsets.get(subset);
+        for (int q : states) {
+          root = bdd.apply(root, nfaRoots[q], union, unionMemo);
+          if (nfaOutputs[q] != 0) {
+            output = states.length == 1 ? nfaOutputs[q] : 1;
+          }
+        }
+      }
+      roots.add(bdd.mapLeaves(root, s -> {
+        if (s < 0) {
+          return -1;
+        }
+        int dest = stateOf.get(s);
+        if (dest == -1) {
+          dest = metastates.size();
+          stateOf.put(s, dest);
+          metastates.add(s);
+        }
+        return dest;
+      }, renameMemo));
+      outputs.add(output);
+    }
+    return new SymbolicDFA(bdd, layout, 0, roots.toIntArray(), outputs.toIntArray());
+  }
+
+  /**
+   * Product automaton, with outputs combined by outputOp.
+   * With implicitSink, a side that has no transition is in the sink, with output 0, as in
+   * ProductStrategies.crossProductInternalDFA; pairs of sinks are kept only when outputOp(0, 0) != 0.
+   * Otherwise, a missing transition on either side is missing in the product.
+   */
+  public SymbolicDFA product(SymbolicDFA other, IntBinaryOperator outputOp, boolean implicitSink) {
+    if (bdd != other.bdd || !layout.equals(other.layout)) {
+      throw new WalnutException("Symbolic product needs a shared MTBDD manager and track layout.");
+    }
+    boolean keepSink = outputOp.applyAsInt(0, 0) != 0;
+    Long2IntOpenHashMap pairs = new Long2IntOpenHashMap();
+    pairs.defaultReturnValue(-1);
+    IntArrayList lefts = new IntArrayList(), rights = new IntArrayList();
+    IntBinaryOperator stateOf = (p, q) -> {
+      if (implicitSink ? p < 0 && q < 0 && !keepSink : p < 0 || q < 0) {
+        return -1;
+      }
+      long key = ((long) p << 32) | (q & 0xFFFFFFFFL);
+      int s = pairs.get(key);
+      if (s == -1) {
+        s = lefts.size();
+        pairs.put(key, s);
+        lefts.add(p);
+        rights.add(q);
+      }
+      return s;
+    };
+    if (stateOf.applyAsInt(q0, other.q0) == -1) {
+      return new SymbolicDFA(bdd, layout, 0, new int[]{bdd.none()}, new int[]{0});
+    }
+    Long2IntOpenHashMap memo = new Long2IntOpenHashMap();
+    IntArrayList newRoots = new IntArrayList(), newOutputs = new IntArrayList();
+    for (int s = 0; s < lefts.size(); s++) {
+      int p = lefts.getInt(s), q = rights.getInt(s);
+      int a = p < 0 ? bdd.none() : roots[p];
+      int b = q < 0 ? bdd.none() : other.roots[q];
+      newRoots.add(bdd.apply(a, b, stateOf, memo));
+      newOutputs.add(outputOp.applyAsInt(p < 0 ? 0 : outputs[p], q < 0 ? 0 : other.outputs[q]));
+    }
+    return new SymbolicDFA(bdd, layout, 0, newRoots.toIntArray(), newOutputs.toIntArray());
+  }
+
+  /**
+   * Existentially quantify the given tracks: project them out, then determinize symbolically.
+   * Unlike AutomatonQuantification.quantify, this doesn't fix leading or trailing zeros.
+   */
+  public SymbolicDFA exists(int... tracks) {
+    long quantifiedVars = layout.variablesOf(tracks);
+    Subsets subsets = new Subsets();
+    Int2IntOpenHashMap liftMemo = new Int2IntOpenHashMap(), existsMemo = new Int2IntOpenHashMap();
+    Long2IntOpenHashMap unionMemo = new Long2IntOpenHashMap();
+    int[] nfaRoots = new int[roots.length];
+    for (int q = 0; q < roots.length; q++) {
+      int lifted = bdd.mapLeaves(roots[q], subsets::singleton, liftMemo);
+      nfaRoots[q] = bdd.exists(lifted, v -> (quantifiedVars >>> v & 1) != 0, subsets::union, existsMemo, unionMemo);
+    }
+    return determinize(bdd, layout.removeTracks(tracks), subsets, nfaRoots, outputs, subsets.singleton(q0));
+  }
+
+  /**
+   * Minimize by signature refinement: two states stay together while they have the same class and
+   * their diagrams, with leaves replaced by classes, are the same node.
+   * States equivalent to the implicit sink are removed.
+   */
+  public SymbolicDFA minimize() {
+    int n = roots.length; // index n is the implicit sink
+    int[] cls = new int[n + 1];
+    Int2IntOpenHashMap outputClass = new Int2IntOpenHashMap();
+    outputClass.defaultReturnValue(-1);
+    for (int q = 0; q <= n; q++) {
+      int output = q == n ? 0 : outputs[q];
+      cls[q] = outputClass.get(output);
+      if (cls[q] == -1) {
+        cls[q] = outputClass.size();
+        outputClass.put(output, cls[q]);
+      }
+    }
+    int classCount = outputClass.size();
+    while (true) {
+      int[] current = cls;
+      Int2IntOpenHashMap memo = new Int2IntOpenHashMap();
+      Long2IntOpenHashMap signatures = new Long2IntOpenHashMap();
+      signatures.defaultReturnValue(-1);
+      int[] next = new int[n + 1];
+      for (int q = 0; q <= n; q++) {
+        int sig = bdd.mapLeaves(q == n ? bdd.none() : roots[q], l -> current[l < 0 ? n : l], memo);
+        long key = ((long) current[q] << 32) | sig;
+        int c = signatures.get(key);
+        if (c == -1) {
+          c = signatures.size();
+          signatures.put(key, c);
+        }
+        next[q] = c;
+      }
+      cls = next;
+      if (signatures.size() == classCount) {
+        break;
+      }
+      classCount = signatures.size();
+    }
+
+    int sinkClass = cls[n];
+    if (cls[q0] == sinkClass) {
+      return new SymbolicDFA(bdd, layout, 0, new int[]{bdd.none()}, new int[]{0});
+    }
+    int[] classToState = new int[classCount];
+    java.util.Arrays.fill(classToState, -1);
+    IntArrayList representatives = new IntArrayList();
+    for (int q = 0; q < n; q++) {
+      if (cls[q] != sinkClass && classToState[cls[q]] == -1) {
+        classToState[cls[q]] = representatives.size();
+        representatives.add(q);
+      }
+    }
+    int[] finalCls = cls;
+    Int2IntOpenHashMap memo = new Int2IntOpenHashMap();
+    int[] newRoots = new int[representatives.size()];
+    int[] newOutputs = new int[representatives.size()];
+    for (int i = 0; i < newRoots.length; i++) {
+      int rep = representatives.getInt(i);
+      newRoots[i] = bdd.mapLeaves(roots[rep], l -> l < 0 ? -1 : classToState[finalCls[l]], memo);
+      newOutputs[i] = outputs[rep];
+    }
+    return new SymbolicDFA(bdd, layout, classToState[cls[q0]], newRoots, newOutputs);
+  }
+
+  /**
+   * Convert to an explicit DFA over the mixed-radix alphabet of the layout.
+   */
+  public FA toFA() {
+    FA fa = new FA();
+    fa.setAlphabetSize(layout.getAlphabetSize());
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(fa.getAlphabetSize(), roots.length);
+    for (int root : roots) {
+      builder.startState();
+      layout.forEachSymbol(bdd, root, builder::addTransition);
+    }
+    fa.setFields(roots.length, new IntArrayList(outputs), builder.build());
+    fa.setQ0(q0);
+    fa.setCanonized(false);
+    return fa;
+  }
+
+  /**
+   * Growable parallel arrays of (key, dest), sorted by key then dest.
+   */
+  private static final class EdgeBuffer {
+    long[] keys = new long[16];
+    int[] dests = new int[16];
+    int size;
+
+    void clear() {
+      size = 0;
+    }
+
+    void add(long key, int dest) {
+      if (size == keys.length) {
+        keys = java.util.Arrays.copyOf(keys, size * 2);
+        dests = java.util.Arrays.copyOf(dests, size * 2);
+      }
+      keys[size] = key;
+      dests[size] = dest;
+      size++;
+    }
+
+    void sort() {
+      Arrays.quickSort(0, size,
+          (a, b) -> keys[a] != keys[b] ? Long.compare(keys[a], keys[b]) : Integer.compare(dests[a], dests[b]),
+          (a, b) -> {
+            long k = keys[a]; keys[a] = keys[b]; keys[b] = k;
+            int d = dests[a]; dests[a] = dests[b]; dests[b] = d;
+          });
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Automata.Symbolic;
+
+import Main.WalnutException;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps the input tracks of a RichAlphabet to MTBDD variables.
+ * Track i has sizes[i] digits; a digit is given by its index in the track's alphabet,
+ * written in binary, most significant bit first, over bits[i] consecutive variables starting at firstVar[i].
+ * Symbols are encoded in the same mixed radix as RichAlphabet.encode, with track 0 least significant.
+ */
+public final class TrackLayout {
+  static final int MAX_VARS = 63;
+
+  private final int[] sizes;
+  private final int[] firstVar;
+  private final int[] bits;
+
+  private TrackLayout(int[] sizes, int[] firstVar, int[] bits) {
+    this.sizes = sizes;
+    this.firstVar = firstVar;
+    this.bits = bits;
+  }
+
+  public static TrackLayout of(List<List<Integer>> A) {
+    int[] sizes = new int[A.size()];
+    for (int i = 0; i < sizes.length; i++) {
+      sizes[i] = A.get(i).size();
+    }
+    return of(sizes);
+  }
+
+  /**
+   * Whether the tracks fit in the MTBDD engine's variables.
+   */
+  public static boolean fits(List<List<Integer>> A) {
+    int v = 0;
+    for (List<Integer> track : A) {
+      v += 32 - Integer.numberOfLeadingZeros(track.size() - 1);
+    }
+    return v <= MAX_VARS;
+  }
+
+  public static TrackLayout of(int... sizes) {
+    int[] firstVar = new int[sizes.length];
+    int[] bits = new int[sizes.length];
+    int v = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      firstVar[i] = v;
+      bits[i] = 32 - Integer.numberOfLeadingZeros(sizes[i] - 1);
+      v += bits[i];
+    }
+    if (v > MAX_VARS) {
+      throw new WalnutException("Too many input tracks for the MTBDD engine: " + v + " variables.");
+    }
+    return new TrackLayout(sizes.clone(), firstVar, bits);
+  }
+
+  public int getTrackCount() {
+    return sizes.length;
+  }
+
+  public int getAlphabetSize() {
+    int alphabetSize = 1;
+    for (int size : sizes) {
+      alphabetSize = Math.multiplyExact(alphabetSize, size);
+    }
+    return alphabetSize;
+  }
+
+  /**
+   * The layout of the remaining tracks, which keep their variables.
+   */
+  public TrackLayout removeTracks(int[] tracks) {
+    boolean[] removed = new boolean[sizes.length];
+    for (int t : tracks) {
+      removed[t] = true;
+    }
+    int[] kept = new int[sizes.length - tracks.length];
+    for (int i = 0, j = 0; i < sizes.length; i++) {
+      if (!removed[i]) {
+        kept[j++] = i;
+      }
+    }
+    return select(kept);
+  }
+
+  /**
+   * The layout of the given tracks, in the given order, which keep their variables.
+   * An automaton that reads only some tracks of a product can be converted with it, so that its diagrams test the
+   * variables of the product's layout.
+   */
+  public TrackLayout select(int[] tracks) {
+    int[] newSizes = new int[tracks.length], newFirstVar = new int[tracks.length], newBits = new int[tracks.length];
+    for (int j = 0; j < tracks.length; j++) {
+      newSizes[j] = sizes[tracks[j]];
+      newFirstVar[j] = firstVar[tracks[j]];
+      newBits[j] = bits[tracks[j]];
+    }
+    return new TrackLayout(newSizes, newFirstVar, newBits);
+  }
+
+  /**
+   * Variables of all tracks, in increasing order, which may not be track order after select.
+   */
+  int[] variables() {
+    int count = 0;
+    for (int b : bits) {
+      count += b;
+    }
+    int[] vars = new int[count];
+    for (int i = 0, k = 0; i < sizes.length; i++) {
+      for (int b = 0; b < bits[i]; b++) {
+        vars[k++] = firstVar[i] + b;
+      }
+    }
+    Arrays.sort(vars);
+    return vars;
+  }
+
+  /**
+   * Variables used by the given tracks, as a mask indexed by variable.
+   */
+  long variablesOf(int[] tracks) {
+    long mask = 0;
+    for (int t : tracks) {
+      for (int b = 0; b < bits[t]; b++) {
+        mask |= 1L << (firstVar[t] + b);
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Variable assignment of an encoded symbol, as a mask indexed by variable.
+   */
+  long assignmentOf(int symbol) {
+    long mask = 0;
+    for (int i = 0; i < sizes.length; i++) {
+      int digit = symbol % sizes[i];
+      symbol /= sizes[i];
+      for (int b = 0; b < bits[i]; b++) {
+        if ((digit >>> (bits[i] - 1 - b) & 1) != 0) {
+          mask |= 1L << (firstVar[i] + b);
+        }
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Visit every encoded symbol with its leaf value in the diagram, skipping leaves equal to -1.
+   * The tracks must be in variable order, as they are in layouts from of and removeTracks.
+   */
+  void forEachSymbol(MTBDD bdd, int root, SymbolConsumer consumer) {
+    forEachSymbol(bdd, root, 0, 0, 0, 0, 1, consumer);
+  }
+
+  private void forEachSymbol(MTBDD bdd, int n, int track, int bit, int digit, int symbol, int radix,
+                             SymbolConsumer consumer) {
+    if (track == sizes.length) {
+      if (!bdd.isLeaf(n)) {
+        throw new WalnutException("MTBDD tests variable " + bdd.var(n) + ", which isn't in the track layout.");
+      }
+      if (bdd.value(n) != -1) {
+        consumer.accept(symbol, bdd.value(n));
+      }
+      return;
+    }
+    if (bit == bits[track]) {
+      if (digit < sizes[track]) { // skip unused binary codes
+        forEachSymbol(bdd, n, track + 1, 0, 0, symbol + digit * radix, radix * sizes[track], consumer);
+      }
+      return;
+    }
+    int v = firstVar[track] + bit;
+    if (bdd.var(n) < v) {
+      throw new WalnutException("MTBDD tests variable " + bdd.var(n) + ", which isn't in the track layout.");
+    }
+    boolean tested = bdd.var(n) == v;
+    forEachSymbol(bdd, tested ? bdd.low(n) : n, track, bit + 1, digit << 1, symbol, radix, consumer);
+    forEachSymbol(bdd, tested ? bdd.high(n) : n, track, bit + 1, (digit << 1) | 1, symbol, radix, consumer);
+  }
+
+  @FunctionalInterface
+  interface SymbolConsumer {
+    void accept(int symbol, int value);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof TrackLayout other && Arrays.equals(sizes, other.sizes)
+        && Arrays.equals(firstVar, other.firstVar);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * Arrays.hashCode(sizes) + Arrays.hashCode(firstVar);
+  }
+}
@@ -27,9 +27,9 @@ import java.util.LinkedList;
 import java.util.Queue;
 
 import Automata.FA.FA;
+import Automata.FA.Transitions;
 import Main.Logging;
 import Main.WalnutException;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.ints.IntList;
 
@@ -199,9 +199,7 @@ public class Transducer extends Automaton {
 
             // look at the states that this state transitions to.
 
-            for (Int2ObjectMap.Entry<IntList> entry : M.fa.getT().getEntriesNfaD(currState.state)) {
-                int di = entry.getIntKey();
-
+            M.fa.getT().forEachTransition(currState.state, (di, dest) -> {
                 // make new state string
                 List<Integer> newStateString = new ArrayList<>(newString);
                 for (int u = 0; u < di; u++) {
@@ -224,7 +222,7 @@ public class Transducer extends Automaton {
 
                 // set up the transition.
                 N.fa.addNewTransition(N.fa.getT().getNfaD().size() - 1, statesHash.get(newState), di);
-            }
+            });
         }
 
         N.fa.setQ(states.size());
@@ -249,12 +247,8 @@ public class Transducer extends Automaton {
     }
 
     private static void addFirstEntries(Automaton M, Integer integer, List<Integer> iString) {
-        for (Int2ObjectMap.Entry<IntList> entry : M.fa.getT().getEntriesNfaD(integer)) {
-            // each list of states that this transition goes to.
-            // we assuming it's a DFA for now, so this has length 1 we're assuming...
-            // get the first index of M.d on state x and edge label l
-            iString.add(entry.getValue().getInt(0));
-        }
+        // we assuming it's a DFA for now, so there is one destination per input
+        M.fa.getT().forEachTransition(integer, (in, dest) -> iString.add(dest));
     }
 
     /**
@@ -275,7 +269,7 @@ public class Transducer extends Automaton {
         IntList O = M.fa.getO();
         for (int i = 0; i < O.size(); i++) {
             int encoded = richAlphabet.encode(List.of(O.getInt(i)));
-            if (fa.getT().getNfaStateDests(0, encoded) == null) {
+            if (fa.getT().findDest(0, encoded) == Transitions.NO_DEST) {
                 throw new WalnutException("Output alphabet of automaton must be compatible with the transducer input alphabet");
             }
         }
@@ -308,6 +302,7 @@ public class Transducer extends Automaton {
             int minOutput = Mnew.fa.determineMinOutput();
 
             Transducer Tnew = clone();
+            Tnew.fa.ensureNfaTransitions();
 
             for (int q = 0; q < Tnew.fa.getQ(); q++) {
                 IntList newList = new IntArrayList();
@@ -397,7 +392,7 @@ public class Transducer extends Automaton {
         int encoded = richAlphabet.encode(List.of(M.getO().getInt(i)));
         Map<Integer, Integer> map = new HashMap<>();
         for (int j = 0; j < this.fa.getQ(); j++) {
-            map.put(j, this.fa.getT().getNfaStateDests(mapSoFar.get(j), encoded).getInt(0));
+            map.put(j, this.fa.getT().findDest(mapSoFar.get(j), encoded));
         }
         return map;
     }
@@ -436,4 +431,4 @@ public class Transducer extends Automaton {
             return result;
         }
     }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -1,6 +1,7 @@
 package Automata;
 
 import Automata.FA.ProductStrategies;
+import Automata.FA.Transitions;
 import Main.EvalComputations.Token.ArithmeticOperator;
 import Main.EvalComputations.Token.RelationalOperator;
 import Main.Logging;
@@ -149,14 +150,17 @@ public class WordAutomaton {
 
           newD.add(new Int2ObjectRBTreeMap<>());
 
-          if (wordA.fa.getT().getNfaStateKeySet(wordA.fa.getQ0()).size() != wordA.getAlphabetSize()) {
-              throw new WalnutException("Automaton should be deterministic!");
+          Transitions t = wordA.fa.getT();
+          for (int l = 0; l < wordA.getAlphabetSize(); l++) {
+              if (t.findDest(wordA.fa.getQ0(), l) == Transitions.NO_DEST) {
+                  throw new WalnutException("Automaton should be deterministic!");
+              }
           }
-          for (int l : wordA.fa.getT().getNfaStateKeySet(wordA.fa.getQ0())) {
+          for (int l = 0; l < wordA.getAlphabetSize(); l++) {
               Map<Integer, Integer> toState = new HashMap<>();
 
               for (int i = 0; i < wordA.fa.getQ(); i++) {
-                  toState.put(i, currState.get(wordA.fa.getT().getNfaStateDests(i, l).getInt(0)));
+                  toState.put(i, currState.get(t.findDest(i, l)));
               }
 
               if (!newStatesHash.containsKey(toState)) {
@@ -210,10 +214,28 @@ public class WordAutomaton {
 
   /**
    * @return A minimized DFA with output recognizing the same language as the current DFA (possibly also with output).
-   * We minimize a DFA with output by first uncombining into automata without output, minimizing the uncombined automata, and
-   * then recombining. It follows that if the uncombined automata are minimal, then the combined automata is also minimal
+   * A DFAO is minimized in one pass of Valmari's algorithm, starting from a partition by output value.
    */
   public static Automaton minimizeWithOutput(Automaton wordA) {
+      if (!wordA.fa.getT().isDeterministic()) {
+          return minimizeByUncombining(wordA);
+      }
+      Automaton N = wordA.clone();
+      N.fa.justMinimizeWithOutput();
+      // as in AutomatonLogicalOps.combine
+      Logging.indent();
+      N.fa.totalize();
+      N.forceCanonize();
+      N.applyAllRepresentationsWithOutput();
+      Logging.dedent();
+      return N;
+  }
+
+  /**
+   * We minimize an NFA with output by first uncombining into automata without output, minimizing the uncombined automata,
+   * and then recombining. It follows that if the uncombined automata are minimal, then the combined automata is also minimal
+   */
+  private static Automaton minimizeByUncombining(Automaton wordA) {
       IntList outputs = new IntArrayList(wordA.fa.getO());
       UtilityMethods.removeDuplicates(outputs);
       List<Automaton> subautomata = uncombine(wordA, outputs);
@@ -93,11 +93,10 @@ public final class AutomatonMatrixWriter {
       // Gather matching encoded symbols for this assignment (mirrors your current logic)
       Set<Integer> encodedValues = new HashSet<>();
       for (int x = 0; x < automaton.getAlphabetSize(); ++x) {
-        List<Integer> decoding = automaton.richAlphabet.decode(x);
-        // pick out decoding at the chosen indices and compare to assignment
+        // pick out the digits at the chosen indices and compare to assignment
         boolean match = true;
         for (int i = 0; i < indices.size(); i++) {
-          if (!Objects.equals(decoding.get(indices.get(i)), assignment.get(i))) {
+          if (automaton.richAlphabet.digit(x, indices.get(i)) != assignment.get(i)) {
             match = false; break;
           }
         }
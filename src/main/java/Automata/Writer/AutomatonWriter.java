@@ -19,12 +19,11 @@ package Automata.Writer;
 
 import Automata.Automaton;
 import Automata.FA.FA;
+import Automata.FA.Transitions;
 import Automata.NumberSystem;
 import Main.Logging;
 import Main.UtilityMethods;
 import Main.WalnutException;
-import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
-import it.unimi.dsi.fastutil.ints.IntList;
 
 import java.io.*;
 import java.util.*;
@@ -79,14 +78,22 @@ public class AutomatonWriter {
         out.write(
                 System.lineSeparator() + q + " " +
                         automaton.fa.getO().getInt(q) + System.lineSeparator());
-        for (Int2ObjectMap.Entry<IntList> entry : automaton.getFa().getT().getEntriesNfaD(q)) {
-            List<Integer> l = automaton.richAlphabet.decode(entry.getIntKey());
-            for (Integer integer : l) {
-                out.write(integer + " ");
+        // transitions arrive grouped by input, so start a new line whenever the input changes
+        int[] previousInput = {Transitions.NO_DEST};
+        automaton.getFa().getT().forEachTransition(q, (in, dest) -> {
+            if (in != previousInput[0]) {
+                if (previousInput[0] != Transitions.NO_DEST) {
+                    out.write(System.lineSeparator());
+                }
+                previousInput[0] = in;
+                for (int i = 0; i < automaton.richAlphabet.getA().size(); i++) {
+                    out.write(automaton.richAlphabet.digit(in, i) + " ");
+                }
+                out.write("->");
             }
-            out.write("->");
-            for (int dest : entry.getValue())
-                out.write(" " + dest);
+            out.write(" " + dest);
+        });
+        if (previousInput[0] != Transitions.NO_DEST) {
             out.write(System.lineSeparator());
         }
     }
@@ -135,13 +142,9 @@ public class AutomatonWriter {
                 for (int q = 0; q < Q; q++) {
                     TreeMap<Integer, List<String>> treeMap = new TreeMap<>();
                     transitions.put(q, treeMap);
-                    for (Int2ObjectMap.Entry<IntList> entry : automaton.fa.getT().getEntriesNfaD(q)) {
-                        for (int dest : entry.getValue()) {
-                            treeMap.putIfAbsent(dest, new ArrayList<>());
-                            treeMap.get(dest).add(
-                                UtilityMethods.toTransitionLabel(automaton.richAlphabet.decode(entry.getIntKey())));
-                        }
-                    }
+                    automaton.fa.getT().forEachTransition(q, (in, dest) ->
+                        treeMap.computeIfAbsent(dest, k -> new ArrayList<>()).add(
+                            UtilityMethods.toTransitionLabel(automaton.richAlphabet.decode(in))));
                 }
 
                 for (int q = 0; q < Q; q++) {
@@ -0,0 +1,210 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Main;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Locale;
+
+/**
+ * Limits on the work of a single command: states and transitions of the automaton being built, fraction of the heap
+ * in use, and wall time since the command started.
+ * Session defaults come from the --budget option; the [budget] metacommand overrides them for one command.
+ * Determinization, cross products and minimization call check() as they go, and a BudgetExceededException aborts the
+ * command, leaving the session running.
+ */
+public final class Budget {
+  static final String STATES = "states";
+  static final String TRANSITIONS = "transitions";
+  static final String HEAP = "heap";
+  static final String TIME = "time";
+  private static final String NONE = "none";
+  // heap and clock are read once per this many checks
+  private static final int SAMPLE_INTERVAL = 1 << 10;
+
+  record Limits(long states, long transitions, double heapFraction, long millis) {
+    static final Limits UNLIMITED = new Limits(Long.MAX_VALUE, Long.MAX_VALUE, 1.0, Long.MAX_VALUE);
+  }
+
+  private static Limits defaults = Limits.UNLIMITED;
+  private static Limits limits = Limits.UNLIMITED;
+  private static long commandStart = System.currentTimeMillis();
+  private static int checks = 0;
+
+  private Budget() {
+  }
+
+  /**
+   * Session defaults, e.g., "states=5e7,time=30m".
+   */
+  public static void setDefaults(String spec) {
+    defaults = parse(defaults, spec.split(","));
+    limits = defaults;
+  }
+
+  /**
+   * Start a command with the session defaults.
+   */
+  static void startCommand() {
+    limits = defaults;
+    commandStart = System.currentTimeMillis();
+    checks = 0;
+  }
+
+  /**
+   * Override limits for the current command.
+   * @param assignments - e.g., {"states=5e7", "time=30m"}
+   */
+  static void set(String[] assignments) {
+    limits = parse(limits, assignments);
+  }
+
+  static Limits getLimits() {
+    return limits;
+  }
+
+  static Limits parse(Limits base, String[] assignments) {
+    long states = base.states, transitions = base.transitions, millis = base.millis;
+    double heapFraction = base.heapFraction;
+    for (String assignment : assignments) {
+      String[] keyValue = assignment.strip().split("=");
+      if (keyValue.length != 2) {
+        throw WalnutException.invalidBudget(assignment);
+      }
+      String key = keyValue[0].strip(), value = keyValue[1].strip().toLowerCase(Locale.ROOT);
+      switch (key) {
+        case STATES -> states = value.equals(NONE) ? Long.MAX_VALUE : parseCount(assignment, value);
+        case TRANSITIONS -> transitions = value.equals(NONE) ? Long.MAX_VALUE : parseCount(assignment, value);
+        case HEAP -> heapFraction = value.equals(NONE) ? 1.0 : parseFraction(assignment, value);
+        case TIME -> millis = value.equals(NONE) ? Long.MAX_VALUE : parseMillis(assignment, value);
+        default -> throw WalnutException.invalidBudget(assignment);
+      }
+    }
+    return new Limits(states, transitions, heapFraction, millis);
+  }
+
+  /**
+   * E.g., "50000000" or "5e7".
+   */
+  private static long parseCount(String assignment, String value) {
+    double count = parseNumber(assignment, value);
+    if (count < 1 || count >= Long.MAX_VALUE) {
+      throw WalnutException.invalidBudget(assignment);
+    }
+    return (long) count;
+  }
+
+  /**
+   * E.g., "0.8" or "80%".
+   */
+  private static double parseFraction(String assignment, String value) {
+    double fraction = value.endsWith("%")
+        ? parseNumber(assignment, value.substring(0, value.length() - 1)) / 100
+        : parseNumber(assignment, value);
+    if (fraction <= 0 || fraction > 1) {
+      throw WalnutException.invalidBudget(assignment);
+    }
+    return fraction;
+  }
+
+  /**
+   * E.g., "500ms", "90s", "30m" or "2h". Seconds by default.
+   */
+  static long parseMillis(String assignment, String value) {
+    long unit = 1000;
+    if (value.endsWith("ms")) {
+      unit = 1;
+      value = value.substring(0, value.length() - 2);
+    } else if (value.endsWith("s")) {
+      value = value.substring(0, value.length() - 1);
+    } else if (value.endsWith("m")) {
+      unit = 60_000;
+      value = value.substring(0, value.length() - 1);
+    } else if (value.endsWith("h")) {
+      unit = 3_600_000;
+      value = value.substring(0, value.length() - 1);
+    }
+    double millis = parseNumber(assignment, value) * unit;
+    if (millis < 1 || millis >= Long.MAX_VALUE) {
+      throw WalnutException.invalidBudget(assignment);
+    }
+    return (long) millis;
+  }
+
+  private static double parseNumber(String assignment, String value) {
+    try {
+      return Double.parseDouble(value);
+    } catch (NumberFormatException e) {
+      throw WalnutException.invalidBudget(assignment);
+    }
+  }
+
+  /**
+   * Abort the command if the automaton being built, or the command as a whole, is over budget.
+   * @param where - the algorithm being run, for the report
+   * @param states - states built so far
+   * @param transitions - transitions built so far
+   */
+  public static void check(String where, long states, long transitions) {
+    if (states > limits.states) {
+      throw exceeded(where, STATES + "=" + limits.states, states, transitions);
+    }
+    if (transitions > limits.transitions) {
+      throw exceeded(where, TRANSITIONS + "=" + limits.transitions, states, transitions);
+    }
+    if ((++checks & (SAMPLE_INTERVAL - 1)) != 0) {
+      return;
+    }
+    if (limits.millis != Long.MAX_VALUE && System.currentTimeMillis() - commandStart > limits.millis) {
+      throw exceeded(where, TIME + "=" + limits.millis + "ms", states, transitions);
+    }
+    if (limits.heapFraction < 1.0 && heapFraction() > limits.heapFraction && liveHeapFraction() > limits.heapFraction) {
+      throw exceeded(where, HEAP + "=" + Math.round(100 * limits.heapFraction) + "%", states, transitions);
+    }
+  }
+
+  private static BudgetExceededException exceeded(String where, String limit, long states, long transitions) {
+    return new BudgetExceededException(String.format(
+        "Budget %s exceeded in %s: %d states, %d transitions, %dms, %d%% of heap in use. Command aborted.",
+        limit, where, states, transitions, System.currentTimeMillis() - commandStart, Math.round(100 * heapFraction())));
+  }
+
+  /**
+   * Heap in use, including garbage not yet collected.
+   */
+  private static double heapFraction() {
+    Runtime runtime = Runtime.getRuntime();
+    return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+  }
+
+  /**
+   * Heap in use after the latest garbage collection, so that uncollected garbage doesn't abort a command.
+   */
+  private static double liveHeapFraction() {
+    long used = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+      if (usage != null) {
+        used += usage.getUsed();
+      }
+    }
+    return (double) used / Runtime.getRuntime().maxMemory();
+  }
+}
@@ -0,0 +1,33 @@
+/*   Copyright 2025 John Nicol
+ *
+ *   This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Main;
+
+import java.io.Serial;
+
+/**
+ * Thrown when a command goes over its Budget. It is passed through unchanged, so the session can release the
+ * command's automata.
+ */
+public class BudgetExceededException extends WalnutException {
+  @Serial
+  private static final long serialVersionUID = 12345L;
+
+  public BudgetExceededException(String s) {
+    super(s);
+  }
+}
@@ -30,6 +30,7 @@ import Automata.Writer.MatrixEmitter;
 import Main.*;
 import Main.EvalComputations.Expressions.AutomatonExpression;
 import Main.EvalComputations.Expressions.Expression;
+import Main.EvalComputations.Token.LogicalOperator;
 import Main.EvalComputations.Token.Token;
 
 import static Main.Prover.RE_IDENTIFIER;
@@ -105,6 +106,8 @@ public class EvalDef {
   private void compute(Predicate predicate) {
     Stack<Expression> expressions = new Stack<>();
     List<Token> postOrder = predicate.getPostOrder();
+    LogicalOperator.markNestedQuantifiers(postOrder);
+    LogicalOperator.markProducts(postOrder, Prover.earlyExistTermination, Prover.naryProduct);
     long timeBeginning = System.currentTimeMillis();
     String step;
 
@@ -120,6 +123,8 @@ public class EvalDef {
           Logging.logEvaluationStep(step, false);
           Logging.indent();
         }
+      } catch (BudgetExceededException e) {
+        throw e;
       } catch (RuntimeException e) {
         Logging.printTruncatedStackTrace(e);
         String message = e.getMessage();
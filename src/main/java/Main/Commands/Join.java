@@ -78,10 +78,8 @@ public class Join {
           Logging.logMessage(COMPUTING + " =>:" + first.fa.getQ() + " states - " + next.fa.getQ() + " states");
           Logging.indent();
 
-          // crossProduct requires both automata to be totalized, otherwise it has no idea which cartesian states to transition to
-          first.fa.totalize();
-          next.fa.totalize();
-          first = ProductStrategies.crossProduct(first, next, Prover.FIRST_OP);
+          // missing transitions go to a virtual sink, so neither input is totalized
+          first = ProductStrategies.crossProductWithSink(first, next, Prover.FIRST_OP);
           first = WordAutomaton.minimizeWithOutput(first);
 
           Logging.dedent();
@@ -49,6 +49,12 @@ public class Union {
    * @return The union/intersection of all automata in automataNames and this automaton
    */
   public static Automaton unionOrIntersect(Automaton automaton, List<String> automataNames, String op) {
+      if (!op.equals(UNION) && !op.equals(INTERSECT)) {
+          throw new WalnutException("Internal union/intersect error");
+      }
+      if (Prover.naryProduct) {
+          return unionOrIntersectAll(automaton, automataNames, op);
+      }
       Automaton first = automaton.clone();
       for (String automataName : automataNames) {
           long timeBefore = System.currentTimeMillis();
@@ -66,10 +72,8 @@ public class Union {
 
           if (op.equals(UNION)) {
               first = AutomatonLogicalOps.or(first, N, LogicalOperator.OR);
-          } else if (op.equals(INTERSECT)) {
-              first = AutomatonLogicalOps.and(first, N);
           } else {
-              throw new WalnutException("Internal union/intersect error");
+              first = AutomatonLogicalOps.and(first, N);
           }
 
           long timeAfter = System.currentTimeMillis();
@@ -77,4 +81,31 @@ public class Union {
       }
       return first;
   }
+
+  /**
+   * Same as unionOrIntersect, but with all the automata combined in a single product, for the naryProduct metacommand.
+   */
+  private static Automaton unionOrIntersectAll(Automaton automaton, List<String> automataNames, String op) {
+      long timeBefore = System.currentTimeMillis();
+      List<Automaton> automata = new ArrayList<>();
+      automata.add(automaton.clone());
+      for (String automataName : automataNames) {
+          Automaton N = Automaton.readAutomatonFromFile(automataName);
+          if (NumberSystem.isNSDiffering(N.getNS(), automaton.getNS(), N.richAlphabet.getA(), automaton.richAlphabet.getA())) {
+              throw new WalnutException("Automata must have the same number system(s).");
+          }
+          automata.add(N);
+      }
+
+      // crossProduct requires labeling; make an arbitrary labeling and use it for all
+      automata.get(0).randomLabel();
+      for (Automaton N : automata) {
+          N.setLabel(automata.get(0).getLabel());
+      }
+      Automaton result = AutomatonLogicalOps.andOrAll(automata, op.equals(INTERSECT));
+
+      long timeAfter = System.currentTimeMillis();
+      Logging.logMessage(COMPUTED + " =>:" + result.fa.getQ() + " states - " + (timeAfter - timeBefore) + "ms");
+      return result;
+  }
 }
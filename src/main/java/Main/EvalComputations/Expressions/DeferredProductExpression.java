@@ -0,0 +1,38 @@
+/*	 Copyright 2025 John Nicol
+ *
+ * 	 This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Main.EvalComputations.Expressions;
+
+import Automata.Automaton;
+
+import java.util.List;
+
+/**
+ * A conjunction or disjunction of automata, left unevaluated because it is the body of an existential quantifier
+ * under the earlyExistTermination metacommand, or part of a longer chain under the naryProduct metacommand.
+ * The quantifier either searches the product on the fly or builds it; the chain builds a single product.
+ */
+public class DeferredProductExpression extends Expression {
+  public final String op;
+  public final List<Automaton> components;
+
+  public DeferredProductExpression(String expressionInString, String op, List<Automaton> components) {
+    this.expressionInString = expressionInString;
+    this.op = op;
+    this.components = components;
+  }
+}
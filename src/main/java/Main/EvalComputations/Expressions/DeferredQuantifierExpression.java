@@ -0,0 +1,48 @@
+/*	 Copyright 2025 John Nicol
+ *
+ * 	 This file is part of Walnut.
+ *
+ *   Walnut is free software: you can redistribute it and/or modify
+ *   it under the terms of the GNU General Public License as published by
+ *   the Free Software Foundation, either version 3 of the License, or
+ *   (at your option) any later version.
+ *
+ *   Walnut is distributed in the hope that it will be useful,
+ *   but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *   MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *   GNU General Public License for more details.
+ *
+ *   You should have received a copy of the GNU General Public License
+ *   along with Walnut.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package Main.EvalComputations.Expressions;
+
+import Automata.Automaton;
+
+import java.util.List;
+
+/**
+ * A quantifier whose body is M, left unevaluated because it is itself the body of another quantifier.
+ * The enclosing quantifier either decides the whole formula directly or evaluates this first.
+ * An existential quantifier over a deferred conjunction keeps its components instead, and M is null.
+ */
+public class DeferredQuantifierExpression extends Expression {
+  public final List<String> identifiers;
+  public final boolean universal;
+  public final List<Automaton> components;
+
+  public DeferredQuantifierExpression(String expressionInString, Automaton M, List<String> identifiers, boolean universal) {
+    this.expressionInString = expressionInString;
+    this.M = M;
+    this.identifiers = identifiers;
+    this.universal = universal;
+    this.components = null;
+  }
+
+  public DeferredQuantifierExpression(String expressionInString, List<Automaton> components, List<String> identifiers) {
+    this.expressionInString = expressionInString;
+    this.components = components;
+    this.identifiers = identifiers;
+    this.universal = false;
+  }
+}
@@ -19,7 +19,9 @@
 package Main.EvalComputations.Token;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.Stack;
 
 import Automata.AutomatonLogicalOps;
@@ -29,6 +31,8 @@ import Main.*;
 import Main.EvalComputations.Expressions.Expression;
 import Automata.Automaton;
 import Main.EvalComputations.Expressions.AutomatonExpression;
+import Main.EvalComputations.Expressions.DeferredProductExpression;
+import Main.EvalComputations.Expressions.DeferredQuantifierExpression;
 import Main.EvalComputations.Expressions.VariableExpression;
 
 import static Main.Logging.COMPUTED;
@@ -41,6 +45,9 @@ public class LogicalOperator extends Operator {
     public static final String IMPLY = "=>";
     public static final String IFF = "<=>";
     private int quantifiedVariableCount;
+    private boolean bodyOfQuantifier;
+    private boolean deferredProduct;
+    private boolean deferredToQuantifier;
 
     @SuppressWarnings("this-escape")
     public LogicalOperator(int position, String op) {
@@ -74,6 +81,14 @@ public class LogicalOperator extends Operator {
         Expression b = S.pop();
         Expression a = S.pop();
 
+        if (deferredProduct) {
+            actDeferredProduct(S, a, b);
+            return;
+        }
+        if (a instanceof DeferredProductExpression || b instanceof DeferredProductExpression) {
+            actProduct(S, a, b);
+            return;
+        }
         if (a instanceof AutomatonExpression && b instanceof AutomatonExpression) {
             Logging.logAndPrint(COMPUTING + " " + a + op + b);
             Logging.indent();
@@ -99,6 +114,38 @@ public class LogicalOperator extends Operator {
         throw WalnutException.invalidDualOperators(op, a, b);
     }
 
+    private void actDeferredProduct(Stack<Expression> S, Expression a, Expression b) {
+        S.push(new DeferredProductExpression("(" + a + op + b + ")", op, productComponents(a, b)));
+        Logging.logAndPrint(COMPUTED + " " + a + op + b + ": deferred to the enclosing "
+            + (deferredToQuantifier ? "quantifier" : "operator"));
+    }
+
+    /**
+     * Evaluate the chain of conjunctions or disjunctions ending here as a single product.
+     */
+    private void actProduct(Stack<Expression> S, Expression a, Expression b) {
+        Logging.logAndPrint(COMPUTING + " " + a + op + b);
+        Logging.indent();
+        Automaton M = AutomatonLogicalOps.andOrAll(productComponents(a, b), op.equals(AND));
+        S.push(new AutomatonExpression("(" + a + op + b + ")", M));
+        Logging.dedent();
+        Logging.logAndPrint(COMPUTED + " " + a + op + b);
+    }
+
+    private List<Automaton> productComponents(Expression a, Expression b) {
+        List<Automaton> components = new ArrayList<>();
+        for (Expression operand : List.of(a, b)) {
+            if (operand instanceof DeferredProductExpression product && product.op.equals(op)) {
+                components.addAll(product.components);
+            } else if (operand instanceof AutomatonExpression) {
+                components.add(operand.M);
+            } else {
+                throw WalnutException.invalidDualOperators(op, a, b);
+            }
+        }
+        return components;
+    }
+
     private void actNegationOrReverse(Stack<Expression> S) {
         Expression a = S.pop();
         if (a instanceof AutomatonExpression) {
@@ -116,6 +163,74 @@ public class LogicalOperator extends Operator {
         throw WalnutException.invalidOperator(op, a);
     }
 
+    /**
+     * Whether this is E or A.
+     */
+    public boolean isQuantifier() {
+        return op.equals(Operator.EXISTS) || op.equals(Operator.FORALL);
+    }
+
+    /**
+     * Mark the quantifiers whose result is directly the body of another quantifier, as in A x E y P.
+     * Their evaluation is deferred, so that a closed formula can be decided without determinizing the inner one.
+     */
+    public static void markNestedQuantifiers(List<Token> postOrder) {
+        for (int i = 0; i + 1 < postOrder.size(); i++) {
+            if (postOrder.get(i) instanceof LogicalOperator inner && inner.isQuantifier()) {
+                inner.bodyOfQuantifier =
+                    postOrder.get(i + 1) instanceof LogicalOperator outer && outer.isQuantifier();
+            }
+        }
+    }
+
+    /**
+     * With the earlyExistTermination metacommand, mark the conjunctions that make up the body of an existential
+     * quantifier, as in E x (P & Q & R). The quantifier then gets all the conjuncts, so that a closed formula can be
+     * decided by searching their product on the fly.
+     * With the naryProduct metacommand, also mark the inner operators of chains like P & Q & R or P | Q | R,
+     * so that the outermost one builds the product of all the operands at once.
+     */
+    public static void markProducts(List<Token> postOrder, boolean earlyExistTermination, boolean naryProduct) {
+        int[] start = new int[postOrder.size()]; // where the subformula ending at each token starts
+        Stack<Integer> starts = new Stack<>();
+        for (int i = 0; i < postOrder.size(); i++) {
+            Token t = postOrder.get(i);
+            if (t instanceof LogicalOperator operator) {
+                operator.deferredProduct = false;
+                operator.deferredToQuantifier = false;
+            }
+            if (starts.size() < t.arity) {
+                return; // malformed, which evaluation reports
+            }
+            start[i] = i;
+            for (int j = 0; j < t.arity; j++) {
+                start[i] = starts.pop();
+            }
+            starts.push(start[i]);
+        }
+        for (int i = 1; earlyExistTermination && i < postOrder.size(); i++) {
+            if (postOrder.get(i) instanceof LogicalOperator quantifier && quantifier.op.equals(Operator.EXISTS)) {
+                markProduct(postOrder, start, i - 1, AND, true);
+            }
+        }
+        for (int i = 1; naryProduct && i < postOrder.size(); i++) {
+            if (postOrder.get(i) instanceof LogicalOperator chain && (chain.op.equals(AND) || chain.op.equals(OR))) {
+                markProduct(postOrder, start, i - 1, chain.op, false); // right operand
+                markProduct(postOrder, start, start[i - 1] - 1, chain.op, false); // left operand
+            }
+        }
+    }
+
+    private static void markProduct(List<Token> postOrder, int[] start, int i, String op, boolean toQuantifier) {
+        if (postOrder.get(i) instanceof LogicalOperator operator && operator.op.equals(op)
+            && !operator.deferredProduct) { // otherwise its operands are already marked
+            operator.deferredProduct = true;
+            operator.deferredToQuantifier = toQuantifier;
+            markProduct(postOrder, start, i - 1, op, toQuantifier); // right operand
+            markProduct(postOrder, start, start[i - 1] - 1, op, toQuantifier); // left operand
+        }
+    }
+
     private void actQuantifier(Stack<Expression> S) {
         StringBuilder stringValue = new StringBuilder("(" + op + " ");
         Stack<Expression> temp = reverseStack(S);
@@ -136,16 +251,60 @@ public class LogicalOperator extends Operator {
                 identifiersToQuantify.add(operand.identifier);
             } else if (i == arity - 1) {
                 stringValue.append(operand);
-                if (!(operand instanceof AutomatonExpression))
+                if (operand instanceof DeferredQuantifierExpression inner) {
+                    Automaton body = inner.M;
+                    if (body == null) {
+                        // E y (P & Q & R), so that E x E y (P & Q & R) is searched on the fly like E x,y (P & Q & R)
+                        Set<String> labels = new HashSet<>(inner.identifiers);
+                        labels.addAll(identifiersToQuantify);
+                        Boolean decided = op.equals(Operator.EXISTS) ?
+                            AutomatonQuantification.existsInProduct(inner.components, labels) : null;
+                        if (decided != null) {
+                            M = new Automaton(decided);
+                            break;
+                        }
+                        body = product(inner.components);
+                    }
+                    Boolean decided = isQuantifier() ? AutomatonQuantification.decideNested(
+                        body, new HashSet<>(inner.identifiers), new HashSet<>(identifiersToQuantify),
+                        inner.universal, op.equals(Operator.FORALL)) : null;
+                    if (decided != null) {
+                        M = new Automaton(decided);
+                        break;
+                    }
+                    M = quantify(body, inner.identifiers, inner.universal);
+                } else if (operand instanceof DeferredProductExpression product) {
+                    Boolean decided = op.equals(Operator.EXISTS) ? AutomatonQuantification.existsInProduct(
+                        product.components, new HashSet<>(identifiersToQuantify)) : null;
+                    if (decided != null) {
+                        M = new Automaton(decided);
+                        break;
+                    }
+                    if (bodyOfQuantifier && op.equals(Operator.EXISTS)) {
+                        // leave the conjuncts to the enclosing quantifier, which may bind the rest of their variables
+                        stringValue.append(")");
+                        S.push(new DeferredQuantifierExpression(
+                            stringValue.toString(), product.components, identifiersToQuantify));
+                        Logging.dedent();
+                        Logging.logAndPrint(COMPUTED + " quantifier " + stringValue + ": deferred to the enclosing quantifier");
+                        return;
+                    }
+                    M = product(product.components);
+                } else if (!(operand instanceof AutomatonExpression)) {
                     throw new WalnutException("the last operand of " + op + " can only be of type automaton");
-                M = operand.M;
-                if (op.equals(Operator.EXISTS)) {
-                    AutomatonQuantification.quantify(M, identifiersToQuantify);
-                } else if (op.equals(Operator.FORALL)) {
-                    // A == ~ E ~
-                    M = AutomatonLogicalOps.not(M.asDFA());
-                    AutomatonQuantification.quantify(M, identifiersToQuantify);
-                    M = AutomatonLogicalOps.not(M.asDFA());
+                } else {
+                    M = operand.M;
+                }
+                if (bodyOfQuantifier) {
+                    stringValue.append(")");
+                    S.push(new DeferredQuantifierExpression(
+                        stringValue.toString(), M, identifiersToQuantify, op.equals(Operator.FORALL)));
+                    Logging.dedent();
+                    Logging.logAndPrint(COMPUTED + " quantifier " + stringValue + ": deferred to the enclosing quantifier");
+                    return;
+                }
+                if (isQuantifier()) {
+                    M = quantify(M, identifiersToQuantify, op.equals(Operator.FORALL));
                 } else {
                     // op == I
                     M = AutomatonLogicalOps.removeLeadingZeros(M, identifiersToQuantify);
@@ -159,4 +318,26 @@ public class LogicalOperator extends Operator {
         Logging.dedent();
         Logging.logAndPrint( COMPUTED + " quantifier " + stringValue);
     }
+
+    private static Automaton product(List<Automaton> components) {
+        if (Prover.naryProduct) {
+            return AutomatonLogicalOps.andOrAll(components, true);
+        }
+        Automaton M = components.get(0);
+        for (int c = 1; c < components.size(); c++) {
+            M = AutomatonLogicalOps.and(M, components.get(c));
+        }
+        return M;
+    }
+
+    private static Automaton quantify(Automaton M, List<String> identifiersToQuantify, boolean universal) {
+        if (!universal) {
+            AutomatonQuantification.quantify(M, identifiersToQuantify);
+            return M;
+        }
+        // A == ~ E ~
+        M = AutomatonLogicalOps.not(M.asDFA());
+        AutomatonQuantification.quantify(M, identifiersToQuantify);
+        return AutomatonLogicalOps.not(M.asDFA());
+    }
 }
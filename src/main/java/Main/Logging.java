@@ -29,6 +29,9 @@ public class Logging {
   public static final String COMPUTED = "computed";
   public static final String COMPUTING = "computing";
 
+  public static final String DECIDED = "decided";
+  public static final String DECIDING = "deciding";
+
   public static final String FIXED = "fixed";
   public static final String FIXING = "fixing";
 
@@ -1,12 +1,17 @@
 package Main;
 
+import Automata.FA.Checkpoint;
 import Automata.FA.DeterminizationStrategies;
+import Automata.FA.ParallelMinimization;
+import Automata.FA.TransitionStorage;
 import it.unimi.dsi.fastutil.ints.*;
 
+import java.util.Arrays;
 import java.util.regex.Matcher;
 
 public class MetaCommands {
   private static final String WILDCARD = "*";
+  private static final int ANY_PARTS = -1;
   static final String DEFAULT_EXPORT_NAME = "export";
   private int automataIndex = 0; // Indicates the index of the automata in a particular run
 
@@ -22,12 +27,21 @@ public class MetaCommands {
   public MetaCommands() {
     Prover.usingOTF = false;
     Prover.earlyExistTermination = false;
+    Prover.naryProduct = false;
+    TransitionStorage.setMode(TransitionStorage.DEFAULT_MODE);
+    ParallelMinimization.setMode(ParallelMinimization.DEFAULT_MODE);
+    Budget.startCommand();
+    Checkpoint.setInterval(Checkpoint.OFF);
   }
   
   public int incrementAutomataIndex() {
     return automataIndex++;
   }
 
+  public int getAutomataIndex() {
+    return automataIndex;
+  }
+
   /**
    * Add strategy for given automata index.
    * Note that it's impossible to validate the automata index when invoked.
@@ -63,6 +77,26 @@ public class MetaCommands {
     }
   }
 
+  /**
+   * Whether every automaton from the given index on is determinized with SC and not exported.
+   */
+  public boolean isPlainSCFrom(int automataIdx) {
+    if (alwaysOnExport || (alwaysOnStrategy != null && alwaysOnStrategy != DeterminizationStrategies.Strategy.SC)) {
+      return false;
+    }
+    for (Int2ObjectMap.Entry<DeterminizationStrategies.Strategy> entry : strategyMap.int2ObjectEntrySet()) {
+      if (entry.getIntKey() >= automataIdx && entry.getValue() != DeterminizationStrategies.Strategy.SC) {
+        return false;
+      }
+    }
+    for (int index : exportMap.keySet()) {
+      if (index >= automataIdx) {
+        return false;
+      }
+    }
+    return true;
+  }
+
   public String getExportName(int index) {
     if (alwaysOnExport || exportMap.containsKey(index)) {
       return Prover.currentEvalName == null ? DEFAULT_EXPORT_NAME : Prover.currentEvalName;
@@ -88,14 +122,16 @@ public class MetaCommands {
       Matcher metaCmdMatcher = ProverHelper.matchOrFail(Prover.PAT_META_CMD, command, command);
       // Get the current meta command block and process it
       String metaCommandString = metaCmdMatcher.group(Prover.GROUP_META_CMD).strip();
-      if (!metaCommandString.isEmpty() && !printDetails) {
+      String[] parts = metaCommandString.split("\\s+");
+      // budgets are a safeguard rather than a detail, so they're allowed without ::
+      if (!metaCommandString.isEmpty() && !printDetails && !parts[0].equals(Prover.BUDGET)) {
         throw new WalnutException("Metacommands are currently only supported for commands ending in ::");
       }
 
       command = metaCmdMatcher.group(Prover.GROUP_FINAL_CMD).strip(); // update to be the remainder
 
-      String[] parts = metaCommandString.split("\\s+");
-      if (parts.length != 3 && (parts.length != 1 || !parts[0].equals(Prover.EARLY_EXIST_TERMINATION))) {
+      int expectedParts = expectedParts(parts[0]);
+      if (expectedParts == ANY_PARTS ? parts.length < 2 : parts.length != expectedParts) {
         throw WalnutException.invalidCommandUse(metaCommandString);
       }
 
@@ -115,10 +151,42 @@ public class MetaCommands {
         case Prover.EARLY_EXIST_TERMINATION:
           Prover.earlyExistTermination = true;
           break;
+        case Prover.NARY_PRODUCT:
+          Prover.naryProduct = true;
+          break;
+        case Prover.STORAGE:
+          // example: storage offheap
+          TransitionStorage.setMode(TransitionStorage.Mode.fromString(parts[1]));
+          break;
+        case Prover.MINIMIZATION:
+          // example: minimization parallel
+          ParallelMinimization.setMode(ParallelMinimization.Mode.fromString(parts[1]));
+          break;
+        case Prover.CHECKPOINT:
+          // example: checkpoint 30m
+          try {
+            Checkpoint.setInterval(Budget.parseMillis(metaCommandString, parts[1].toLowerCase()));
+          } catch (WalnutException e) {
+            throw WalnutException.invalidCommandUse(metaCommandString);
+          }
+          break;
+        case Prover.BUDGET:
+          // example: budget states=5e7 time=30m
+          Budget.set(Arrays.copyOfRange(parts, 1, parts.length));
+          break;
         default:
           throw WalnutException.invalidCommand(command);
       }
     }
     return command;
   }
+
+  private static int expectedParts(String metaCommand) {
+    return switch (metaCommand) {
+      case Prover.EARLY_EXIST_TERMINATION, Prover.NARY_PRODUCT -> 1;
+      case Prover.STORAGE, Prover.CHECKPOINT, Prover.MINIMIZATION -> 2;
+      case Prover.BUDGET -> ANY_PARTS;
+      default -> 3;
+    };
+  }
 }
@@ -232,6 +232,11 @@ public class Prover {
   static final String STRATEGY = "strategy";
   static final String EXPORT = "export";
   static final String EARLY_EXIST_TERMINATION = "earlyExistTermination";
+  static final String STORAGE = "storage";
+  static final String BUDGET = "budget";
+  static final String CHECKPOINT = "checkpoint";
+  static final String MINIMIZATION = "minimization";
+  static final String NARY_PRODUCT = "naryProduct";
 
   // export <automata> <format>
   static final String RE_FOR_export_CMD = RE_START + EXPORT + DOLLAR + RE_WORD_OF_CMD_NO_SPC + RE_WORD_OF_CMD;
@@ -252,6 +257,7 @@ public class Prover {
   public static String currentEvalName; // current evaluation name, used for export metacommand
   public static boolean usingOTF = false; // whether the current command is using OTF algorithms
   public static boolean earlyExistTermination = false; // earlyExistTermination metacommand
+  public static boolean naryProduct = false; // naryProduct metacommand
 
   private static final String usageMessage = """
       Usage: walnut [OPTIONS] [<filename>]
@@ -266,6 +272,8 @@ public class Prover {
         --global-session    Use the old (Walnut 6 and earlier) global session behavior.
         --session-dir PATH  Use PATH instead of an auto-generated Session directory.
         --home-dir PATH     Use PATH instead of the current working directory.
+        --budget LIMITS     Abort any command that goes over LIMITS, e.g.,
+                            states=5e7,transitions=1e9,heap=80%,time=30m
         --help              Show this help message and exit.
       """;
 
@@ -278,6 +286,7 @@ public class Prover {
   static final String homeDirArg = "--home-dir=";
   static final String sessionDirArg = "--session-dir=";
   private static final String globalSessionArg = "--global-session";
+  static final String budgetArg = "--budget=";
   /**
    * if the command line argument is not empty, we treat args[0] as a filename.
    * if this is the case, we read from the file and load its commands before we submit control to user.
@@ -313,6 +322,8 @@ public class Prover {
         }
       } else if (arg.equals(globalSessionArg)) {
         globalSession = true;
+      } else if (arg.startsWith(budgetArg)) {
+        Budget.setDefaults(arg.substring(budgetArg.length()));
       } else if (filename == null) {
         filename = arg; // Assume the first non-flag argument is the filename
         UtilityMethods.validateFile(Session.getReadAddressForCommandFiles(filename));
@@ -389,6 +400,9 @@ public class Prover {
           }
         } catch (RuntimeException e) {
           Logging.printTruncatedStackTrace(e);
+          if (e instanceof BudgetExceededException) {
+            System.gc(); // the aborted command's automata are unreachable now
+          }
         }
       }
     } catch (IOException e) {
@@ -58,6 +58,8 @@ public class Session {
   private static final String TRANSDUCER_LIBRARY = "Transducer Library/";
   private static final String COMMAND_FILES = "Command Files/";
   private static final String RESULT = "Result/";
+  private static final String SCRATCH = "Scratch/";
+  private static final String CHECKPOINTS = "Checkpoints/";
 
   public static void setPathsAndNames(String sessionDir, String homeDir, boolean globalSession) {
     if (homeDir == null) {
@@ -226,4 +228,24 @@ public class Session {
   public static String getWriteAddressForWordsLibrary() {
     return sessionWalnutDir + WORD_AUTOMATA_LIB;
   }
+
+  /**
+   * Directory for memory-mapped transition storage; falls back to the system temp directory outside a session.
+   */
+  public static String getAddressForScratch() {
+    if (sessionWalnutDir == null) {
+      return System.getProperty("java.io.tmpdir");
+    }
+    return sessionWalnutDir + SCRATCH;
+  }
+
+  /**
+   * Directory for checkpoints of long determinizations; falls back to the system temp directory outside a session.
+   */
+  public static String getAddressForCheckpoints() {
+    if (sessionWalnutDir == null) {
+      return System.getProperty("java.io.tmpdir");
+    }
+    return sessionWalnutDir + CHECKPOINTS;
+  }
 }
@@ -65,6 +65,11 @@ public class WalnutException extends RuntimeException {
         return new WalnutException("invalid use of method bind");
     }
 
+    public static WalnutException invalidBudget(String assignment) {
+        return new WalnutException("Invalid budget: " + assignment +
+            ". Expected states=N, transitions=N, heap=FRACTION or time=DURATION, e.g., states=5e7 heap=80% time=30m");
+    }
+
     public static WalnutException invalidCommand(String command) {
         return new WalnutException("Invalid command: " + command);
     }
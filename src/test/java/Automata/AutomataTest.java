@@ -1,6 +1,8 @@
 package Automata;
 
+import Automata.FA.Transitions;
 import Automata.Writer.AutomatonWriter;
+import Main.RandomAutomata;
 import Main.Session;
 import it.unimi.dsi.fastutil.ints.IntList;
 import org.junit.jupiter.api.Assertions;
@@ -195,4 +197,41 @@ public class AutomataTest {
     }
     return expectedAutomaton;
   }
+
+  @Test
+  void testSymbolicQuantification() {
+    // 12 binary tracks, so the MTBDD engine projects out t3 and t8
+    List<String> labels = new ArrayList<>();
+    for (int t = 0; t < 12; t++) {
+      labels.add("t" + t);
+    }
+    Random random = new Random(0);
+    for (int trial = 0; trial < 3; trial++) {
+      AutomatonDFA A = RandomAutomata.randomBinaryTracksDFA(random, labels);
+      Automaton projected = A.clone();
+      AutomatonQuantification.quantify(projected, Set.of("t3", "t8"));
+      Assertions.assertEquals(10, projected.getLabel().size());
+      for (int length = 0; length <= 2; length++) {
+        for (int w = 0; w < 100; w++) {
+          int[] word = random.ints(length, 0, projected.getAlphabetSize()).toArray();
+          // insert each choice of t3 and t8 into the symbols, keeping the other tracks in order
+          boolean expected = false;
+          for (int choice = 0; choice < 1 << (2 * length); choice++) {
+            int q = A.fa.getQ0();
+            for (int i = 0; i < length && q != Transitions.NO_DEST; i++) {
+              int s = word[i], bits = choice >>> (2 * i);
+              int in = (s & 0b111) | (bits & 1) << 3 | (s >>> 3 & 0b1111) << 4 | (bits >>> 1 & 1) << 8 | (s >>> 7) << 9;
+              q = A.fa.getT().findDest(q, in);
+            }
+            expected |= q != Transitions.NO_DEST && A.fa.isAccepting(q);
+          }
+          int q = projected.fa.getQ0();
+          for (int i = 0; i < length && q != Transitions.NO_DEST; i++) {
+            q = projected.fa.getT().findDest(q, word[i]);
+          }
+          Assertions.assertEquals(expected, q != Transitions.NO_DEST && projected.fa.isAccepting(q));
+        }
+      }
+    }
+  }
 }
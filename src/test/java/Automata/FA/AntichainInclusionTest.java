@@ -0,0 +1,76 @@
+package Automata.FA;
+
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class AntichainInclusionTest {
+  // two binary tracks, encoded as x + 2y; y is projected away
+  private static final int[] DROP_Y = {0, 1, 0, 1};
+  private static final int[][] ZEROS = {{-1, -1}, {0, -1}, {-1, 0}};
+
+  /**
+   * Reachable pairs of v and the determinized projection, as [accepted by v, accepted by the projection].
+   */
+  private static boolean[][] reachableOutcomes(FA v, FA n, int leadingZero, int trailingZero) {
+    FA d = n.clone();
+    d.setAlphabetSize(2);
+    ProjectedSubsetConstruction.determinize(d, DROP_Y, leadingZero, trailingZero);
+    boolean[][] outcomes = new boolean[2][2];
+    // state d.getQ() of the projection stands for the missing transitions
+    boolean[][] seen = new boolean[v.getQ()][d.getQ() + 1];
+    IntList queue = new IntArrayList();
+    seen[v.getQ0()][d.getQ0()] = true;
+    queue.add(v.getQ0());
+    queue.add(d.getQ0());
+    for (int i = 0; i < queue.size(); i += 2) {
+      int p = queue.getInt(i), q = queue.getInt(i + 1);
+      outcomes[v.isAccepting(p) ? 1 : 0][q < d.getQ() && d.isAccepting(q) ? 1 : 0] = true;
+      v.getT().forEachTransition(p, (in, dest) -> {
+        int next = q < d.getQ() ? d.getT().findDest(q, in) : d.getQ();
+        next = next == Transitions.NO_DEST ? d.getQ() : next;
+        if (!seen[dest][next]) {
+          seen[dest][next] = true;
+          queue.add(dest);
+          queue.add(next);
+        }
+      });
+    }
+    return outcomes;
+  }
+
+  @Test
+  void testAgainstDeterminizedProjection() {
+    Random random = new Random(7);
+    int included = 0, intersecting = 0, total = 0;
+    for (int round = 0; round < 200; round++) {
+      FA v = RandomAutomata.randomNFA(random, 3, 2, 1, 4, 1); // deterministic
+      FA n = RandomAutomata.randomNFA(random, 8, 4, 2, 2, 1);
+      for (int[] zeros : ZEROS) {
+        boolean[][] outcomes = reachableOutcomes(v, n, zeros[0], zeros[1]);
+        boolean includes = !outcomes[1][0];
+        boolean intersects = outcomes[1][1];
+        Assertions.assertEquals(includes, AntichainInclusion.includes(v, n, DROP_Y, zeros[0], zeros[1]));
+        Assertions.assertEquals(intersects, AntichainInclusion.intersects(v, n, DROP_Y, zeros[0], zeros[1]));
+        included += includes ? 1 : 0;
+        intersecting += intersects ? 1 : 0;
+        total++;
+      }
+    }
+    // both answers should be exercised
+    Assertions.assertTrue(0 < included && included < total);
+    Assertions.assertTrue(0 < intersecting && intersecting < total);
+  }
+
+  @Test
+  void testIsSubset() {
+    Assertions.assertTrue(AntichainInclusion.isSubset(new int[]{}, new int[]{1}));
+    Assertions.assertTrue(AntichainInclusion.isSubset(new int[]{1, 4}, new int[]{0, 1, 2, 4}));
+    Assertions.assertFalse(AntichainInclusion.isSubset(new int[]{1, 3}, new int[]{0, 1, 2, 4}));
+    Assertions.assertFalse(AntichainInclusion.isSubset(new int[]{5}, new int[]{0, 1, 2, 4}));
+  }
+}
@@ -0,0 +1,91 @@
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AutoStrategyTest {
+  /**
+   * NFA for words over {0,1} whose n-th letter from the end is 1; its DFA has 2^n states.
+   */
+  private static FA nthFromEnd(int n) {
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(n + 1);
+    IntList O = new IntArrayList();
+    for (int q = 0; q <= n; q++) {
+      builder.startState();
+      O.add(q == n ? 1 : 0);
+      if (q == 0) {
+        builder.addTransitions(0, IntList.of(0));
+        builder.addTransitions(1, IntList.of(0, 1));
+      } else if (q < n) {
+        builder.addTransitions(0, IntList.of(q + 1));
+        builder.addTransitions(1, IntList.of(q + 1));
+      }
+    }
+    FA fa = new FA();
+    fa.setAlphabetSize(2);
+    fa.setFields(n + 1, O, builder.build());
+    fa.setQ0(0);
+    return fa;
+  }
+
+  @Test
+  void testSmallNFAUsesSC() {
+    FA fa = nthFromEnd(4);
+    AutoStrategy.Decision decision = AutoStrategy.decide(fa, IntSet.of(0), fa.getQ());
+    Assertions.assertEquals(DeterminizationStrategies.Strategy.SC, decision.strategy());
+    Assertions.assertEquals(Integer.MAX_VALUE, decision.budget());
+  }
+
+  @Test
+  void testBisimulationRatio() {
+    // two copies of the same NFA, which bisimulation merges
+    int n = 12;
+    FA single = nthFromEnd(n);
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(2 * (n + 1));
+    IntList O = new IntArrayList();
+    for (int copy = 0; copy < 2; copy++) {
+      for (int q = 0; q <= n; q++) {
+        builder.startState();
+        O.add(single.getO().getInt(q));
+        int offset = copy * (n + 1);
+        single.getT().forEachTransition(q, (in, dest) -> builder.addTransition(in, dest + offset));
+      }
+    }
+    FA fa = new FA();
+    fa.setAlphabetSize(2);
+    fa.setFields(2 * (n + 1), O, builder.build());
+    fa.setQ0(0);
+
+    IntSet initial = Bisimulation.reduceNow(fa, IntSet.of(0, n + 1));
+    Assertions.assertEquals(n + 1, fa.getQ());
+    AutoStrategy.Decision decision = AutoStrategy.decide(fa, initial, 2 * (n + 1));
+    Assertions.assertTrue(decision.reason().contains("bisimulation ratio 0.50"), decision.reason());
+    Assertions.assertTrue(decision.strategy().isOTFStrategy());
+  }
+
+  @Test
+  void testSample() {
+    FA fa = nthFromEnd(14);
+    AutoStrategy.Sample sample =
+        AutoStrategy.sample(fa.compactNfaTransitions(), fa.getQ(), 2, IntSet.of(0), AutoStrategy.SAMPLE_METASTATES);
+    Assertions.assertFalse(sample.finished());
+    Assertions.assertEquals(AutoStrategy.SAMPLE_METASTATES, sample.explored());
+    Assertions.assertTrue(sample.found() > AutoStrategy.GROWTH_LIMIT * fa.getQ());
+
+    sample = AutoStrategy.sample(fa.compactNfaTransitions(), fa.getQ(), 2, IntSet.of(0), 1 << 15);
+    Assertions.assertTrue(sample.finished());
+    Assertions.assertEquals(1 << 14, sample.found());
+  }
+
+  @Test
+  void testSCBudget() {
+    FA fa = nthFromEnd(10);
+    Assertions.assertFalse(DeterminizationStrategies.SC(fa, IntSet.of(0), 100));
+    Assertions.assertEquals(11, fa.getQ()); // untouched
+    Assertions.assertTrue(DeterminizationStrategies.SC(fa, IntSet.of(0), 1 << 10));
+    Assertions.assertEquals(1 << 10, fa.getQ());
+  }
+}
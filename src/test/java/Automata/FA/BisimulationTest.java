@@ -0,0 +1,82 @@
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class BisimulationTest {
+  /**
+   * A random NFA on states 0..states-1, with a copy on states..2*states-1. Transitions go to either copy of their
+   * destination, so each state is forward-bisimilar to its copy.
+   */
+  private static FA doubledNFA(long seed, int states, int alphabetSize, int outputs) {
+    Random random = new Random(seed);
+    int[][] rows = new int[states][];
+    IntList O = new IntArrayList();
+    for (int q = 0; q < states; q++) {
+      O.add(random.nextInt(3) == 0 ? 1 + random.nextInt(outputs - 1) : 0);
+      IntList row = new IntArrayList();
+      for (int in = 0; in < alphabetSize; in++) {
+        for (int k = random.nextInt(3); k > 0; k--) {
+          row.add(in);
+          row.add(random.nextInt(states));
+        }
+      }
+      rows[q] = row.toIntArray();
+    }
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(2 * states);
+    for (int q = 0; q < 2 * states; q++) {
+      builder.startState();
+      int[] row = rows[q % states];
+      for (int i = 0; i < row.length; i += 2) {
+        builder.addTransition(row[i], row[i + 1] + (random.nextBoolean() ? states : 0));
+      }
+    }
+    O.addAll(new IntArrayList(O));
+    FA fa = new FA();
+    fa.setAlphabetSize(alphabetSize);
+    fa.setFields(2 * states, O, builder.build());
+    return fa;
+  }
+
+  @Test
+  void testSameLanguage() {
+    for (long seed = 0; seed < 5; seed++) {
+      FA original = doubledNFA(seed, 12, 3, 2);
+      FA reduced = doubledNFA(seed, 12, 3, 2);
+      IntSet initialStates = Bisimulation.reduceNow(reduced, IntSet.of(0, 13));
+      Assertions.assertTrue(reduced.getQ() <= 12);
+      DeterminizationStrategies.SC(original, IntSet.of(0, 13));
+      DeterminizationStrategies.SC(reduced, initialStates);
+      Assertions.assertEquals(MinimizingSubsetConstructionTest.describeMinimal(original),
+          MinimizingSubsetConstructionTest.describeMinimal(reduced));
+    }
+  }
+
+  @Test
+  void testOutputs() {
+    for (long seed = 0; seed < 5; seed++) {
+      FA original = doubledNFA(seed, 12, 3, 4);
+      FA reduced = doubledNFA(seed, 12, 3, 4);
+      IntSet initialStates = Bisimulation.reduceNow(reduced, IntSet.of(0));
+      Assertions.assertTrue(reduced.getQ() <= 12);
+      Assertions.assertTrue(reduced.getO().intStream().anyMatch(o -> o > 1));
+      MinimizingSubsetConstruction.determinize(original, IntSet.of(0));
+      MinimizingSubsetConstruction.determinize(reduced, initialStates);
+      Assertions.assertEquals(MinimizingSubsetConstructionTest.describeMinimal(original),
+          MinimizingSubsetConstructionTest.describeMinimal(reduced));
+    }
+  }
+
+  @Test
+  void testBelowThreshold() {
+    FA fa = doubledNFA(0, 12, 3, 2);
+    IntSet initialStates = IntSet.of(0);
+    Assertions.assertSame(initialStates, Bisimulation.reduce(fa, initialStates));
+    Assertions.assertEquals(24, fa.getQ());
+  }
+}
@@ -0,0 +1,80 @@
+package Automata.FA;
+
+import Main.Budget;
+import Main.BudgetExceededException;
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class CheckpointTest {
+  private static String describe(FA fa) {
+    StringBuilder sb = new StringBuilder(fa.getQ() + " " + fa.getQ0() + " " + fa.getO());
+    for (int q = 0; q < fa.getQ(); q++) {
+      sb.append("\n").append(q).append(":");
+      fa.getT().forEachTransition(q, (in, dest) -> sb.append(" ").append(in).append("->").append(dest));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  void testReplay() throws InterruptedException {
+    long fingerprint = new Checkpoint.Fingerprint().add("testReplay").add(System.nanoTime()).value();
+    try {
+      Checkpoint.setInterval(1);
+      Checkpoint checkpoint = Checkpoint.open("test", fingerprint);
+      Assertions.assertFalse(checkpoint.isResuming());
+      checkpoint.addKey(new int[]{3, 1_000_000, -1}, 3);
+      checkpoint.addKey(new int[]{}, 0);
+      checkpoint.startRow(-7);
+      checkpoint.addTransition(5, 1);
+      checkpoint.addTransition(2, 0);
+      Thread.sleep(5);
+      checkpoint.endRow();
+      // written after the checkpoint, so lost
+      checkpoint.addKey(new int[]{4}, 1);
+      checkpoint.close();
+
+      checkpoint = Checkpoint.open("test", fingerprint);
+      Assertions.assertTrue(checkpoint.isResuming());
+      List<String> keys = new ArrayList<>(), rows = new ArrayList<>();
+      checkpoint.replay((key, n) -> keys.add(new IntArrayList(key, 0, n).toString()),
+          (output, inputs, dests, n) -> rows.add(output + " " + new IntArrayList(inputs, 0, n)
+              + " " + new IntArrayList(dests, 0, n)));
+      Assertions.assertEquals(List.of("[3, 1000000, -1]", "[]"), keys);
+      Assertions.assertEquals(List.of("-7 [5, 2] [1, 0]"), rows);
+      checkpoint.discard();
+
+      checkpoint = Checkpoint.open("test", fingerprint);
+      Assertions.assertFalse(checkpoint.isResuming());
+      checkpoint.discard();
+    } finally {
+      Checkpoint.setInterval(Checkpoint.OFF);
+    }
+  }
+
+  @Test
+  void testResumeSC() {
+    FA expected = RandomAutomata.randomNFA(new Random(3), 14, 3);
+    DeterminizationStrategies.SC(expected, IntSet.of(0, 1));
+    try {
+      Checkpoint.setInterval(1);
+      // abort partway, then rerun
+      Budget.setDefaults("states=" + expected.getQ() / 2);
+      FA fa = RandomAutomata.randomNFA(new Random(3), 14, 3);
+      Assertions.assertThrows(BudgetExceededException.class, () -> DeterminizationStrategies.SC(fa, IntSet.of(0, 1)));
+      Budget.setDefaults("states=none");
+      FA resumed = RandomAutomata.randomNFA(new Random(3), 14, 3);
+      DeterminizationStrategies.SC(resumed, IntSet.of(0, 1));
+      Assertions.assertEquals(describe(expected), describe(resumed));
+    } finally {
+      Budget.setDefaults("states=none");
+      Checkpoint.setInterval(Checkpoint.OFF);
+    }
+  }
+}
@@ -2,11 +2,20 @@ package Automata.FA;
 
 import Main.EqualityUtils;
 import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import net.automatalib.alphabet.impl.Alphabets;
 import net.automatalib.automaton.fsa.impl.CompactNFA;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+
 public class FATest {
   @Test
   void testCompactNFAConversions() {
@@ -35,6 +44,24 @@ public class FATest {
     Assertions.assertTrue(EqualityUtils.faEqual(fa, fa2));
   }
 
+  @Test
+  void testPermuteNfaDAfterClone() {
+    CompactNFA<Integer> compactNFA = new CompactNFA<>(Alphabets.integers(0,1));
+    compactNFA.addState(false);
+    compactNFA.addState(true);
+    compactNFA.addTransition(0, 0, 1);
+    compactNFA.addTransition(0, 1, 0);
+    compactNFA.setInitial(0, true);
+    FA fa = FA.compactNFAToFA(compactNFA);
+
+    FA permuted = fa.clone();
+    permuted.permuteNfaD(new int[]{1, 0});
+    permuted.getT().getNfaD().get(0).get(1).add(0);
+    Assertions.assertEquals(IntList.of(1, 0), permuted.getT().getNfaStateDests(0, 1));
+    Assertions.assertEquals(IntList.of(1), fa.getT().getNfaStateDests(0, 0));
+    Assertions.assertEquals(IntList.of(0), fa.getT().getNfaStateDests(0, 1));
+  }
+
   @Test
   void testDetermineMinOutput() {
     FA fa = new FA();
@@ -48,4 +75,88 @@ public class FATest {
     fa.addOutput(true);
     Assertions.assertEquals(1, fa.determineMinOutput());
   }
+
+  @Test
+  void testComplement() {
+    // accepts words over {0,1} without a 1
+    FA fa = new FA();
+    fa.setAlphabetSize(2);
+    fa.initBasicFA(IntList.of(1));
+    fa.addNewTransition(0, 0, 0);
+    fa.convertNFAtoDFA();
+    fa.complement();
+    Assertions.assertEquals(2, fa.getQ());
+    Assertions.assertFalse(fa.isAccepting(0));
+    Assertions.assertTrue(fa.isAccepting(1));
+    Assertions.assertEquals(1, fa.getT().findDest(0, 1));
+    Assertions.assertEquals(1, fa.getT().findDest(1, 0));
+
+    // already total, so no sink is added
+    fa.complement();
+    Assertions.assertEquals(2, fa.getQ());
+    Assertions.assertTrue(fa.isAccepting(0));
+  }
+
+  @Test
+  void testJustMinimizeWithOutput() {
+    // outputs the number of 1s mod 3, with a redundant bit flipped on 0s; state 6 is dead and outputs 0
+    FA fa = new FA();
+    fa.setAlphabetSize(3);
+    fa.initBasicFA(IntList.of(0, 0, 1, 1, 2, 2, 0));
+    for (int q = 0; q < 6; q++) {
+      fa.addNewTransition(q, q ^ 1, 0);
+      fa.addNewTransition(q, (q + 2) % 6, 1);
+      fa.addNewTransition(q, 6, 2);
+    }
+    fa.convertNFAtoDFA();
+    fa.justMinimizeWithOutput();
+    Assertions.assertEquals(3, fa.getQ());
+    int q0 = fa.getQ0();
+    int q1 = fa.getT().findDest(q0, 1);
+    int q2 = fa.getT().findDest(q1, 1);
+    Assertions.assertEquals(IntList.of(0, 1, 2), IntList.of(fa.getO().getInt(q0), fa.getO().getInt(q1), fa.getO().getInt(q2)));
+    Assertions.assertEquals(q0, fa.getT().findDest(q2, 1));
+    Assertions.assertEquals(q1, fa.getT().findDest(q1, 0));
+    // the dead state is removed
+    Assertions.assertEquals(-1, fa.getT().findDest(q0, 2));
+  }
+
+  @Test
+  void testConcurrentMinimization() throws Exception {
+    // accepts binary numbers divisible by m, with states for every remainder mod 2m
+    IntFunction<FA> divisibleBy = m -> {
+      FA fa = new FA();
+      fa.setAlphabetSize(2);
+      IntList O = new IntArrayList();
+      for (int r = 0; r < 2 * m; r++) {
+        O.add(r % m == 0 ? 1 : 0);
+      }
+      fa.initBasicFA(O);
+      for (int r = 0; r < 2 * m; r++) {
+        for (int in = 0; in < 2; in++) {
+          fa.addNewTransition(r, (2 * r + in) % (2 * m), in);
+        }
+      }
+      fa.convertNFAtoDFA();
+      return fa;
+    };
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Integer>> sizes = new ArrayList<>();
+      for (int m = 1; m <= 40; m++) {
+        FA fa = divisibleBy.apply(m);
+        sizes.add(executor.submit(() -> {
+          fa.justMinimize();
+          return fa.getQ();
+        }));
+      }
+      for (int m = 1; m <= 40; m++) {
+        FA fa = divisibleBy.apply(m);
+        fa.justMinimize();
+        Assertions.assertEquals(fa.getQ(), (int) sizes.get(m - 1).get());
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
 }
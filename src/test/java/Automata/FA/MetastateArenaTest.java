@@ -0,0 +1,52 @@
+package Automata.FA;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+public class MetastateArenaTest {
+  @Test
+  void testInternAndLoad() {
+    MetastateArena arena = new MetastateArena(64); // sets of more than 2 states are stored as bitsets
+    int[] empty = {};
+    int[] pair = {3, 40};
+    int[] many = {0, 1, 31, 32, 63};
+    Assertions.assertEquals(0, arena.intern(empty, 0));
+    Assertions.assertEquals(1, arena.intern(pair, 2));
+    Assertions.assertEquals(2, arena.intern(many, 5));
+    Assertions.assertEquals(3, arena.intern(many, 4)); // a prefix is a different set
+    Assertions.assertEquals(1, arena.intern(new int[]{3, 40, 99}, 2));
+    Assertions.assertEquals(2, arena.intern(many.clone(), 5));
+    Assertions.assertEquals(0, arena.intern(empty, 0));
+    Assertions.assertEquals(4, arena.size());
+
+    int[] out = new int[64];
+    Assertions.assertEquals(2, arena.load(1, out));
+    Assertions.assertArrayEquals(pair, Arrays.copyOf(out, 2));
+    Assertions.assertEquals(5, arena.load(2, out));
+    Assertions.assertArrayEquals(many, Arrays.copyOf(out, 5));
+    Assertions.assertEquals(4, arena.size(3));
+  }
+
+  @Test
+  void testManyMetastates() {
+    MetastateArena arena = new MetastateArena(200000);
+    int[] states = new int[3];
+    for (int i = 0; i < 100000; i++) {
+      states[0] = i % 1000;
+      states[1] = 1000 + i;
+      states[2] = 2000 + i;
+      Assertions.assertEquals(i, arena.intern(states, 3));
+    }
+    int[] out = new int[3];
+    for (int i = 0; i < 100000; i += 997) {
+      states[0] = i % 1000;
+      states[1] = 1000 + i;
+      states[2] = 2000 + i;
+      Assertions.assertEquals(i, arena.intern(states, 3));
+      arena.load(i, out);
+      Assertions.assertArrayEquals(states, out);
+    }
+  }
+}
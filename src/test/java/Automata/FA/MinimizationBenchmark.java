@@ -0,0 +1,38 @@
+package Automata.FA;
+
+/**
+ * Scaling benchmark for parallel minimization against sequential Valmari minimization.
+ * Not a JUnit test; run it by hand, optionally with the number of states of the random DFA as argument:
+ *   MinimizationBenchmark 1000000
+ * The DFA is minimized once with Valmari, then with parallel refinement on 1, 2, 4, ... processors, and the results
+ * are checked to be the same.
+ */
+public class MinimizationBenchmark {
+  public static void main(String[] args) {
+    int states = args.length == 0 ? 1 << 20 : Integer.parseInt(args[0]);
+    int maxParallelism = Runtime.getRuntime().availableProcessors();
+    FA dfa = ParallelMinimizationTest.doubledDFA(0, states, 4, 2);
+    System.out.printf("%d states, %d transitions%n", dfa.getQ(), dfa.getT().determineTransitionCount());
+
+    FA expected = dfa.clone();
+    long start = System.nanoTime();
+    ValmariDFA v = new ValmariDFA(expected, expected.getQ());
+    v.minValmari(expected.getO());
+    v.replaceFields(expected);
+    System.out.printf("  Valmari:      %8d ms, %d states%n", (System.nanoTime() - start) / 1_000_000, expected.getQ());
+    String expectedDescription = ParallelMinimizationTest.describe(expected);
+
+    for (int p = 1; ; p = Math.min(2 * p, maxParallelism)) {
+      ParallelSupport.setParallelism(p);
+      FA actual = dfa.clone();
+      start = System.nanoTime();
+      ParallelMinimization.minimize(actual, false);
+      System.out.printf("  parallel, %3d cpu: %8d ms%n", p, (System.nanoTime() - start) / 1_000_000);
+      if (!ParallelMinimizationTest.describe(actual).equals(expectedDescription)) {
+        throw new IllegalStateException("parallel minimization differs from Valmari on " + p + " processors");
+      }
+      if (p == maxParallelism) break;
+    }
+    ParallelSupport.setParallelism(maxParallelism);
+  }
+}
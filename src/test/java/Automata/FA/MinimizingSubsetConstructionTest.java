@@ -0,0 +1,136 @@
+package Automata.FA;
+
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+
+public class MinimizingSubsetConstructionTest {
+  /**
+   * The minimal DFA, with states numbered in breadth-first order from the initial state.
+   */
+  static String describeMinimal(FA fa) {
+    int n = fa.getQ();
+    int[] rowStart = new int[n + 1];
+    IntList inputs = new IntArrayList(), dests = new IntArrayList();
+    for (int q = 0; q < n; q++) {
+      fa.getT().forEachTransition(q, (in, dest) -> {
+        inputs.add(in);
+        dests.add(dest);
+      });
+      rowStart[q + 1] = inputs.size();
+    }
+    // initial blocks by output, numbered in 0..n-1
+    int[] initial = new int[n];
+    IntList distinctOutputs = new IntArrayList();
+    for (int q = 0; q < n; q++) {
+      int o = fa.getO().getInt(q);
+      if (!distinctOutputs.contains(o)) {
+        distinctOutputs.add(o);
+      }
+      initial[q] = distinctOutputs.indexOf(o);
+    }
+    int[] block = new int[n];
+    int count = SignatureRefinement.refine(n, rowStart, inputs.toIntArray(), dests.toIntArray(), initial, block);
+
+    int[] order = new int[count];
+    Arrays.fill(order, -1);
+    int[] representative = new int[count];
+    for (int q = n - 1; q >= 0; q--) {
+      representative[block[q]] = q;
+    }
+    StringBuilder sb = new StringBuilder();
+    Queue<Integer> queue = new ArrayDeque<>();
+    order[block[fa.getQ0()]] = 0;
+    queue.add(block[fa.getQ0()]);
+    int next = 1;
+    while (!queue.isEmpty()) {
+      int b = queue.remove();
+      int q = representative[b];
+      sb.append("\n").append(order[b]).append(" ").append(fa.getO().getInt(q)).append(":");
+      for (int i = rowStart[q]; i < rowStart[q + 1]; i++) {
+        int d = block[dests.getInt(i)];
+        if (order[d] < 0) {
+          order[d] = next++;
+          queue.add(d);
+        }
+        sb.append(" ").append(inputs.getInt(i)).append("->").append(order[d]);
+      }
+    }
+    return next + " states" + sb;
+  }
+
+  @Test
+  void testSameLanguageAsSC() {
+    for (long seed = 0; seed < 5; seed++) {
+      FA sc = RandomAutomata.randomNFA(new Random(seed), 16, 3);
+      FA msc = RandomAutomata.randomNFA(new Random(seed), 16, 3);
+      DeterminizationStrategies.SC(sc, IntSet.of(0, 1));
+      MinimizingSubsetConstruction.determinize(msc, IntSet.of(0, 1), 2);
+      Assertions.assertTrue(msc.getT().isDeterministic());
+      Assertions.assertTrue(msc.getQ() <= sc.getQ());
+      Assertions.assertEquals(describeMinimal(sc), describeMinimal(msc));
+    }
+  }
+
+  @Test
+  void testOutputs() {
+    for (long seed = 0; seed < 5; seed++) {
+      FA unminimized = RandomAutomata.randomNFA(new Random(seed), 16, 3, 2, 3, 3);
+      FA msc = RandomAutomata.randomNFA(new Random(seed), 16, 3, 2, 3, 3);
+      MinimizingSubsetConstruction.determinize(unminimized, IntSet.of(0), Integer.MAX_VALUE);
+      MinimizingSubsetConstruction.determinize(msc, IntSet.of(0), 1);
+      Assertions.assertEquals(describeMinimal(unminimized), describeMinimal(msc));
+      Assertions.assertTrue(msc.getO().intStream().anyMatch(o -> o > 1));
+    }
+  }
+
+  @Test
+  void testNegativeOutputs() {
+    // 0 -a-> 1 -a-> 1, with outputs -1 and -2
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(2);
+    builder.startState();
+    builder.addTransition(0, 1);
+    builder.startState();
+    builder.addTransition(0, 1);
+    FA fa = new FA();
+    fa.setAlphabetSize(1);
+    fa.setFields(2, new IntArrayList(new int[]{-1, -2}), builder.build());
+    MinimizingSubsetConstruction.determinize(fa, IntSet.of(0), 1);
+    Assertions.assertEquals(IntList.of(-1, -2), fa.getO());
+
+    for (long seed = 0; seed < 5; seed++) {
+      FA unminimized = RandomAutomata.randomNFA(new Random(seed), 16, 3, 2, 3, 3);
+      FA msc = RandomAutomata.randomNFA(new Random(seed), 16, 3, 2, 3, 3);
+      for (FA f : new FA[]{unminimized, msc}) {
+        for (int q = 0; q < f.getQ(); q++) {
+          f.getO().set(q, -1 - f.getO().getInt(q));
+        }
+      }
+      MinimizingSubsetConstruction.determinize(unminimized, IntSet.of(0), Integer.MAX_VALUE);
+      MinimizingSubsetConstruction.determinize(msc, IntSet.of(0), 1);
+      Assertions.assertEquals(describeMinimal(unminimized), describeMinimal(msc));
+      Assertions.assertTrue(msc.getO().intStream().allMatch(o -> o < 0));
+    }
+  }
+
+  @Test
+  void testRefine() {
+    // 0 -a-> 1 -a-> 2 -a-> 2, with 1 and 2 accepting: 1 and 2 are equivalent
+    int[] rowStart = {0, 1, 2, 3};
+    int[] inputs = {0, 0, 0};
+    int[] dests = {1, 2, 2};
+    int[] block = new int[3];
+    Assertions.assertEquals(2, SignatureRefinement.refine(3, rowStart, inputs, dests, new int[]{0, 1, 1}, block));
+    Assertions.assertArrayEquals(new int[]{0, 1, 1}, block);
+    // kept apart by the initial partition
+    Assertions.assertEquals(3, SignatureRefinement.refine(3, rowStart, inputs, dests, new int[]{0, 1, 2}, block));
+  }
+}
@@ -0,0 +1,86 @@
+package Automata.FA;
+
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class NaryProductTest {
+  private static boolean accepts(FA fa, int[] word, int length) {
+    int q = fa.getQ0();
+    for (int i = 0; i < length && q != Transitions.NO_DEST; i++) {
+      q = fa.getT().findDest(q, word[i]);
+    }
+    return q != Transitions.NO_DEST && fa.isAccepting(q);
+  }
+
+  private static void assertSameLanguage(FA[] components, boolean and, FA product) {
+    int[] word = new int[6];
+    for (int length = 0; length <= word.length; length++) {
+      int words = (int) Math.pow(3, length);
+      for (int w = 0; w < words; w++) {
+        for (int i = 0, rest = w; i < length; i++, rest /= 3) {
+          word[i] = rest % 3;
+        }
+        boolean expected = and;
+        for (FA component : components) {
+          expected = and ? expected && accepts(component, word, length) : expected || accepts(component, word, length);
+        }
+        Assertions.assertEquals(expected, accepts(product, word, length));
+      }
+    }
+  }
+
+  private static int[][] sameInputs(int k) {
+    int[][] inputs = new int[3][k];
+    for (int in = 0; in < 3; in++) {
+      Arrays.fill(inputs[in], in);
+    }
+    return inputs;
+  }
+
+  @Test
+  void testSameLanguage() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 20; trial++) {
+      FA[] components = new FA[3 + trial % 2];
+      for (int c = 0; c < components.length; c++) {
+        components[c] = RandomAutomata.randomDFA(random, 2 + random.nextInt(6), 3, 3, 6);
+      }
+      for (boolean and : new boolean[]{true, false}) {
+        FA product = new FA();
+        product.setAlphabetSize(3);
+        NaryProduct.build(components, sameInputs(components.length), and, product, System.currentTimeMillis());
+        assertSameLanguage(components, and, product);
+      }
+    }
+  }
+
+  @Test
+  void testPrunesDeadStates() {
+    // accepts words without a 2; after a 2, the DFA is in a dead state
+    FA noTwo = new FA();
+    noTwo.setAlphabetSize(3);
+    noTwo.initBasicFA(IntList.of(1, 0));
+    for (int in = 0; in < 3; in++) {
+      noTwo.addNewTransition(0, in == 2 ? 1 : 0, in);
+      noTwo.addNewTransition(1, 1, in);
+    }
+    noTwo.convertNFAtoDFA();
+    FA[] components = {noTwo, noTwo, noTwo};
+    FA product = new FA();
+    product.setAlphabetSize(3);
+    NaryProduct.build(components, sameInputs(3), true, product, System.currentTimeMillis());
+    Assertions.assertEquals(1, product.getQ());
+    Assertions.assertEquals(Transitions.NO_DEST, product.getT().findDest(0, 2));
+
+    product = new FA();
+    product.setAlphabetSize(3);
+    NaryProduct.build(components, sameInputs(3), false, product, System.currentTimeMillis());
+    Assertions.assertEquals(1, product.getQ());
+    Assertions.assertEquals(Transitions.NO_DEST, product.getT().findDest(0, 2));
+  }
+}
@@ -0,0 +1,38 @@
+package Automata.FA;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PairTableTest {
+  @Test
+  void testAdd() {
+    PairTable table = new PairTable(1);
+    Assertions.assertEquals(0, table.add(3, Transitions.NO_DEST));
+    Assertions.assertEquals(1, table.add(Transitions.NO_DEST, 3));
+    Assertions.assertEquals(0, table.add(3, Transitions.NO_DEST));
+    Assertions.assertEquals(2, table.size());
+    Assertions.assertEquals(Transitions.NO_DEST, table.left(1));
+    Assertions.assertEquals(3, table.right(1));
+
+    // enough pairs to grow several times
+    for (int p = 0; p < 300; p++) {
+      for (int q = 0; q < 300; q++) {
+        table.add(p, q);
+      }
+    }
+    Assertions.assertEquals(2 + 300 * 300, table.size());
+    for (int p = 0; p < 300; p++) {
+      for (int q = 0; q < 300; q++) {
+        int id = table.add(p, q);
+        Assertions.assertEquals(2 + 300 * p + q, id);
+        Assertions.assertEquals(p, table.left(id));
+        Assertions.assertEquals(q, table.right(id));
+      }
+    }
+    Assertions.assertEquals(1, table.add(Transitions.NO_DEST, 3));
+
+    table.clear();
+    Assertions.assertEquals(0, table.size());
+    Assertions.assertEquals(0, table.add(5, 5));
+  }
+}
@@ -0,0 +1,97 @@
+package Automata.FA;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ParallelMinimizationTest {
+  /**
+   * A random partial DFA on states 0..states-1, with a copy on states..2*states-1. Transitions go to either copy of
+   * their destination, so each state is equivalent to its copy.
+   */
+  static FA doubledDFA(long seed, int states, int alphabetSize, int outputs) {
+    Random random = new Random(seed);
+    int[][] rows = new int[states][alphabetSize];
+    IntList O = new IntArrayList();
+    for (int q = 0; q < states; q++) {
+      O.add(random.nextInt(4) == 0 ? 1 + random.nextInt(outputs - 1) : 0);
+      for (int in = 0; in < alphabetSize; in++) {
+        rows[q][in] = random.nextInt(8) == 0 ? -1 : random.nextInt(states);
+      }
+    }
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(2 * states);
+    for (int q = 0; q < 2 * states; q++) {
+      builder.startState();
+      for (int in = 0; in < alphabetSize; in++) {
+        int dest = rows[q % states][in];
+        if (dest >= 0) {
+          builder.addTransition(in, dest + (random.nextBoolean() ? states : 0));
+        }
+      }
+    }
+    O.addAll(new IntArrayList(O));
+    FA fa = new FA();
+    fa.setAlphabetSize(alphabetSize);
+    fa.setFields(2 * states, O, builder.build());
+    fa.convertNFAtoDFA();
+    return fa;
+  }
+
+  static String describe(FA fa) {
+    fa.canonizeInternal();
+    StringBuilder sb = new StringBuilder(fa.getQ() + " " + fa.getQ0() + " " + fa.getO());
+    for (int q = 0; q < fa.getQ(); q++) {
+      sb.append("\n").append(q).append(":");
+      fa.getT().forEachTransition(q, (in, dest) -> sb.append(" ").append(in).append("->").append(dest));
+    }
+    return sb.toString();
+  }
+
+  private static void assertSameAsValmari(FA sequential, FA parallel, boolean withOutput, int maxRounds, int minChunk) {
+    ValmariDFA v = new ValmariDFA(sequential, sequential.getQ());
+    if (withOutput) {
+      v.minValmariWithOutput(sequential.getO());
+    } else {
+      v.minValmari(sequential.getO());
+    }
+    v.replaceFields(sequential);
+    Assertions.assertTrue(ParallelMinimization.minimize(parallel, withOutput, maxRounds, minChunk));
+    Assertions.assertEquals(describe(sequential), describe(parallel));
+  }
+
+  @Test
+  void testSameAsValmari() {
+    int parallelism = ParallelSupport.getParallelism();
+    try {
+      ParallelSupport.setParallelism(4);
+      for (long seed = 0; seed < 10; seed++) {
+        assertSameAsValmari(doubledDFA(seed, 300, 3, 2), doubledDFA(seed, 300, 3, 2), false, 64, 16);
+        assertSameAsValmari(doubledDFA(seed, 300, 3, 4), doubledDFA(seed, 300, 3, 4), true, 64, 16);
+      }
+    } finally {
+      ParallelSupport.setParallelism(parallelism);
+    }
+  }
+
+  @Test
+  void testValmariFinishes() {
+    for (long seed = 0; seed < 5; seed++) {
+      assertSameAsValmari(doubledDFA(seed, 300, 3, 2), doubledDFA(seed, 300, 3, 2), false, 1, 1 << 14);
+      assertSameAsValmari(doubledDFA(seed, 300, 3, 4), doubledDFA(seed, 300, 3, 4), true, 1, 1 << 14);
+    }
+  }
+
+  @Test
+  void testDeadInitialState() {
+    FA fa = new FA();
+    fa.setAlphabetSize(2);
+    fa.initBasicFA(IntList.of(0, 1));
+    fa.addNewTransition(0, 0, 0);
+    fa.convertNFAtoDFA();
+    Assertions.assertFalse(ParallelMinimization.minimize(fa, false));
+    Assertions.assertEquals(2, fa.getQ());
+  }
+}
@@ -0,0 +1,55 @@
+package Automata.FA;
+
+import Main.EvalComputations.Token.LogicalOperator;
+import Main.RandomAutomata;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ParallelProductTest {
+  private static final int ALPHABET_SIZE = 3;
+
+  /**
+   * The product of A and B, reading the same input; states are left in the order they were found.
+   */
+  private static String product(FA A, FA B, String op, boolean implicitSink, int parallelThreshold) {
+    int[] allInputsOfAxB = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+    for (int a = 0; a < ALPHABET_SIZE; a++) {
+      for (int b = 0; b < ALPHABET_SIZE; b++) {
+        allInputsOfAxB[a * ALPHABET_SIZE + b] = a == b ? a : ProductStrategies.NOT_SAME_INPUT_IN_BOTH;
+      }
+    }
+    FA AxB = new FA();
+    AxB.setAlphabetSize(ALPHABET_SIZE);
+    ProductStrategies.crossProductInternalDFA(
+        A, B, AxB, 0, allInputsOfAxB, op, System.currentTimeMillis(), implicitSink, parallelThreshold, 50);
+    StringBuilder sb = new StringBuilder(AxB.getQ() + " " + AxB.getO());
+    for (int q = 0; q < AxB.getQ(); q++) {
+      sb.append("\n").append(q).append(":");
+      AxB.getT().forEachTransition(q, (in, dest) -> sb.append(" ").append(in).append("->").append(dest));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  void testSameAsSequential() {
+    int parallelism = ParallelSupport.getParallelism();
+    try {
+      Random random = new Random(0);
+      for (int trial = 0; trial < 10; trial++) {
+        FA A = RandomAutomata.randomDFA(random, 100, ALPHABET_SIZE, 3, 5), B = RandomAutomata.randomDFA(random, 100, ALPHABET_SIZE, 3, 5);
+        for (String op : new String[]{LogicalOperator.AND, LogicalOperator.OR, LogicalOperator.IMPLY}) {
+          boolean implicitSink = !op.equals(LogicalOperator.AND);
+          ParallelSupport.setParallelism(1);
+          String expected = product(A, B, op, implicitSink, 1 + trial);
+
+          ParallelSupport.setParallelism(4);
+          Assertions.assertEquals(expected, product(A, B, op, implicitSink, 1 + trial));
+        }
+      }
+    } finally {
+      ParallelSupport.setParallelism(parallelism);
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package Automata.FA;
+
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ParallelSubsetConstructionTest {
+  private static String describe(FA fa) {
+    StringBuilder sb = new StringBuilder(fa.getQ() + " " + fa.getQ0() + " " + fa.getO());
+    for (int q = 0; q < fa.getQ(); q++) {
+      sb.append("\n").append(q).append(":");
+      fa.getT().forEachTransition(q, (in, dest) -> sb.append(" ").append(in).append("->").append(dest));
+    }
+    return sb.toString();
+  }
+
+  @Test
+  void testSameAsSC() {
+    int parallelism = ParallelSupport.getParallelism();
+    try {
+      ParallelSupport.setParallelism(4);
+      for (long seed = 0; seed < 5; seed++) {
+        FA sc = RandomAutomata.randomNFA(new Random(seed), 16, 3);
+        FA psc = RandomAutomata.randomNFA(new Random(seed), 16, 3);
+        DeterminizationStrategies.SC(sc, IntSet.of(0, 1));
+        ParallelSubsetConstruction.determinize(psc, IntSet.of(0, 1));
+        Assertions.assertTrue(psc.getT().isDeterministic());
+        Assertions.assertEquals(describe(sc), describe(psc));
+      }
+    } finally {
+      ParallelSupport.setParallelism(parallelism);
+    }
+  }
+}
@@ -0,0 +1,54 @@
+package Automata.FA;
+
+import Main.EvalComputations.Token.LogicalOperator;
+import Main.RandomAutomata;
+
+import java.util.Random;
+
+/**
+ * Benchmark for the cross product of two random DFAs. Not a JUnit test; run it by hand, optionally with the number
+ * of states of each DFA and the number of repetitions as arguments:
+ *   ProductBenchmark 2000 5
+ * Both DFAs read the same inputs, so each product state has up to alphabetSize successors.
+ * The product with a sink is timed on 1, 2, 4, ... processors, which continue it in parallel once it is large enough.
+ */
+public class ProductBenchmark {
+  private static final int ALPHABET_SIZE = 4;
+
+  public static void main(String[] args) {
+    int states = args.length == 0 ? 2000 : Integer.parseInt(args[0]);
+    int repetitions = args.length < 2 ? 5 : Integer.parseInt(args[1]);
+    Random random = new Random(0);
+    FA A = RandomAutomata.randomDFA(random, states, ALPHABET_SIZE, 2, 16);
+    FA B = RandomAutomata.randomDFA(random, states, ALPHABET_SIZE, 2, 16);
+    int[] allInputsOfAxB = new int[ALPHABET_SIZE * ALPHABET_SIZE];
+    for (int a = 0; a < ALPHABET_SIZE; a++) {
+      for (int b = 0; b < ALPHABET_SIZE; b++) {
+        allInputsOfAxB[a * ALPHABET_SIZE + b] = a == b ? a : ProductStrategies.NOT_SAME_INPUT_IN_BOTH;
+      }
+    }
+
+    int maxParallelism = Runtime.getRuntime().availableProcessors();
+    for (int r = 0; r < repetitions; r++) {
+      for (int p = 1; ; p = Math.min(2 * p, maxParallelism)) {
+        ParallelSupport.setParallelism(p);
+        FA AxB = new FA();
+        AxB.setAlphabetSize(ALPHABET_SIZE);
+        long start = System.nanoTime();
+        ProductStrategies.crossProductInternalDFA(
+            A, B, AxB, 0, allInputsOfAxB, LogicalOperator.OR, System.currentTimeMillis(), true);
+        System.out.printf("  with sink, %3d cpu: %6d ms, %d states%n",
+            p, (System.nanoTime() - start) / 1_000_000, AxB.getQ());
+        if (p == maxParallelism) break;
+      }
+
+      FA AxB = new FA();
+      AxB.setAlphabetSize(ALPHABET_SIZE);
+      long start = System.nanoTime();
+      ProductStrategies.crossProductInternal(
+          A, B, AxB, 0, allInputsOfAxB, LogicalOperator.AND, System.currentTimeMillis());
+      System.out.printf("  without sink:      %6d ms, %d states%n", (System.nanoTime() - start) / 1_000_000, AxB.getQ());
+    }
+    ParallelSupport.setParallelism(maxParallelism);
+  }
+}
@@ -1,9 +1,15 @@
 package Automata.FA;
 
+import Automata.Automaton;
+import Automata.AutomatonDFA;
+import Automata.Symbolic.SymbolicDFA;
+import Main.EvalComputations.Token.LogicalOperator;
+import Main.RandomAutomata;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
+import java.util.Random;
 
 import static Automata.FA.ProductStrategies.NOT_SAME_INPUT_IN_BOTH;
 
@@ -31,4 +37,47 @@ public class ProductStrategiesTest {
     Assertions.assertEquals(List.of(1,2,3),
         ProductStrategies.joinTwoInputsForCrossProduct(List.of(1,2,3), List.of(), equalIndices));
   }
+
+  /**
+   * Whether A accepts the word over the tracks of joint, reading only its own tracks.
+   */
+  private static boolean accepts(Automaton A, Automaton joint, int[] word) {
+    int q = A.fa.getQ0();
+    for (int symbol : word) {
+      int in = 0;
+      for (int i = 0; i < A.getLabel().size(); i++) {
+        in |= (symbol >>> joint.getLabel().indexOf(A.getLabel().get(i)) & 1) << i;
+      }
+      q = A.fa.getT().findDest(q, in);
+      if (q == Transitions.NO_DEST) {
+        return false;
+      }
+    }
+    return A.fa.isAccepting(q);
+  }
+
+  @Test
+  void testSymbolicProduct() {
+    List<String> aLabels = List.of("t0", "t1", "t2", "t3", "t4", "t5", "t6");
+    List<String> bLabels = List.of("t9", "t5", "t7", "t4", "t11", "t6", "t8", "t10");
+    Random random = new Random(0);
+    for (int trial = 0; trial < 3; trial++) {
+      AutomatonDFA A = RandomAutomata.randomBinaryTracksDFA(random, aLabels);
+      AutomatonDFA B = RandomAutomata.randomBinaryTracksDFA(random, bLabels);
+      AutomatonDFA and = ProductStrategies.crossProductAndMinimize(A.clone(), B.clone(), LogicalOperator.AND, false);
+      AutomatonDFA implies = ProductStrategies.crossProductAndMinimize(A.clone(), B.clone(), LogicalOperator.IMPLY, true);
+      AutomatonDFA or = ProductStrategies.crossProductAllAndMinimize(List.of(A.clone(), B.clone()), false);
+      Assertions.assertNotNull(SymbolicDFA.autoLayout(and.richAlphabet.getA(), and.getAlphabetSize()));
+      Assertions.assertEquals(12, and.getLabel().size());
+      for (int length = 0; length <= 4; length++) {
+        for (int w = 0; w < 200; w++) {
+          int[] word = random.ints(length, 0, and.getAlphabetSize()).toArray();
+          boolean a = accepts(A, and, word), b = accepts(B, and, word);
+          Assertions.assertEquals(a && b, accepts(and, and, word));
+          Assertions.assertEquals(!a || b, accepts(implies, and, word));
+          Assertions.assertEquals(a || b, accepts(or, and, word));
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,138 @@
+package Automata.FA;
+
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.Random;
+
+public class ProjectedSubsetConstructionTest {
+  // two binary tracks, encoded as x + 2y; y is projected away
+  private static final int[] DROP_Y = {0, 1, 0, 1};
+  private static final int STATES = 12;
+  private static final int LENGTH = 8;
+
+  /**
+   * Whether the source accepts some word whose projection is the given word over {0, 1}.
+   * With zeroLoop, the initial state also loops on 0, as after fixLeadingZerosProblem.
+   */
+  private static boolean projectionAccepts(FA fa, int word, int length, boolean zeroLoop) {
+    BitSet current = new BitSet();
+    current.set(fa.getQ0());
+    for (int i = length - 1; i >= 0; i--) {
+      int bit = (word >>> i) & 1;
+      BitSet next = new BitSet();
+      current.stream().forEach(q -> fa.getT().forEachTransition(q, (in, dest) -> {
+        if (DROP_Y[in] == bit) {
+          next.set(dest);
+        }
+      }));
+      if (zeroLoop && bit == 0 && current.get(fa.getQ0())) {
+        next.set(fa.getQ0());
+      }
+      current = next;
+    }
+    return current.stream().anyMatch(fa::isAccepting);
+  }
+
+  private static boolean dfaAccepts(FA fa, int word, int length) {
+    int q = fa.getQ0();
+    for (int i = length - 1; i >= 0 && q != Transitions.NO_DEST; i--) {
+      q = fa.getT().findDest(q, (word >>> i) & 1);
+    }
+    return q != Transitions.NO_DEST && fa.isAccepting(q);
+  }
+
+  private static FA project(FA source, int leadingZero, int trailingZero) {
+    FA fa = source.clone();
+    fa.setAlphabetSize(2);
+    ProjectedSubsetConstruction.determinize(fa, DROP_Y, leadingZero, trailingZero);
+    Assertions.assertTrue(fa.getT().isDeterministic());
+    return fa;
+  }
+
+  @Test
+  void testProjection() {
+    for (long seed = 0; seed < 5; seed++) {
+      FA source = RandomAutomata.randomDFA(new Random(seed), STATES, 4, 4, 5);
+      FA plain = project(source, -1, -1);
+      FA msd = project(source, 0, -1);
+      FA lsd = project(source, -1, 0);
+      for (int length = 0; length <= LENGTH; length++) {
+        for (int word = 0; word < 1 << length; word++) {
+          boolean accepts = projectionAccepts(source, word, length, false);
+          Assertions.assertEquals(accepts, dfaAccepts(plain, word, length));
+
+          boolean withLeadingZeros = false, withTrailingZeros = false;
+          for (int k = 0; k < STATES; k++) { // zeros reach every state they can within STATES steps
+            withLeadingZeros |= projectionAccepts(source, word, length + k, true);
+            withTrailingZeros |= projectionAccepts(source, word << k, length + k, false);
+          }
+          Assertions.assertEquals(withLeadingZeros, dfaAccepts(msd, word, length));
+          Assertions.assertEquals(withTrailingZeros, dfaAccepts(lsd, word, length));
+        }
+      }
+    }
+  }
+
+  /**
+   * A DFA whose projection through DROP_Y is deterministic, and whose zeros mostly loop, so that SC stays small
+   * even with the zero fixes; y = 1 is missing from one transition in four.
+   */
+  private static FA deterministicProjection(Random random, int states) {
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(4, states);
+    IntList O = new IntArrayList();
+    int[] dests = new int[2];
+    for (int q = 0; q < states; q++) {
+      builder.startState();
+      O.add(random.nextInt(4) == 0 ? 1 : 0);
+      for (int in = 0; in < 4; in++) {
+        if (in < 2) {
+          dests[in] = in == 0 && random.nextBoolean() ? q : random.nextInt(states);
+          builder.addTransition(in, dests[in]);
+        } else if (random.nextInt(4) != 0) {
+          builder.addTransition(in, dests[in - 2]);
+        }
+      }
+    }
+    FA fa = new FA();
+    fa.setAlphabetSize(4);
+    fa.setFields(states, O, builder.build());
+    fa.setQ0(0);
+    return fa;
+  }
+
+  @Test
+  void testReducedProjection() {
+    // two copies of a DFA, crossing over on some inputs, are bisimilar to it but large enough to be reduced
+    int n = Bisimulation.THRESHOLD * 3 / 5;
+    FA single = deterministicProjection(new Random(7), n);
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(4, 2 * n);
+    IntList O = new IntArrayList();
+    for (int copy = 0; copy < 2; copy++) {
+      for (int q = 0; q < n; q++) {
+        builder.startState();
+        O.add(single.getO().getInt(q));
+        int c = copy;
+        single.getT().forEachTransition(q, (in, dest) -> builder.addTransition(in, dest + ((c + in) % 2) * n));
+      }
+    }
+    FA doubled = new FA();
+    doubled.setAlphabetSize(4);
+    doubled.setFields(2 * n, O, builder.build());
+    doubled.setQ0(0);
+
+    for (int[] zeros : new int[][]{{-1, -1}, {0, -1}, {-1, 0}}) {
+      FA expected = project(single, zeros[0], zeros[1]);
+      FA actual = project(doubled, zeros[0], zeros[1]);
+      for (int length = 0; length <= 2 * LENGTH; length++) {
+        for (int word = 0; word < 1 << length; word++) {
+          Assertions.assertEquals(dfaAccepts(expected, word, length), dfaAccepts(actual, word, length));
+        }
+      }
+    }
+  }
+}
@@ -1,8 +1,14 @@
 package Automata.FA;
 
+import Main.WalnutException;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.file.Path;
+import java.util.List;
+
 public class TransitionsTest {
   @Test
   void testTransitionsDFA() {
@@ -12,4 +18,185 @@ public class TransitionsTest {
     tDFA.reduceMemory();
     Assertions.assertEquals("dfaD:[]", tDFA.toString());
   }
+
+  @Test
+  void testTransitionsPackedDFA() {
+    TransitionsPackedDFA.Builder builder = new TransitionsPackedDFA.Builder(100, 3);
+    builder.startState();
+    builder.addTransition(50, 1);
+    builder.addTransition(3, 2);
+    builder.startState();
+    builder.startState();
+    builder.addTransition(99, 0);
+    TransitionsPackedDFA sparse = builder.build();
+    Assertions.assertFalse(sparse.isDense());
+    Assertions.assertEquals(3, sparse.getDfaStateCount());
+    Assertions.assertEquals(3, sparse.determineTransitionCount());
+    Assertions.assertEquals(2, sparse.getDfaStateDest(0, 3));
+    Assertions.assertFalse(sparse.hasDfaDTransition(0, 4));
+    Assertions.assertEquals(IntList.of(3, 50), new IntArrayList(sparse.getDfaStateKeySet(0)));
+    Assertions.assertEquals("dfaD:[{3=>2, 50=>1}, {}, {99=>0}]", sparse.toString());
+    Assertions.assertThrows(WalnutException.class, () -> sparse.setDfaDTransition(1, 0, 0));
+
+    TransitionsPackedDFA dense = TransitionsPackedDFA.fromEdges(
+        2, 2, new int[]{1, 0, 0, 1}, new int[]{1, 1, 0, 0}, new int[]{0, 1, 0, 1}, 4);
+    Assertions.assertTrue(dense.isDense());
+    Assertions.assertEquals("dfaD:[{0=>0, 1=>1}, {0=>1, 1=>0}]", dense.toString());
+    Assertions.assertEquals(IntList.of(1), dense.getNfaStateDests(0, 1));
+    Assertions.assertNull(dense.getNfaStateDests(0, 2));
+  }
+
+  @Test
+  void testTransitionsOffHeapDFA() {
+    TransitionsOffHeapDFA.Builder builder = new TransitionsOffHeapDFA.Builder(3, 3, null);
+    builder.startState();
+    builder.addTransition(50, 1);
+    builder.addTransition(3, 2);
+    builder.startState();
+    builder.startState();
+    builder.addTransition(99, 0);
+    TransitionsOffHeapDFA offHeap = builder.build();
+    Assertions.assertEquals(3, offHeap.getDfaStateCount());
+    Assertions.assertEquals(3, offHeap.determineTransitionCount());
+    Assertions.assertEquals(2, offHeap.getDfaStateDest(0, 3));
+    Assertions.assertFalse(offHeap.hasDfaDTransition(0, 4));
+    Assertions.assertEquals("dfaD:[{3=>2, 50=>1}, {}, {99=>0}]", offHeap.toString());
+    Assertions.assertThrows(WalnutException.class, () -> offHeap.setDfaDTransition(1, 0, 0));
+
+    TransitionsOffHeapDFA mapped = TransitionsOffHeapDFA.fromEdges(
+        2, new int[]{1, 0, 0, 1}, new int[]{1, 1, 0, 0}, new int[]{0, 1, 0, 1}, 4,
+        Path.of(System.getProperty("java.io.tmpdir")));
+    Assertions.assertEquals("dfaD:[{0=>0, 1=>1}, {0=>1, 1=>0}]", mapped.toString());
+    Assertions.assertEquals(IntList.of(1), mapped.getNfaStateDests(0, 1));
+  }
+
+  @Test
+  void testTransitionStorageSpill() {
+    long oldThreshold = TransitionStorage.autoThreshold;
+    TransitionStorage.autoThreshold = 2;
+    try {
+      TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(2, 1);
+      for (int q = 0; q < 4; q++) {
+        builder.startState();
+        builder.addTransition(1, (q + 1) % 4);
+        builder.addTransition(0, q);
+      }
+      Transitions spilled = builder.build();
+      Assertions.assertInstanceOf(TransitionsOffHeapDFA.class, spilled);
+      Assertions.assertEquals(
+          "dfaD:[{0=>0, 1=>1}, {0=>1, 1=>2}, {0=>2, 1=>3}, {0=>3, 1=>0}]", spilled.toString());
+    } finally {
+      TransitionStorage.autoThreshold = oldThreshold;
+    }
+  }
+
+  @Test
+  void testTransitionsCompactNFA() {
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(3);
+    builder.startState();
+    builder.addTransition(5, 2);
+    builder.addTransition(1, 1);
+    builder.addTransitions(5, IntList.of(0, 2));
+    builder.startState();
+    builder.startState();
+    builder.addTransition(1, 0);
+    TransitionsCompactNFA compact = builder.build();
+    Assertions.assertFalse(compact.isDeterministic());
+    Assertions.assertEquals(4, compact.determineTransitionCount());
+    Assertions.assertEquals(IntList.of(2, 0), compact.getNfaStateDests(0, 5));
+    Assertions.assertNull(compact.getNfaStateDests(1, 5));
+    Assertions.assertEquals("nfaD:[{1=>[1], 5=>[2, 0]}, {}, {1=>[0]}]", compact.toString());
+    Assertions.assertEquals("nfaD:[{1=>[2], 5=>[0]}, {1=>[0]}, {5=>[0]}]", compact.reverse().toString());
+    Assertions.assertThrows(WalnutException.class, compact::addMapToNfaD);
+  }
+
+  @Test
+  void testForEachTransition() {
+    TransitionsCompactNFA.Builder nfaBuilder = new TransitionsCompactNFA.Builder(1);
+    nfaBuilder.startState();
+    nfaBuilder.addTransition(2, 0);
+    nfaBuilder.addTransitions(1, IntList.of(3, 1));
+    TransitionsPackedDFA.Builder dfaBuilder = new TransitionsPackedDFA.Builder(3, 1);
+    dfaBuilder.startState();
+    dfaBuilder.addTransition(2, 0);
+    dfaBuilder.addTransition(1, 3);
+
+    for (Transitions t : List.of(nfaBuilder.build(), dfaBuilder.build())) {
+      IntList visited = new IntArrayList();
+      t.forEachTransition(0, (in, dest) -> {
+        visited.add(in);
+        visited.add(dest);
+      });
+      Assertions.assertEquals(3, t.findDest(0, 1));
+      Assertions.assertEquals(Transitions.NO_DEST, t.findDest(0, 0));
+      if (t.isDeterministic()) {
+        Assertions.assertEquals(IntList.of(1, 3, 2, 0), visited);
+      } else {
+        Assertions.assertEquals(IntList.of(1, 3, 1, 1, 2, 0), visited);
+      }
+    }
+  }
+
+  @Test
+  void testForEachTransitionAfterWrite() {
+    TransitionsDFA dfa = new TransitionsDFA();
+    dfa.addDfaState();
+    dfa.setDfaDTransition(0, 2, 0);
+    IntList visited = new IntArrayList();
+    dfa.forEachTransition(0, (in, dest) -> visited.add(in));
+    Assertions.assertEquals(IntList.of(2), visited);
+
+    dfa.setDfaDTransition(0, 1, 0);
+    dfa.setDfaDTransition(0, 2, 1);
+    dfa.addDfaState();
+    dfa.setDfaDTransition(1, 0, 1);
+    visited.clear();
+    dfa.forEachTransition(0, (in, dest) -> {
+      visited.add(in);
+      visited.add(dest);
+    });
+    dfa.forEachTransition(1, (in, dest) -> visited.add(in));
+    Assertions.assertEquals(IntList.of(1, 0, 2, 1, 0), visited);
+
+    // a visit inside a visit doesn't disturb the outer one
+    visited.clear();
+    dfa.forEachTransition(0, (in, dest) -> {
+      visited.add(in);
+      dfa.forEachTransition(dest, (in2, dest2) -> visited.add(10 + in2));
+    });
+    Assertions.assertEquals(IntList.of(1, 11, 12, 2, 10), visited);
+  }
+
+  @Test
+  void testSnapshot() {
+    TransitionsNFA original = new TransitionsNFA();
+    original.addMapToNfaD();
+    original.addMapToNfaD();
+    original.setNfaDTransition(0, 0, new IntArrayList(IntList.of(1)));
+    Transitions copy = original.snapshot();
+
+    // writes on either side copy the row, and aren't seen by the other side
+    copy.setNfaDTransition(0, 1, new IntArrayList(IntList.of(0)));
+    original.getNfaState(0).get(0).add(0);
+    copy.addMapToNfaD();
+    Assertions.assertEquals(IntList.of(1, 0), original.getNfaStateDests(0, 0));
+    Assertions.assertNull(original.getNfaStateDests(0, 1));
+    Assertions.assertEquals(IntList.of(1), copy.getNfaStateDests(0, 0));
+    Assertions.assertEquals(IntList.of(0), copy.getNfaStateDests(0, 1));
+    Assertions.assertEquals(2, original.getNfaD().size());
+    Assertions.assertEquals(3, copy.getNfaD().size());
+
+    TransitionsDFA dfa = new TransitionsDFA();
+    dfa.addDfaState();
+    dfa.setDfaDTransition(0, 0, 0);
+    Transitions dfaCopy = dfa.snapshot();
+    dfaCopy.setDfaDTransition(0, 0, 1);
+    Assertions.assertEquals(0, dfa.getDfaStateDest(0, 0));
+    Assertions.assertEquals(1, dfaCopy.getDfaStateDest(0, 0));
+
+    TransitionsPackedDFA.Builder builder = new TransitionsPackedDFA.Builder(2, 1);
+    builder.startState();
+    TransitionsPackedDFA packed = builder.build();
+    Assertions.assertSame(packed, packed.snapshot());
+  }
 }
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class RichAlphabetTest {
@@ -53,4 +54,68 @@ public class RichAlphabetTest {
 
 
   }
+
+  @Test
+  void testPrimitiveEncodeDecode() {
+    RichAlphabet r = new RichAlphabet();
+    r.setA(new ArrayList<>(List.of(List.of(1,2), List.of(0,-1,1), List.of(1,3))));
+    int[] digits = new int[3];
+    for (int n = 0; n < 12; n++) {
+      r.decode(n, digits);
+      Assertions.assertEquals(r.decode(n), List.of(digits[0], digits[1], digits[2]));
+      Assertions.assertEquals(n, r.encode(digits));
+      Assertions.assertEquals((int) r.decode(n).get(1), r.digit(n, 1));
+    }
+    Assertions.assertEquals(-1, r.encode(new int[]{1,5,1}));
+  }
+
+  @Test
+  void testAlphabetMaps() {
+    RichAlphabet r = new RichAlphabet();
+    r.setA(new ArrayList<>(List.of(List.of(1,2), List.of(0,-1,1), List.of(1,3))));
+
+    // (a,b,c) -> (c,a)
+    RichAlphabet projected = new RichAlphabet();
+    projected.setA(new ArrayList<>(List.of(List.of(1,3), List.of(1,2))));
+    int[] projection = r.projectionMap(new int[]{2,0});
+    // track i moves to permutation[i]: (a,b,c) -> (b,c,a)
+    RichAlphabet permuted = new RichAlphabet();
+    permuted.setA(new ArrayList<>(List.of(List.of(0,-1,1), List.of(1,3), List.of(1,2))));
+    int[] permutation = r.permutationMap(new int[]{2,0,1});
+    for (int n = 0; n < 12; n++) {
+      List<Integer> x = r.decode(n);
+      Assertions.assertEquals(projected.encode(List.of(x.get(2), x.get(0))), projection[n]);
+      Assertions.assertEquals(permuted.encode(List.of(x.get(1), x.get(2), x.get(0))), permutation[n]);
+    }
+
+    RichAlphabet smaller = new RichAlphabet();
+    smaller.setA(new ArrayList<>(List.of(List.of(2), List.of(1,0), List.of(3,1))));
+    int[] remap = r.remapTo(smaller);
+    Assertions.assertEquals(smaller.encode(List.of(2,1,3)), remap[r.encode(List.of(2,1,3))]);
+    Assertions.assertEquals(-1, remap[r.encode(List.of(1,1,3))]);
+
+    Assertions.assertEquals(
+        List.of(r.encode(List.of(1,0,1)), r.encode(List.of(1,-1,1))),
+        r.expandWildcardEncoded(Arrays.asList(1, null, 1)).subList(0, 2));
+  }
+
+  @Test
+  void testJoinMap() {
+    RichAlphabet a = new RichAlphabet();
+    a.setA(new ArrayList<>(List.of(List.of(0,1), List.of(0,1))));
+    RichAlphabet b = new RichAlphabet();
+    b.setA(new ArrayList<>(List.of(List.of(0,1,2), List.of(0,1))));
+    RichAlphabet joined = new RichAlphabet();
+    joined.setA(new ArrayList<>(List.of(List.of(0,1), List.of(0,1), List.of(0,1,2))));
+    // the second track of b is the first track of a
+    int[] map = RichAlphabet.joinMap(a, b, new int[]{-1, 0}, joined);
+    Assertions.assertEquals(24, map.length);
+    for (int i = 0; i < 4; i++) {
+      for (int j = 0; j < 6; j++) {
+        List<Integer> x = a.decode(i), y = b.decode(j);
+        int expected = x.get(0).equals(y.get(1)) ? joined.encode(List.of(x.get(0), x.get(1), y.get(0))) : -1;
+        Assertions.assertEquals(expected, map[i * 6 + j]);
+      }
+    }
+  }
 }
@@ -0,0 +1,73 @@
+package Automata.Search;
+
+import Automata.FA.FA;
+import Automata.FA.Transitions;
+import Main.RandomAutomata;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import net.automatalib.word.Word;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ProductBFSTest {
+  /**
+   * Length of the shortest word accepted by both, or -1, by a BFS over all pairs.
+   */
+  private static int shortestCommonLength(FA a, FA b, int[][] symbolMaps) {
+    int[][] distance = new int[a.getQ()][b.getQ()];
+    for (int[] row : distance) {
+      java.util.Arrays.fill(row, -1);
+    }
+    IntList queue = new IntArrayList();
+    distance[a.getQ0()][b.getQ0()] = 0;
+    queue.add(a.getQ0());
+    queue.add(b.getQ0());
+    for (int i = 0; i < queue.size(); i += 2) {
+      int p = queue.getInt(i), q = queue.getInt(i + 1);
+      if (a.isAccepting(p) && b.isAccepting(q)) {
+        return distance[p][q];
+      }
+      for (int[] inputs : symbolMaps) {
+        if (inputs == null) {
+          continue;
+        }
+        int p2 = a.getT().findDest(p, inputs[0]), q2 = b.getT().findDest(q, inputs[1]);
+        if (p2 != Transitions.NO_DEST && q2 != Transitions.NO_DEST && distance[p2][q2] == -1) {
+          distance[p2][q2] = distance[p][q] + 1;
+          queue.add(p2);
+          queue.add(q2);
+        }
+      }
+    }
+    return -1;
+  }
+
+  @Test
+  void testAllAccepting() {
+    Random random = new Random(3);
+    // global symbol a is read as a % 3 by the first DFA and a / 3 by the second; symbols 4 and 8 are unused
+    int[][] symbolMaps = new int[9][];
+    for (int a = 0; a < 9; a++) {
+      symbolMaps[a] = a == 4 || a == 8 ? null : new int[]{a % 3, a / 3};
+    }
+    int found = 0;
+    for (int round = 0; round < 100; round++) {
+      FA a = RandomAutomata.randomDFA(random, 10, 3, 6, 3), b = RandomAutomata.randomDFA(random, 10, 3, 6, 3);
+      Word<Integer> witness = ProductBFS.shortestWitnessWordAllAccepting(new FA[]{a, b}, symbolMaps);
+      int expected = shortestCommonLength(a, b, symbolMaps);
+      Assertions.assertEquals(expected, witness == null ? -1 : witness.length());
+      if (witness != null) {
+        found++;
+        int p = a.getQ0(), q = b.getQ0();
+        for (int symbol : witness) {
+          p = a.getT().findDest(p, symbolMaps[symbol][0]);
+          q = b.getT().findDest(q, symbolMaps[symbol][1]);
+        }
+        Assertions.assertTrue(a.isAccepting(p) && b.isAccepting(q));
+      }
+    }
+    Assertions.assertTrue(0 < found && found < 100);
+  }
+}
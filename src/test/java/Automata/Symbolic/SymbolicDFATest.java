@@ -0,0 +1,101 @@
+package Automata.Symbolic;
+
+import Automata.FA.FA;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SymbolicDFATest {
+  // two binary tracks (x, y), encoded as x + 2y
+  private static final TrackLayout LAYOUT = TrackLayout.of(2, 2);
+
+  private static FA oneStateFA(int... symbols) {
+    FA fa = new FA();
+    fa.setAlphabetSize(4);
+    fa.initBasicFA(IntList.of(1));
+    for (int symbol : symbols) {
+      fa.addNewTransition(0, 0, symbol);
+    }
+    return fa;
+  }
+
+  @Test
+  void testMTBDDSharing() {
+    MTBDD bdd = new MTBDD();
+    int a = bdd.node(0, bdd.leaf(1), bdd.leaf(2));
+    Assertions.assertEquals(a, bdd.node(0, bdd.leaf(1), bdd.leaf(2)));
+    Assertions.assertEquals(bdd.leaf(1), bdd.node(1, bdd.leaf(1), bdd.leaf(1)));
+    Assertions.assertEquals(2, bdd.evaluate(a, v -> true));
+  }
+
+  @Test
+  void testConversionAndProduct() {
+    MTBDD bdd = new MTBDD();
+    SymbolicDFA xEqualsY = SymbolicDFA.fromFA(oneStateFA(0, 3), IntSet.of(0), LAYOUT, bdd);
+    SymbolicDFA xIsOne = SymbolicDFA.fromFA(oneStateFA(1, 3), IntSet.of(0), LAYOUT, bdd);
+    Assertions.assertEquals(0, xEqualsY.getDest(0, 3));
+    Assertions.assertEquals(-1, xEqualsY.getDest(0, 1));
+
+    SymbolicDFA and = xEqualsY.product(xIsOne, (a, b) -> a != 0 && b != 0 ? 1 : 0, false).minimize();
+    Assertions.assertEquals(1, and.getQ());
+    FA fa = and.toFA();
+    Assertions.assertEquals(4, fa.getAlphabetSize());
+    Assertions.assertEquals(1, fa.getT().determineTransitionCount());
+    Assertions.assertEquals(0, fa.getT().findDest(0, 3));
+
+    // the pair of sinks is kept, since it accepts
+    SymbolicDFA implies = xEqualsY.product(xIsOne, (a, b) -> a == 0 || b != 0 ? 1 : 0, true).minimize();
+    Assertions.assertEquals(3, implies.getQ());
+  }
+
+  @Test
+  void testProductOfTrackSelections() {
+    // x = y over tracks (x, y) and y = 1 over track (y), combined over (x, y)
+    MTBDD bdd = new MTBDD();
+    SymbolicDFA xEqualsY = SymbolicDFA.fromFA(oneStateFA(0, 3), IntSet.of(0), LAYOUT, bdd);
+    FA yIsOne = new FA();
+    yIsOne.setAlphabetSize(2);
+    yIsOne.initBasicFA(IntList.of(1));
+    yIsOne.addNewTransition(0, 0, 1);
+    SymbolicDFA yIsOneOverXY = SymbolicDFA.fromFA(yIsOne, IntSet.of(0), LAYOUT, LAYOUT.select(new int[]{1}), bdd);
+    Assertions.assertEquals(0, yIsOneOverXY.getDest(0, 2));
+    Assertions.assertEquals(0, yIsOneOverXY.getDest(0, 3));
+    Assertions.assertEquals(-1, yIsOneOverXY.getDest(0, 1));
+
+    FA and = xEqualsY.product(yIsOneOverXY, (a, b) -> a != 0 && b != 0 ? 1 : 0, false).minimize().toFA();
+    Assertions.assertEquals(1, and.getT().determineTransitionCount());
+    Assertions.assertEquals(0, and.getT().findDest(0, 3));
+  }
+
+  @Test
+  void testExists() {
+    SymbolicDFA xEqualsY = SymbolicDFA.fromFA(oneStateFA(0, 3), IntSet.of(0), LAYOUT, new MTBDD());
+    SymbolicDFA projected = xEqualsY.exists(0).minimize();
+    Assertions.assertEquals(1, projected.getLayout().getTrackCount());
+    FA fa = projected.toFA();
+    Assertions.assertEquals(2, fa.getAlphabetSize());
+    Assertions.assertEquals(1, fa.getQ());
+    Assertions.assertEquals(2, fa.getT().determineTransitionCount());
+  }
+
+  @Test
+  void testDeterminize() {
+    // 0 -x=y-> 0, 0 -(1,1)-> 1, where only 1 accepts: words whose last symbol is (1,1)
+    FA nfa = new FA();
+    nfa.setAlphabetSize(4);
+    nfa.initBasicFA(IntList.of(0, 1));
+    nfa.addNewTransition(0, 0, 0);
+    nfa.getT().setNfaDTransition(0, 3, new IntArrayList(new int[]{0, 1}));
+    SymbolicDFA dfa = SymbolicDFA.fromFA(nfa, IntSet.of(0), LAYOUT, new MTBDD()).minimize();
+    Assertions.assertEquals(2, dfa.getQ());
+    int q0 = dfa.getQ0(), q1 = dfa.getDest(q0, 3);
+    Assertions.assertEquals(0, dfa.getOutput(q0));
+    Assertions.assertEquals(1, dfa.getOutput(q1));
+    Assertions.assertEquals(q0, dfa.getDest(q0, 0));
+    Assertions.assertEquals(q0, dfa.getDest(q1, 0));
+    Assertions.assertEquals(q1, dfa.getDest(q1, 3));
+    Assertions.assertEquals(-1, dfa.getDest(q1, 1));
+  }
+}
@@ -0,0 +1,41 @@
+package Main;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BudgetTest {
+  @Test
+  void testParse() {
+    Budget.Limits limits = Budget.parse(Budget.Limits.UNLIMITED,
+        new String[]{"states=5e7", "transitions=1000", "heap=80%", "time=90s"});
+    Assertions.assertEquals(new Budget.Limits(50_000_000L, 1000L, 0.8, 90_000L), limits);
+
+    limits = Budget.parse(limits, new String[]{"heap=0.5", "time=2h", "transitions=none"});
+    Assertions.assertEquals(new Budget.Limits(50_000_000L, Long.MAX_VALUE, 0.5, 7_200_000L), limits);
+    Assertions.assertEquals(250L, Budget.parse(limits, new String[]{"time=250ms"}).millis());
+    Assertions.assertEquals(60_000L, Budget.parse(limits, new String[]{"time=1m"}).millis());
+    Assertions.assertEquals(3_000L, Budget.parse(limits, new String[]{"time=3"}).millis());
+
+    for (String bogus : new String[]{"states", "states=0", "heap=150%", "time=-1s", "memory=1", "time=soon"}) {
+      Assertions.assertThrows(WalnutException.class,
+          () -> Budget.parse(Budget.Limits.UNLIMITED, new String[]{bogus}), bogus);
+    }
+  }
+
+  @Test
+  void testCheck() {
+    new MetaCommands();
+    Budget.check("test", Long.MAX_VALUE - 1, Long.MAX_VALUE - 1);
+
+    Budget.set(new String[]{"states=100", "transitions=1000"});
+    Budget.check("test", 100, 1000);
+    BudgetExceededException e = Assertions.assertThrows(BudgetExceededException.class,
+        () -> Budget.check("subset construction", 101, 0));
+    Assertions.assertTrue(e.getMessage().contains("states=100 exceeded in subset construction"), e.getMessage());
+    Assertions.assertThrows(BudgetExceededException.class, () -> Budget.check("test", 0, 1001));
+
+    // the next command starts from the defaults again
+    new MetaCommands();
+    Budget.check("test", 101, 1001);
+  }
+}
@@ -0,0 +1,81 @@
+package Main;
+
+import Automata.FA.ParallelSupport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Scaling benchmark for the SC and PSC determinization strategies on the Command Files workloads.
+ * Not a JUnit test; run it by hand, e.g. with the names of Command Files as arguments:
+ *   DeterminizationBenchmark fibonacci_tests.txt thue_tests.txt
+ * Each workload is run once with SC, then with PSC on 1, 2, 4, ... processors.
+ */
+public class DeterminizationBenchmark {
+  private static final List<String> DEFAULT_WORKLOADS = List.of(
+      "fibonacci_tests.txt", "thue_tests.txt", "paperfolding_tests.txt", "rudin_shapiro_tests.txt");
+
+  public static void main(String[] args) throws IOException {
+    List<String> workloads = args.length == 0 ? DEFAULT_WORKLOADS : List.of(args);
+    Session.setPathsAndNamesIntegrationTests();
+    int maxParallelism = Runtime.getRuntime().availableProcessors();
+
+    for (String workload : workloads) {
+      List<String> commands = readCommands(Session.getReadAddressForCommandFiles(workload));
+      System.out.printf("%s (%d commands)%n", workload, commands.size());
+      System.out.printf("  SC:           %8d ms%n", run(commands, "SC"));
+      for (int p = 1; ; p = Math.min(2 * p, maxParallelism)) {
+        ParallelSupport.setParallelism(p);
+        System.out.printf("  PSC, %3d cpu: %8d ms%n", p, run(commands, "PSC"));
+        if (p == maxParallelism) break;
+      }
+    }
+    ParallelSupport.setParallelism(maxParallelism);
+  }
+
+  private static long run(List<String> commands, String strategy) throws IOException {
+    Session.cleanPathsAndNamesIntegrationTest();
+    Prover prover = new Prover();
+    long start = System.nanoTime();
+    for (String command : commands) {
+      prover.dispatch("[strategy * " + strategy + "]" + command);
+    }
+    return (System.nanoTime() - start) / 1_000_000;
+  }
+
+  /**
+   * Commands of a command file, each ending in :: so that the strategy metacommand applies.
+   */
+  private static List<String> readCommands(String fileName) throws IOException {
+    List<String> commands = new ArrayList<>();
+    StringBuilder current = new StringBuilder();
+    try (BufferedReader in = Files.newBufferedReader(Paths.get(fileName), StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = in.readLine()) != null) {
+        line = line.strip();
+        if (current.isEmpty() && (line.isEmpty() || line.startsWith("#"))) {
+          continue;
+        }
+        current.append(line).append(' ');
+        String s = current.toString().strip();
+        if (s.endsWith(";") || s.endsWith(":")) {
+          int end = s.length();
+          while (s.charAt(end - 1) == ';' || s.charAt(end - 1) == ':') {
+            end--;
+          }
+          String command = s.substring(0, end).strip();
+          if (!command.startsWith(Prover.LOAD)) {
+            commands.add(command + "::");
+          }
+          current.setLength(0);
+        }
+      }
+    }
+    return commands;
+  }
+}
@@ -1,6 +1,9 @@
 package Main;
 
+import Automata.FA.Checkpoint;
+import Automata.FA.ParallelMinimization;
 import Automata.FA.DeterminizationStrategies;
+import Automata.FA.TransitionStorage;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -50,6 +53,110 @@ public class MetaCommandsTest {
     });
   }
 
+  @Test
+  void testParseStorage() {
+    MetaCommands mc = new MetaCommands();
+    Assertions.assertEquals("blah", mc.parseMetaCommands("[storage offheap]blah", true));
+    Assertions.assertEquals(TransitionStorage.Mode.OFFHEAP, TransitionStorage.getMode());
+
+    new MetaCommands();
+    Assertions.assertEquals(TransitionStorage.DEFAULT_MODE, TransitionStorage.getMode());
+
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[storage 5 offheap]", true);
+    });
+    Assertions.assertThrows(RuntimeException.class, () -> {
+      new MetaCommands().parseMetaCommands("[storage bogus]", true);
+    });
+    new MetaCommands();
+  }
+
+  @Test
+  void testParseMinimization() {
+    MetaCommands mc = new MetaCommands();
+    Assertions.assertEquals("blah", mc.parseMetaCommands("[minimization parallel]blah", true));
+    Assertions.assertEquals(ParallelMinimization.Mode.PARALLEL, ParallelMinimization.getMode());
+
+    new MetaCommands();
+    Assertions.assertEquals(ParallelMinimization.DEFAULT_MODE, ParallelMinimization.getMode());
+
+    Assertions.assertThrows(RuntimeException.class, () -> {
+      new MetaCommands().parseMetaCommands("[minimization bogus]", true);
+    });
+    new MetaCommands();
+  }
+
+  @Test
+  void testParseNaryProduct() {
+    MetaCommands mc = new MetaCommands();
+    Assertions.assertEquals("blah", mc.parseMetaCommands("[naryProduct]blah", true));
+    Assertions.assertTrue(Prover.naryProduct);
+
+    new MetaCommands();
+    Assertions.assertFalse(Prover.naryProduct);
+
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[naryProduct on]", true);
+    });
+    new MetaCommands();
+  }
+
+  @Test
+  void testIsPlainSCFrom() {
+    MetaCommands mc = new MetaCommands();
+    Assertions.assertTrue(mc.isPlainSCFrom(0));
+    mc.parseMetaCommands("[strategy 2 BRZ][export 4 BA][strategy 6 SC]blah", true);
+    Assertions.assertFalse(mc.isPlainSCFrom(0));
+    Assertions.assertFalse(mc.isPlainSCFrom(3));
+    Assertions.assertTrue(mc.isPlainSCFrom(5));
+
+    mc = new MetaCommands();
+    mc.parseMetaCommands("[strategy * SC]blah", true);
+    Assertions.assertTrue(mc.isPlainSCFrom(0));
+
+    mc = new MetaCommands();
+    mc.parseMetaCommands("[export * TXT]blah", true);
+    Assertions.assertFalse(mc.isPlainSCFrom(7));
+  }
+
+  @Test
+  void testParseCheckpoint() {
+    MetaCommands mc = new MetaCommands();
+    Assertions.assertEquals("blah", mc.parseMetaCommands("[checkpoint 30m]blah", true));
+    Assertions.assertEquals(30 * 60_000L, Checkpoint.getInterval());
+
+    new MetaCommands();
+    Assertions.assertEquals(Checkpoint.OFF, Checkpoint.getInterval());
+
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[checkpoint]", true);
+    });
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[checkpoint often]", true);
+    });
+    new MetaCommands();
+  }
+
+  @Test
+  void testParseBudget() {
+    MetaCommands mc = new MetaCommands();
+    // allowed without ::
+    Assertions.assertEquals("blah", mc.parseMetaCommands("[budget states=5e7 time=30m]blah", false));
+    Assertions.assertEquals(50_000_000L, Budget.getLimits().states());
+    Assertions.assertEquals(30 * 60_000L, Budget.getLimits().millis());
+
+    new MetaCommands();
+    Assertions.assertEquals(Budget.Limits.UNLIMITED, Budget.getLimits());
+
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[budget]", true);
+    });
+    Assertions.assertThrows(WalnutException.class, () -> {
+      new MetaCommands().parseMetaCommands("[budget states=many]", true);
+    });
+    new MetaCommands();
+  }
+
   @Test
   void testParseBogusCommand() {
     Assertions.assertThrows(RuntimeException.class, () -> {
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.StringReader;
 
 public class ProverTest {
@@ -27,6 +28,22 @@ public class ProverTest {
     Assertions.assertTrue(Prover.testCommand("test diffbyone 1"));
   }
 
+  @Test
+  void testEarlyExistTerminationNested() throws IOException {
+    Session.setPathsAndNamesIntegrationTests();
+    Prover.mainProver = new Prover();
+    TestCase tc = Prover.mainProver.dispatchForIntegrationTest(
+        "[earlyExistTermination]eval earlyExistNested \"E x E y (x<y) & (y<5)\"::", "earlyExistNested");
+    Assertions.assertTrue(tc.getAutomatonPairs().get(0).automaton().fa.isTRUE_AUTOMATON());
+    Assertions.assertTrue(tc.getDetails().contains(Logging.DECIDING + " on the fly"));
+
+    Prover.mainProver = new Prover();
+    tc = Prover.mainProver.dispatchForIntegrationTest(
+        "[earlyExistTermination]eval earlyExistNested \"E x E y (x<y) & (y<x)\"::", "earlyExistNested");
+    Assertions.assertFalse(tc.getAutomatonPairs().get(0).automaton().fa.isTRUE_AUTOMATON());
+    Prover.mainProver = new Prover();
+  }
+
   @Test
   void testReadBuffer() {
     Prover p = new Prover();
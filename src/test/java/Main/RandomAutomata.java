@@ -0,0 +1,90 @@
+package Main;
+
+import Automata.AutomatonDFA;
+import Automata.FA.FA;
+import Automata.FA.TransitionStorage;
+import Automata.FA.TransitionsCompactNFA;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random automata for tests, with initial state 0. The same Random seed gives the same automaton.
+ */
+public class RandomAutomata {
+  /**
+   * An NFA where a third of the states accept, with up to two transitions on each input.
+   */
+  public static FA randomNFA(Random random, int states, int alphabetSize) {
+    return randomNFA(random, states, alphabetSize, 2, 3, 1);
+  }
+
+  /**
+   * An NFA with compact transitions.
+   * @param maxOutDegree - each state has 0 to maxOutDegree transitions on each input
+   * @param acceptingOneIn - a state has a non-zero output with probability 1/acceptingOneIn
+   * @param maxOutput - non-zero outputs are drawn from 1..maxOutput
+   */
+  public static FA randomNFA(Random random, int states, int alphabetSize,
+                             int maxOutDegree, int acceptingOneIn, int maxOutput) {
+    TransitionsCompactNFA.Builder builder = new TransitionsCompactNFA.Builder(states);
+    IntList O = new IntArrayList();
+    for (int q = 0; q < states; q++) {
+      builder.startState();
+      O.add(random.nextInt(acceptingOneIn) != 0 ? 0 : maxOutput == 1 ? 1 : 1 + random.nextInt(maxOutput));
+      for (int in = 0; in < alphabetSize; in++) {
+        for (int k = random.nextInt(maxOutDegree + 1); k > 0; k--) {
+          builder.addTransition(in, random.nextInt(states));
+        }
+      }
+    }
+    FA fa = new FA();
+    fa.setAlphabetSize(alphabetSize);
+    fa.setFields(states, O, builder.build());
+    fa.setQ0(0);
+    return fa;
+  }
+
+  /**
+   * A partial DFA with packed transitions.
+   * @param acceptingOneIn - a state accepts with probability 1/acceptingOneIn
+   * @param missingOneIn - a transition is missing with probability 1/missingOneIn
+   */
+  public static FA randomDFA(Random random, int states, int alphabetSize, int acceptingOneIn, int missingOneIn) {
+    TransitionStorage.DfaBuilder builder = TransitionStorage.dfaBuilder(alphabetSize, states);
+    IntList O = new IntArrayList();
+    for (int q = 0; q < states; q++) {
+      builder.startState();
+      O.add(random.nextInt(acceptingOneIn) == 0 ? 1 : 0);
+      for (int in = 0; in < alphabetSize; in++) {
+        if (random.nextInt(missingOneIn) != 0) {
+          builder.addTransition(in, random.nextInt(states));
+        }
+      }
+    }
+    FA fa = new FA();
+    fa.setAlphabetSize(alphabetSize);
+    fa.setFields(states, O, builder.build());
+    fa.setQ0(0);
+    return fa;
+  }
+
+  /**
+   * A partial DFA with 5 states over binary tracks with the given labels, and no number systems.
+   */
+  public static AutomatonDFA randomBinaryTracksDFA(Random random, List<String> labels) {
+    AutomatonDFA A = new AutomatonDFA();
+    for (String label : labels) {
+      A.richAlphabet.getA().add(List.of(0, 1));
+      A.getLabel().add(label);
+      A.getNS().add(null);
+    }
+    A.determineAlphabetSize();
+    FA fa = randomDFA(random, 5, A.getAlphabetSize(), 2, 8);
+    A.fa.setFields(fa.getQ(), fa.getO(), fa.getT());
+    A.fa.setQ0(0);
+    return A;
+  }
+}